@@ -0,0 +1,136 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.LinuxPerfProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.prasanthj.bloomfilter.BitSetEncoding;
+import com.github.prasanthj.bloomfilter.BloomKFilter;
+
+/**
+ * Encode and decode time of the bit set encodings for a filter sized for 1M entries and filled to
+ * different fractions of it. Encoded sizes are reported as secondary results.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BenchmarkBitSetEncoding {
+  private static final int NUM_ENTRIES = 1_000_000;
+
+  // fraction of expected entries added
+  @Param({"0.001", "0.01", "0.1", "1.0"})
+  private double fill;
+
+  @Param({"RAW", "SPARSE", "ROARING"})
+  private BitSetEncoding.Encoding encoding;
+
+  private long[] bitSet;
+  private byte[] encoded;
+  private long[] target;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(123);
+    BloomKFilter bf = new BloomKFilter(NUM_ENTRIES);
+    for (int i = 0; i < NUM_ENTRIES * fill; i++) {
+      bf.addLong(random.nextLong());
+    }
+    bitSet = bf.getBitSet();
+    encoded = BitSetEncoding.encode(bitSet, encoding);
+    target = new long[bitSet.length];
+  }
+
+  // adaptive is 1 when BitSetEncoding.choose() picks this encoding for the bit set
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Sizes {
+    private long encodedBytes;
+    private long rawBytes;
+    private long adaptive;
+
+    @Setup(Level.Iteration)
+    public void setup(BenchmarkBitSetEncoding state) {
+      encodedBytes = state.encoded.length;
+      rawBytes = BitSetEncoding.encodedSize(state.bitSet, BitSetEncoding.Encoding.RAW);
+      adaptive = BitSetEncoding.choose(state.bitSet) == state.encoding ? 1 : 0;
+    }
+
+    public long encodedBytes() {
+      return encodedBytes;
+    }
+
+    public long rawBytes() {
+      return rawBytes;
+    }
+
+    public long adaptive() {
+      return adaptive;
+    }
+  }
+
+  @Benchmark
+  public byte[] encode(Sizes sizes) {
+    return BitSetEncoding.encode(bitSet, encoding);
+  }
+
+  @Benchmark
+  public long[] decode(Sizes sizes) {
+    Arrays.fill(target, 0);
+    BitSetEncoding.decode(ByteBuffer.wrap(encoded), target);
+    return target;
+  }
+
+  /*
+   * ============================== HOW TO RUN THIS TEST: ====================================
+   *
+   * You can run this test:
+   *
+   * a) Via the command line:
+   *    $ mvn clean install
+   *    $ java -jar target/benchmarks.jar BenchmarkBitSetEncoding -prof perf -f 1 (Linux)
+   *    $ java -jar target/benchmarks.jar BenchmarkBitSetEncoding -p fill=0.01
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BenchmarkBitSetEncoding.class.getSimpleName())
+      .addProfiler(LinuxPerfProfiler.class)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
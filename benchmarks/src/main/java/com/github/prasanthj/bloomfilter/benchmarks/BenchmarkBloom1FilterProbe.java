@@ -36,6 +36,7 @@ import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
 import com.github.prasanthj.bloomfilter.Bloom1Filter;
+import com.github.prasanthj.bloomfilter.RangeReduction;
 
 @State(Scope.Benchmark)
 @Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
@@ -48,12 +49,17 @@ public class BenchmarkBloom1FilterProbe {
 
   @Param({"10000", "10000000"})
   private int numEntries;
+
+  // how hash is mapped to a bit/word index
+  @Param({"MODULO", "FAST_RANGE", "POW2"})
+  private RangeReduction reduction;
+
   private int[] probeArray;
   private Bloom1Filter bf;
 
   @Setup
   public void setup() {
-    bf = new Bloom1Filter(numEntries);
+    bf = new Bloom1Filter(numEntries, 0.05, reduction);
     for (int i = 0; i < numEntries; i++) {
       bf.addLong(i);
     }
@@ -84,6 +90,7 @@ public class BenchmarkBloom1FilterProbe {
    *    $ java -jar target/benchmarks.jar BenchmarkBloom1FilterProbe -prof perfnorm -f 3 (Linux)
    *    $ java -jar target/benchmarks.jar BenchmarkBloom1FilterProbe -prof perfasm  -f 1 (Linux)
    *    $ java -jar target/benchmarks.jar BenchmarkBloom1FilterProbe -prof perf -jvmArgsAppend "-XX:AllocatePrefetchStyle=2"
+   *    $ java -jar target/benchmarks.jar BenchmarkBloom1FilterProbe -p reduction=FAST_RANGE
    */
   public static void main(String[] args) throws RunnerException {
     Options opt = new OptionsBuilder()
@@ -13,7 +13,9 @@
 package com.github.prasanthj.bloomfilter.benchmarks;
 
 import com.github.prasanthj.bloomfilter.Bloom1Filter;
+import com.github.prasanthj.bloomfilter.BloomGFilter;
 import com.github.prasanthj.bloomfilter.BloomFilter;
+import com.github.prasanthj.bloomfilter.PartitionedBloomFilter;
 
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -53,6 +55,8 @@ public class BenchmarkBloomFilter {
   private int numEntries;
   private BloomFilter bf;
   private Bloom1Filter bf1;
+  private BloomGFilter bfg;
+  private PartitionedBloomFilter pbf;
   private int[] inp;
   private Random rand;
 
@@ -60,6 +64,8 @@ public class BenchmarkBloomFilter {
   public void setup() {
     bf = new BloomFilter(numEntries);
     bf1 = new Bloom1Filter(numEntries);
+    bfg = new BloomGFilter(numEntries);
+    pbf = new PartitionedBloomFilter(numEntries);
     inp = new int[numEntries];
     rand = new Random(123);
     for (int i = 0; i < numEntries; i++) {
@@ -95,6 +101,34 @@ public class BenchmarkBloomFilter {
     }
   }
 
+  @Benchmark
+  public void bloomGFilterAddLong() {
+    for (int i : inp) {
+      bfg.addLong(i);
+    }
+  }
+
+  @Benchmark
+  public void bloomGFilterTestLong() {
+    for (int i : inp) {
+      bfg.testLong(i);
+    }
+  }
+
+  @Benchmark
+  public void partitionedBloomFilterAddLong() {
+    for (int i : inp) {
+      pbf.addLong(i);
+    }
+  }
+
+  @Benchmark
+  public void partitionedBloomFilterTestLong() {
+    for (int i : inp) {
+      pbf.testLong(i);
+    }
+  }
+
    /*
    * ============================== HOW TO RUN THIS TEST: ====================================
    *
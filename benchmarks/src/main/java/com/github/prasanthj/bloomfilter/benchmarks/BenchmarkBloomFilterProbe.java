@@ -36,6 +36,7 @@ import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
 import com.github.prasanthj.bloomfilter.BloomFilter;
+import com.github.prasanthj.bloomfilter.RangeReduction;
 
 @State(Scope.Benchmark)
 @Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
@@ -48,12 +49,17 @@ public class BenchmarkBloomFilterProbe {
 
   @Param({"10000", "10000000"})
   private int numEntries;
+
+  // how hash is mapped to a bit/word index
+  @Param({"MODULO", "FAST_RANGE", "POW2"})
+  private RangeReduction reduction;
+
   private int[] probeArray;
   private BloomFilter bf;
 
   @Setup
   public void setup() {
-    bf = new BloomFilter(numEntries);
+    bf = new BloomFilter(numEntries, BloomFilter.DEFAULT_FPP, reduction);
     for (int i = 0; i < numEntries; i++) {
       bf.addLong(i);
     }
@@ -84,6 +90,7 @@ public class BenchmarkBloomFilterProbe {
    *    $ java -jar target/benchmarks.jar BenchmarkBloomFilterProbe -prof perfnorm -f 3 (Linux)
    *    $ java -jar target/benchmarks.jar BenchmarkBloomFilterProbe -prof perfasm  -f 1 (Linux)
    *    $ java -jar target/benchmarks.jar BenchmarkBloomFilterProbe -prof perf -jvmArgsAppend "-XX:AllocatePrefetchStyle=2"
+   *    $ java -jar target/benchmarks.jar BenchmarkBloomFilterProbe -p reduction=FAST_RANGE
    */
   public static void main(String[] args) throws RunnerException {
     Options opt = new OptionsBuilder()
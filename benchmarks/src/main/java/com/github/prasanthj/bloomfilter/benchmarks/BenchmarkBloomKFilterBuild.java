@@ -0,0 +1,96 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.LinuxPerfProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.prasanthj.bloomfilter.BloomKFilter;
+
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BenchmarkBloomKFilterBuild {
+  @Param({"10000000", "100000000"})
+  private int numEntries;
+
+  // scaling from 1 to N cores, capped by the common fork-join pool size + 1 (caller thread)
+  @Param({"1", "2", "4", "8", "16"})
+  private int parallelism;
+
+  private long[] keys;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(123);
+    keys = new long[numEntries];
+    for (int i = 0; i < numEntries; i++) {
+      keys[i] = random.nextLong();
+    }
+  }
+
+  @Benchmark
+  public BloomKFilter build() {
+    return BloomKFilter.build(keys, parallelism);
+  }
+
+  // single threaded baseline
+  @Benchmark
+  public BloomKFilter addLong() {
+    BloomKFilter bf = new BloomKFilter(numEntries);
+    for (long key : keys) {
+      bf.addLong(key);
+    }
+    return bf;
+  }
+
+  /*
+   * ============================== HOW TO RUN THIS TEST: ====================================
+   *
+   * You can run this test:
+   *
+   * a) Via the command line:
+   *    $ mvn clean install
+   *    $ java -jar target/benchmarks.jar BenchmarkBloomKFilterBuild.build -prof perf -f 1 (Linux)
+   *    $ java -jar target/benchmarks.jar BenchmarkBloomKFilterBuild.build -p numEntries=100000000 -jvmArgsAppend "-Xmx4g"
+   *    $ java -jar target/benchmarks.jar BenchmarkBloomKFilterBuild.addLong -p parallelism=1
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BenchmarkBloomKFilterBuild.class.getSimpleName())
+      .addProfiler(LinuxPerfProfiler.class)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.LinuxPerfProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.prasanthj.bloomfilter.BloomKFilter;
+
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BenchmarkBloomKFilterMergeAll {
+  @Param({"1000000", "10000000"})
+  private int numEntries;
+
+  @Param({"8", "32"})
+  private int numFilters;
+
+  private List<BloomKFilter> filters;
+  private BloomKFilter target;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(123);
+    filters = new ArrayList<BloomKFilter>(numFilters);
+    for (int f = 0; f < numFilters; f++) {
+      BloomKFilter bf = new BloomKFilter(numEntries);
+      for (int i = 0; i < 1000; i++) {
+        bf.addLong(random.nextLong());
+      }
+      filters.add(bf);
+    }
+    target = new BloomKFilter(numEntries);
+  }
+
+  @Benchmark
+  public BloomKFilter mergeAll() {
+    target.mergeAll(filters);
+    return target;
+  }
+
+  // one pass over the target per input
+  @Benchmark
+  public BloomKFilter merge() {
+    for (BloomKFilter bf : filters) {
+      target.merge(bf);
+    }
+    return target;
+  }
+
+  /*
+   * ============================== HOW TO RUN THIS TEST: ====================================
+   *
+   * You can run this test:
+   *
+   * a) Via the command line:
+   *    $ mvn clean install
+   *    $ java -jar target/benchmarks.jar BenchmarkBloomKFilterMergeAll -prof perf -f 1 (Linux)
+   *    $ java -jar target/benchmarks.jar BenchmarkBloomKFilterMergeAll -p numFilters=32 -jvmArgsAppend "-Xmx4g"
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BenchmarkBloomKFilterMergeAll.class.getSimpleName())
+      .addProfiler(LinuxPerfProfiler.class)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -37,6 +37,8 @@ import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
 import com.github.prasanthj.bloomfilter.BloomKFilter;
+import com.github.prasanthj.bloomfilter.LongBloomKFilter;
+import com.github.prasanthj.bloomfilter.RangeReduction;
 
 @State(Scope.Benchmark)
 @Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
@@ -50,14 +52,37 @@ public class BenchmarkBloomKFilterProbe {
   @Param({"10000", "10000000"})
   private int numEntries;
 
+  // number of longs per block
+  @Param({"2", "4", "8", "16"})
+  private int blockSize;
+
+  @Param({"32", "64"})
+  private int wordBits;
+
+  @Param({"ANY", "SPLIT"})
+  private BloomKFilter.BitPlacement bitPlacement;
+
+  // size from the blocked filter fpp model (and use remixed bit positions)
+  @Param({"false", "true"})
+  private boolean blockedSizing;
+
+  // how hash is mapped to a block index
+  @Param({"MODULO", "FAST_RANGE", "POW2"})
+  private RangeReduction reduction;
+
   private int[] probeArray;
   private BloomKFilter bf;
+  private LongBloomKFilter lbf;
 
   @Setup
   public void setup() {
-    bf = new BloomKFilter(numEntries);
+    bf = new BloomKFilter(numEntries, 0.05, blockSize, wordBits, bitPlacement, blockedSizing,
+        reduction);
+    lbf = new LongBloomKFilter(numEntries, 0.05, blockSize, wordBits, bitPlacement, blockedSizing,
+        reduction);
     for (int i = 0; i < numEntries; i++) {
       bf.addLong(i);
+      lbf.add(i);
     }
 
     Random random = new Random(123);
@@ -75,6 +100,15 @@ public class BenchmarkBloomKFilterProbe {
     }
   }
 
+  // same geometry, long keys hashed with fmix64 instead of Murmur3 over 8 bytes
+  @Benchmark
+  @OperationsPerInvocation(PROBE_COUNT)
+  public void testProbeLongFilter() {
+    for (int i : probeArray) {
+      lbf.test(i);
+    }
+  }
+
   /*
    * ============================== HOW TO RUN THIS TEST: ====================================
    *
@@ -86,6 +120,9 @@ public class BenchmarkBloomKFilterProbe {
    *    $ java -jar target/benchmarks.jar BenchmarkBloomKFilterProbe -prof perfnorm -f 3 (Linux)
    *    $ java -jar target/benchmarks.jar BenchmarkBloomKFilterProbe -prof perfasm  -f 1 (Linux)
    *    $ java -jar target/benchmarks.jar BenchmarkBloomKFilterProbe -prof perf -jvmArgsAppend "-XX:AllocatePrefetchStyle=2"
+   *    $ java -jar target/benchmarks.jar BenchmarkBloomKFilterProbe -p blockSize=4 -p wordBits=32 -p bitPlacement=SPLIT
+   *    $ java -jar target/benchmarks.jar BenchmarkBloomKFilterProbe -p blockSize=8 -p wordBits=64 -p blockedSizing=true
+   *    $ java -jar target/benchmarks.jar BenchmarkBloomKFilterProbe -p blockSize=8 -p wordBits=64 -p reduction=POW2
    */
   public static void main(String[] args) throws RunnerException {
     Options opt = new OptionsBuilder()
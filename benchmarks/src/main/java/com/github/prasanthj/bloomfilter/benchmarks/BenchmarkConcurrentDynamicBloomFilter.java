@@ -0,0 +1,101 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.LinuxPerfProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.prasanthj.bloomfilter.ConcurrentDynamicBloomFilter;
+
+/**
+ * Insert throughput of many writer threads into one {@link ConcurrentDynamicBloomFilter}. Every add
+ * counts the key against the capacity of the active row, run with different -t to see how that
+ * scales with the number of writers. The filter is created once per iteration, so rows keep being
+ * appended as the iteration runs.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BenchmarkConcurrentDynamicBloomFilter {
+  @Param({"1000000"})
+  private int numEntries;
+
+  private ConcurrentDynamicBloomFilter bf;
+  private final AtomicLong threadIds = new AtomicLong();
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    bf = new ConcurrentDynamicBloomFilter(numEntries);
+  }
+
+  @State(Scope.Thread)
+  public static class Keys {
+    private long next;
+
+    @Setup
+    public void setup(BenchmarkConcurrentDynamicBloomFilter benchmark) {
+      // disjoint key ranges per thread
+      next = benchmark.threadIds.getAndIncrement() << 40;
+    }
+
+    long next() {
+      return next++;
+    }
+  }
+
+  @Benchmark
+  public void addLong(Keys keys) {
+    bf.addLong(keys.next());
+  }
+
+  /*
+   * ============================== HOW TO RUN THIS TEST: ====================================
+   *
+   * You can run this test:
+   *
+   * a) Via the command line:
+   *    $ mvn clean install
+   *    $ java -jar target/benchmarks.jar BenchmarkConcurrentDynamicBloomFilter -prof perf -f 1 (Linux)
+   *    $ java -jar target/benchmarks.jar BenchmarkConcurrentDynamicBloomFilter -t 1
+   *    $ java -jar target/benchmarks.jar BenchmarkConcurrentDynamicBloomFilter -t 8
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BenchmarkConcurrentDynamicBloomFilter.class.getSimpleName())
+      .addProfiler(LinuxPerfProfiler.class)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.LinuxPerfProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.prasanthj.bloomfilter.BloomKFilter;
+
+/**
+ * Checkpoint cost of a filter with dirty page tracking, full checkpoint (writeTo) vs delta of the
+ * pages changed by the keys added since the previous checkpoint (writeDelta). Output is discarded,
+ * so this measures the copy and checksum and not the storage.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BenchmarkDeltaCheckpoint {
+  @Param({"100000000"})
+  private int numEntries;
+
+  // keys added between checkpoints
+  @Param({"100", "10000"})
+  private int numInserts;
+
+  private BloomKFilter bf;
+  private long[] keys;
+  private OutputStream out;
+  private WritableByteChannel channel;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(123);
+    bf = new BloomKFilter(numEntries);
+    bf.trackDirtyPages();
+    keys = new long[numInserts];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = random.nextLong();
+    }
+    out = new OutputStream() {
+      @Override
+      public void write(int b) {
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+      }
+    };
+    channel = Channels.newChannel(out);
+  }
+
+  @Benchmark
+  public long fullCheckpoint() throws IOException {
+    for (long key : keys) {
+      bf.addLong(key);
+    }
+    bf.writeTo(out);
+    return bf.sizeInBytes();
+  }
+
+  @Benchmark
+  public long deltaCheckpoint() throws IOException {
+    for (long key : keys) {
+      bf.addLong(key);
+    }
+    return bf.writeDelta(channel);
+  }
+
+  /*
+   * ============================== HOW TO RUN THIS TEST: ====================================
+   *
+   * You can run this test:
+   *
+   * a) Via the command line:
+   *    $ mvn clean install
+   *    $ java -jar target/benchmarks.jar BenchmarkDeltaCheckpoint -prof perf -f 1 (Linux)
+   *    $ java -jar target/benchmarks.jar BenchmarkDeltaCheckpoint -p numEntries=1000000000 -jvmArgsAppend "-Xmx4g"
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BenchmarkDeltaCheckpoint.class.getSimpleName())
+      .addProfiler(LinuxPerfProfiler.class)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
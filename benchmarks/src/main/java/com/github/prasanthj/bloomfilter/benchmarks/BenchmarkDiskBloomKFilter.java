@@ -0,0 +1,165 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.LinuxPerfProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.prasanthj.bloomfilter.BloomKFilter;
+import com.github.prasanthj.bloomfilter.DiskBloomKFilter;
+
+/**
+ * Probes of a {@link DiskBloomKFilter} with a page cache of cachePercent of its pages, one key at
+ * a time vs batches of keys grouped by page. The file is usually in the OS page cache, so a miss
+ * costs a read syscall and a copy rather than a device read.
+ * Cache hits, misses and async reads of each iteration are reported as secondary results.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BenchmarkDiskBloomKFilter {
+  private static final int BATCH_SIZE = 4096;
+
+  @Param({"10000000"})
+  private int numEntries;
+
+  @Param({"10", "100"})
+  private int cachePercent;
+
+  private Path file;
+  private DiskBloomKFilter disk;
+  private long[] keys;
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(123);
+    BloomKFilter bf = new BloomKFilter(numEntries);
+    for (int i = 0; i < numEntries; i++) {
+      bf.addLong(random.nextLong());
+    }
+    file = Files.createTempFile("bloom", ".disk");
+    int numPages = (int) (bf.sizeInBytes() / DiskBloomKFilter.PAGE_SIZE) + 1;
+    disk = DiskBloomKFilter.create(file, bf, Math.max(1, numPages * cachePercent / 100));
+    keys = new long[BATCH_SIZE];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = random.nextLong();
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    disk.close();
+    Files.delete(file);
+  }
+
+  // counters of the shared filter since the start of the iteration, sums over threads with -t > 1
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Cache {
+    private DiskBloomKFilter disk;
+    private long hits;
+    private long misses;
+    private long asyncReads;
+
+    @Setup(Level.Iteration)
+    public void setup(BenchmarkDiskBloomKFilter state) {
+      disk = state.disk;
+      hits = disk.getCacheHits();
+      misses = disk.getCacheMisses();
+      asyncReads = disk.getAsyncReads();
+    }
+
+    public long cacheHits() {
+      return disk.getCacheHits() - hits;
+    }
+
+    public long cacheMisses() {
+      return disk.getCacheMisses() - misses;
+    }
+
+    public long asyncReads() {
+      return disk.getAsyncReads() - asyncReads;
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public int testLong(Cache cache) throws IOException {
+    int found = 0;
+    for (long key : keys) {
+      if (disk.testLong(key)) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public BitSet testLongs(Cache cache) throws IOException {
+    return disk.testLongs(keys);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public BitSet testLongsAsync(Cache cache) throws Exception {
+    return disk.testLongsAsync(keys).get();
+  }
+
+  /*
+   * ============================== HOW TO RUN THIS TEST: ====================================
+   *
+   * You can run this test:
+   *
+   * a) Via the command line:
+   *    $ mvn clean install
+   *    $ java -jar target/benchmarks.jar BenchmarkDiskBloomKFilter -prof perf -f 1 (Linux)
+   *    $ java -jar target/benchmarks.jar BenchmarkDiskBloomKFilter -p cachePercent=1
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BenchmarkDiskBloomKFilter.class.getSimpleName())
+      .addProfiler(LinuxPerfProfiler.class)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.LinuxPerfProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.prasanthj.bloomfilter.BloomKFilter;
+import com.github.prasanthj.bloomfilter.DurableBloomKFilter;
+
+/**
+ * Cost of logging added keys to the write-ahead log of {@link DurableBloomKFilter}, per key, vs
+ * adding them to a plain BloomKFilter. The log is truncated by a snapshot before every iteration.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BenchmarkDurableBloomKFilter {
+  private static final int NUM_KEYS = 1024;
+
+  @Param({"10000000"})
+  private int numEntries;
+
+  @Param({"1024"})
+  private int batchSize;
+
+  @Param({"false", "true"})
+  private boolean forceOnCommit;
+
+  private Path dir;
+  private BloomKFilter plain;
+  private DurableBloomKFilter durable;
+  private long[] keys;
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(123);
+    keys = new long[NUM_KEYS];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = random.nextLong();
+    }
+    dir = Files.createTempDirectory("bloom-wal");
+    plain = new BloomKFilter(numEntries);
+    durable = new DurableBloomKFilter(dir.resolve("snapshot"), dir.resolve("wal"), numEntries,
+        0.05, batchSize, forceOnCommit);
+  }
+
+  @Setup(Level.Iteration)
+  public void truncateLog() throws IOException {
+    durable.snapshot();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    durable.close();
+    Files.delete(dir.resolve("snapshot"));
+    Files.delete(dir.resolve("wal"));
+    Files.delete(dir);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_KEYS)
+  public BloomKFilter addLong() {
+    for (long key : keys) {
+      plain.addLong(key);
+    }
+    return plain;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_KEYS)
+  public DurableBloomKFilter addLongLogged() throws IOException {
+    for (long key : keys) {
+      durable.addLong(key);
+    }
+    return durable;
+  }
+
+  /*
+   * ============================== HOW TO RUN THIS TEST: ====================================
+   *
+   * You can run this test:
+   *
+   * a) Via the command line:
+   *    $ mvn clean install
+   *    $ java -jar target/benchmarks.jar BenchmarkDurableBloomKFilter -prof perf -f 1 (Linux)
+   *    $ java -jar target/benchmarks.jar BenchmarkDurableBloomKFilter -p batchSize=4096
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BenchmarkDurableBloomKFilter.class.getSimpleName())
+      .addProfiler(LinuxPerfProfiler.class)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
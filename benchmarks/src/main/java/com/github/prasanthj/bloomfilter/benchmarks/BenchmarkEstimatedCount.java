@@ -0,0 +1,124 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.LinuxPerfProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.prasanthj.bloomfilter.BloomKFilter;
+
+/**
+ * Cost of maintaining the set bits of a {@link BloomKFilter} on add (trackSetBits()) and of the
+ * estimates with and without tracking, where estimatedCount() counts the bits of the whole bitset.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BenchmarkEstimatedCount {
+  private static final int BATCH_SIZE = 4096;
+
+  @Param({"10000000"})
+  private int numEntries;
+
+  private BloomKFilter untracked;
+  private BloomKFilter tracked;
+  private long[] keys;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(123);
+    untracked = new BloomKFilter(numEntries);
+    tracked = new BloomKFilter(numEntries);
+    tracked.trackSetBits();
+    for (int i = 0; i < numEntries / 2; i++) {
+      long key = random.nextLong();
+      untracked.addLong(key);
+      tracked.addLong(key);
+    }
+    keys = new long[BATCH_SIZE];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = random.nextLong();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void addUntracked() {
+    for (long key : keys) {
+      untracked.addLong(key);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void addTracked() {
+    for (long key : keys) {
+      tracked.addLong(key);
+    }
+  }
+
+  @Benchmark
+  public long estimatedCountUntracked() {
+    return untracked.estimatedCount();
+  }
+
+  @Benchmark
+  public long estimatedCountTracked() {
+    return tracked.estimatedCount();
+  }
+
+  @Benchmark
+  public double estimatedFppTracked() {
+    return tracked.estimatedFpp();
+  }
+
+  /*
+   * ============================== HOW TO RUN THIS TEST: ====================================
+   *
+   * You can run this test:
+   *
+   * a) Via the command line:
+   *    $ mvn clean install
+   *    $ java -jar target/benchmarks.jar BenchmarkEstimatedCount -prof perf -f 1 (Linux)
+   *    $ java -jar target/benchmarks.jar BenchmarkEstimatedCount -p numEntries=100000000
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BenchmarkEstimatedCount.class.getSimpleName())
+      .addProfiler(LinuxPerfProfiler.class)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.LinuxPerfProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.prasanthj.bloomfilter.BloomKFilter;
+
+/**
+ * Overlap of two Bloom K filters with half of their keys in common: AND popcount and Jaccard
+ * estimate (untracked filters count the set bits in the same pass, tracked ones only the AND) vs
+ * merging a copy of one filter into the other and estimating from the merged filter.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BenchmarkFilterSimilarity {
+  @Param({"10000000"})
+  private int numEntries;
+
+  private BloomKFilter a;
+  private BloomKFilter b;
+  private BloomKFilter trackedA;
+  private BloomKFilter trackedB;
+  private BloomKFilter copy;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(123);
+    a = new BloomKFilter(numEntries);
+    b = new BloomKFilter(numEntries);
+    trackedA = new BloomKFilter(numEntries);
+    trackedB = new BloomKFilter(numEntries);
+    for (int i = 0; i < numEntries; i++) {
+      long key = random.nextLong();
+      if (i % 2 == 0) {
+        a.addLong(key);
+        b.addLong(key);
+      } else {
+        a.addLong(key);
+        b.addLong(random.nextLong());
+      }
+    }
+    trackedA.merge(a);
+    trackedB.merge(b);
+    trackedA.trackSetBits();
+    trackedB.trackSetBits();
+    copy = new BloomKFilter(numEntries);
+  }
+
+  @Benchmark
+  public long andBitCount() {
+    return a.andBitCount(b);
+  }
+
+  @Benchmark
+  public double estimatedJaccard() {
+    return a.estimatedJaccard(b);
+  }
+
+  @Benchmark
+  public double estimatedJaccardTracked() {
+    return trackedA.estimatedJaccard(trackedB);
+  }
+
+  @Benchmark
+  public double mergedJaccard() {
+    long[] data = copy.getBitSet();
+    System.arraycopy(a.getBitSet(), 0, data, 0, data.length);
+    copy.merge(b);
+    double union = copy.estimatedCount();
+    return (a.estimatedCount() + b.estimatedCount() - union) / union;
+  }
+
+  /*
+   * ============================== HOW TO RUN THIS TEST: ====================================
+   *
+   * You can run this test:
+   *
+   * a) Via the command line:
+   *    $ mvn clean install
+   *    $ java -jar target/benchmarks.jar BenchmarkFilterSimilarity -prof perf -f 1 (Linux)
+   *    $ java -jar target/benchmarks.jar BenchmarkFilterSimilarity -p numEntries=100000000
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BenchmarkFilterSimilarity.class.getSimpleName())
+      .addProfiler(LinuxPerfProfiler.class)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.LinuxPerfProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.prasanthj.bloomfilter.BloomKFilter;
+import com.github.prasanthj.bloomfilter.RangeReduction;
+
+/**
+ * Probes of a POW2 {@link BloomKFilter} sized for numEntries that got numKeys keys vs the same
+ * filter folded with the factor picked by foldFactor() for the filter's fpp, and the cost of
+ * picking the factor and folding. Sizes before and after folding are reported as secondary results.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BenchmarkFold {
+  private static final int PROBES = 4096;
+
+  @Param({"10000000"})
+  private int numEntries;
+
+  @Param({"500000"})
+  private int numKeys;
+
+  private BloomKFilter bf;
+  private BloomKFilter folded;
+  private long[] probes;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(123);
+    bf = new BloomKFilter(numEntries, 0.01, RangeReduction.POW2);
+    for (int i = 0; i < numKeys; i++) {
+      bf.addLong(random.nextLong());
+    }
+    folded = foldOversized();
+    probes = new long[PROBES];
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = random.nextLong();
+    }
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Sizes {
+    private long oversizedBytes;
+    private long foldedBytes;
+
+    @Setup(Level.Iteration)
+    public void setup(BenchmarkFold state) {
+      oversizedBytes = state.bf.sizeInBytes();
+      foldedBytes = state.folded.sizeInBytes();
+    }
+
+    public long oversizedBytes() {
+      return oversizedBytes;
+    }
+
+    public long foldedBytes() {
+      return foldedBytes;
+    }
+  }
+
+  @Benchmark
+  public BloomKFilter fold(Sizes sizes) {
+    return foldOversized();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PROBES)
+  public int testOversized() {
+    return test(bf);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PROBES)
+  public int testFolded(Sizes sizes) {
+    return test(folded);
+  }
+
+  private BloomKFilter foldOversized() {
+    return bf.fold(bf.foldFactor(bf.getFalsePositivePercent()));
+  }
+
+  private int test(BloomKFilter filter) {
+    int found = 0;
+    for (long probe : probes) {
+      if (filter.testLong(probe)) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+  /*
+   * ============================== HOW TO RUN THIS TEST: ====================================
+   *
+   * You can run this test:
+   *
+   * a) Via the command line:
+   *    $ mvn clean install
+   *    $ java -jar target/benchmarks.jar BenchmarkFold -prof perf -f 1 (Linux)
+   *    $ java -jar target/benchmarks.jar BenchmarkFold -p numEntries=100000000
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BenchmarkFold.class.getSimpleName())
+      .addProfiler(LinuxPerfProfiler.class)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
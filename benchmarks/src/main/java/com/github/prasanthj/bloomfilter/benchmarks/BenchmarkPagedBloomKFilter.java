@@ -0,0 +1,167 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.LinuxPerfProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.prasanthj.bloomfilter.BloomKFilter;
+import com.github.prasanthj.bloomfilter.PagedBloomKFilter;
+
+/**
+ * Filter sized for numEntries that only gets numKeys keys, as runtime filters sized for the worst
+ * case: construction plus adds of a {@link BloomKFilter} vs a {@link PagedBloomKFilter}, and probes
+ * of random keys, which mostly land on unallocated pages of the paged filter. Allocated pages of
+ * the paged filter are reported as secondary results.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BenchmarkPagedBloomKFilter {
+  private static final int PROBES = 4096;
+
+  @Param({"100000000"})
+  private int numEntries;
+
+  @Param({"1000", "100000"})
+  private int numKeys;
+
+  private long[] keys;
+  private long[] probes;
+  private BloomKFilter bloomK;
+  private PagedBloomKFilter paged;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(123);
+    keys = new long[numKeys];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = random.nextLong();
+    }
+    probes = new long[PROBES];
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = random.nextLong();
+    }
+    bloomK = buildBloomK();
+    paged = newPaged();
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Pages {
+    private long allocatedPages;
+    private long numPages;
+
+    @Setup(Level.Iteration)
+    public void setup(BenchmarkPagedBloomKFilter state) {
+      allocatedPages = state.paged.getAllocatedPages();
+      numPages = state.paged.getNumPages();
+    }
+
+    public long allocatedPages() {
+      return allocatedPages;
+    }
+
+    public long numPages() {
+      return numPages;
+    }
+  }
+
+  @Benchmark
+  public BloomKFilter buildBloomK() {
+    BloomKFilter bf = new BloomKFilter(numEntries);
+    for (long key : keys) {
+      bf.addLong(key);
+    }
+    return bf;
+  }
+
+  @Benchmark
+  public PagedBloomKFilter buildPaged(Pages pages) {
+    return newPaged();
+  }
+
+  private PagedBloomKFilter newPaged() {
+    PagedBloomKFilter bf = new PagedBloomKFilter(numEntries);
+    for (long key : keys) {
+      bf.addLong(key);
+    }
+    return bf;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PROBES)
+  public int testBloomK() {
+    int found = 0;
+    for (long probe : probes) {
+      if (bloomK.testLong(probe)) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PROBES)
+  public int testPaged(Pages pages) {
+    int found = 0;
+    for (long probe : probes) {
+      if (paged.testLong(probe)) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+  /*
+   * ============================== HOW TO RUN THIS TEST: ====================================
+   *
+   * You can run this test:
+   *
+   * a) Via the command line:
+   *    $ mvn clean install
+   *    $ java -jar target/benchmarks.jar BenchmarkPagedBloomKFilter -prof perf -f 1 (Linux)
+   *    $ java -jar target/benchmarks.jar BenchmarkPagedBloomKFilter -p numEntries=1000000000
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BenchmarkPagedBloomKFilter.class.getSimpleName())
+      .addProfiler(LinuxPerfProfiler.class)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.LinuxPerfProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.prasanthj.bloomfilter.BloomFilter;
+import com.github.prasanthj.bloomfilter.BloomKFilter;
+import com.github.prasanthj.bloomfilter.ShardedBloomKFilter;
+
+/**
+ * Insert and probe throughput of many threads on one sharded filter vs a single shared filter
+ * (guarded by a lock, as BloomKFilter is not thread safe). Probes of the sharded filter take no
+ * lock. Run with different -t to see the scaling, and the add and test benchmarks together in a
+ * group to see probes running next to writers.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BenchmarkShardedBloomKFilter {
+  @Param({"10000000"})
+  private int numEntries;
+
+  @Param({"64"})
+  private int numShards;
+
+  private BloomKFilter shared;
+  private ShardedBloomKFilter sharded;
+  private final AtomicLong threadIds = new AtomicLong();
+
+  @Setup
+  public void setup() {
+    shared = new BloomKFilter(numEntries);
+    sharded = new ShardedBloomKFilter(numEntries, BloomFilter.DEFAULT_FPP, numShards);
+  }
+
+  @State(Scope.Thread)
+  public static class Keys {
+    private long next;
+
+    @Setup
+    public void setup(BenchmarkShardedBloomKFilter benchmark) {
+      // disjoint key ranges per thread
+      next = benchmark.threadIds.getAndIncrement() << 40;
+    }
+
+    long next() {
+      return next++;
+    }
+  }
+
+  @Benchmark
+  public void addShared(Keys keys) {
+    long key = keys.next();
+    synchronized (shared) {
+      shared.addLong(key);
+    }
+  }
+
+  @Benchmark
+  public void addSharded(Keys keys) {
+    sharded.addLong(keys.next());
+  }
+
+  @Benchmark
+  public boolean testShared(Keys keys) {
+    long key = keys.next();
+    synchronized (shared) {
+      return shared.testLong(key);
+    }
+  }
+
+  @Benchmark
+  public boolean testSharded(Keys keys) {
+    return sharded.testLong(keys.next());
+  }
+
+  // one writer next to three readers of the sharded filter, run with -t 4 or a multiple
+  @Benchmark
+  @Group("mixedSharded")
+  @GroupThreads(1)
+  public void mixedAddSharded(Keys keys) {
+    sharded.addLong(keys.next());
+  }
+
+  @Benchmark
+  @Group("mixedSharded")
+  @GroupThreads(3)
+  public boolean mixedTestSharded(Keys keys) {
+    return sharded.testLong(keys.next());
+  }
+
+  /*
+   * ============================== HOW TO RUN THIS TEST: ====================================
+   *
+   * You can run this test:
+   *
+   * a) Via the command line:
+   *    $ mvn clean install
+   *    $ java -jar target/benchmarks.jar BenchmarkShardedBloomKFilter -prof perf -f 1 (Linux)
+   *    $ java -jar target/benchmarks.jar BenchmarkShardedBloomKFilter -t 1
+   *    $ java -jar target/benchmarks.jar BenchmarkShardedBloomKFilter -t 4
+   *    $ java -jar target/benchmarks.jar BenchmarkShardedBloomKFilter -t 16 -p numShards=256
+   *    $ java -jar target/benchmarks.jar BenchmarkShardedBloomKFilter.mixedSharded -t 4
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BenchmarkShardedBloomKFilter.class.getSimpleName())
+      .addProfiler(LinuxPerfProfiler.class)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
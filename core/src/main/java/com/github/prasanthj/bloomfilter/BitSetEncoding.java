@@ -0,0 +1,358 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compact encodings of the bit set of a filter, for filters that are sized for a worst case and
+ * end up mostly empty.
+ * <p/>
+ * {@link #encode(long[])} picks the smallest of the encodings below from the number of non-zero
+ * words and set bits, counted in one pass over the bit set:
+ * <ul>
+ * <li>{@link Encoding#RAW} - all the words, for filters filled as designed</li>
+ * <li>{@link Encoding#SPARSE} - bitmap of non-zero words followed by the non-zero words, for
+ * filters with many empty words</li>
+ * <li>{@link Encoding#ROARING} - bit set split into containers of 2^16 bits as in Roaring bitmaps.
+ * Empty containers are skipped, containers with at most 4096 set bits are stored as sorted 16-bit
+ * positions and denser ones as words. For filters with a few bits scattered over every word.</li>
+ * </ul>
+ * Encoded form is a byte (encoding ordinal) and an int (number of words) followed by the encoding
+ * specific payload, little endian. {@link #decode(ByteBuffer, long[])} ORs the encoded bits
+ * directly into the bit set of a filter created with the same parameters, for example
+ * <pre>
+ *   byte[] encoded = BitSetEncoding.encode(bf.getBitSet());
+ *   ...
+ *   BloomKFilter copy = new BloomKFilter(n, fpp);
+ *   BitSetEncoding.decode(ByteBuffer.wrap(encoded), copy.getBitSet());
+ * </pre>
+ */
+public class BitSetEncoding {
+  // words per roaring container (2^16 bits)
+  static final int CONTAINER_WORDS = 1 << 10;
+  // containers with more set bits than this are stored as words, as in Roaring
+  static final int MAX_ARRAY_CARDINALITY = 4096;
+  private static final int HEADER_SIZE = 5;
+
+  public enum Encoding {
+    RAW,
+    SPARSE,
+    ROARING
+  }
+
+  private BitSetEncoding() {
+  }
+
+  /**
+   * Encodes the words with the smallest encoding.
+   *
+   * @param words - bit set of a filter
+   * @return encoded bit set
+   * @throws IllegalArgumentException if the encoded bit set would not fit in a byte array
+   */
+  public static byte[] encode(long[] words) {
+    Counts counts = new Counts(words);
+    return encode(words, counts.smallest(), counts);
+  }
+
+  /**
+   * Encodes the words with the specified encoding.
+   *
+   * @param words    - bit set of a filter
+   * @param encoding - encoding to use
+   * @return encoded bit set
+   * @throws IllegalArgumentException if the encoded bit set would not fit in a byte array
+   */
+  public static byte[] encode(long[] words, Encoding encoding) {
+    return encode(words, encoding, encoding == Encoding.RAW ? null : new Counts(words));
+  }
+
+  private static byte[] encode(long[] words, Encoding encoding, Counts counts) {
+    long size = encodedSize(words.length, encoding, counts);
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Encoded size " + size + " of " + encoding +
+          " bit set is larger than the maximum byte array size");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put((byte) encoding.ordinal());
+    buffer.putInt(words.length);
+    switch (encoding) {
+      case SPARSE:
+        encodeSparse(words, buffer);
+        break;
+      case ROARING:
+        encodeRoaring(words, counts.cardinalities, buffer);
+        break;
+      default:
+        buffer.asLongBuffer().put(words);
+        break;
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Returns the encoding with the smallest encoded size for the words.
+   */
+  public static Encoding choose(long[] words) {
+    return new Counts(words).smallest();
+  }
+
+  /**
+   * Returns the number of bytes of the words encoded with the specified encoding.
+   */
+  public static long encodedSize(long[] words, Encoding encoding) {
+    Counts counts = encoding == Encoding.RAW ? null : new Counts(words);
+    return encodedSize(words.length, encoding, counts);
+  }
+
+  // counts are not needed for RAW
+  private static long encodedSize(int numWords, Encoding encoding, Counts counts) {
+    switch (encoding) {
+      case SPARSE:
+        return HEADER_SIZE + (long) sparseBitmapLength(numWords) * 8 + counts.nonZero * 8;
+      case ROARING: {
+        // number of containers, then key, cardinality and payload of non-empty containers
+        long size = HEADER_SIZE + 4;
+        int[] cardinalities = counts.cardinalities;
+        for (int key = 0; key < cardinalities.length; key++) {
+          if (cardinalities[key] > 0) {
+            int containerWords = Math.min(CONTAINER_WORDS, numWords - key * CONTAINER_WORDS);
+            size += 8 + containerSize(cardinalities[key], containerWords);
+          }
+        }
+        return size;
+      }
+      default:
+        return HEADER_SIZE + (long) numWords * 8;
+    }
+  }
+
+  /**
+   * Returns the encoding of the encoded bit set.
+   */
+  public static Encoding encodingOf(ByteBuffer encoded) {
+    return encoding(encoded.get(encoded.position()));
+  }
+
+  /**
+   * ORs the encoded bits at the current position of the buffer into target, which is the bit set of
+   * a filter created with the same parameters as the encoded one. For a newly created filter this
+   * restores the encoded filter. Position of the buffer is moved past the encoded bit set.
+   *
+   * @param encoded - encoded bit set
+   * @param target  - bit set to OR the encoded bits into
+   * @throws IllegalArgumentException if the encoded bit set has a different number of words or is
+   *                                  not a valid encoding
+   */
+  public static void decode(ByteBuffer encoded, long[] target) {
+    ByteBuffer buffer = encoded.slice().order(ByteOrder.LITTLE_ENDIAN);
+    checkRemaining(buffer, HEADER_SIZE, "header");
+    Encoding encoding = encoding(buffer.get());
+    int numWords = buffer.getInt();
+    if (numWords != target.length) {
+      throw new IllegalArgumentException("BitArrays must be of equal length (" + target.length +
+          " != " + numWords + ")");
+    }
+    switch (encoding) {
+      case SPARSE:
+        decodeSparse(buffer, target);
+        break;
+      case ROARING:
+        decodeRoaring(buffer, target);
+        break;
+      default:
+        checkRemaining(buffer, (long) target.length * 8, "words");
+        for (int i = 0; i < target.length; i++) {
+          target[i] |= buffer.getLong();
+        }
+        break;
+    }
+    encoded.position(encoded.position() + buffer.position());
+  }
+
+  private static void checkRemaining(ByteBuffer buffer, long bytes, String what) {
+    if (buffer.remaining() < bytes) {
+      throw new IllegalArgumentException("Encoded bit set is truncated, " + what + " need " +
+          bytes + " bytes but " + buffer.remaining() + " are left");
+    }
+  }
+
+  private static Encoding encoding(int ordinal) {
+    if (ordinal < 0 || ordinal >= Encoding.values().length) {
+      throw new IllegalArgumentException("Unknown bit set encoding " + ordinal);
+    }
+    return Encoding.values()[ordinal];
+  }
+
+  private static int sparseBitmapLength(int numWords) {
+    return (numWords + Long.SIZE - 1) / Long.SIZE;
+  }
+
+  private static int containerSize(int cardinality, int containerWords) {
+    return cardinality <= MAX_ARRAY_CARDINALITY ? cardinality * 2 : containerWords * 8;
+  }
+
+  private static void encodeSparse(long[] words, ByteBuffer buffer) {
+    int bitmapStart = buffer.position();
+    int payload = bitmapStart + sparseBitmapLength(words.length) * 8;
+    long bitmap = 0;
+    for (int i = 0; i < words.length; i++) {
+      if (words[i] != 0) {
+        bitmap |= 1L << i;
+        buffer.putLong(payload, words[i]);
+        payload += 8;
+      }
+      if ((i & (Long.SIZE - 1)) == Long.SIZE - 1 || i == words.length - 1) {
+        buffer.putLong(bitmapStart + (i >>> 6) * 8, bitmap);
+        bitmap = 0;
+      }
+    }
+    buffer.position(payload);
+  }
+
+  private static void decodeSparse(ByteBuffer buffer, long[] target) {
+    int bitmapLength = sparseBitmapLength(target.length);
+    checkRemaining(buffer, (long) bitmapLength * 8, "bitmap of non-zero words");
+    int bitmapStart = buffer.position();
+    int payload = bitmapStart + bitmapLength * 8;
+    // validate the bitmap before any word is copied
+    long nonZero = 0;
+    for (int j = 0; j < bitmapLength; j++) {
+      nonZero += Long.bitCount(buffer.getLong(bitmapStart + j * 8));
+    }
+    // words of the last bitmap word past the end of the bit set should not be marked
+    int lastWords = target.length & (Long.SIZE - 1);
+    if (lastWords != 0 &&
+        buffer.getLong(bitmapStart + (bitmapLength - 1) * 8) >>> lastWords != 0) {
+      throw new IllegalArgumentException("Bitmap of non-zero words marks words out of range of " +
+          target.length + " words");
+    }
+    checkRemaining(buffer, (long) bitmapLength * 8 + nonZero * 8, "non-zero words");
+    for (int j = 0; j < bitmapLength; j++) {
+      long bitmap = buffer.getLong(bitmapStart + j * 8);
+      while (bitmap != 0) {
+        target[(j << 6) + Long.numberOfTrailingZeros(bitmap)] |= buffer.getLong(payload);
+        payload += 8;
+        bitmap &= bitmap - 1;
+      }
+    }
+    buffer.position(payload);
+  }
+
+  private static void encodeRoaring(long[] words, int[] cardinalities, ByteBuffer buffer) {
+    int countPos = buffer.position();
+    buffer.putInt(0);
+    int numContainers = 0;
+    for (int from = 0, key = 0; from < words.length; from += CONTAINER_WORDS, key++) {
+      int cardinality = cardinalities[key];
+      if (cardinality == 0) {
+        continue;
+      }
+      int to = Math.min(words.length, from + CONTAINER_WORDS);
+      numContainers++;
+      buffer.putInt(key);
+      buffer.putInt(cardinality);
+      if (cardinality <= MAX_ARRAY_CARDINALITY) {
+        for (int i = from; i < to; i++) {
+          long word = words[i];
+          while (word != 0) {
+            buffer.putShort((short) (((i - from) << 6) + Long.numberOfTrailingZeros(word)));
+            word &= word - 1;
+          }
+        }
+      } else {
+        for (int i = from; i < to; i++) {
+          buffer.putLong(words[i]);
+        }
+      }
+    }
+    buffer.putInt(countPos, numContainers);
+  }
+
+  private static void decodeRoaring(ByteBuffer buffer, long[] target) {
+    checkRemaining(buffer, 4, "number of containers");
+    int numContainers = buffer.getInt();
+    for (int c = 0; c < numContainers; c++) {
+      checkRemaining(buffer, 8, "container header");
+      int key = buffer.getInt();
+      int cardinality = buffer.getInt();
+      if (key < 0 || (long) key * CONTAINER_WORDS >= target.length) {
+        throw new IllegalArgumentException("Roaring container " + key + " is out of range");
+      }
+      if (cardinality < 1 || cardinality > CONTAINER_WORDS * Long.SIZE) {
+        throw new IllegalArgumentException("Invalid cardinality " + cardinality +
+            " of roaring container " + key);
+      }
+      int from = key * CONTAINER_WORDS;
+      int to = Math.min(target.length, from + CONTAINER_WORDS);
+      checkRemaining(buffer, containerSize(cardinality, to - from), "roaring container " + key);
+      if (cardinality <= MAX_ARRAY_CARDINALITY) {
+        for (int i = 0; i < cardinality; i++) {
+          int pos = buffer.getShort() & 0xffff;
+          // the last container can be shorter
+          if (from + (pos >>> 6) >= to) {
+            throw new IllegalArgumentException("Bit " + pos +
+                " is out of range of roaring container " + key);
+          }
+          target[from + (pos >>> 6)] |= 1L << pos;
+        }
+      } else {
+        for (int i = from; i < to; i++) {
+          target[i] |= buffer.getLong();
+        }
+      }
+    }
+  }
+
+  // non-zero words and set bits of every roaring container, counted in one pass over the words
+  private static final class Counts {
+    final int numWords;
+    final int[] cardinalities;
+    long nonZero;
+
+    Counts(long[] words) {
+      numWords = words.length;
+      cardinalities = new int[(words.length + CONTAINER_WORDS - 1) / CONTAINER_WORDS];
+      for (int key = 0, from = 0; key < cardinalities.length; key++, from += CONTAINER_WORDS) {
+        int to = Math.min(words.length, from + CONTAINER_WORDS);
+        int cardinality = 0;
+        for (int i = from; i < to; i++) {
+          long word = words[i];
+          cardinality += Long.bitCount(word);
+          if (word != 0) {
+            nonZero++;
+          }
+        }
+        cardinalities[key] = cardinality;
+      }
+    }
+
+    Encoding smallest() {
+      Encoding best = Encoding.RAW;
+      long bestSize = encodedSize(numWords, Encoding.RAW, this);
+      for (Encoding encoding : new Encoding[]{Encoding.SPARSE, Encoding.ROARING}) {
+        long size = encodedSize(numWords, encoding, this);
+        if (size < bestSize) {
+          best = encoding;
+          bestSize = size;
+        }
+      }
+      return best;
+    }
+  }
+}
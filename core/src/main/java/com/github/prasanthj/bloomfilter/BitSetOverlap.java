@@ -0,0 +1,199 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+/**
+ * Popcounts of the AND and OR of two bitsets of the same length, and the overlap estimates built
+ * on them, used by the similarity methods of the filters.
+ * <p/>
+ * The AND/OR words are popcounted as they are read, nothing is written, so comparing two filters
+ * streams both bitsets once and does not allocate a merged filter. The loops are unrolled by four
+ * into independent accumulators, so the popcounts of consecutive words do not wait on each other.
+ * <p/>
+ * The estimates use the Swamidass-Baldi estimator n = -(m / d) ln(1 - X / m) for X set bits, where
+ * d is the expected number of distinct bits a key sets. The union of the two key sets sets the
+ * bits of the OR, X(A) + X(B) - X(A and B), and the intersection is n(A) + n(B) - n(A or B). The
+ * bits of the AND alone over estimate the intersection, since a bit is also set in both filters
+ * when different keys set it.
+ * <p/>
+ * The counts for the estimates can be limited to the bits of each word under a mask, for layouts
+ * where some bits of a word do not follow the estimator (the MSB that every key sets in its word of
+ * a Bloom-1 filter without blocked sizing). m is then the number of bits under the mask.
+ */
+class BitSetOverlap {
+  // indices of the counts returned by bitCounts()
+  static final int BITS_A = 0;
+  static final int BITS_B = 1;
+  static final int BITS_AND = 2;
+
+  private BitSetOverlap() {
+  }
+
+  /**
+   * Returns the number of bits set in both a and b.
+   */
+  static long andBitCount(long[] a, long[] b) {
+    return andBitCount(a, b, -1L);
+  }
+
+  /**
+   * Returns the number of bits under the mask set in both a and b.
+   */
+  static long andBitCount(long[] a, long[] b, long mask) {
+    checkLength(a, b);
+    long c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+    final int end = a.length & ~3;
+    int i = 0;
+    for (; i < end; i += 4) {
+      c0 += Long.bitCount(a[i] & b[i] & mask);
+      c1 += Long.bitCount(a[i + 1] & b[i + 1] & mask);
+      c2 += Long.bitCount(a[i + 2] & b[i + 2] & mask);
+      c3 += Long.bitCount(a[i + 3] & b[i + 3] & mask);
+    }
+    for (; i < a.length; i++) {
+      c0 += Long.bitCount(a[i] & b[i] & mask);
+    }
+    return c0 + c1 + c2 + c3;
+  }
+
+  /**
+   * Returns the number of bits set in a or b.
+   */
+  static long orBitCount(long[] a, long[] b) {
+    checkLength(a, b);
+    long c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+    final int end = a.length & ~3;
+    int i = 0;
+    for (; i < end; i += 4) {
+      c0 += Long.bitCount(a[i] | b[i]);
+      c1 += Long.bitCount(a[i + 1] | b[i + 1]);
+      c2 += Long.bitCount(a[i + 2] | b[i + 2]);
+      c3 += Long.bitCount(a[i + 3] | b[i + 3]);
+    }
+    for (; i < a.length; i++) {
+      c0 += Long.bitCount(a[i] | b[i]);
+    }
+    return c0 + c1 + c2 + c3;
+  }
+
+  /**
+   * Counts the bits set in a, in b and in both in one pass over the bitsets.
+   *
+   * @return counts indexed by BITS_A, BITS_B and BITS_AND
+   */
+  static long[] bitCounts(long[] a, long[] b) {
+    return bitCounts(a, b, -1L);
+  }
+
+  /**
+   * Counts the bits under the mask set in a, in b and in both in one pass over the bitsets.
+   *
+   * @return counts indexed by BITS_A, BITS_B and BITS_AND
+   */
+  static long[] bitCounts(long[] a, long[] b, long mask) {
+    checkLength(a, b);
+    long bitsA = 0, bitsB = 0, and0 = 0, and1 = 0;
+    final int end = a.length & ~1;
+    int i = 0;
+    for (; i < end; i += 2) {
+      final long a0 = a[i] & mask, a1 = a[i + 1] & mask;
+      final long b0 = b[i] & mask, b1 = b[i + 1] & mask;
+      bitsA += Long.bitCount(a0) + Long.bitCount(a1);
+      bitsB += Long.bitCount(b0) + Long.bitCount(b1);
+      and0 += Long.bitCount(a0 & b0);
+      and1 += Long.bitCount(a1 & b1);
+    }
+    if (i < a.length) {
+      bitsA += Long.bitCount(a[i] & mask);
+      bitsB += Long.bitCount(b[i] & mask);
+      and0 += Long.bitCount(a[i] & b[i] & mask);
+    }
+    return new long[]{bitsA, bitsB, and0 + and1};
+  }
+
+  /**
+   * Counts with the set bits of a and b already known, only the AND is counted.
+   */
+  static long[] bitCounts(long[] a, long[] b, long bitsA, long bitsB) {
+    return bitCounts(a, b, -1L, bitsA, bitsB);
+  }
+
+  /**
+   * Counts with the set bits under the mask of a and b already known, only the AND is counted.
+   */
+  static long[] bitCounts(long[] a, long[] b, long mask, long bitsA, long bitsB) {
+    return new long[]{bitsA, bitsB, andBitCount(a, b, mask)};
+  }
+
+  /**
+   * Estimated number of keys in the union, infinite if the OR of the bitsets is full.
+   */
+  static double unionCount(long[] counts, long m, double d) {
+    return keys(counts[BITS_A] + counts[BITS_B] - counts[BITS_AND], m, d);
+  }
+
+  /**
+   * Estimated number of keys in the intersection, clamped to [0, min(n(A), n(B))]. NaN if the OR
+   * of the bitsets is full, the union is then unbounded and the intersection cannot be told apart
+   * from it.
+   */
+  static double intersectionCount(long[] counts, long m, double d) {
+    if (isUnionFull(counts, m)) {
+      return Double.NaN;
+    }
+    final double keysA = keys(counts[BITS_A], m, d);
+    final double keysB = keys(counts[BITS_B], m, d);
+    final double intersection = keysA + keysB - unionCount(counts, m, d);
+    return Math.min(Math.max(intersection, 0), Math.min(keysA, keysB));
+  }
+
+  /**
+   * Estimated n(A and B) / n(A or B), 0 if both are empty and NaN if the OR of the bitsets is full.
+   */
+  static double jaccard(long[] counts, long m, double d) {
+    if (isUnionFull(counts, m)) {
+      return Double.NaN;
+    }
+    final double union = unionCount(counts, m, d);
+    return union == 0 ? 0 : intersectionCount(counts, m, d) / union;
+  }
+
+  /**
+   * Estimated n(A and B) / n(A), 0 if A is empty and NaN if the OR of the bitsets is full.
+   */
+  static double containment(long[] counts, long m, double d) {
+    if (isUnionFull(counts, m)) {
+      return Double.NaN;
+    }
+    final double keysA = keys(counts[BITS_A], m, d);
+    return keysA == 0 ? 0 : intersectionCount(counts, m, d) / keysA;
+  }
+
+  static boolean isUnionFull(long[] counts, long m) {
+    return counts[BITS_A] + counts[BITS_B] - counts[BITS_AND] >= m;
+  }
+
+  private static double keys(long bits, long m, double d) {
+    return -m / d * Math.log1p(-(double) bits / m);
+  }
+
+  private static void checkLength(long[] a, long[] b) {
+    if (a.length != b.length) {
+      throw new IllegalArgumentException("BitArrays must be of equal length (" + a.length +
+          " != " + b.length + ")");
+    }
+  }
+}
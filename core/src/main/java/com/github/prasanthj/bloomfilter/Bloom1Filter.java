@@ -15,7 +15,13 @@
  */
 package com.github.prasanthj.bloomfilter;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -40,30 +46,88 @@ public class Bloom1Filter {
   private byte[] BYTE_ARRAY_4 = new byte[4];
   private byte[] BYTE_ARRAY_8 = new byte[8];
   private static final double DEFAULT_FPP = 0.05;
+  // header marker for serialized filters with non-default options. MSB is set so that it can be
+  // distinguished from expected entries (n) which is the first entry of default/legacy format.
+  private static final long OPTIONS_MARKER = 1L << 63;
   private BitSet bitSet;
   private long m;
   private int k;
   private double fpp;
   private long n;
+  // m and k are computed from the blocked filter fpp model instead of classic formulas. Bit
+  // positions are then derived from remixed hash so that they are independent as the model assumes.
+  private boolean blockedSizing;
+  // maps hash to word index, see RangeReduction
+  private RangeReduction reduction;
 
   public Bloom1Filter(long maxNumEntries) {
     this(maxNumEntries, DEFAULT_FPP);
   }
 
   public Bloom1Filter(long maxNumEntries, double fpp) {
+    this(maxNumEntries, fpp, false);
+  }
+
+  /**
+   * Creates bloom-1 filter.
+   *
+   * @param maxNumEntries - expected number of entries
+   * @param fpp           - false positive probability
+   * @param blockedSizing - if true, size the filter using {@link BloomFilterSizing} so that the
+   *                      actual fpp matches the configured fpp (uses more bits than the classic
+   *                      formulas). Such filters derive bit positions from remixed hash instead of
+   *                      double hashing
+   */
+  public Bloom1Filter(long maxNumEntries, double fpp, boolean blockedSizing) {
+    this(maxNumEntries, fpp, blockedSizing, RangeReduction.MODULO);
+  }
+
+  public Bloom1Filter(long maxNumEntries, double fpp, RangeReduction reduction) {
+    this(maxNumEntries, fpp, false, reduction);
+  }
+
+  /**
+   * Creates bloom-1 filter.
+   *
+   * @param maxNumEntries - expected number of entries
+   * @param fpp           - false positive probability
+   * @param blockedSizing - see {@link #Bloom1Filter(long, double, boolean)}
+   * @param reduction     - how hash is mapped to a word index. POW2 rounds up number of words to
+   *                      next power of two.
+   */
+  public Bloom1Filter(long maxNumEntries, double fpp, boolean blockedSizing,
+      RangeReduction reduction) {
+    this(maxNumEntries, fpp, blockedSizing, reduction, true);
+  }
+
+  // sizes the filter, allocating the bitset only if allocate is true
+  private Bloom1Filter(long maxNumEntries, double fpp, boolean blockedSizing,
+      RangeReduction reduction, boolean allocate) {
     assert maxNumEntries > 0 : "maxNumEntries should be > 0";
     assert fpp > 0.0 && fpp < 1.0 : "False positive percentage should be > 0.0 & < 1.0";
+    assert reduction != null : "reduction cannot be null";
     this.fpp = fpp;
     this.n = maxNumEntries;
-    this.m = optimalNumOfBits(maxNumEntries, fpp);
-    this.k = optimalNumOfHashFunctions(maxNumEntries, m);
-    this.bitSet = new BitSet(m);
+    this.blockedSizing = blockedSizing;
+    this.reduction = reduction;
+    BloomFilterSizing sizing = blockedSizing ? BloomFilterSizing.forBloom1() : null;
+    this.m = blockedSizing ? sizing.optimalNumOfBits(maxNumEntries, fpp) :
+        optimalNumOfBits(maxNumEntries, fpp);
+    if (reduction == RangeReduction.POW2) {
+      int numWords = (int) Math.ceil((double) m / Long.SIZE);
+      this.m = (long) RangeReduction.nextPowerOfTwo(numWords) * Long.SIZE;
+    }
+    this.k = blockedSizing ? sizing.optimalNumOfHashFunctions(maxNumEntries, m) :
+        optimalNumOfHashFunctions(maxNumEntries, m);
+    this.bitSet = allocate ? new BitSet(m) : null;
   }
 
   // deserialize bloomfilter. see serialize() for the format.
   public Bloom1Filter(List<Long> serializedBloom) {
-    this(serializedBloom.get(0), Double.longBitsToDouble(serializedBloom.get(1)));
-    List<Long> bitSet = serializedBloom.subList(2, serializedBloom.size());
+    this(serializedBloom.get(headerLength(serializedBloom) - 2),
+        Double.longBitsToDouble(serializedBloom.get(headerLength(serializedBloom) - 1)),
+        blockedSizingOf(options(serializedBloom)), reductionOf(options(serializedBloom)));
+    List<Long> bitSet = serializedBloom.subList(headerLength(serializedBloom), serializedBloom.size());
     long[] data = new long[bitSet.size()];
     for (int i = 0; i < bitSet.size(); i++) {
       data[i] = bitSet.get(i);
@@ -71,6 +135,34 @@ public class Bloom1Filter {
     this.bitSet = new BitSet(data);
   }
 
+  private static long options(List<Long> serializedBloom) {
+    long first = serializedBloom.get(0);
+    return (first & OPTIONS_MARKER) != 0 ? first : 0;
+  }
+
+  private static int headerLength(List<Long> serializedBloom) {
+    return options(serializedBloom) != 0 ? 3 : 2;
+  }
+
+  // options layout: byte 0 - blocked sizing, byte 1 - range reduction
+  private long options() {
+    return OPTIONS_MARKER | (blockedSizing ? 1L : 0L) | ((long) reduction.ordinal() << 8);
+  }
+
+  private static boolean blockedSizingOf(long options) {
+    return (options & 0xff) != 0;
+  }
+
+  private static RangeReduction reductionOf(long options) {
+    return RangeReduction.values()[(int) ((options >>> 8) & 0xff)];
+  }
+
+  private static boolean isValidOptions(long options) {
+    return options == 0 || ((options & OPTIONS_MARKER) != 0 &&
+        (options & ~OPTIONS_MARKER) >>> 16 == 0 && (options & 0xff) <= 1 &&
+        ((options >>> 8) & 0xff) < RangeReduction.values().length);
+  }
+
   static int optimalNumOfHashFunctions(long n, long m) {
     return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
   }
@@ -101,15 +193,42 @@ public class Bloom1Filter {
     int hash1 = (int) hash64;
     int hash2 = (int) (hash64 >>> 32);
 
-    int firstHash = hash1 + hash2;
+    int wordIdx = wordIndex(hash64, hash1 + hash2);
+    long word = bitSet.data[wordIdx];
+    bitSet.getData()[wordIdx] = word | mask(hash64);
+    if (bitSet.setBits >= 0) {
+      bitSet.count(word, bitSet.data[wordIdx]);
+    }
+  }
+
+  private int wordIndex(long hash64, int firstHash) {
+    if (reduction == RangeReduction.FAST_RANGE) {
+      return RangeReduction.fastRange(RangeReduction.blockHash(hash64), bitSet.data.length);
+    } else if (reduction == RangeReduction.POW2) {
+      return RangeReduction.blockHash(hash64) & (bitSet.data.length - 1);
+    }
     // hashcode should be positive, flip all the bits if it's negative
     if (firstHash < 0) {
       firstHash = ~firstHash;
     }
+    return firstHash % bitSet.data.length;
+  }
 
-    int wordIdx = firstHash % bitSet.data.length;
-    long word = bitSet.data[wordIdx];
-    long mask = (1L << Long.SIZE - 1);
+  private long mask(long hash64) {
+    long mask = 0;
+    if (blockedSizing) {
+      // MSBs of successive remixes of the hash locate the bits, refer BloomFilterSizing for details
+      long bitHash = hash64;
+      for (int i = 1; i <= k; i++) {
+        bitHash *= BloomFilterSizing.BIT_HASH_MULTIPLIER;
+        mask |= (1L << (int) (bitHash >>> (Long.SIZE - 6)));
+      }
+      return mask;
+    }
+
+    int hash1 = (int) hash64;
+    int hash2 = (int) (hash64 >>> 32);
+    mask = (1L << Long.SIZE - 1);
     for (int i = 2; i <= k; i++) {
       int combinedHash = hash1 + (i * hash2);
       // hashcode should be positive, flip all the bits if it's negative
@@ -119,7 +238,7 @@ public class Bloom1Filter {
       int pos = combinedHash & (Long.SIZE - 1);
       mask |= (1L << pos);
     }
-    bitSet.getData()[wordIdx] = word | mask;
+    return mask;
   }
 
   public void addString(String val) {
@@ -158,23 +277,9 @@ public class Bloom1Filter {
     int hash1 = (int) hash64;
     int hash2 = (int) (hash64 >>> 32);
 
-    int firstHash = hash1 + hash2;
-    // hashcode should be positive, flip all the bits if it's negative
-    if (firstHash < 0) {
-      firstHash = ~firstHash;
-    }
-    int wordIdx = firstHash % bitSet.data.length;
+    int wordIdx = wordIndex(hash64, hash1 + hash2);
     long word = bitSet.data[wordIdx];
-    long mask = (1L << Long.SIZE - 1);
-    for (int i = 2; i <= k; i++) {
-      int combinedHash = hash1 + (i * hash2);
-      // hashcode should be positive, flip all the bits if it's negative
-      if (combinedHash < 0) {
-        combinedHash = ~combinedHash;
-      }
-      int pos = combinedHash & (Long.SIZE - 1);
-      mask |= (1L << pos);
-    }
+    long mask = mask(hash64);
 
     return (word & mask) == mask;
   }
@@ -239,22 +344,41 @@ public class Bloom1Filter {
     return n;
   }
 
+  public boolean isBlockedSizing() {
+    return blockedSizing;
+  }
+
+  public RangeReduction getRangeReduction() {
+    return reduction;
+  }
+
   /**
    * First 2 entries are expected entries (n) and false positive percentage (fpp). fpp which is a
    * double is serialized as long. The entries following first 2 entries are the actual bit set.
+   * If the filter is created with blocked sizing or non-default range reduction, the options are
+   * serialized as the first entry with MSB set followed by the above format.
    *
    * @return bloom filter as list of long
    */
   public List<Long> serialize() {
     List<Long> serialized = new ArrayList<Long>();
-    serialized.add(n);
-    serialized.add(Double.doubleToLongBits(fpp));
+    for (long l : header()) {
+      serialized.add(l);
+    }
     for (long l : bitSet.getData()) {
       serialized.add(l);
     }
     return serialized;
   }
 
+  // leading entries of serialize() before the bit set
+  private long[] header() {
+    if (blockedSizing || reduction != RangeReduction.MODULO) {
+      return new long[]{options(), n, Double.doubleToLongBits(fpp)};
+    }
+    return new long[]{n, Double.doubleToLongBits(fpp)};
+  }
+
   /**
    * Check if the specified bloom filter is compatible with the current bloom filter.
    *
@@ -264,7 +388,9 @@ public class Bloom1Filter {
   public boolean isCompatible(Bloom1Filter that) {
     return this != that &&
         this.getBitSize() == that.getBitSize() &&
-        this.getNumHashFunctions() == that.getNumHashFunctions();
+        this.getNumHashFunctions() == that.getNumHashFunctions() &&
+        this.isBlockedSizing() == that.isBlockedSizing() &&
+        this.getRangeReduction() == that.getRangeReduction();
   }
 
   /**
@@ -277,12 +403,317 @@ public class Bloom1Filter {
     this.bitSet.putAll(that.bitSet);
   }
 
+  /**
+   * Merge all the specified bloom filters with current bloom filter. The bitset is split into word
+   * ranges merged in parallel by the common fork-join pool, all the filters are merged into a
+   * range in one pass. Refer {@link ParallelMerge} for details.
+   *
+   * @param filters - bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Collection<Bloom1Filter> filters) {
+    List<long[]> sources = new ArrayList<long[]>(filters.size());
+    for (Bloom1Filter that : filters) {
+      if (that == this) {
+        continue;
+      }
+      if (!isCompatible(that)) {
+        throw new IllegalArgumentException("Bloom filters are not compatible");
+      }
+      sources.add(that.bitSet.getData());
+    }
+    ParallelMerge.orAll(bitSet.getData(), sources);
+    bitSet.recountSetBits();
+  }
+
+  /**
+   * Merge all the serialized bloom filters (see serialize()) with current bloom filter. Filters are
+   * deserialized and merged in groups, so only a few of them are in memory at a time.
+   *
+   * @param serializedFilters - serialized bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Iterator<List<Long>> serializedFilters) {
+    List<Bloom1Filter> group = new ArrayList<Bloom1Filter>(ParallelMerge.GROUP_SIZE);
+    while (serializedFilters.hasNext()) {
+      group.add(new Bloom1Filter(serializedFilters.next()));
+      if (group.size() == ParallelMerge.GROUP_SIZE || !serializedFilters.hasNext()) {
+        mergeAll(group);
+        group.clear();
+      }
+    }
+  }
+
+  /**
+   * Merge the serialized bloom filter at the current position of the buffer with current bloom
+   * filter, without deserializing it. The buffer should contain the longs of serialize() in big
+   * endian order (as written by DataOutputStream.writeLong()). Position of the buffer is moved past
+   * the serialized bloom filter. Refer {@link SerializedMerge} for details.
+   *
+   * @param buffer - serialized bloom filter to merge
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   *                                  or the buffer is too short
+   */
+  public void mergeFrom(ByteBuffer buffer) {
+    try {
+      SerializedMerge.mergeFrom(header(), bitSet.getData(), buffer);
+    } finally {
+      bitSet.recountSetBits();
+    }
+  }
+
+  /**
+   * Merge the serialized bloom filter read from the stream with current bloom filter, without
+   * deserializing it. See mergeFrom(ByteBuffer) for the format. Exactly the serialized bloom filter
+   * is read from the stream.
+   *
+   * @param in - stream to read the serialized bloom filter from
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   * @throws IOException              if the stream cannot be read or ends early, in which case the
+   *                                  filter may be partially merged
+   */
+  public void mergeFrom(InputStream in) throws IOException {
+    try {
+      SerializedMerge.mergeFrom(header(), bitSet.getData(), in);
+    } finally {
+      bitSet.recountSetBits();
+    }
+  }
+
+  /**
+   * Starts maintaining the number of set bits on add and merge, so that getSetBitCount(),
+   * fillRatio() and estimatedCount() are O(1). Counting costs a popcount of the bits an add sets
+   * in the word. Changes made through the array returned by getBitSet() are not counted.
+   */
+  public void trackSetBits() {
+    bitSet.trackSetBits();
+  }
+
+  /**
+   * Returns the number of set bits, counted over the whole bitset unless set bits are tracked
+   * (see {@link #trackSetBits()}).
+   */
+  public long getSetBitCount() {
+    return bitSet.setBits >= 0 ? bitSet.setBits : bitSet.bitCount(-1L);
+  }
+
+  /**
+   * Returns the fraction of the bits of the bitset that are set. Every word of the bitset is used,
+   * so the bitset can have a few more bits than getBitSize().
+   */
+  public double fillRatio() {
+    return (double) getSetBitCount() / bitSet.bitSize();
+  }
+
+  /**
+   * Estimates the number of distinct keys added from the number of set bits, with the
+   * Swamidass-Baldi estimator n = -(m / d) ln(1 - X / m) where d is the expected number of
+   * distinct bits a key sets in its word. Without blocked sizing every key sets the MSB of its
+   * word, which then only tells whether the word is empty, so the MSBs are left out of X and m and
+   * d counts the remaining k - 1 bits that fall below the MSB. With k = 1 only the MSBs are set
+   * and they alone are counted.
+   *
+   * @return estimated number of keys, Long.MAX_VALUE if all the counted bits are set
+   */
+  public long estimatedCount() {
+    final long bits = bitSet.setBits >= 0 ? bitSet.countedBits(countedMask()) :
+        bitSet.bitCount(countedMask());
+    return Math.round(-countedBitSize() / distinctBitsPerKey() *
+        Math.log1p(-(double) bits / countedBitSize()));
+  }
+
+  // number of bits of the bitset under countedMask()
+  private long countedBitSize() {
+    return (long) bitSet.data.length * Long.bitCount(countedMask());
+  }
+
+  // bits of each word the estimates count, see estimatedCount()
+  private long countedMask() {
+    if (blockedSizing) {
+      return -1L;
+    }
+    return k == 1 ? Long.MIN_VALUE : Long.MAX_VALUE;
+  }
+
+  // expected number of distinct counted bits a key sets in its word. With blocked sizing the k bits
+  // are independent throws into the word, otherwise the MSB is fixed and k - 1 throws land
+  // anywhere in the word, of which those below the MSB are counted.
+  private double distinctBitsPerKey() {
+    if (blockedSizing) {
+      return distinctBits(Long.SIZE, k);
+    } else if (k == 1) {
+      return 1;
+    }
+    return distinctBits(Long.SIZE, k - 1) * (Long.SIZE - 1) / Long.SIZE;
+  }
+
+  // expected number of distinct bits set by throwing numThrows bits into a word of wordBits bits
+  private static double distinctBits(int wordBits, int numThrows) {
+    return -wordBits * Math.expm1(numThrows * Math.log1p(-1.0 / wordBits));
+  }
+
+  /**
+   * Estimates the false positive probability with estimatedCount() keys, from the Poisson
+   * mixture over word loads of {@link BloomFilterSizing#forBloom1()}. Words fill unevenly and the
+   * fuller words dominate, so fillRatio()^k would under estimate it. The model assumes independent
+   * bit positions, so it is optimistic for filters without blocked sizing.
+   *
+   * @return estimated false positive probability
+   */
+  public double estimatedFpp() {
+    final long count = estimatedCount();
+    if (count == Long.MAX_VALUE) {
+      return 1.0;
+    }
+    return BloomFilterSizing.forBloom1().falsePositiveProbability(count, bitSet.bitSize(), k);
+  }
+
+  /**
+   * Returns the number of bits set in both this and the specified filter, without creating the
+   * intersection. Refer {@link BitSetOverlap} for details.
+   *
+   * @param that - compatible bloom filter
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long andBitCount(Bloom1Filter that) {
+    checkComparable(that);
+    return BitSetOverlap.andBitCount(bitSet.data, that.bitSet.data);
+  }
+
+  /**
+   * Returns the number of bits set in this or the specified filter, without merging them.
+   *
+   * @param that - compatible bloom filter
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long orBitCount(Bloom1Filter that) {
+    checkComparable(that);
+    return BitSetOverlap.orBitCount(bitSet.data, that.bitSet.data);
+  }
+
+  /**
+   * Estimates the number of distinct keys added to this or the specified filter, the
+   * estimatedCount() of the two filters merged. Like estimatedCount(), the MSBs are left out of
+   * the counts without blocked sizing.
+   *
+   * @param that - compatible bloom filter
+   * @return estimated number of keys, Long.MAX_VALUE if the merged filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long estimatedUnionCount(Bloom1Filter that) {
+    return Math.round(BitSetOverlap.unionCount(overlapBitCounts(that), countedBitSize(),
+        distinctBitsPerKey()));
+  }
+
+  /**
+   * Estimates the number of distinct keys added to both this and the specified filter, as
+   * estimatedCount() of each minus the estimated union. The bitsets are read once, or only their
+   * AND is counted if both filters track their set bits (see {@link #trackSetBits()}).
+   *
+   * @param that - compatible bloom filter
+   * @return estimated number of keys in both filters, -1 if the merged filter would be full and
+   * the intersection cannot be estimated
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long estimatedIntersectionCount(Bloom1Filter that) {
+    final double intersection = BitSetOverlap.intersectionCount(overlapBitCounts(that),
+        countedBitSize(), distinctBitsPerKey());
+    return Double.isNaN(intersection) ? -1 : Math.round(intersection);
+  }
+
+  /**
+   * Estimates the Jaccard similarity |A and B| / |A or B| of the keys added to this (A) and the
+   * specified filter (B).
+   *
+   * @param that - compatible bloom filter
+   * @return estimated similarity in [0, 1], 0 if both filters are empty and NaN if the merged
+   * filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public double estimatedJaccard(Bloom1Filter that) {
+    return BitSetOverlap.jaccard(overlapBitCounts(that), countedBitSize(), distinctBitsPerKey());
+  }
+
+  /**
+   * Estimates the fraction |A and B| / |A| of the keys added to this filter (A) that were also
+   * added to the specified filter (B).
+   *
+   * @param that - compatible bloom filter
+   * @return estimated containment in [0, 1], 0 if this filter is empty and NaN if the merged
+   * filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public double estimatedContainment(Bloom1Filter that) {
+    return BitSetOverlap.containment(overlapBitCounts(that), countedBitSize(),
+        distinctBitsPerKey());
+  }
+
+  private long[] overlapBitCounts(Bloom1Filter that) {
+    checkComparable(that);
+    if (bitSet.setBits >= 0 && that.bitSet.setBits >= 0) {
+      return BitSetOverlap.bitCounts(bitSet.data, that.bitSet.data, countedMask(),
+          bitSet.countedBits(countedMask()), that.bitSet.countedBits(countedMask()));
+    }
+    return BitSetOverlap.bitCounts(bitSet.data, that.bitSet.data, countedMask());
+  }
+
+  // a filter can be compared with itself, unlike merged
+  private void checkComparable(Bloom1Filter that) {
+    if (that != this && !isCompatible(that)) {
+      throw new IllegalArgumentException("Bloom filters are not compatible");
+    }
+  }
+
+  /**
+   * Writes the filter in the versioned and checksummed container format, refer
+   * {@link FilterContainer} for the layout.
+   *
+   * @param out - stream to write to
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    FilterContainer.write(out, FilterContainer.Variant.BLOOM_1, FilterContainer.HASH_MURMUR3,
+        Murmur3.DEFAULT_SEED, k, m, n, fpp, options(), FilterContainer.UNKNOWN_COUNT,
+        bitSet.getData());
+  }
+
+  /**
+   * Reads a filter written by writeTo(). The header is validated (magic, version, variant, hash
+   * function) and the checksum is verified while the bit set is read.
+   *
+   * @param in - stream to read from
+   * @return bloom filter
+   * @throws IOException if the container is not a Bloom-1 filter, is corrupt or truncated
+   */
+  public static Bloom1Filter readFrom(InputStream in) throws IOException {
+    FilterContainer.Header header = FilterContainer.readHeader(in, FilterContainer.Variant.BLOOM_1,
+        FilterContainer.HASH_MURMUR3, Murmur3.DEFAULT_SEED);
+    header.checkOptions(isValidOptions(header.options));
+    Bloom1Filter bf;
+    try {
+      bf = new Bloom1Filter(header.n, header.fpp, blockedSizingOf(header.options),
+          reductionOf(header.options), false);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid container header", e);
+    }
+    header.checkLayout(bf.k, bf.m);
+    bf.bitSet = new BitSet(bf.m);
+    header.readData(in, bf.bitSet.getData());
+    return bf;
+  }
+
+  public long[] getBitSet() {
+    return bitSet.getData();
+  }
+
   /**
    * Bare metal bitset implementation. For performance reasons, this implementation does not check
    * for index bounds nor expand the bitset size if the specified index is greater than the size.
    */
   public static class BitSet {
     final long[] data;
+    // number of set bits and of set MSBs, -1 if not tracked
+    long setBits = -1;
+    long setHighBits = -1;
 
     public BitSet(long bits) {
       this(new long[(int) Math.ceil((double) bits / (double) Long.SIZE)]);
@@ -307,6 +738,54 @@ public class Bloom1Filter {
       data[(int) (index >>> 6)] |= (1L << index);
     }
 
+    // counts the bits set by changing a word from oldWord to newWord, set bits should be tracked
+    void count(long oldWord, long newWord) {
+      final long added = newWord & ~oldWord;
+      setBits += Long.bitCount(added);
+      setHighBits += added >>> (Long.SIZE - 1);
+    }
+
+    void trackSetBits() {
+      if (setBits < 0) {
+        countSetBits();
+      }
+    }
+
+    // recounts the set bits after a change to the whole bitset, if they are tracked
+    void recountSetBits() {
+      if (setBits >= 0) {
+        countSetBits();
+      }
+    }
+
+    private void countSetBits() {
+      long bits = 0;
+      long highBits = 0;
+      for (long word : data) {
+        bits += Long.bitCount(word);
+        highBits += word >>> (Long.SIZE - 1);
+      }
+      setBits = bits;
+      setHighBits = highBits;
+    }
+
+    // set bits of the words masked with the mask
+    long bitCount(long mask) {
+      long bits = 0;
+      for (long word : data) {
+        bits += Long.bitCount(word & mask);
+      }
+      return bits;
+    }
+
+    // tracked set bits under the mask, which is all bits, all but the MSB or only the MSB
+    long countedBits(long mask) {
+      if (mask == -1L) {
+        return setBits;
+      }
+      return mask == Long.MIN_VALUE ? setHighBits : setBits - setHighBits;
+    }
+
     /**
      * Returns true if the bit is set in the specified index.
      *
@@ -337,6 +816,7 @@ public class Bloom1Filter {
       for (int i = 0; i < data.length; i++) {
         data[i] |= array.data[i];
       }
+      recountSetBits();
     }
   }
 }
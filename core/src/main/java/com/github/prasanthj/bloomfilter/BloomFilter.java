@@ -15,7 +15,14 @@
  */
 package com.github.prasanthj.bloomfilter;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -38,30 +45,66 @@ import java.util.List;
  */
 public class BloomFilter {
   public static final double DEFAULT_FPP = 0.05;
+  // header marker for serialized filters with non-default options. MSB is set so that it can be
+  // distinguished from expected entries (n) which is the first entry of default/legacy format.
+  private static final long OPTIONS_MARKER = 1L << 63;
+  // expected entries tried on each side of n / factor for the folded filter, see fold()
+  private static final int FOLD_SEARCH = 64;
   private BitSet bitSet;
   private int m;
   private int k;
   private double fpp;
   private long n;
+  // maps combined hash to bit position, see RangeReduction
+  private RangeReduction reduction;
 
   public BloomFilter(long maxNumEntries) {
     this(maxNumEntries, DEFAULT_FPP);
   }
 
   public BloomFilter(long maxNumEntries, double fpp) {
+    this(maxNumEntries, fpp, RangeReduction.MODULO);
+  }
+
+  /**
+   * Creates bloom filter.
+   *
+   * @param maxNumEntries - expected number of entries
+   * @param fpp           - false positive probability
+   * @param reduction     - how hash is mapped to a bit position. POW2 rounds up number of bits to
+   *                      next power of two.
+   * @throws IllegalArgumentException if the reduction is POW2 and more than 2^30 bits are needed
+   */
+  public BloomFilter(long maxNumEntries, double fpp, RangeReduction reduction) {
+    this(maxNumEntries, fpp, reduction, true);
+  }
+
+  // sizes the filter, allocating the bitset only if allocate is true
+  private BloomFilter(long maxNumEntries, double fpp, RangeReduction reduction, boolean allocate) {
     assert maxNumEntries > 0 : "maxNumEntries should be > 0";
     assert fpp > 0.0 && fpp < 1.0 : "False positive percentage should be > 0.0 & < 1.0";
+    assert reduction != null : "reduction cannot be null";
     this.fpp = fpp;
     this.n = maxNumEntries;
+    this.reduction = reduction;
     this.m = optimalNumOfBits(maxNumEntries, fpp);
+    if (reduction == RangeReduction.POW2) {
+      if (m > (1 << 30)) {
+        throw new IllegalArgumentException("POW2 range reduction supports up to 2^30 bits, " + m +
+            " bits are needed for " + maxNumEntries + " entries with fpp " + fpp);
+      }
+      this.m = RangeReduction.nextPowerOfTwo(m);
+    }
     this.k = optimalNumOfHashFunctions(maxNumEntries, m);
-    this.bitSet = new BitSet(m);
+    this.bitSet = allocate ? new BitSet(m) : null;
   }
 
   // deserialize bloomfilter. see serialize() for the format.
   public BloomFilter(List<Long> serializedBloom) {
-    this(serializedBloom.get(0), Double.longBitsToDouble(serializedBloom.get(1)));
-    List<Long> bitSet = serializedBloom.subList(2, serializedBloom.size());
+    this(serializedBloom.get(headerLength(serializedBloom) - 2),
+        Double.longBitsToDouble(serializedBloom.get(headerLength(serializedBloom) - 1)),
+        reductionOf(options(serializedBloom)));
+    List<Long> bitSet = serializedBloom.subList(headerLength(serializedBloom), serializedBloom.size());
     long[] data = new long[bitSet.size()];
     for (int i = 0; i < bitSet.size(); i++) {
       data[i] = bitSet.get(i);
@@ -69,6 +112,29 @@ public class BloomFilter {
     this.bitSet = new BitSet(data);
   }
 
+  private static long options(List<Long> serializedBloom) {
+    long first = serializedBloom.get(0);
+    return (first & OPTIONS_MARKER) != 0 ? first : 0;
+  }
+
+  private static int headerLength(List<Long> serializedBloom) {
+    return options(serializedBloom) != 0 ? 3 : 2;
+  }
+
+  // options layout: byte 0 - range reduction
+  private long options() {
+    return OPTIONS_MARKER | reduction.ordinal();
+  }
+
+  private static RangeReduction reductionOf(long options) {
+    return RangeReduction.values()[(int) (options & 0xff)];
+  }
+
+  private static boolean isValidOptions(long options) {
+    return options == 0 || ((options & OPTIONS_MARKER) != 0 &&
+        (options & ~OPTIONS_MARKER) < RangeReduction.values().length);
+  }
+
   static int optimalNumOfHashFunctions(long n, long m) {
     return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
   }
@@ -99,15 +165,30 @@ public class BloomFilter {
     int hash1 = (int) hash64;
     int hash2 = (int) (hash64 >>> 32);
 
+    if (bitSet.setBits >= 0) {
+      for (int i = 1; i <= k; i++) {
+        int combinedHash = hash1 + (i * hash2);
+        bitSet.setAndCount(position(combinedHash));
+      }
+      return;
+    }
     for (int i = 1; i <= k; i++) {
       int combinedHash = hash1 + (i * hash2);
-      // hashcode should be positive, flip all the bits if it's negative
-      if (combinedHash < 0) {
-        combinedHash = ~combinedHash;
-      }
-      int pos = combinedHash % m;
-      bitSet.set(pos);
+      bitSet.set(position(combinedHash));
+    }
+  }
+
+  private int position(int combinedHash) {
+    if (reduction == RangeReduction.FAST_RANGE) {
+      return RangeReduction.fastRange(combinedHash, m);
+    } else if (reduction == RangeReduction.POW2) {
+      return combinedHash & (m - 1);
+    }
+    // hashcode should be positive, flip all the bits if it's negative
+    if (combinedHash < 0) {
+      combinedHash = ~combinedHash;
     }
+    return combinedHash % m;
   }
 
   public void addString(String val) {
@@ -148,12 +229,7 @@ public class BloomFilter {
 
     for (int i = 1; i <= k; i++) {
       int combinedHash = hash1 + (i * hash2);
-      // hashcode should be positive, flip all the bits if it's negative
-      if (combinedHash < 0) {
-        combinedHash = ~combinedHash;
-      }
-      int pos = combinedHash % m;
-      if (!bitSet.get(pos)) {
+      if (!bitSet.get(position(combinedHash))) {
         return false;
       }
     }
@@ -218,22 +294,41 @@ public class BloomFilter {
     return n;
   }
 
+  public RangeReduction getRangeReduction() {
+    return reduction;
+  }
+
+  public long[] getBitSet() {
+    return bitSet.getData();
+  }
+
   /**
    * First 2 entries are expected entries (n) and false positive percentage (fpp). fpp which is a
    * double is serialized as long. The entries following first 2 entries are the actual bit set.
+   * If the filter uses non-default range reduction, the options are serialized as the first entry
+   * with MSB set followed by the above format.
    *
    * @return bloom filter as list of long
    */
   public List<Long> serialize() {
     List<Long> serialized = new ArrayList<Long>();
-    serialized.add(n);
-    serialized.add(Double.doubleToLongBits(fpp));
+    for (long l : header()) {
+      serialized.add(l);
+    }
     for (long l : bitSet.getData()) {
       serialized.add(l);
     }
     return serialized;
   }
 
+  // leading entries of serialize() before the bit set
+  private long[] header() {
+    if (reduction != RangeReduction.MODULO) {
+      return new long[]{options(), n, Double.doubleToLongBits(fpp)};
+    }
+    return new long[]{n, Double.doubleToLongBits(fpp)};
+  }
+
   /**
    * Check if the specified bloom filter is compatible with the current bloom filter.
    *
@@ -243,7 +338,8 @@ public class BloomFilter {
   public boolean isCompatible(BloomFilter that) {
     return this != that &&
         this.getBitSize() == that.getBitSize() &&
-        this.getNumHashFunctions() == that.getNumHashFunctions();
+        this.getNumHashFunctions() == that.getNumHashFunctions() &&
+        this.getRangeReduction() == that.getRangeReduction();
   }
 
   /**
@@ -256,12 +352,348 @@ public class BloomFilter {
     this.bitSet.putAll(that.bitSet);
   }
 
+  /**
+   * Merge all the specified bloom filters with current bloom filter. The bitset is split into word
+   * ranges merged in parallel by the common fork-join pool, all the filters are merged into a
+   * range in one pass. Refer {@link ParallelMerge} for details.
+   *
+   * @param filters - bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Collection<BloomFilter> filters) {
+    List<long[]> sources = new ArrayList<long[]>(filters.size());
+    for (BloomFilter that : filters) {
+      if (that == this) {
+        continue;
+      }
+      if (!isCompatible(that)) {
+        throw new IllegalArgumentException("Bloom filters are not compatible");
+      }
+      sources.add(that.bitSet.getData());
+    }
+    ParallelMerge.orAll(bitSet.getData(), sources);
+    bitSet.recountSetBits();
+  }
+
+  /**
+   * Merge all the serialized bloom filters (see serialize()) with current bloom filter. Filters are
+   * deserialized and merged in groups, so only a few of them are in memory at a time.
+   *
+   * @param serializedFilters - serialized bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Iterator<List<Long>> serializedFilters) {
+    List<BloomFilter> group = new ArrayList<BloomFilter>(ParallelMerge.GROUP_SIZE);
+    while (serializedFilters.hasNext()) {
+      group.add(new BloomFilter(serializedFilters.next()));
+      if (group.size() == ParallelMerge.GROUP_SIZE || !serializedFilters.hasNext()) {
+        mergeAll(group);
+        group.clear();
+      }
+    }
+  }
+
+  /**
+   * Merge the serialized bloom filter at the current position of the buffer with current bloom
+   * filter, without deserializing it. The buffer should contain the longs of serialize() in big
+   * endian order (as written by DataOutputStream.writeLong()). Position of the buffer is moved past
+   * the serialized bloom filter. Refer {@link SerializedMerge} for details.
+   *
+   * @param buffer - serialized bloom filter to merge
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   *                                  or the buffer is too short
+   */
+  public void mergeFrom(ByteBuffer buffer) {
+    try {
+      SerializedMerge.mergeFrom(header(), bitSet.getData(), buffer);
+    } finally {
+      bitSet.recountSetBits();
+    }
+  }
+
+  /**
+   * Merge the serialized bloom filter read from the stream with current bloom filter, without
+   * deserializing it. See mergeFrom(ByteBuffer) for the format. Exactly the serialized bloom filter
+   * is read from the stream.
+   *
+   * @param in - stream to read the serialized bloom filter from
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   * @throws IOException              if the stream cannot be read or ends early, in which case the
+   *                                  filter may be partially merged
+   */
+  public void mergeFrom(InputStream in) throws IOException {
+    try {
+      SerializedMerge.mergeFrom(header(), bitSet.getData(), in);
+    } finally {
+      bitSet.recountSetBits();
+    }
+  }
+
+  /**
+   * Starts maintaining the number of set bits on add and merge, so that getSetBitCount(),
+   * fillRatio(), estimatedCount() and estimatedFpp() are O(1). Counting costs a check of the old
+   * bit for every bit set. Changes made through the array returned by getBitSet() are not counted.
+   */
+  public void trackSetBits() {
+    bitSet.trackSetBits();
+  }
+
+  /**
+   * Returns the number of set bits, counted over the whole bitset unless set bits are tracked
+   * (see {@link #trackSetBits()}).
+   */
+  public long getSetBitCount() {
+    return bitSet.setBits >= 0 ? bitSet.setBits : bitSet.bitCount();
+  }
+
+  /**
+   * Returns the fraction of the bits that are set.
+   */
+  public double fillRatio() {
+    return (double) getSetBitCount() / m;
+  }
+
+  /**
+   * Estimates the number of distinct keys added from the number of set bits X, with the
+   * Swamidass-Baldi estimator n = -(m / k) ln(1 - X / m).
+   *
+   * @return estimated number of keys, Long.MAX_VALUE if all the bits are set
+   */
+  public long estimatedCount() {
+    return Math.round(-(double) m / k * Math.log1p(-fillRatio()));
+  }
+
+  /**
+   * Estimates the false positive probability as fillRatio()^k, the probability that the k bits
+   * of a key that was not added are all set.
+   */
+  public double estimatedFpp() {
+    return Math.pow(fillRatio(), k);
+  }
+
+  /**
+   * Returns the number of bits set in both this and the specified filter, without creating the
+   * intersection. Refer {@link BitSetOverlap} for details.
+   *
+   * @param that - compatible bloom filter
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long andBitCount(BloomFilter that) {
+    checkComparable(that);
+    return BitSetOverlap.andBitCount(bitSet.data, that.bitSet.data);
+  }
+
+  /**
+   * Returns the number of bits set in this or the specified filter, without merging them.
+   *
+   * @param that - compatible bloom filter
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long orBitCount(BloomFilter that) {
+    checkComparable(that);
+    return BitSetOverlap.orBitCount(bitSet.data, that.bitSet.data);
+  }
+
+  /**
+   * Estimates the number of distinct keys added to this or the specified filter, the
+   * estimatedCount() of the two filters merged.
+   *
+   * @param that - compatible bloom filter
+   * @return estimated number of keys, Long.MAX_VALUE if the merged filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long estimatedUnionCount(BloomFilter that) {
+    return Math.round(BitSetOverlap.unionCount(overlapBitCounts(that), m, k));
+  }
+
+  /**
+   * Estimates the number of distinct keys added to both this and the specified filter, as
+   * estimatedCount() of each minus the estimated union. The bitsets are read once, or only their
+   * AND is counted if both filters track their set bits (see {@link #trackSetBits()}).
+   *
+   * @param that - compatible bloom filter
+   * @return estimated number of keys in both filters, -1 if the merged filter would be full and
+   * the intersection cannot be estimated
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long estimatedIntersectionCount(BloomFilter that) {
+    final double intersection = BitSetOverlap.intersectionCount(overlapBitCounts(that), m, k);
+    return Double.isNaN(intersection) ? -1 : Math.round(intersection);
+  }
+
+  /**
+   * Estimates the Jaccard similarity |A and B| / |A or B| of the keys added to this (A) and the
+   * specified filter (B).
+   *
+   * @param that - compatible bloom filter
+   * @return estimated similarity in [0, 1], 0 if both filters are empty and NaN if the merged
+   * filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public double estimatedJaccard(BloomFilter that) {
+    return BitSetOverlap.jaccard(overlapBitCounts(that), m, k);
+  }
+
+  /**
+   * Estimates the fraction |A and B| / |A| of the keys added to this filter (A) that were also
+   * added to the specified filter (B).
+   *
+   * @param that - compatible bloom filter
+   * @return estimated containment in [0, 1], 0 if this filter is empty and NaN if the merged
+   * filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public double estimatedContainment(BloomFilter that) {
+    return BitSetOverlap.containment(overlapBitCounts(that), m, k);
+  }
+
+  private long[] overlapBitCounts(BloomFilter that) {
+    checkComparable(that);
+    if (bitSet.setBits >= 0 && that.bitSet.setBits >= 0) {
+      return BitSetOverlap.bitCounts(bitSet.data, that.bitSet.data, bitSet.setBits,
+          that.bitSet.setBits);
+    }
+    return BitSetOverlap.bitCounts(bitSet.data, that.bitSet.data);
+  }
+
+  // a filter can be compared with itself, unlike merged
+  private void checkComparable(BloomFilter that) {
+    if (that != this && !isCompatible(that)) {
+      throw new IllegalArgumentException("Bloom filters are not compatible");
+    }
+  }
+
+  /**
+   * Returns a copy of the filter folded to 1/factor of its size, for filters sized for many more
+   * entries than were added. With POW2 range reduction a bit position is the low bits of the hash,
+   * so bit i of the folded filter is the OR of bits i, i + m', i + 2m', ... of this filter (m' bits
+   * after folding) and every key added to this filter tests true in the folded one. The folded
+   * filter has the same k and fpp and n / factor expected entries (adjusted if the sizing rounds
+   * differently), so it serializes and merges like any filter of that size. This filter is not
+   * changed.
+   *
+   * @param factor - power of two, the folded filter has at least 64 bits
+   * @return folded filter
+   * @throws IllegalArgumentException if the filter does not use POW2 range reduction or cannot be
+   *                                  folded by factor
+   */
+  public BloomFilter fold(int factor) {
+    checkFoldable();
+    if (factor < 1 || Integer.bitCount(factor) != 1 || m / factor < Long.SIZE || n / factor < 1) {
+      throw new IllegalArgumentException("Fold factor " + factor + " should be a power of two up" +
+          " to " + Math.min(m / Long.SIZE, n) + " for this filter");
+    }
+    BloomFilter folded = foldedFilter(factor);
+    long[] data = bitSet.getData();
+    long[] foldedData = folded.bitSet.getData();
+    for (int from = 0; from < data.length; from += foldedData.length) {
+      for (int i = 0; i < foldedData.length; i++) {
+        foldedData[i] |= data[from + i];
+      }
+    }
+    return folded;
+  }
+
+  /**
+   * Returns the largest fold factor for which the estimated false positive probability of the
+   * folded filter, (set bits / m')^k, is at most fpp. 1 if the filter cannot be folded that far
+   * even once. Folding is simulated by halving the bitset until the estimate exceeds fpp.
+   *
+   * @param fpp - target false positive probability of the folded filter
+   * @return factor for fold(int)
+   * @throws IllegalArgumentException if the filter does not use POW2 range reduction
+   */
+  public int foldFactor(double fpp) {
+    assert fpp > 0.0 && fpp < 1.0 : "False positive percentage should be > 0.0 & < 1.0";
+    checkFoldable();
+    long[] words = bitSet.getData();
+    int factor = 1;
+    while (m / (factor * 2) >= Long.SIZE && n / (factor * 2L) >= 1) {
+      long[] half = Arrays.copyOf(words, words.length / 2);
+      long bits = 0;
+      for (int i = 0; i < half.length; i++) {
+        half[i] |= words[half.length + i];
+        bits += Long.bitCount(half[i]);
+      }
+      if (Math.pow((double) bits / (half.length * Long.SIZE), k) > fpp) {
+        break;
+      }
+      words = half;
+      factor *= 2;
+    }
+    return factor;
+  }
+
+  private void checkFoldable() {
+    if (reduction != RangeReduction.POW2) {
+      throw new IllegalArgumentException("Only filters with POW2 range reduction can be folded");
+    }
+  }
+
+  // empty filter with 1/factor of the bits and the same k. Expected entries are n / factor, or the
+  // nearest value that is sized to the same bits and k.
+  private BloomFilter foldedFilter(int factor) {
+    int foldedBits = m / factor;
+    long expected = n / factor;
+    for (int i = 0; i <= 2 * FOLD_SEARCH; i++) {
+      // n / factor, n / factor + 1, n / factor - 1, ...
+      long candidate = expected + ((i & 1) == 0 ? i / 2 : -(i + 1) / 2);
+      if (candidate < 1 || optimalNumOfBits(candidate, fpp) < 1) {
+        continue;
+      }
+      int bits = RangeReduction.nextPowerOfTwo(optimalNumOfBits(candidate, fpp));
+      if (bits == foldedBits && optimalNumOfHashFunctions(candidate, bits) == k) {
+        return new BloomFilter(candidate, fpp, reduction);
+      }
+    }
+    throw new IllegalArgumentException("No filter of " + foldedBits + " bits with " + k +
+        " hash functions near " + expected + " expected entries, cannot fold by " + factor);
+  }
+
+  /**
+   * Writes the filter in the versioned and checksummed container format, refer
+   * {@link FilterContainer} for the layout.
+   *
+   * @param out - stream to write to
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    FilterContainer.write(out, FilterContainer.Variant.BLOOM, FilterContainer.HASH_MURMUR3,
+        Murmur3.DEFAULT_SEED, k, m, n, fpp, options(), FilterContainer.UNKNOWN_COUNT,
+        bitSet.getData());
+  }
+
+  /**
+   * Reads a filter written by writeTo(). The header is validated (magic, version, variant, hash
+   * function) and the checksum is verified while the bit set is read.
+   *
+   * @param in - stream to read from
+   * @return bloom filter
+   * @throws IOException if the container is not a bloom filter, is corrupt or truncated
+   */
+  public static BloomFilter readFrom(InputStream in) throws IOException {
+    FilterContainer.Header header = FilterContainer.readHeader(in, FilterContainer.Variant.BLOOM,
+        FilterContainer.HASH_MURMUR3, Murmur3.DEFAULT_SEED);
+    header.checkOptions(isValidOptions(header.options));
+    BloomFilter bf;
+    try {
+      bf = new BloomFilter(header.n, header.fpp, reductionOf(header.options), false);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid container header", e);
+    }
+    header.checkLayout(bf.k, bf.m);
+    bf.bitSet = new BitSet(bf.m);
+    header.readData(in, bf.bitSet.getData());
+    return bf;
+  }
+
   /**
    * Bare metal bitset implementation. For performance reasons, this implementation does not check
    * for index bounds nor expand the bitset size if the specified index is greater than the size.
    */
   public static class BitSet {
     final long[] data;
+    // number of set bits, -1 if not tracked
+    long setBits = -1;
 
     public BitSet(long bits) {
       this(new long[(int) Math.ceil((double) bits / (double) Long.SIZE)]);
@@ -286,6 +718,35 @@ public class BloomFilter {
       data[(int) (index >>> 6)] |= (1L << index);
     }
 
+    // sets the bit and counts it if it was not set, set bits should be tracked
+    void setAndCount(long index) {
+      final int i = (int) (index >>> 6);
+      final long word = data[i];
+      data[i] = word | (1L << index);
+      setBits += ~word >>> index & 1;
+    }
+
+    void trackSetBits() {
+      if (setBits < 0) {
+        setBits = bitCount();
+      }
+    }
+
+    // recounts the set bits after a change to the whole bitset, if they are tracked
+    void recountSetBits() {
+      if (setBits >= 0) {
+        setBits = bitCount();
+      }
+    }
+
+    long bitCount() {
+      long bits = 0;
+      for (long word : data) {
+        bits += Long.bitCount(word);
+      }
+      return bits;
+    }
+
     /**
      * Returns true if the bit is set in the specified index.
      *
@@ -316,6 +777,7 @@ public class BloomFilter {
       for (int i = 0; i < data.length; i++) {
         data[i] |= array.data[i];
       }
+      recountSetBits();
     }
   }
 }
@@ -0,0 +1,271 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+/**
+ * Number of bits (m) and hash functions (k) for blocked bloom filters.
+ * <p/>
+ * Classic m and k formulas assume the k bits of a key are spread over the whole bitset. Blocked
+ * layouts ({@link BloomKFilter}, {@link Bloom1Filter}, {@link BloomGFilter}) put all bits of a key
+ * in one block, and blocks fill unevenly: some blocks get many more keys than the average, and
+ * their contribution to the false positive probability outweighs the less loaded blocks. The
+ * classic formulas hence under estimate m and the actual fpp is noticeably higher than the
+ * configured fpp.
+ * <p/>
+ * This class models a block as blockWords words of wordBits bits. Every key picks
+ * min(k, wordsPerKey) distinct words of its block and spreads k bits evenly over them. The fpp is
+ * a Poisson mixture over block loads: number of keys hitting a block is Poisson distributed with
+ * mean n / numBlocks, each word of a block with J keys is hit by Binomial(J, wordsPerKey /
+ * blockWords) keys, and for a word hit by h keys the exact distribution of number of set bits
+ * (occupancy distribution) is used instead of the expected fill ratio. m is the smallest number of
+ * blocks for which the fpp with the best k is within the configured fpp.
+ * <p/>
+ * The model assumes the bit positions of a key are independent. Bit positions derived from
+ * Kirsch et.al. double hashing are not: within a block they form an arithmetic progression which
+ * degenerates to few distinct bits for some keys, and its start is correlated with the block index.
+ * Both make the actual fpp of small blocks much higher than the model (up to 7x for
+ * Bloom1Filter at 0.1% fpp). Filters that use this sizing hence derive the bit positions from
+ * MSBs of successive remixes of the 64-bit hash (see {@link #BIT_HASH_MULTIPLIER}).
+ * <p/>
+ * Words of a key are consecutive within the block, so their loads are positively correlated. The
+ * model ignores this and is slightly optimistic when a key uses few of many words (measured fpp is
+ * within 10% for 2 of 8 words, up to 30% higher for 10 of 32 words at 0.1% fpp).
+ *
+ * @see <a href="https://www.cise.ufl.edu/~tali/1569342377.pdf">One Memory Access Bloom Filters and Their Generalization</a>
+ * @see <a href="http://algo2.iti.kit.edu/documents/cacheefficientbloomfilters-jea.pdf">Cache-, Hash- and Space-Efficient Bloom Filters</a>
+ */
+public class BloomFilterSizing {
+  // golden ratio multiplier. bit position of i-th hash function within the block/word is the MSBs
+  // of hash64 * BIT_HASH_MULTIPLIER^i
+  static final long BIT_HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+  private static final int MAX_HASH_FUNCTIONS = 64;
+  // probability mass beyond these many standard deviations is ignored
+  private static final int TAIL_STDDEVS = 12;
+  private static final double NEGLIGIBLE_PROBABILITY = 1e-30;
+  private final int blockWords;
+  private final int wordBits;
+  private final int wordsPerKey;
+
+  BloomFilterSizing(int blockWords, int wordBits, int wordsPerKey) {
+    assert blockWords > 0 && wordBits > 0 : "blockWords and wordBits should be > 0";
+    assert wordsPerKey > 0 && wordsPerKey <= blockWords : "wordsPerKey should be > 0 & <= " + blockWords;
+    this.blockWords = blockWords;
+    this.wordBits = wordBits;
+    this.wordsPerKey = wordsPerKey;
+  }
+
+  /**
+   * Sizing for {@link BloomKFilter} with the specified block geometry.
+   */
+  public static BloomFilterSizing forBloomK(int blockSize, int wordBits,
+      BloomKFilter.BitPlacement bitPlacement) {
+    if (bitPlacement == BloomKFilter.BitPlacement.SPLIT) {
+      // consecutive words of the block, bits are spread evenly
+      int wordsPerBlock = blockSize * Long.SIZE / wordBits;
+      return new BloomFilterSizing(wordsPerBlock, wordBits, wordsPerBlock);
+    }
+    // every bit can land anywhere in the block, so block is one big word
+    return new BloomFilterSizing(1, blockSize * Long.SIZE, 1);
+  }
+
+  /**
+   * Sizing for {@link Bloom1Filter}. Block is a single long.
+   */
+  public static BloomFilterSizing forBloom1() {
+    return new BloomFilterSizing(1, Long.SIZE, 1);
+  }
+
+  /**
+   * Sizing for {@link BloomGFilter} with g words per key within a cache line.
+   */
+  public static BloomFilterSizing forBloomG(int g) {
+    return new BloomFilterSizing(8, Long.SIZE, g);
+  }
+
+  public long getBlockBits() {
+    return (long) blockWords * wordBits;
+  }
+
+  /**
+   * False positive probability with n entries, m bits and k hash functions.
+   */
+  public double falsePositiveProbability(long n, long m, int k) {
+    return falsePositiveProbability(n / ((double) m / getBlockBits()), k);
+  }
+
+  /**
+   * False positive probability when each block gets keysPerBlock keys on average.
+   */
+  double falsePositiveProbability(double keysPerBlock, int k) {
+    final double lambda = keysPerBlock;
+    if (lambda == 0) {
+      return 0.0;
+    }
+    if (lambda * k > 8 * getBlockBits()) {
+      // blocks are saturated
+      return 1.0;
+    }
+    final int g = Math.min(k, wordsPerKey);
+    // words of a key get either floor(k/g) or ceil(k/g) bits
+    final double bitsPerWord = (double) k / g;
+    final int lo = k / g;
+    final int numHi = k % g;
+    final double spread = TAIL_STDDEVS * Math.sqrt(lambda) + TAIL_STDDEVS;
+    final int minJ = (int) Math.max(0, lambda - spread);
+    final int maxJ = (int) (lambda + spread);
+
+    final double[] setRatioLo = new double[wordBits + 1];
+    final double[] setRatioHi = new double[wordBits + 1];
+    for (int x = 0; x <= wordBits; x++) {
+      setRatioLo[x] = Math.pow((double) x / wordBits, lo);
+      setRatioHi[x] = Math.pow((double) x / wordBits, lo + 1);
+    }
+    // word false positive probability for h hits with lo and lo + 1 probe bits
+    final double[] wordFppLo = new double[maxJ + 1];
+    final double[] wordFppHi = new double[maxJ + 1];
+    // occupancy[x] = probability that x bits are set after t bit throws. Only the window
+    // [minX, maxX] has non-negligible probability, which keeps large (block sized) words cheap.
+    final double[] occupancy = new double[wordBits + 1];
+    final double invWordBits = 1.0 / wordBits;
+    occupancy[0] = 1.0;
+    int minX = 0;
+    int maxX = 0;
+    int t = 0;
+    for (int h = 0; h <= maxJ; h++) {
+      final int numThrows = (int) Math.round(h * bitsPerWord);
+      for (; t < numThrows; t++) {
+        maxX = Math.min(wordBits, maxX + 1);
+        for (int x = maxX; x > minX; x--) {
+          occupancy[x] = (occupancy[x] * x + occupancy[x - 1] * (wordBits - x + 1)) * invWordBits;
+        }
+        occupancy[minX] = occupancy[minX] * minX * invWordBits;
+        while (minX < maxX && occupancy[minX] < NEGLIGIBLE_PROBABILITY) {
+          occupancy[minX++] = 0;
+        }
+        while (maxX > minX && occupancy[maxX] < NEGLIGIBLE_PROBABILITY) {
+          occupancy[maxX--] = 0;
+        }
+      }
+      for (int x = minX; x <= maxX; x++) {
+        wordFppLo[h] += occupancy[x] * setRatioLo[x];
+        wordFppHi[h] += occupancy[x] * setRatioHi[x];
+      }
+    }
+
+    final double p = (double) g / blockWords;
+    double poisson = Math.exp(-lambda + minJ * Math.log(lambda) - logFactorial(minJ));
+    double result = 0;
+    for (int j = minJ; j <= maxJ; j++) {
+      double expectedLo = 0;
+      double expectedHi = 0;
+      if (g == blockWords) {
+        // all words of the block are hit by every key in the block
+        expectedLo = wordFppLo[j];
+        expectedHi = wordFppHi[j];
+      } else {
+        final double hitSpread = TAIL_STDDEVS * Math.sqrt(j * p * (1 - p)) + TAIL_STDDEVS;
+        final int minH = (int) Math.max(0, j * p - hitSpread);
+        final int maxH = (int) Math.min(j, j * p + hitSpread);
+        double binomial = Math.exp(logFactorial(j) - logFactorial(minH) - logFactorial(j - minH) +
+            minH * Math.log(p) + (j - minH) * Math.log(1 - p));
+        for (int h = minH; h <= maxH; h++) {
+          expectedLo += binomial * wordFppLo[h];
+          expectedHi += binomial * wordFppHi[h];
+          binomial *= (double) (j - h) / (h + 1) * p / (1 - p);
+        }
+      }
+      result += poisson * Math.pow(expectedHi, numHi) * Math.pow(expectedLo, g - numHi);
+      poisson *= lambda / (j + 1);
+    }
+    return Math.min(1.0, result);
+  }
+
+  // Stirling's series for ln(j!)
+  private static double logFactorial(int j) {
+    if (j < 2) {
+      return 0;
+    }
+    double x = j;
+    return x * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI * x) + 1 / (12 * x) - 1 / (360 * x * x * x);
+  }
+
+  /**
+   * Number of hash functions that minimizes the false positive probability with n entries and m
+   * bits.
+   */
+  public int optimalNumOfHashFunctions(long n, long m) {
+    return optimalNumOfHashFunctions(n / ((double) m / getBlockBits()));
+  }
+
+  private int optimalNumOfHashFunctions(double keysPerBlock) {
+    int bestK = 1;
+    double bestFpp = 1.0;
+    for (int k = 1; k <= MAX_HASH_FUNCTIONS; k++) {
+      double fpp = falsePositiveProbability(keysPerBlock, k);
+      if (fpp < bestFpp) {
+        bestFpp = fpp;
+        bestK = k;
+      } else if (k > wordsPerKey) {
+        // fpp is unimodal in k once all the words are used, no need to search further
+        break;
+      }
+    }
+    return bestK;
+  }
+
+  private double minFalsePositiveProbability(double keysPerBlock) {
+    return falsePositiveProbability(keysPerBlock, optimalNumOfHashFunctions(keysPerBlock));
+  }
+
+  /**
+   * Smallest number of bits (a multiple of block size) for which n entries have false positive
+   * probability of at most p.
+   *
+   * @throws IllegalArgumentException if p is not in (0, 1)
+   */
+  public long optimalNumOfBits(long n, double p) {
+    // the bisection below never ends for p = 0, check even when asserts are off
+    if (!(p > 0.0 && p < 1.0)) {
+      throw new IllegalArgumentException("False positive probability should be > 0.0 & < 1.0, " +
+          "was " + p);
+    }
+    // fpp only depends on the number of keys per block. Starting from the classic estimate,
+    // bisect for the largest load that meets the fpp with optimal k.
+    double okLoad = getBlockBits() * (Math.log(2) * Math.log(2)) / -Math.log(p);
+    double badLoad = okLoad;
+    while (minFalsePositiveProbability(okLoad) > p) {
+      badLoad = okLoad;
+      okLoad /= 2;
+    }
+    if (badLoad == okLoad) {
+      badLoad = okLoad * 2;
+      while (minFalsePositiveProbability(badLoad) <= p) {
+        okLoad = badLoad;
+        badLoad *= 2;
+      }
+    }
+    while (badLoad - okLoad > okLoad * 1e-4) {
+      double mid = (okLoad + badLoad) / 2;
+      if (minFalsePositiveProbability(mid) > p) {
+        badLoad = mid;
+      } else {
+        okLoad = mid;
+      }
+    }
+    long blocks = Math.max(1, (long) Math.ceil(n / okLoad));
+    return blocks * getBlockBits();
+  }
+}
@@ -0,0 +1,696 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bloom-g filter is a generalization of {@link Bloom1Filter}. Instead of putting all k bits of a key
+ * in a single 64-bit word, k bits are spread across g words (g = 1, 2, 4 or 8). The g words are
+ * always chosen within one cache line (8 longs) so a probe still needs only one memory access.
+ * Spreading the bits over more words reduces the bit collisions within a word and hence the false
+ * positive probability compared to Bloom1Filter for the same number of bits.
+ * <p/>
+ * Since the blocked layout fills words unevenly, the classic optimal m and k formulas under
+ * estimate the number of bits required. The size of this filter is computed from the blocked filter
+ * false positive model (see {@link BloomFilterSizing}), so the configured fpp is honoured.
+ * <p/>
+ * Internally, this implementation of bloom filter uses Murmur3 fast non-cryptographic hash
+ * algorithm. Refer {@link BloomFilter} for more details.
+ *
+ * @see <a href="https://www.cise.ufl.edu/~tali/1569342377.pdf">One Memory Access Bloom Filters and Their Generalization</a>
+ */
+public class BloomGFilter {
+  private byte[] BYTE_ARRAY_4 = new byte[4];
+  private byte[] BYTE_ARRAY_8 = new byte[8];
+  public static final int DEFAULT_NUM_WORDS = 2;
+  // 8 longs = 64 bytes which is the most common cache line size
+  private static final int LINE_SIZE = 8;
+  private static final int LINE_SIZE_BITS = 3;
+  private static final int BIT_POS_BITS = 6;
+  private BitSet bitSet;
+  private final long m;
+  private final int k;
+  private final int g;
+  private final double fpp;
+  private final long n;
+  private final int totalLineCount;
+
+  public BloomGFilter(long maxNumEntries) {
+    this(maxNumEntries, BloomFilter.DEFAULT_FPP);
+  }
+
+  public BloomGFilter(long maxNumEntries, double fpp) {
+    this(maxNumEntries, fpp, DEFAULT_NUM_WORDS);
+  }
+
+  /**
+   * Creates Bloom-g filter.
+   *
+   * @param maxNumEntries - expected number of entries
+   * @param fpp           - false positive probability
+   * @param g             - number of words per key within a cache line (1, 2, 4 or 8)
+   */
+  public BloomGFilter(long maxNumEntries, double fpp, int g) {
+    this(maxNumEntries, fpp, g, true);
+  }
+
+  // sizes the filter, allocating the bitset only if allocate is true
+  private BloomGFilter(long maxNumEntries, double fpp, int g, boolean allocate) {
+    assert maxNumEntries > 0 : "maxNumEntries should be > 0";
+    assert fpp > 0.0 && fpp < 1.0 : "False positive percentage should be > 0.0 & < 1.0";
+    assert g == 1 || g == 2 || g == 4 || g == 8 : "g should be one of 1, 2, 4 or 8";
+    this.fpp = fpp;
+    this.n = maxNumEntries;
+    this.g = g;
+    this.m = optimalNumOfBits(maxNumEntries, fpp, g);
+    this.k = optimalNumOfHashFunctions(maxNumEntries, m, g);
+    this.bitSet = allocate ? new BitSet(m) : null;
+    this.totalLineCount = (int) Math.ceil((double) m / Long.SIZE) / LINE_SIZE;
+  }
+
+  // deserialize bloomfilter. see serialize() for the format.
+  public BloomGFilter(List<Long> serializedBloom) {
+    this(serializedBloom.get(0), Double.longBitsToDouble(serializedBloom.get(1)),
+        serializedBloom.get(2).intValue());
+    List<Long> bitSet = serializedBloom.subList(3, serializedBloom.size());
+    long[] data = new long[bitSet.size()];
+    for (int i = 0; i < bitSet.size(); i++) {
+      data[i] = bitSet.get(i);
+    }
+    this.bitSet = new BitSet(data);
+  }
+
+  static double falsePositiveProbability(long n, long m, int k, int g) {
+    return BloomFilterSizing.forBloomG(g).falsePositiveProbability(n, m, k);
+  }
+
+  static int optimalNumOfHashFunctions(long n, long m, int g) {
+    return BloomFilterSizing.forBloomG(g).optimalNumOfHashFunctions(n, m);
+  }
+
+  static long optimalNumOfBits(long n, double p, int g) {
+    return BloomFilterSizing.forBloomG(g).optimalNumOfBits(n, p);
+  }
+
+  public long sizeInBytes() {
+    return bitSet.bitSize() / 8;
+  }
+
+  public void add(byte[] val) {
+    addBytes(val);
+  }
+
+  public void addBytes(byte[] val) {
+    // Kirsch et.al. double hashing, refer BloomFilter.addBytes() for details
+    long hash64 = Murmur3.hash64(val);
+    int hash1 = (int) hash64;
+    int hash2 = (int) (hash64 >>> 32);
+
+    int firstHash = hash1 + hash2;
+    // hashcode should be positive, flip all the bits if it's negative
+    if (firstHash < 0) {
+      firstHash = ~firstHash;
+    }
+
+    // first hash locates the cache line and its 3 MSBs locate the first of the g consecutive
+    // words (wrapping around) within the line. i-th bit goes to (i mod g)-th word.
+    final int lineBaseOffset = (firstHash % totalLineCount) << LINE_SIZE_BITS;
+    final int firstWord = firstHash >>> (Integer.SIZE - 1 - LINE_SIZE_BITS);
+    // bit positions are MSBs of successive remixes of the hash. Positions derived from double
+    // hashing form an arithmetic progression within a 64-bit word which makes bit patterns of
+    // different keys collide as a whole and hurts fpp.
+    long bitHash = hash64;
+    if (bitSet.setBits >= 0) {
+      for (int i = 1; i <= k; i++) {
+        final int wordOffset = (firstWord + (i & (g - 1))) & (LINE_SIZE - 1);
+        bitHash *= BloomFilterSizing.BIT_HASH_MULTIPLIER;
+        final int bitPos = (int) (bitHash >>> (Long.SIZE - BIT_POS_BITS));
+        bitSet.setAndCount(lineBaseOffset + wordOffset, bitPos);
+      }
+      return;
+    }
+    for (int i = 1; i <= k; i++) {
+      final int wordOffset = (firstWord + (i & (g - 1))) & (LINE_SIZE - 1);
+      bitHash *= BloomFilterSizing.BIT_HASH_MULTIPLIER;
+      final int bitPos = (int) (bitHash >>> (Long.SIZE - BIT_POS_BITS));
+      bitSet.data[lineBaseOffset + wordOffset] |= (1L << bitPos);
+    }
+  }
+
+  public void addString(String val) {
+    addBytes(val.getBytes());
+  }
+
+  public void addByte(byte val) {
+    addBytes(new byte[]{val});
+  }
+
+  public void addInt(int val) {
+    // puts int in little endian order
+    addBytes(intToByteArrayLE(val));
+  }
+
+
+  public void addLong(long val) {
+    // puts long in little endian order
+    addBytes(longToByteArrayLE(val));
+  }
+
+  public void addFloat(float val) {
+    addInt(Float.floatToIntBits(val));
+  }
+
+  public void addDouble(double val) {
+    addLong(Double.doubleToLongBits(val));
+  }
+
+  public boolean test(byte[] val) {
+    return testBytes(val);
+  }
+
+  public boolean testBytes(byte[] val) {
+    long hash64 = Murmur3.hash64(val);
+    int hash1 = (int) hash64;
+    int hash2 = (int) (hash64 >>> 32);
+
+    int firstHash = hash1 + hash2;
+    // hashcode should be positive, flip all the bits if it's negative
+    if (firstHash < 0) {
+      firstHash = ~firstHash;
+    }
+
+    final int lineBaseOffset = (firstHash % totalLineCount) << LINE_SIZE_BITS;
+    final int firstWord = firstHash >>> (Integer.SIZE - 1 - LINE_SIZE_BITS);
+    long bitHash = hash64;
+    // all words are within the same cache line, check them without branching
+    long expected = 0;
+    for (int i = 1; i <= k; i++) {
+      final int wordOffset = (firstWord + (i & (g - 1))) & (LINE_SIZE - 1);
+      bitHash *= BloomFilterSizing.BIT_HASH_MULTIPLIER;
+      final int bitPos = (int) (bitHash >>> (Long.SIZE - BIT_POS_BITS));
+      expected |= ~bitSet.data[lineBaseOffset + wordOffset] & (1L << bitPos);
+    }
+    return expected == 0;
+  }
+
+  public boolean testString(String val) {
+    return testBytes(val.getBytes());
+  }
+
+  public boolean testByte(byte val) {
+    return testBytes(new byte[]{val});
+  }
+
+  public boolean testInt(int val) {
+    return testBytes(intToByteArrayLE(val));
+  }
+
+  public boolean testLong(long val) {
+    return testBytes(longToByteArrayLE(val));
+  }
+
+  public boolean testFloat(float val) {
+    return testInt(Float.floatToIntBits(val));
+  }
+
+  public boolean testDouble(double val) {
+    return testLong(Double.doubleToLongBits(val));
+  }
+
+  private byte[] intToByteArrayLE(int val) {
+    BYTE_ARRAY_4[0] = (byte) (val >> 0);
+    BYTE_ARRAY_4[1] = (byte) (val >> 8);
+    BYTE_ARRAY_4[2] = (byte) (val >> 16);
+    BYTE_ARRAY_4[3] = (byte) (val >> 24);
+    return BYTE_ARRAY_4;
+  }
+
+  private byte[] longToByteArrayLE(long val) {
+    BYTE_ARRAY_8[0] = (byte) (val >> 0);
+    BYTE_ARRAY_8[1] = (byte) (val >> 8);
+    BYTE_ARRAY_8[2] = (byte) (val >> 16);
+    BYTE_ARRAY_8[3] = (byte) (val >> 24);
+    BYTE_ARRAY_8[4] = (byte) (val >> 32);
+    BYTE_ARRAY_8[5] = (byte) (val >> 40);
+    BYTE_ARRAY_8[6] = (byte) (val >> 48);
+    BYTE_ARRAY_8[7] = (byte) (val >> 56);
+    return BYTE_ARRAY_8;
+  }
+
+  public long getBitSize() {
+    return m;
+  }
+
+  public int getNumHashFunctions() {
+    return k;
+  }
+
+  public int getNumWords() {
+    return g;
+  }
+
+  public double getFalsePositivePercent() {
+    return fpp;
+  }
+
+  public long getExpectedNumEntries() {
+    return n;
+  }
+
+  /**
+   * First 3 entries are expected entries (n), false positive percentage (fpp) and number of words
+   * per key (g). fpp which is a double is serialized as long. The entries following first 3 entries
+   * are the actual bit set.
+   *
+   * @return bloom filter as list of long
+   */
+  public List<Long> serialize() {
+    List<Long> serialized = new ArrayList<Long>();
+    for (long l : header()) {
+      serialized.add(l);
+    }
+    for (long l : bitSet.getData()) {
+      serialized.add(l);
+    }
+    return serialized;
+  }
+
+  // leading entries of serialize() before the bit set
+  private long[] header() {
+    return new long[]{n, Double.doubleToLongBits(fpp), g};
+  }
+
+  /**
+   * Check if the specified bloom filter is compatible with the current bloom filter.
+   *
+   * @param that - bloom filter to check compatibility
+   * @return true if compatible false otherwise
+   */
+  public boolean isCompatible(BloomGFilter that) {
+    return this != that &&
+        this.getBitSize() == that.getBitSize() &&
+        this.getNumHashFunctions() == that.getNumHashFunctions() &&
+        this.getNumWords() == that.getNumWords();
+  }
+
+  /**
+   * Merge the specified bloom filter with current bloom filter.
+   * NOTE: Merge does not check for incompatibility. Use isCompatible() before calling merge().
+   *
+   * @param that - bloom filter to merge
+   */
+  public void merge(BloomGFilter that) {
+    this.bitSet.putAll(that.bitSet);
+  }
+
+  /**
+   * Merge all the specified bloom filters with current bloom filter. The bitset is split into word
+   * ranges merged in parallel by the common fork-join pool, all the filters are merged into a
+   * range in one pass. Refer {@link ParallelMerge} for details.
+   *
+   * @param filters - bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Collection<BloomGFilter> filters) {
+    List<long[]> sources = new ArrayList<long[]>(filters.size());
+    for (BloomGFilter that : filters) {
+      if (that == this) {
+        continue;
+      }
+      if (!isCompatible(that)) {
+        throw new IllegalArgumentException("Bloom filters are not compatible");
+      }
+      sources.add(that.bitSet.getData());
+    }
+    ParallelMerge.orAll(bitSet.getData(), sources);
+    bitSet.recountSetBits();
+  }
+
+  /**
+   * Merge all the serialized bloom filters (see serialize()) with current bloom filter. Filters are
+   * deserialized and merged in groups, so only a few of them are in memory at a time.
+   *
+   * @param serializedFilters - serialized bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Iterator<List<Long>> serializedFilters) {
+    List<BloomGFilter> group = new ArrayList<BloomGFilter>(ParallelMerge.GROUP_SIZE);
+    while (serializedFilters.hasNext()) {
+      group.add(new BloomGFilter(serializedFilters.next()));
+      if (group.size() == ParallelMerge.GROUP_SIZE || !serializedFilters.hasNext()) {
+        mergeAll(group);
+        group.clear();
+      }
+    }
+  }
+
+  /**
+   * Merge the serialized bloom filter at the current position of the buffer with current bloom
+   * filter, without deserializing it. The buffer should contain the longs of serialize() in big
+   * endian order (as written by DataOutputStream.writeLong()). Position of the buffer is moved past
+   * the serialized bloom filter. Refer {@link SerializedMerge} for details.
+   *
+   * @param buffer - serialized bloom filter to merge
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   *                                  or the buffer is too short
+   */
+  public void mergeFrom(ByteBuffer buffer) {
+    try {
+      SerializedMerge.mergeFrom(header(), bitSet.getData(), buffer);
+    } finally {
+      bitSet.recountSetBits();
+    }
+  }
+
+  /**
+   * Merge the serialized bloom filter read from the stream with current bloom filter, without
+   * deserializing it. See mergeFrom(ByteBuffer) for the format. Exactly the serialized bloom filter
+   * is read from the stream.
+   *
+   * @param in - stream to read the serialized bloom filter from
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   * @throws IOException              if the stream cannot be read or ends early, in which case the
+   *                                  filter may be partially merged
+   */
+  public void mergeFrom(InputStream in) throws IOException {
+    try {
+      SerializedMerge.mergeFrom(header(), bitSet.getData(), in);
+    } finally {
+      bitSet.recountSetBits();
+    }
+  }
+
+  /**
+   * Starts maintaining the number of set bits on add and merge, so that getSetBitCount(),
+   * fillRatio() and estimatedCount() are O(1). Counting costs a check of the old bit for every bit
+   * set. Changes made through the array returned by getBitSet() are not counted.
+   */
+  public void trackSetBits() {
+    bitSet.trackSetBits();
+  }
+
+  /**
+   * Returns the number of set bits, counted over the whole bitset unless set bits are tracked
+   * (see {@link #trackSetBits()}).
+   */
+  public long getSetBitCount() {
+    return bitSet.setBits >= 0 ? bitSet.setBits : bitSet.bitCount();
+  }
+
+  /**
+   * Returns the fraction of the bits that are set.
+   */
+  public double fillRatio() {
+    return (double) getSetBitCount() / m;
+  }
+
+  /**
+   * Estimates the number of distinct keys added from the number of set bits, with the
+   * Swamidass-Baldi estimator n = -(m / d) ln(1 - X / m). The bits of a key can collide within
+   * each of its words, so d is the expected number of distinct bits a key sets in its g words
+   * rather than k. Refer {@link BloomKFilter#estimatedCount()} for why the blocked layout does not
+   * bias the estimate.
+   *
+   * @return estimated number of keys, Long.MAX_VALUE if all the bits are set
+   */
+  public long estimatedCount() {
+    return Math.round(-m / distinctBitsPerKey() * Math.log1p(-fillRatio()));
+  }
+
+  // expected number of distinct bits a key sets, k bits are spread evenly over min(k, g) words
+  private double distinctBitsPerKey() {
+    final int words = Math.min(k, g);
+    final int lo = k / words;
+    final int numHi = k % words;
+    return (words - numHi) * distinctBits(Long.SIZE, lo) +
+        numHi * distinctBits(Long.SIZE, lo + 1);
+  }
+
+  // expected number of distinct bits set by throwing numThrows bits into a word of wordBits bits
+  private static double distinctBits(int wordBits, int numThrows) {
+    return -wordBits * Math.expm1(numThrows * Math.log1p(-1.0 / wordBits));
+  }
+
+  /**
+   * Estimates the false positive probability with estimatedCount() keys, from the Poisson
+   * mixture over cache line loads of {@link BloomFilterSizing#forBloomG(int)} that sized the
+   * filter. The model is up to about 20% lower than the measured fpp for g = 2 and 4.
+   *
+   * @return estimated false positive probability
+   */
+  public double estimatedFpp() {
+    final long count = estimatedCount();
+    if (count == Long.MAX_VALUE) {
+      return 1.0;
+    }
+    return falsePositiveProbability(count, m, k, g);
+  }
+
+  /**
+   * Returns the number of bits set in both this and the specified filter, without creating the
+   * intersection. Refer {@link BitSetOverlap} for details.
+   *
+   * @param that - compatible bloom filter
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long andBitCount(BloomGFilter that) {
+    checkComparable(that);
+    return BitSetOverlap.andBitCount(bitSet.data, that.bitSet.data);
+  }
+
+  /**
+   * Returns the number of bits set in this or the specified filter, without merging them.
+   *
+   * @param that - compatible bloom filter
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long orBitCount(BloomGFilter that) {
+    checkComparable(that);
+    return BitSetOverlap.orBitCount(bitSet.data, that.bitSet.data);
+  }
+
+  /**
+   * Estimates the number of distinct keys added to this or the specified filter, the
+   * estimatedCount() of the two filters merged.
+   *
+   * @param that - compatible bloom filter
+   * @return estimated number of keys, Long.MAX_VALUE if the merged filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long estimatedUnionCount(BloomGFilter that) {
+    return Math.round(BitSetOverlap.unionCount(overlapBitCounts(that), m, distinctBitsPerKey()));
+  }
+
+  /**
+   * Estimates the number of distinct keys added to both this and the specified filter, as
+   * estimatedCount() of each minus the estimated union. The bitsets are read once, or only their
+   * AND is counted if both filters track their set bits (see {@link #trackSetBits()}).
+   *
+   * @param that - compatible bloom filter
+   * @return estimated number of keys in both filters, -1 if the merged filter would be full and
+   * the intersection cannot be estimated
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long estimatedIntersectionCount(BloomGFilter that) {
+    final double intersection = BitSetOverlap.intersectionCount(overlapBitCounts(that), m,
+        distinctBitsPerKey());
+    return Double.isNaN(intersection) ? -1 : Math.round(intersection);
+  }
+
+  /**
+   * Estimates the Jaccard similarity |A and B| / |A or B| of the keys added to this (A) and the
+   * specified filter (B).
+   *
+   * @param that - compatible bloom filter
+   * @return estimated similarity in [0, 1], 0 if both filters are empty and NaN if the merged
+   * filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public double estimatedJaccard(BloomGFilter that) {
+    return BitSetOverlap.jaccard(overlapBitCounts(that), m, distinctBitsPerKey());
+  }
+
+  /**
+   * Estimates the fraction |A and B| / |A| of the keys added to this filter (A) that were also
+   * added to the specified filter (B).
+   *
+   * @param that - compatible bloom filter
+   * @return estimated containment in [0, 1], 0 if this filter is empty and NaN if the merged
+   * filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public double estimatedContainment(BloomGFilter that) {
+    return BitSetOverlap.containment(overlapBitCounts(that), m, distinctBitsPerKey());
+  }
+
+  private long[] overlapBitCounts(BloomGFilter that) {
+    checkComparable(that);
+    if (bitSet.setBits >= 0 && that.bitSet.setBits >= 0) {
+      return BitSetOverlap.bitCounts(bitSet.data, that.bitSet.data, bitSet.setBits,
+          that.bitSet.setBits);
+    }
+    return BitSetOverlap.bitCounts(bitSet.data, that.bitSet.data);
+  }
+
+  // a filter can be compared with itself, unlike merged
+  private void checkComparable(BloomGFilter that) {
+    if (that != this && !isCompatible(that)) {
+      throw new IllegalArgumentException("Bloom filters are not compatible");
+    }
+  }
+
+  /**
+   * Writes the filter in the versioned and checksummed container format, refer
+   * {@link FilterContainer} for the layout.
+   *
+   * @param out - stream to write to
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    FilterContainer.write(out, FilterContainer.Variant.BLOOM_G, FilterContainer.HASH_MURMUR3,
+        Murmur3.DEFAULT_SEED, k, m, n, fpp, g, FilterContainer.UNKNOWN_COUNT,
+        bitSet.getData());
+  }
+
+  /**
+   * Reads a filter written by writeTo(). The header is validated (magic, version, variant, hash
+   * function) and the checksum is verified while the bit set is read.
+   *
+   * @param in - stream to read from
+   * @return bloom filter
+   * @throws IOException if the container is not a Bloom-g filter, is corrupt or truncated
+   */
+  public static BloomGFilter readFrom(InputStream in) throws IOException {
+    FilterContainer.Header header = FilterContainer.readHeader(in, FilterContainer.Variant.BLOOM_G,
+        FilterContainer.HASH_MURMUR3, Murmur3.DEFAULT_SEED);
+    long g = header.options;
+    header.checkOptions(g == 1 || g == 2 || g == 4 || g == 8);
+    BloomGFilter bf = new BloomGFilter(header.n, header.fpp, (int) g, false);
+    header.checkLayout(bf.k, bf.m);
+    bf.bitSet = new BitSet(bf.m);
+    header.readData(in, bf.bitSet.getData());
+    return bf;
+  }
+
+  public long getNumBits() {
+    return m;
+  }
+
+  public long[] getBitSet() {
+    return bitSet.getData();
+  }
+
+  /**
+   * Bare metal bitset implementation. For performance reasons, this implementation does not check
+   * for index bounds nor expand the bitset size if the specified index is greater than the size.
+   */
+  public static class BitSet {
+    final long[] data;
+    // number of set bits, -1 if not tracked
+    long setBits = -1;
+
+    public BitSet(long bits) {
+      this(new long[(int) Math.ceil((double) bits / (double) Long.SIZE)]);
+    }
+
+    /**
+     * Deserialize long array as bitset.
+     *
+     * @param data
+     */
+    BitSet(long[] data) {
+      assert data.length > 0 : "data length is zero!";
+      this.data = data;
+    }
+
+    /**
+     * Sets the bit at specified index.
+     *
+     * @param index
+     */
+    public void set(long index) {
+      data[(int) (index >>> 6)] |= (1L << index);
+    }
+
+    // sets the bit of the word and counts it if it was not set, set bits should be tracked
+    void setAndCount(int wordIndex, int bitPos) {
+      final long word = data[wordIndex];
+      data[wordIndex] = word | (1L << bitPos);
+      setBits += ~word >>> bitPos & 1;
+    }
+
+    void trackSetBits() {
+      if (setBits < 0) {
+        setBits = bitCount();
+      }
+    }
+
+    // recounts the set bits after a change to the whole bitset, if they are tracked
+    void recountSetBits() {
+      if (setBits >= 0) {
+        setBits = bitCount();
+      }
+    }
+
+    long bitCount() {
+      long bits = 0;
+      for (long word : data) {
+        bits += Long.bitCount(word);
+      }
+      return bits;
+    }
+
+    /**
+     * Returns true if the bit is set in the specified index.
+     *
+     * @param index
+     * @return
+     */
+    boolean get(long index) {
+      return (data[(int) (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    /**
+     * Number of bits
+     */
+    long bitSize() {
+      return (long) data.length * Long.SIZE;
+    }
+
+    public long[] getData() {
+      return data;
+    }
+
+    /**
+     * Combines the two BitArrays using bitwise OR.
+     */
+    void putAll(BitSet array) {
+      assert data.length == array.data.length :
+          "BitArrays must be of equal length (" + data.length + "!= " + array.data.length + ")";
+      for (int i = 0; i < data.length; i++) {
+        data[i] |= array.data[i];
+      }
+      recountSetBits();
+    }
+  }
+}
@@ -15,9 +15,18 @@
  */
 package com.github.prasanthj.bloomfilter;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
 
 /**
  * BloomFilter is a probabilistic data structure for set membership check. BloomFilters are
@@ -40,46 +49,214 @@ import java.util.List;
 public class BloomKFilter {
   private byte[] BYTE_ARRAY_4 = new byte[4];
   private byte[] BYTE_ARRAY_8 = new byte[8];
-  private static final double DEFAULT_FPP = 0.05;
+  static final double DEFAULT_FPP = 0.05;
   private static final int DEFAULT_BLOCK_SIZE = 8;
-  private static final int DEFAULT_BLOCK_SIZE_BITS = (int) (Math.log(DEFAULT_BLOCK_SIZE) / Math.log(2));
-  private static final int DEFAULT_BLOCK_OFFSET_MASK = DEFAULT_BLOCK_SIZE - 1;
-  private static final int DEFAULT_BIT_OFFSET_MASK = Long.SIZE - 1;
+  private static final int DEFAULT_WORD_BITS = Long.SIZE;
+  private static final BitPlacement DEFAULT_BIT_PLACEMENT = BitPlacement.ANY;
+  // 4KB pages of the bitset, a multiple of every block size so a block never spans pages. Unit of
+  // the dirty page tracking, DeltaCheckpoint, DiskBloomKFilter and PagedBloomKFilter.
+  static final int PAGE_WORDS_BITS = 9;
+  static final int PAGE_WORDS = 1 << PAGE_WORDS_BITS;
+  // header marker for serialized filters with non-default options. MSB is set so that it can be
+  // distinguished from expected entries (n) which is the first entry of default/legacy format.
+  private static final long OPTIONS_MARKER = 1L << 63;
+  // expected entries tried on each side of n / factor for the folded filter, see fold()
+  private static final int FOLD_SEARCH = 64;
   private BitSet bitSet;
   private final long m;
   private final int k;
   private final double fpp;
   private final long n;
-  private final long[] masks = new long[DEFAULT_BLOCK_SIZE];
   // spread k-1 bits to adjacent longs, default is 8
   // spreading hash bits within blockSize * longs will make bloom filter L1 cache friendly
   // default block size is set to 8 as most cache line sizes are 64 bytes and also AVX512 friendly
+  private final int blockSize;
+  private final int blockSizeBits;
+  private final int blockOffsetMask;
+  // bits within a block are addressed as words of wordBits (32 or 64) bits. With 32-bit words,
+  // each long in the block holds 2 words.
+  private final int wordBits;
+  private final int wordBitsLog2;
+  private final int wordsPerBlock;
+  private final int wordsPerBlockBits;
+  private final BitPlacement bitPlacement;
+  // m and k are computed from the blocked filter fpp model instead of classic formulas. Bit
+  // positions are then derived from remixed hash so that they are independent as the model assumes.
+  private final boolean blockedSizing;
+  private final int blockBitsLog2;
+  // maps hash to block index, see RangeReduction
+  private final RangeReduction reduction;
+  private final boolean split;
+  // unrolled add/test for the default geometry with common k, null if generic loops are used
+  private final BloomKKernel kernel;
   private final int totalBlockCount;
 
+  /**
+   * Policy for placing the k bits of a key within its block.
+   */
+  public enum BitPlacement {
+    /**
+     * Each of the k bits can land in any word of the block (default).
+     */
+    ANY,
+    /**
+     * k bits land in k consecutive words (wrapping around) of the block, so with k <= words per
+     * block there is at most one bit per word (split block layout).
+     */
+    SPLIT
+  }
+
   public BloomKFilter(long maxNumEntries) {
     this(maxNumEntries, DEFAULT_FPP);
   }
 
   public BloomKFilter(long maxNumEntries, double fpp) {
+    this(maxNumEntries, fpp, false);
+  }
+
+  /**
+   * Creates bloom filter with default block geometry.
+   *
+   * @param maxNumEntries - expected number of entries
+   * @param fpp           - false positive probability
+   * @param blockedSizing - if true, size the filter using {@link BloomFilterSizing} so that the
+   *                      actual fpp matches the configured fpp (uses more bits than the classic
+   *                      formulas)
+   */
+  public BloomKFilter(long maxNumEntries, double fpp, boolean blockedSizing) {
+    this(maxNumEntries, fpp, DEFAULT_BLOCK_SIZE, DEFAULT_WORD_BITS, DEFAULT_BIT_PLACEMENT,
+        blockedSizing);
+  }
+
+  /**
+   * Creates bloom filter with default block geometry.
+   *
+   * @param maxNumEntries - expected number of entries
+   * @param fpp           - false positive probability
+   * @param reduction     - how hash is mapped to a block index. POW2 rounds up number of blocks to
+   *                      next power of two.
+   */
+  public BloomKFilter(long maxNumEntries, double fpp, RangeReduction reduction) {
+    this(maxNumEntries, fpp, DEFAULT_BLOCK_SIZE, DEFAULT_WORD_BITS, DEFAULT_BIT_PLACEMENT, false,
+        reduction);
+  }
+
+  /**
+   * Creates bloom filter with the specified block geometry.
+   *
+   * @param maxNumEntries - expected number of entries
+   * @param fpp           - false positive probability
+   * @param blockSize     - number of longs per block (2, 4, 8 or 16)
+   * @param wordBits      - width of a word within the block (32 or 64)
+   * @param bitPlacement  - how k bits are placed within the words of a block
+   */
+  public BloomKFilter(long maxNumEntries, double fpp, int blockSize, int wordBits,
+      BitPlacement bitPlacement) {
+    this(maxNumEntries, fpp, blockSize, wordBits, bitPlacement, false);
+  }
+
+  /**
+   * Creates bloom filter with the specified block geometry.
+   *
+   * @param maxNumEntries - expected number of entries
+   * @param fpp           - false positive probability
+   * @param blockSize     - number of longs per block (2, 4, 8 or 16)
+   * @param wordBits      - width of a word within the block (32 or 64)
+   * @param bitPlacement  - how k bits are placed within the words of a block
+   * @param blockedSizing - if true, size the filter using {@link BloomFilterSizing} for the
+   *                      specified geometry instead of the classic formulas. Such filters derive
+   *                      bit positions within the block from remixed hash instead of double hashing
+   */
+  public BloomKFilter(long maxNumEntries, double fpp, int blockSize, int wordBits,
+      BitPlacement bitPlacement, boolean blockedSizing) {
+    this(maxNumEntries, fpp, blockSize, wordBits, bitPlacement, blockedSizing,
+        RangeReduction.MODULO);
+  }
+
+  /**
+   * Creates bloom filter with the specified block geometry.
+   *
+   * @param maxNumEntries - expected number of entries
+   * @param fpp           - false positive probability
+   * @param blockSize     - number of longs per block (2, 4, 8 or 16)
+   * @param wordBits      - width of a word within the block (32 or 64)
+   * @param bitPlacement  - how k bits are placed within the words of a block
+   * @param blockedSizing - see {@link #BloomKFilter(long, double, int, int, BitPlacement, boolean)}
+   * @param reduction     - how hash is mapped to a block index. POW2 rounds up number of blocks to
+   *                      next power of two.
+   */
+  public BloomKFilter(long maxNumEntries, double fpp, int blockSize, int wordBits,
+      BitPlacement bitPlacement, boolean blockedSizing, RangeReduction reduction) {
+    this(maxNumEntries, fpp, blockSize, wordBits, bitPlacement, blockedSizing, reduction, true);
+  }
+
+  // allocate is false for filters whose bitset lives elsewhere (paged or on disk), which only use
+  // the geometry and the add/test of a block
+  private BloomKFilter(long maxNumEntries, double fpp, int blockSize, int wordBits,
+      BitPlacement bitPlacement, boolean blockedSizing, RangeReduction reduction,
+      boolean allocate) {
     assert maxNumEntries > 0 : "maxNumEntries should be > 0";
     assert fpp > 0.0 && fpp < 1.0 : "False positive percentage should be > 0.0 & < 1.0";
+    assert blockSize == 2 || blockSize == 4 || blockSize == 8 || blockSize == 16 :
+        "blockSize should be one of 2, 4, 8 or 16";
+    assert wordBits == Integer.SIZE || wordBits == Long.SIZE : "wordBits should be 32 or 64";
+    assert bitPlacement != null : "bitPlacement cannot be null";
+    assert reduction != null : "reduction cannot be null";
     this.fpp = fpp;
     this.n = maxNumEntries;
-    long numBits = optimalNumOfBits(maxNumEntries, fpp);
-    this.k = optimalNumOfHashFunctions(maxNumEntries, numBits);
+    this.blockSize = blockSize;
+    this.blockSizeBits = Integer.numberOfTrailingZeros(blockSize);
+    this.blockOffsetMask = blockSize - 1;
+    this.wordBits = wordBits;
+    this.wordBitsLog2 = Integer.numberOfTrailingZeros(wordBits);
+    this.wordsPerBlock = blockSize * Long.SIZE / wordBits;
+    this.wordsPerBlockBits = Integer.numberOfTrailingZeros(wordsPerBlock);
+    this.bitPlacement = bitPlacement;
+    this.blockedSizing = blockedSizing;
+    this.reduction = reduction;
+    this.blockBitsLog2 = blockSizeBits + Integer.numberOfTrailingZeros(Long.SIZE);
+    this.split = bitPlacement == BitPlacement.SPLIT;
+    BloomFilterSizing sizing = blockedSizing ?
+        BloomFilterSizing.forBloomK(blockSize, wordBits, bitPlacement) : null;
+    long numBits = blockedSizing ? sizing.optimalNumOfBits(maxNumEntries, fpp) :
+        optimalNumOfBits(maxNumEntries, fpp);
     int nLongs = (int) Math.ceil((double) numBits / (double) Long.SIZE);
-    // additional bits to pad long array to block size
-    int padLongs = DEFAULT_BLOCK_SIZE - nLongs % DEFAULT_BLOCK_SIZE;
-    this.m = (nLongs + padLongs) * Long.SIZE;
-    this.bitSet = new BitSet(m);
-    assert (bitSet.data.length % DEFAULT_BLOCK_SIZE) == 0 : "bitSet has to be block aligned";
-    this.totalBlockCount = bitSet.data.length / DEFAULT_BLOCK_SIZE;
+    // additional bits to pad long array to block size. blocked sizing already returns whole blocks.
+    int padLongs = blockedSizing ? 0 : blockSize - nLongs % blockSize;
+    if (reduction == RangeReduction.POW2) {
+      int numBlocks = RangeReduction.nextPowerOfTwo((nLongs + padLongs) / blockSize);
+      nLongs = numBlocks * blockSize;
+      padLongs = 0;
+      // k is picked for the rounded up size
+      numBits = (long) nLongs * Long.SIZE;
+    }
+    this.k = blockedSizing ? sizing.optimalNumOfHashFunctions(maxNumEntries, numBits) :
+        optimalNumOfHashFunctions(maxNumEntries, numBits);
+    this.kernel = BloomKKernel.forGeometry(k, blockSize, wordBits, bitPlacement, blockedSizing);
+    this.m = (long) (nLongs + padLongs) * Long.SIZE;
+    assert ((nLongs + padLongs) % blockSize) == 0 : "bitSet has to be block aligned";
+    this.bitSet = allocate ? new BitSet(m) : null;
+    this.totalBlockCount = (nLongs + padLongs) / blockSize;
+  }
+
+  /**
+   * Creates a filter without a bitset for the geometry of the specified options (see options()).
+   * Bits of a key are located with blockIndex() and set or tested in the storage of the caller with
+   * addHash(long[], int, long) and testHash(long[], int, long).
+   */
+  static BloomKFilter layout(long maxNumEntries, double fpp, long options) {
+    return new BloomKFilter(maxNumEntries, fpp, blockSizeOf(options), wordBitsOf(options),
+        bitPlacementOf(options), blockedSizingOf(options), reductionOf(options), false);
   }
 
   // deserialize bloomfilter. see serialize() for the format.
   public BloomKFilter(List<Long> serializedBloom) {
-    this(serializedBloom.get(0), Double.longBitsToDouble(serializedBloom.get(1)));
-    List<Long> bitSet = serializedBloom.subList(2, serializedBloom.size());
+    this(serializedBloom.get(headerLength(serializedBloom) - 2),
+        Double.longBitsToDouble(serializedBloom.get(headerLength(serializedBloom) - 1)),
+        blockSizeOf(options(serializedBloom)), wordBitsOf(options(serializedBloom)),
+        bitPlacementOf(options(serializedBloom)), blockedSizingOf(options(serializedBloom)),
+        reductionOf(options(serializedBloom)));
+    List<Long> bitSet = serializedBloom.subList(headerLength(serializedBloom), serializedBloom.size());
     long[] data = new long[bitSet.size()];
     for (int i = 0; i < bitSet.size(); i++) {
       data[i] = bitSet.get(i);
@@ -87,6 +264,105 @@ public class BloomKFilter {
     this.bitSet = new BitSet(data);
   }
 
+  private static long options(List<Long> serializedBloom) {
+    long first = serializedBloom.get(0);
+    return (first & OPTIONS_MARKER) != 0 ? first : 0;
+  }
+
+  private static int headerLength(List<Long> serializedBloom) {
+    return options(serializedBloom) != 0 ? 3 : 2;
+  }
+
+  // options layout: byte 0 - log2(blockSize), byte 1 - log2(wordBits), byte 2 - bit placement,
+  // byte 3 - blocked sizing, byte 4 - range reduction
+  long options() {
+    return OPTIONS_MARKER
+        | blockSizeBits
+        | (wordBitsLog2 << 8)
+        | (bitPlacement.ordinal() << 16)
+        | ((blockedSizing ? 1L : 0L) << 24)
+        | ((long) reduction.ordinal() << 32);
+  }
+
+  private static int blockSizeOf(long options) {
+    return options == 0 ? DEFAULT_BLOCK_SIZE : 1 << (options & 0xff);
+  }
+
+  private static int wordBitsOf(long options) {
+    return options == 0 ? DEFAULT_WORD_BITS : 1 << ((options >>> 8) & 0xff);
+  }
+
+  private static BitPlacement bitPlacementOf(long options) {
+    return options == 0 ? DEFAULT_BIT_PLACEMENT :
+        BitPlacement.values()[(int) ((options >>> 16) & 0xff)];
+  }
+
+  private static boolean blockedSizingOf(long options) {
+    return ((options >>> 24) & 0xff) != 0;
+  }
+
+  private static RangeReduction reductionOf(long options) {
+    return RangeReduction.values()[(int) ((options >>> 32) & 0xff)];
+  }
+
+  // whether the options are of a geometry the constructor accepts, options read from a container
+  // are checked before they are decoded
+  private static boolean isValidOptions(long options) {
+    if (options == 0) {
+      return true;
+    }
+    final long blockSizeBits = options & 0xff;
+    final long wordBitsLog2 = (options >>> 8) & 0xff;
+    return (options & OPTIONS_MARKER) != 0 &&
+        blockSizeBits >= 1 && blockSizeBits <= 4 &&
+        (wordBitsLog2 == 5 || wordBitsLog2 == 6) &&
+        ((options >>> 16) & 0xff) < BitPlacement.values().length &&
+        ((options >>> 32) & 0xff) < RangeReduction.values().length;
+  }
+
+  private boolean hasDefaultOptions() {
+    return blockSize == DEFAULT_BLOCK_SIZE && wordBits == DEFAULT_WORD_BITS &&
+        bitPlacement == DEFAULT_BIT_PLACEMENT && !blockedSizing &&
+        reduction == RangeReduction.MODULO;
+  }
+
+  /**
+   * Creates bloom filter with default fpp for the specified keys, adding them in parallel. Same as
+   * adding every key with {@link #addLong(long)}.
+   *
+   * @param keys        - keys to add, expected number of entries is keys.length
+   * @param parallelism - number of parts the keys are split into, added concurrently by common
+   *                    fork-join pool
+   * @return bloom filter with all the keys
+   */
+  public static BloomKFilter build(long[] keys, int parallelism) {
+    return build(keys, DEFAULT_FPP, parallelism);
+  }
+
+  public static BloomKFilter build(long[] keys, double fpp, int parallelism) {
+    return build(Arrays.spliterator(keys), keys.length, fpp, parallelism);
+  }
+
+  /**
+   * Creates bloom filter for the keys of the spliterator, adding them in parallel. Keys are split
+   * with {@link Spliterator#trySplit()}, so the spliterator should split evenly (array or list
+   * backed) for good scaling. Bitset is partitioned by block range, each partition updated under its
+   * own lock, refer {@link ParallelBloomKFilterBuilder} for details.
+   *
+   * @param keys          - keys to add
+   * @param maxNumEntries - expected number of entries
+   * @param fpp           - false positive probability
+   * @param parallelism   - number of parts the keys are split into, added concurrently by common
+   *                      fork-join pool
+   * @return bloom filter with all the keys
+   */
+  public static BloomKFilter build(Spliterator.OfLong keys, long maxNumEntries, double fpp,
+      int parallelism) {
+    BloomKFilter filter = new BloomKFilter(maxNumEntries, fpp);
+    new ParallelBloomKFilterBuilder(filter, parallelism).addAll(keys, parallelism);
+    return filter;
+  }
+
   static int optimalNumOfHashFunctions(long n, long m) {
     return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
   }
@@ -107,14 +383,64 @@ public class BloomKFilter {
   }
 
   public void addBytes(byte[] val) {
+    addHash(Murmur3.hash64(val));
+  }
+
+  // block that addHash(hash64) updates
+  int blockIndex(long hash64) {
+    int firstHash = (int) hash64 + (int) (hash64 >>> 32);
+    // hashcode should be positive, flip all the bits if it's negative
+    if (firstHash < 0) {
+      firstHash = ~firstHash;
+    }
+    return blockIndex(hash64, firstHash);
+  }
 
+  int getTotalBlockCount() {
+    return totalBlockCount;
+  }
+
+  // block index from the hash. FAST_RANGE and POW2 use remixed hash as firstHash bits also select
+  // the first word of a split block and the bit positions within the block.
+  private int blockIndex(long hash64, int firstHash) {
+    if (reduction == RangeReduction.FAST_RANGE) {
+      return RangeReduction.fastRange(RangeReduction.blockHash(hash64), totalBlockCount);
+    } else if (reduction == RangeReduction.POW2) {
+      return RangeReduction.blockHash(hash64) & (totalBlockCount - 1);
+    }
+    return firstHash % totalBlockCount;
+  }
+
+  void addHash(long hash64) {
+    addHash(hash64, blockIndex(hash64));
+  }
+
+  // blockIdx should be blockIndex(hash64)
+  void addHash(long hash64, int blockIdx) {
+    // first hash is used to locate start of the block (blockBaseOffset)
+    final int blockBaseOffset = blockIdx << blockSizeBits;
+    if (bitSet.dirtyPages != null) {
+      bitSet.markDirty(blockBaseOffset);
+    }
+    if (bitSet.setBits >= 0) {
+      // the block is in cache for the add, count its bits before and after
+      final int before = bitSet.bitCount(blockBaseOffset, blockSize);
+      addHash(bitSet.data, blockBaseOffset, hash64);
+      bitSet.setBits += bitSet.bitCount(blockBaseOffset, blockSize) - before;
+      return;
+    }
+    addHash(bitSet.data, blockBaseOffset, hash64);
+  }
+
+  // sets the bits of the hash in the block at blockBaseOffset of data. data is the bitset or, for
+  // paged and disk backed filters, the page holding the block.
+  void addHash(long[] data, int blockBaseOffset, long hash64) {
     // We use the trick mentioned in "Less Hashing, Same Performance: Building a Better Bloom Filter"
     // by Kirsch et.al. From abstract 'only two hash functions are necessary to effectively
     // implement a Bloom filter without any loss in the asymptotic false positive probability'
 
     // Lets split up 64-bit hashcode into two 32-bit hashcodes and employ the technique mentioned
     // in the above paper
-    long hash64 = Murmur3.hash64(val);
     int hash1 = (int) hash64;
     int hash2 = (int) (hash64 >>> 32);
 
@@ -124,21 +450,69 @@ public class BloomKFilter {
       firstHash = ~firstHash;
     }
 
-    // first hash is used to locate start of the block (blockBaseOffset)
     // subsequent K hashes are used to generate K bits within a block of words
-    final int blockIdx = firstHash % totalBlockCount;
-    final int blockBaseOffset = blockIdx << DEFAULT_BLOCK_SIZE_BITS;
-    for (int i = 1; i <= k; i++) {
-      int combinedHash = hash1 + ((i + 1) * hash2);
-      // hashcode should be positive, flip all the bits if it's negative
-      if (combinedHash < 0) {
-        combinedHash = ~combinedHash;
+    if (kernel != null) {
+      kernel.add(data, blockBaseOffset, hash1, hash2);
+      return;
+    }
+    if (blockedSizing) {
+      // MSBs of successive remixes of the hash locate the bits, refer BloomFilterSizing for details
+      long bitHash = hash64;
+      if (split) {
+        final int firstWord = firstHash >>> (Integer.SIZE - 1 - wordsPerBlockBits);
+        for (int i = 1; i <= k; i++) {
+          bitHash *= BloomFilterSizing.BIT_HASH_MULTIPLIER;
+          final int blockBitPos = (((firstWord + i) & (wordsPerBlock - 1)) << wordBitsLog2) |
+              (int) (bitHash >>> (Long.SIZE - wordBitsLog2));
+          data[blockBaseOffset + (blockBitPos >>> 6)] |= (1L << blockBitPos);
+        }
+      } else {
+        for (int i = 1; i <= k; i++) {
+          bitHash *= BloomFilterSizing.BIT_HASH_MULTIPLIER;
+          final int blockBitPos = (int) (bitHash >>> (Long.SIZE - blockBitsLog2));
+          data[blockBaseOffset + (blockBitPos >>> 6)] |= (1L << blockBitPos);
+        }
+      }
+    } else if (split) {
+      // bits go to consecutive words (wrapping around) starting from a word picked by MSBs of first
+      // hash, LSBs of combined hash are used to locate bit within the word
+      final int firstWord = firstHash >>> (Integer.SIZE - 1 - wordsPerBlockBits);
+      for (int i = 1; i <= k; i++) {
+        int combinedHash = hash1 + ((i + 1) * hash2);
+        // hashcode should be positive, flip all the bits if it's negative
+        if (combinedHash < 0) {
+          combinedHash = ~combinedHash;
+        }
+        final int blockBitPos = (((firstWord + i) & (wordsPerBlock - 1)) << wordBitsLog2) |
+            (combinedHash & (wordBits - 1));
+        data[blockBaseOffset + (blockBitPos >>> 6)] |= (1L << blockBitPos);
+      }
+    } else if (wordBits == Long.SIZE) {
+      for (int i = 1; i <= k; i++) {
+        int combinedHash = hash1 + ((i + 1) * hash2);
+        // hashcode should be positive, flip all the bits if it's negative
+        if (combinedHash < 0) {
+          combinedHash = ~combinedHash;
+        }
+        // LSB log2(blockSize) bits is used to locate offset within the block
+        final int absOffset = blockBaseOffset + (combinedHash & blockOffsetMask);
+        // Next 6 bits are used to locate offset within a long/word
+        final int bitPos = (combinedHash >>> blockSizeBits) & (Long.SIZE - 1);
+        data[absOffset] |= (1L << bitPos);
+      }
+    } else {
+      for (int i = 1; i <= k; i++) {
+        int combinedHash = hash1 + ((i + 1) * hash2);
+        // hashcode should be positive, flip all the bits if it's negative
+        if (combinedHash < 0) {
+          combinedHash = ~combinedHash;
+        }
+        // LSB log2(wordsPerBlock) bits is used to locate the word within the block and next
+        // log2(wordBits) bits are used to locate offset within the word
+        final int blockBitPos = ((combinedHash & (wordsPerBlock - 1)) << wordBitsLog2) |
+            ((combinedHash >>> wordsPerBlockBits) & (wordBits - 1));
+        data[blockBaseOffset + (blockBitPos >>> 6)] |= (1L << blockBitPos);
       }
-      // LSB 3 bits is used to locate offset within the block
-      final int absOffset = blockBaseOffset + (combinedHash & DEFAULT_BLOCK_OFFSET_MASK);
-      // Next 6 bits are used to locate offset within a long/word
-      final int bitPos = (combinedHash >>> DEFAULT_BLOCK_SIZE_BITS) & DEFAULT_BIT_OFFSET_MASK;
-      bitSet.data[absOffset] |= (1L << bitPos);
     }
   }
 
@@ -161,6 +535,50 @@ public class BloomKFilter {
     addBytes(longToByteArrayLE(val));
   }
 
+  /**
+   * Adds all the keys, same as calling {@link #addLong(long)} for every key. For filters larger than
+   * the last level cache, keys are hashed in batches and each batch is applied in bitset address
+   * order which turns random DRAM writes into mostly sequential ones, refer
+   * {@link RadixPartitionedInsert} for details.
+   *
+   * @param keys - keys to add
+   */
+  public void addLongs(long[] keys) {
+    addLongs(keys, 0, keys.length);
+  }
+
+  public void addLongs(long[] keys, int offset, int length) {
+    if (!RadixPartitionedInsert.isWorthPartitioning(this)) {
+      for (int i = offset; i < offset + length; i++) {
+        addHash(Murmur3.hash64(keys[i]));
+      }
+      return;
+    }
+    final int batchSize = Math.min(length, RadixPartitionedInsert.BATCH_SIZE);
+    RadixPartitionedInsert insert = new RadixPartitionedInsert(this, batchSize);
+    long[] hashes = new long[batchSize];
+    for (int start = offset; start < offset + length; start += batchSize) {
+      final int count = Math.min(batchSize, offset + length - start);
+      for (int i = 0; i < count; i++) {
+        hashes[i] = Murmur3.hash64(keys[start + i]);
+      }
+      insert.add(hashes, count);
+    }
+  }
+
+  // adds the first count hashes (at most RadixPartitionedInsert.BATCH_SIZE), same as addHash() for
+  // each of them. Large filters are updated in bitset address order as in addLongs().
+  void addHashes(long[] hashes, int count) {
+    assert count <= RadixPartitionedInsert.BATCH_SIZE : "count should be <= batch size";
+    if (!RadixPartitionedInsert.isWorthPartitioning(this)) {
+      for (int i = 0; i < count; i++) {
+        addHash(hashes[i]);
+      }
+      return;
+    }
+    new RadixPartitionedInsert(this, count).add(hashes, count);
+  }
+
   public void addFloat(float val) {
     addInt(Float.floatToIntBits(val));
   }
@@ -174,7 +592,16 @@ public class BloomKFilter {
   }
 
   public boolean testBytes(byte[] val) {
-    long hash64 = Murmur3.hash64(val);
+    return testHash(Murmur3.hash64(val));
+  }
+
+  boolean testHash(long hash64) {
+    // first hash is used to locate start of the block (blockBaseOffset)
+    return testHash(bitSet.data, blockIndex(hash64) << blockSizeBits, hash64);
+  }
+
+  // tests the bits of the hash in the block at blockBaseOffset of data, see addHash(long[], int, long)
+  boolean testHash(long[] data, int blockBaseOffset, long hash64) {
     int hash1 = (int) hash64;
     int hash2 = (int) (hash64 >>> 32);
 
@@ -184,36 +611,78 @@ public class BloomKFilter {
       firstHash = ~firstHash;
     }
 
-    // first hash is used to locate start of the block (blockBaseOffset)
     // subsequent K hashes are used to generate K bits within a block of words
-    // To avoid branches during probe, a separate masks array is used for each longs/words within a block.
-    // data array and masks array are then traversed together and checked for corresponding set bits.
-    final int blockIdx = firstHash % totalBlockCount;
-    final int blockBaseOffset = blockIdx << DEFAULT_BLOCK_SIZE_BITS;
-
-    // iterate and update masks array
-    for (int i = 1; i <= k; i++) {
-      int combinedHash = hash1 + ((i + 1)  * hash2);
-      // hashcode should be positive, flip all the bits if it's negative
-      if (combinedHash < 0) {
-        combinedHash = ~combinedHash;
+    if (kernel != null) {
+      return kernel.test(data, blockBaseOffset, hash1, hash2);
+    }
+
+    if (blockedSizing) {
+      // bits are located the same way as addHash(), check the data words directly
+      long bitHash = hash64;
+      long expected = 0;
+      if (split) {
+        final int firstWord = firstHash >>> (Integer.SIZE - 1 - wordsPerBlockBits);
+        for (int i = 1; i <= k; i++) {
+          bitHash *= BloomFilterSizing.BIT_HASH_MULTIPLIER;
+          final int blockBitPos = (((firstWord + i) & (wordsPerBlock - 1)) << wordBitsLog2) |
+              (int) (bitHash >>> (Long.SIZE - wordBitsLog2));
+          expected |= ~data[blockBaseOffset + (blockBitPos >>> 6)] & (1L << blockBitPos);
+        }
+      } else {
+        for (int i = 1; i <= k; i++) {
+          bitHash *= BloomFilterSizing.BIT_HASH_MULTIPLIER;
+          final int blockBitPos = (int) (bitHash >>> (Long.SIZE - blockBitsLog2));
+          expected |= ~data[blockBaseOffset + (blockBitPos >>> 6)] & (1L << blockBitPos);
+        }
       }
-      // LSB 3 bits is used to locate offset within the block
-      final int wordOffset = combinedHash & DEFAULT_BLOCK_OFFSET_MASK;
-      // Next 6 bits are used to locate offset within a long/word
-      final int bitPos = (combinedHash >>> DEFAULT_BLOCK_SIZE_BITS) & DEFAULT_BIT_OFFSET_MASK;
-      masks[wordOffset] |= (1L << bitPos);
+      return expected == 0;
     }
 
-    // traverse data and masks array together, check for set bits
-    long expected = 0;
-    for (int i = 0; i < DEFAULT_BLOCK_SIZE; i++) {
-      final long mask = masks[i];
-      expected |= (bitSet.data[blockBaseOffset + i] & mask) ^ mask;
+    if (split) {
+      // every bit is in a known word
+      final int firstWord = firstHash >>> (Integer.SIZE - 1 - wordsPerBlockBits);
+      long expected = 0;
+      for (int i = 1; i <= k; i++) {
+        int combinedHash = hash1 + ((i + 1) * hash2);
+        // hashcode should be positive, flip all the bits if it's negative
+        if (combinedHash < 0) {
+          combinedHash = ~combinedHash;
+        }
+        final int blockBitPos = (((firstWord + i) & (wordsPerBlock - 1)) << wordBitsLog2) |
+            (combinedHash & (wordBits - 1));
+        expected |= ~data[blockBaseOffset + (blockBitPos >>> 6)] & (1L << blockBitPos);
+      }
+      return expected == 0;
     }
 
-    // clear the mask for array reuse (this is to avoid masks array allocation in inner loop)
-    Arrays.fill(masks, 0);
+    // check the data words directly, misses of all k bits are or'ed together. test does not write
+    // any state, so the filter can be probed by many threads at once.
+    long expected = 0;
+    if (wordBits == Long.SIZE) {
+      for (int i = 1; i <= k; i++) {
+        int combinedHash = hash1 + ((i + 1) * hash2);
+        // hashcode should be positive, flip all the bits if it's negative
+        if (combinedHash < 0) {
+          combinedHash = ~combinedHash;
+        }
+        // LSB log2(blockSize) bits is used to locate offset within the block
+        final int wordOffset = combinedHash & blockOffsetMask;
+        // Next 6 bits are used to locate offset within a long/word
+        final int bitPos = (combinedHash >>> blockSizeBits) & (Long.SIZE - 1);
+        expected |= ~data[blockBaseOffset + wordOffset] & (1L << bitPos);
+      }
+    } else {
+      for (int i = 1; i <= k; i++) {
+        int combinedHash = hash1 + ((i + 1) * hash2);
+        // hashcode should be positive, flip all the bits if it's negative
+        if (combinedHash < 0) {
+          combinedHash = ~combinedHash;
+        }
+        final int blockBitPos = ((combinedHash & (wordsPerBlock - 1)) << wordBitsLog2) |
+            ((combinedHash >>> wordsPerBlockBits) & (wordBits - 1));
+        expected |= ~data[blockBaseOffset + (blockBitPos >>> 6)] & (1L << blockBitPos);
+      }
+    }
 
     // if all bits are set, expected should be 0
     return expected == 0;
@@ -275,6 +744,26 @@ public class BloomKFilter {
     return fpp;
   }
 
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  public int getWordBits() {
+    return wordBits;
+  }
+
+  public BitPlacement getBitPlacement() {
+    return bitPlacement;
+  }
+
+  public boolean isBlockedSizing() {
+    return blockedSizing;
+  }
+
+  public RangeReduction getRangeReduction() {
+    return reduction;
+  }
+
   public long getExpectedNumEntries() {
     return n;
   }
@@ -282,19 +771,31 @@ public class BloomKFilter {
   /**
    * First 2 entries are expected entries (n) and false positive percentage (fpp). fpp which is a
    * double is serialized as long. The entries following first 2 entries are the actual bit set.
+   * If the filter is created with non-default block geometry, blocked sizing or range reduction,
+   * the options (block size, word bits, bit placement, sizing and reduction) are serialized as the
+   * first entry with MSB set followed by the above format.
    *
    * @return bloom filter as list of long
    */
   public List<Long> serialize() {
     List<Long> serialized = new ArrayList<Long>();
-    serialized.add(n);
-    serialized.add(Double.doubleToLongBits(fpp));
+    for (long l : header()) {
+      serialized.add(l);
+    }
     for (long l : bitSet.getData()) {
       serialized.add(l);
     }
     return serialized;
   }
 
+  // leading entries of serialize() before the bit set
+  private long[] header() {
+    if (!hasDefaultOptions()) {
+      return new long[]{options(), n, Double.doubleToLongBits(fpp)};
+    }
+    return new long[]{n, Double.doubleToLongBits(fpp)};
+  }
+
   /**
    * Check if the specified bloom filter is compatible with the current bloom filter.
    *
@@ -304,7 +805,12 @@ public class BloomKFilter {
   public boolean isCompatible(BloomKFilter that) {
     return this != that &&
         this.getBitSize() == that.getBitSize() &&
-        this.getNumHashFunctions() == that.getNumHashFunctions();
+        this.getNumHashFunctions() == that.getNumHashFunctions() &&
+        this.getBlockSize() == that.getBlockSize() &&
+        this.getWordBits() == that.getWordBits() &&
+        this.getBitPlacement() == that.getBitPlacement() &&
+        this.isBlockedSizing() == that.isBlockedSizing() &&
+        this.getRangeReduction() == that.getRangeReduction();
   }
 
   /**
@@ -317,6 +823,465 @@ public class BloomKFilter {
     this.bitSet.putAll(that.bitSet);
   }
 
+  /**
+   * Merge all the specified bloom filters with current bloom filter. The bitset is split into word
+   * ranges merged in parallel by the common fork-join pool, all the filters are merged into a
+   * range in one pass. Refer {@link ParallelMerge} for details.
+   *
+   * @param filters - bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Collection<BloomKFilter> filters) {
+    List<long[]> sources = new ArrayList<long[]>(filters.size());
+    for (BloomKFilter that : filters) {
+      if (that == this) {
+        continue;
+      }
+      if (!isCompatible(that)) {
+        throw new IllegalArgumentException("Bloom filters are not compatible");
+      }
+      sources.add(that.bitSet.getData());
+    }
+    bitSet.markAllDirty();
+    ParallelMerge.orAll(bitSet.getData(), sources);
+    bitSet.recountSetBits();
+  }
+
+  /**
+   * Merge all the serialized bloom filters (see serialize()) with current bloom filter. Filters are
+   * deserialized and merged in groups, so only a few of them are in memory at a time.
+   *
+   * @param serializedFilters - serialized bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Iterator<List<Long>> serializedFilters) {
+    List<BloomKFilter> group = new ArrayList<BloomKFilter>(ParallelMerge.GROUP_SIZE);
+    while (serializedFilters.hasNext()) {
+      group.add(new BloomKFilter(serializedFilters.next()));
+      if (group.size() == ParallelMerge.GROUP_SIZE || !serializedFilters.hasNext()) {
+        mergeAll(group);
+        group.clear();
+      }
+    }
+  }
+
+  /**
+   * Merge the serialized bloom filter at the current position of the buffer with current bloom
+   * filter, without deserializing it. The buffer should contain the longs of serialize() in big
+   * endian order (as written by DataOutputStream.writeLong()). Position of the buffer is moved past
+   * the serialized bloom filter. Refer {@link SerializedMerge} for details.
+   *
+   * @param buffer - serialized bloom filter to merge
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   *                                  or the buffer is too short
+   */
+  public void mergeFrom(ByteBuffer buffer) {
+    bitSet.markAllDirty();
+    try {
+      SerializedMerge.mergeFrom(header(), bitSet.getData(), buffer);
+    } finally {
+      bitSet.recountSetBits();
+    }
+  }
+
+  /**
+   * Merge the serialized bloom filter read from the stream with current bloom filter, without
+   * deserializing it. See mergeFrom(ByteBuffer) for the format. Exactly the serialized bloom filter
+   * is read from the stream.
+   *
+   * @param in - stream to read the serialized bloom filter from
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   * @throws IOException              if the stream cannot be read or ends early, in which case the
+   *                                  filter may be partially merged
+   */
+  public void mergeFrom(InputStream in) throws IOException {
+    bitSet.markAllDirty();
+    try {
+      SerializedMerge.mergeFrom(header(), bitSet.getData(), in);
+    } finally {
+      bitSet.recountSetBits();
+    }
+  }
+
+  /**
+   * Returns a copy of the filter folded to 1/factor of its size, for filters sized for many more
+   * entries than were added. With POW2 range reduction a key's block is the low bits of its block
+   * hash and its bits within the block do not depend on the number of blocks, so block i of the
+   * folded filter is the OR of blocks i, i + b, i + 2b, ... of this filter (b blocks after
+   * folding) and every key added to this filter tests true in the folded one. The folded filter
+   * has the same k, options and fpp and n / factor expected entries (adjusted if the sizing rounds
+   * differently), so it serializes and merges like any filter of that size. This filter is not
+   * changed.
+   *
+   * @param factor - power of two, at most the number of blocks
+   * @return folded filter
+   * @throws IllegalArgumentException if the filter does not use POW2 range reduction or cannot be
+   *                                  folded by factor
+   */
+  public BloomKFilter fold(int factor) {
+    checkFoldable();
+    if (factor < 1 || Integer.bitCount(factor) != 1 || factor > totalBlockCount ||
+        n / factor < 1) {
+      throw new IllegalArgumentException("Fold factor " + factor + " should be a power of two up" +
+          " to " + Math.min(totalBlockCount, n) + " for this filter");
+    }
+    BloomKFilter folded = foldedFilter(factor);
+    long[] data = bitSet.getData();
+    long[] foldedData = folded.bitSet.getData();
+    for (int from = 0; from < data.length; from += foldedData.length) {
+      for (int i = 0; i < foldedData.length; i++) {
+        foldedData[i] |= data[from + i];
+      }
+    }
+    return folded;
+  }
+
+  /**
+   * Returns the largest fold factor for which the estimated false positive probability of the
+   * folded filter is at most fpp, 1 if the filter cannot be folded that far even once. Folding is
+   * simulated by halving the bitset until the estimate exceeds fpp. The estimate averages
+   * (set bits in block / block bits)^k over the blocks, as a key probes one block.
+   *
+   * @param fpp - target false positive probability of the folded filter
+   * @return factor for fold(int)
+   * @throws IllegalArgumentException if the filter does not use POW2 range reduction
+   */
+  public int foldFactor(double fpp) {
+    assert fpp > 0.0 && fpp < 1.0 : "False positive percentage should be > 0.0 & < 1.0";
+    checkFoldable();
+    long[] words = bitSet.getData();
+    int factor = 1;
+    while (words.length > blockSize && n / (factor * 2L) >= 1) {
+      long[] half = Arrays.copyOf(words, words.length / 2);
+      for (int i = 0; i < half.length; i++) {
+        half[i] |= words[half.length + i];
+      }
+      if (blockFpp(half) > fpp) {
+        break;
+      }
+      words = half;
+      factor *= 2;
+    }
+    return factor;
+  }
+
+  private void checkFoldable() {
+    if (reduction != RangeReduction.POW2) {
+      throw new IllegalArgumentException("Only filters with POW2 range reduction can be folded");
+    }
+  }
+
+  // false positive probability of a filter with this geometry and the words as bitset, averaged
+  // over its blocks
+  double blockFpp(long[] words) {
+    int blockBits = blockSize * Long.SIZE;
+    // probability that k bits are set in a block with the given number of set bits
+    double[] probability = new double[blockBits + 1];
+    for (int bits = 0; bits <= blockBits; bits++) {
+      probability[bits] = Math.pow((double) bits / blockBits, k);
+    }
+    double sum = 0;
+    for (int block = 0; block < words.length; block += blockSize) {
+      int bits = 0;
+      for (int i = block; i < block + blockSize; i++) {
+        bits += Long.bitCount(words[i]);
+      }
+      sum += probability[bits];
+    }
+    return sum / (words.length / blockSize);
+  }
+
+  // empty filter with 1/factor of the bits and the same k and options. Expected entries are
+  // n / factor, or the nearest value that is sized to the same bits and k.
+  private BloomKFilter foldedFilter(int factor) {
+    long foldedBits = m / factor;
+    long expected = n / factor;
+    for (int i = 0; i <= 2 * FOLD_SEARCH; i++) {
+      // n / factor, n / factor + 1, n / factor - 1, ...
+      long candidate = expected + ((i & 1) == 0 ? i / 2 : -(i + 1) / 2);
+      if (candidate < 1) {
+        continue;
+      }
+      BloomKFilter folded = new BloomKFilter(candidate, fpp, blockSize, wordBits, bitPlacement,
+          blockedSizing, reduction, false);
+      if (folded.m == foldedBits && folded.k == k) {
+        folded.bitSet = new BitSet(foldedBits);
+        return folded;
+      }
+    }
+    throw new IllegalArgumentException("No filter of " + foldedBits + " bits with " + k +
+        " hash functions near " + expected + " expected entries, cannot fold by " + factor);
+  }
+
+  /**
+   * Writes the filter in the versioned and checksummed container format, refer
+   * {@link FilterContainer} for the layout. If dirty pages are tracked, this is a full checkpoint
+   * and the following writeDelta() only writes the pages changed after it.
+   *
+   * @param out - stream to write to
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    writeTo(out, FilterContainer.Variant.BLOOM_K, FilterContainer.HASH_MURMUR3);
+  }
+
+  // used by the primitive key filters which hash the keys differently
+  void writeTo(OutputStream out, FilterContainer.Variant variant, int hash) throws IOException {
+    FilterContainer.write(out, variant, hash, Murmur3.DEFAULT_SEED, k, m, n, fpp, options(),
+        FilterContainer.UNKNOWN_COUNT, bitSet.getData());
+    bitSet.clearDirtyPages();
+  }
+
+  /**
+   * Reads a filter written by writeTo(). The header is validated (magic, version, variant, hash
+   * function) and the checksum is verified while the bit set is read.
+   *
+   * @param in - stream to read from
+   * @return bloom filter
+   * @throws IOException if the container is not a Bloom-K filter, is corrupt or truncated
+   */
+  public static BloomKFilter readFrom(InputStream in) throws IOException {
+    return readFrom(in, FilterContainer.Variant.BLOOM_K, FilterContainer.HASH_MURMUR3);
+  }
+
+  static BloomKFilter readFrom(InputStream in, FilterContainer.Variant variant, int hash)
+      throws IOException {
+    FilterContainer.Header header = FilterContainer.readHeader(in, variant, hash,
+        Murmur3.DEFAULT_SEED);
+    header.checkOptions(isValidOptions(header.options));
+    BloomKFilter bf = layout(header.n, header.fpp, header.options);
+    header.checkLayout(bf.k, bf.m);
+    bf.bitSet = new BitSet(bf.m);
+    header.readData(in, bf.bitSet.getData());
+    return bf;
+  }
+
+  /**
+   * Starts tracking the pages of the bitset changed by add, merge and clear, so that only those
+   * pages are written by {@link #writeDelta(WritableByteChannel)}. Pages are 4KB (512 words), see
+   * {@link DeltaCheckpoint}. Tracking costs one extra store per add. Changes made through the array
+   * returned by getBitSet() are not tracked.
+   */
+  public void trackDirtyPages() {
+    bitSet.trackDirtyPages();
+  }
+
+  /**
+   * Returns the number of pages changed since the last checkpoint (writeDelta() or writeTo()), 0
+   * if dirty pages are not tracked.
+   */
+  public int getDirtyPageCount() {
+    return bitSet.dirtyPages == null ? 0 :
+        DeltaCheckpoint.dirtyPageCount(bitSet.dirtyPages, bitSet.numPages());
+  }
+
+  /**
+   * Writes the pages changed since the last checkpoint (writeDelta() or writeTo()) and makes this
+   * the last checkpoint. Applying the deltas in order with applyDelta() on a filter read from the
+   * full checkpoint restores this filter. Dirty pages should be tracked from the full checkpoint
+   * on, see {@link #trackDirtyPages()}.
+   *
+   * @param channel - channel to write to
+   * @return number of bytes written
+   * @throws IllegalStateException if dirty pages are not tracked
+   */
+  public long writeDelta(WritableByteChannel channel) throws IOException {
+    if (bitSet.dirtyPages == null) {
+      throw new IllegalStateException(
+          "Dirty pages are not tracked, call trackDirtyPages() after the full checkpoint");
+    }
+    return DeltaCheckpoint.writeDelta(channel, bitSet.getData(), bitSet.dirtyPages, k);
+  }
+
+  /**
+   * Copies the pages of a delta written by writeDelta() into the bitset. If the delta is corrupt
+   * or truncated, the pages read so far are already copied and the filter should be reloaded
+   * from the last full checkpoint.
+   *
+   * @param channel - channel to read the delta from
+   * @throws IOException if the delta is for a filter of different size, corrupt or truncated
+   */
+  public void applyDelta(ReadableByteChannel channel) throws IOException {
+    try {
+      DeltaCheckpoint.applyDelta(channel, bitSet.getData(), bitSet.dirtyPages, k);
+    } finally {
+      bitSet.recountSetBits();
+    }
+  }
+
+  /**
+   * Starts maintaining the number of set bits on add, merge and clear, so that getSetBitCount(),
+   * fillRatio() and estimatedCount() are O(1). Counting costs a popcount of the block before and
+   * after every add, about 15ns per add for filters larger than the cache. Changes made through
+   * the array returned by getBitSet() are not counted.
+   */
+  public void trackSetBits() {
+    bitSet.trackSetBits();
+  }
+
+  /**
+   * Returns the number of set bits, counted over the whole bitset unless set bits are tracked
+   * (see {@link #trackSetBits()}).
+   */
+  public long getSetBitCount() {
+    return bitSet.setBits >= 0 ? bitSet.setBits : bitSet.bitCount();
+  }
+
+  /**
+   * Returns the fraction of the bits that are set.
+   */
+  public double fillRatio() {
+    return (double) getSetBitCount() / m;
+  }
+
+  /**
+   * Estimates the number of distinct keys added from the number of set bits, with the
+   * Swamidass-Baldi estimator n = -(m / d) ln(1 - X / m). A key sets its bits in one block, and
+   * they can collide within it, so d is the expected number of distinct bits a key sets in its
+   * block rather than k. Keys land in blocks as Poisson arrivals and each sets a given bit of
+   * its block with probability d / (block bits), so the expected fill is exactly 1 - e^(-n d / m)
+   * however unevenly the blocks fill.
+   *
+   * @return estimated number of keys, Long.MAX_VALUE if all the bits are set
+   */
+  public long estimatedCount() {
+    return Math.round(-m / distinctBitsPerKey() * Math.log1p(-fillRatio()));
+  }
+
+  // expected number of distinct bits a key sets in its block. ANY placement throws k bits into the
+  // whole block, SPLIT spreads them evenly over min(k, wordsPerBlock) words of the block.
+  private double distinctBitsPerKey() {
+    final int words = split ? Math.min(k, wordsPerBlock) : 1;
+    final int bits = split ? wordBits : blockSize * Long.SIZE;
+    final int lo = k / words;
+    final int numHi = k % words;
+    return (words - numHi) * distinctBits(bits, lo) + numHi * distinctBits(bits, lo + 1);
+  }
+
+  // expected number of distinct bits set by throwing numThrows bits into a word of wordBits bits
+  private static double distinctBits(int wordBits, int numThrows) {
+    return -wordBits * Math.expm1(numThrows * Math.log1p(-1.0 / wordBits));
+  }
+
+  /**
+   * Estimates the false positive probability with estimatedCount() keys. Blocks fill unevenly and
+   * the fuller blocks dominate, so the probability is taken from the Poisson mixture over block
+   * loads of {@link BloomFilterSizing} instead of fillRatio()^k. The actual fpp is higher where
+   * the model is optimistic, most of all for filters without blocked sizing whose bit positions
+   * come from double hashing, see BloomFilterSizing. The model does not depend on the size of the
+   * filter, it takes about 0.1ms for the default geometry.
+   *
+   * @return estimated false positive probability
+   */
+  public double estimatedFpp() {
+    final long count = estimatedCount();
+    if (count == Long.MAX_VALUE) {
+      return 1.0;
+    }
+    return BloomFilterSizing.forBloomK(blockSize, wordBits, bitPlacement)
+        .falsePositiveProbability(count, m, k);
+  }
+
+  /**
+   * Returns the number of bits set in both this and the specified filter, without creating the
+   * intersection. Refer {@link BitSetOverlap} for details.
+   *
+   * @param that - compatible bloom filter
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long andBitCount(BloomKFilter that) {
+    checkComparable(that);
+    return BitSetOverlap.andBitCount(bitSet.data, that.bitSet.data);
+  }
+
+  /**
+   * Returns the number of bits set in this or the specified filter, without merging them.
+   *
+   * @param that - compatible bloom filter
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long orBitCount(BloomKFilter that) {
+    checkComparable(that);
+    return BitSetOverlap.orBitCount(bitSet.data, that.bitSet.data);
+  }
+
+  /**
+   * Estimates the number of distinct keys added to this or the specified filter, the
+   * estimatedCount() of the two filters merged. Refer {@link #estimatedCount()}.
+   *
+   * @param that - compatible bloom filter
+   * @return estimated number of keys, Long.MAX_VALUE if the merged filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long estimatedUnionCount(BloomKFilter that) {
+    return Math.round(BitSetOverlap.unionCount(overlapBitCounts(that), m, distinctBitsPerKey()));
+  }
+
+  /**
+   * Estimates the number of distinct keys added to both this and the specified filter, as
+   * estimatedCount() of each minus the estimated union. The bitsets are read once, or only their
+   * AND is counted if both filters track their set bits (see {@link #trackSetBits()}). The
+   * absolute error is about that of the union, so small intersections of large sets are noisy.
+   *
+   * @param that - compatible bloom filter
+   * @return estimated number of keys in both filters, -1 if the merged filter would be full and
+   * the intersection cannot be estimated
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long estimatedIntersectionCount(BloomKFilter that) {
+    final double intersection = BitSetOverlap.intersectionCount(overlapBitCounts(that), m,
+        distinctBitsPerKey());
+    return Double.isNaN(intersection) ? -1 : Math.round(intersection);
+  }
+
+  /**
+   * Estimates the Jaccard similarity |A and B| / |A or B| of the keys added to this (A) and the
+   * specified filter (B). Refer {@link #estimatedIntersectionCount(BloomKFilter)}.
+   *
+   * @param that - compatible bloom filter
+   * @return estimated similarity in [0, 1], 0 if both filters are empty and NaN if the merged
+   * filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public double estimatedJaccard(BloomKFilter that) {
+    return BitSetOverlap.jaccard(overlapBitCounts(that), m, distinctBitsPerKey());
+  }
+
+  /**
+   * Estimates the fraction |A and B| / |A| of the keys added to this filter (A) that were also
+   * added to the specified filter (B). Refer {@link #estimatedIntersectionCount(BloomKFilter)}.
+   *
+   * @param that - compatible bloom filter
+   * @return estimated containment in [0, 1], 0 if this filter is empty and NaN if the merged
+   * filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public double estimatedContainment(BloomKFilter that) {
+    return BitSetOverlap.containment(overlapBitCounts(that), m, distinctBitsPerKey());
+  }
+
+  private long[] overlapBitCounts(BloomKFilter that) {
+    checkComparable(that);
+    if (bitSet.setBits >= 0 && that.bitSet.setBits >= 0) {
+      return BitSetOverlap.bitCounts(bitSet.data, that.bitSet.data, bitSet.setBits,
+          that.bitSet.setBits);
+    }
+    return BitSetOverlap.bitCounts(bitSet.data, that.bitSet.data);
+  }
+
+  // a filter can be compared with itself, unlike merged
+  private void checkComparable(BloomKFilter that) {
+    if (that != this && !isCompatible(that)) {
+      throw new IllegalArgumentException("Bloom filters are not compatible");
+    }
+  }
+
+  /**
+   * Clears all the bits in the bloom filter. The underlying bitset is reused, no reallocation happens.
+   */
+  public void clear() {
+    bitSet.clear();
+  }
+
   public long getNumBits() {
     return m;
   }
@@ -330,6 +1295,11 @@ public class BloomKFilter {
    */
   public static class BitSet {
     final long[] data;
+    // one bit per page of PAGE_WORDS words changed since the last checkpoint, null
+    // if not tracked
+    long[] dirtyPages;
+    // number of set bits, -1 if not tracked
+    long setBits = -1;
 
     public BitSet(long bits) {
       this(new long[(int) Math.ceil((double) bits / (double) Long.SIZE)]);
@@ -375,15 +1345,86 @@ public class BloomKFilter {
       return data;
     }
 
+    /**
+     * Clear the bit set.
+     */
+    public void clear() {
+      markAllDirty();
+      Arrays.fill(data, 0);
+      if (setBits >= 0) {
+        setBits = 0;
+      }
+    }
+
+    int numPages() {
+      return DeltaCheckpoint.numPages(data.length);
+    }
+
+    void trackDirtyPages() {
+      if (dirtyPages == null) {
+        dirtyPages = new long[(numPages() + Long.SIZE - 1) / Long.SIZE];
+      }
+    }
+
+    // marks the page of the word, dirty pages should be tracked
+    void markDirty(int wordIndex) {
+      final int page = wordIndex >>> PAGE_WORDS_BITS;
+      dirtyPages[page >>> 6] |= 1L << page;
+    }
+
+    void markAllDirty() {
+      if (dirtyPages != null) {
+        Arrays.fill(dirtyPages, -1L);
+      }
+    }
+
+    void trackSetBits() {
+      if (setBits < 0) {
+        setBits = bitCount();
+      }
+    }
+
+    // recounts the set bits after a change to the whole bitset, if they are tracked
+    void recountSetBits() {
+      if (setBits >= 0) {
+        setBits = bitCount();
+      }
+    }
+
+    long bitCount() {
+      long bits = 0;
+      for (long word : data) {
+        bits += Long.bitCount(word);
+      }
+      return bits;
+    }
+
+    // set bits of the words [from, from + count)
+    int bitCount(int from, int count) {
+      int bits = 0;
+      for (int i = from; i < from + count; i++) {
+        bits += Long.bitCount(data[i]);
+      }
+      return bits;
+    }
+
+    void clearDirtyPages() {
+      if (dirtyPages != null) {
+        Arrays.fill(dirtyPages, 0);
+      }
+    }
+
     /**
      * Combines the two BitArrays using bitwise OR.
      */
     void putAll(BitSet array) {
       assert data.length == array.data.length :
           "BitArrays must be of equal length (" + data.length + "!= " + array.data.length + ")";
+      markAllDirty();
       for (int i = 0; i < data.length; i++) {
         data[i] |= array.data[i];
       }
+      recountSetBits();
     }
   }
 }
@@ -0,0 +1,558 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+/**
+ * Probe kernels of {@link BloomKFilter} specialized for a fixed number of hash functions.
+ * <p/>
+ * The generic add/test loops run k iterations where k is only known at runtime, so the JIT keeps
+ * the loop (or partially unrolls it with a remainder loop) around the k dependent iterations.
+ * A kernel is picked once when the filter is created and its straight-line code lets the
+ * JIT schedule the k independent loads and keep everything in registers. test() does not exit
+ * early, misses of all k bits are or'ed together and checked once.
+ * <p/>
+ * Kernels exist for k in [{@link #MIN_K}, {@link #MAX_K}] with the default block geometry (8 longs
+ * per block, 64-bit words, {@link BloomKFilter.BitPlacement#ANY}) and classic sizing. They set and
+ * check exactly the same bits as the generic loops, so filters are interchangeable. Set system
+ * property {@value #DISABLE_PROPERTY} to true to always use the generic loops.
+ * <p/>
+ * Bit i (1-based) of a key uses combined hash c = hash1 + (i + 1) * hash2, made positive by
+ * flipping all the bits (c ^ (c >> 31) is the branch free form of the ~c in BloomKFilter). 3 LSBs
+ * of c locate the long within the block and the next 6 bits locate the bit within the long.
+ * The classes below are identical except for the number of unrolled steps.
+ */
+abstract class BloomKKernel {
+  static final String DISABLE_PROPERTY = "bloomfilter.kernels.disable";
+  static final int MIN_K = 3;
+  static final int MAX_K = 10;
+  private static final boolean DISABLED = Boolean.getBoolean(DISABLE_PROPERTY);
+
+  /**
+   * Returns kernel for the specified geometry or null if there is none and generic loops should be
+   * used.
+   */
+  static BloomKKernel forGeometry(int k, int blockSize, int wordBits,
+      BloomKFilter.BitPlacement bitPlacement, boolean blockedSizing) {
+    if (DISABLED || blockSize != 8 || wordBits != Long.SIZE ||
+        bitPlacement != BloomKFilter.BitPlacement.ANY || blockedSizing) {
+      return null;
+    }
+    switch (k) {
+      case 3:
+        return new K3();
+      case 4:
+        return new K4();
+      case 5:
+        return new K5();
+      case 6:
+        return new K6();
+      case 7:
+        return new K7();
+      case 8:
+        return new K8();
+      case 9:
+        return new K9();
+      case 10:
+        return new K10();
+      default:
+        return null;
+    }
+  }
+
+  abstract int getNumHashFunctions();
+
+  /**
+   * Sets the k bits of a key in the block starting at blockBaseOffset.
+   */
+  abstract void add(long[] data, int blockBaseOffset, int hash1, int hash2);
+
+  /**
+   * Returns true if all the k bits of a key are set in the block starting at blockBaseOffset.
+   */
+  abstract boolean test(long[] data, int blockBaseOffset, int hash1, int hash2);
+
+  static final class K3 extends BloomKKernel {
+    @Override
+    int getNumHashFunctions() {
+      return 3;
+    }
+
+    @Override
+    void add(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+    }
+
+    @Override
+    boolean test(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      long miss = ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      return miss == 0;
+    }
+  }
+
+  static final class K4 extends BloomKKernel {
+    @Override
+    int getNumHashFunctions() {
+      return 4;
+    }
+
+    @Override
+    void add(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+    }
+
+    @Override
+    boolean test(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      long miss = ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      return miss == 0;
+    }
+  }
+
+  static final class K5 extends BloomKKernel {
+    @Override
+    int getNumHashFunctions() {
+      return 5;
+    }
+
+    @Override
+    void add(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+    }
+
+    @Override
+    boolean test(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      long miss = ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      return miss == 0;
+    }
+  }
+
+  static final class K6 extends BloomKKernel {
+    @Override
+    int getNumHashFunctions() {
+      return 6;
+    }
+
+    @Override
+    void add(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+    }
+
+    @Override
+    boolean test(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      long miss = ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      return miss == 0;
+    }
+  }
+
+  static final class K7 extends BloomKKernel {
+    @Override
+    int getNumHashFunctions() {
+      return 7;
+    }
+
+    @Override
+    void add(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+    }
+
+    @Override
+    boolean test(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      long miss = ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      return miss == 0;
+    }
+  }
+
+  static final class K8 extends BloomKKernel {
+    @Override
+    int getNumHashFunctions() {
+      return 8;
+    }
+
+    @Override
+    void add(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+    }
+
+    @Override
+    boolean test(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      long miss = ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      return miss == 0;
+    }
+  }
+
+  static final class K9 extends BloomKKernel {
+    @Override
+    int getNumHashFunctions() {
+      return 9;
+    }
+
+    @Override
+    void add(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+    }
+
+    @Override
+    boolean test(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      long miss = ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      return miss == 0;
+    }
+  }
+
+  static final class K10 extends BloomKKernel {
+    @Override
+    int getNumHashFunctions() {
+      return 10;
+    }
+
+    @Override
+    void add(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+      c += hash2;
+      h = c ^ (c >> 31);
+      data[blockBaseOffset + (h & 7)] |= 1L << (h >>> 3);
+    }
+
+    @Override
+    boolean test(long[] data, int blockBaseOffset, int hash1, int hash2) {
+      int c = hash1 + hash2;
+      int h;
+      c += hash2;
+      h = c ^ (c >> 31);
+      long miss = ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      c += hash2;
+      h = c ^ (c >> 31);
+      miss |= ~data[blockBaseOffset + (h & 7)] & (1L << (h >>> 3));
+      return miss == 0;
+    }
+  }
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thread safe variant of {@link DynamicBloomFilter}. Many threads can add and test keys
+ * concurrently without locks.
+ * <p/>
+ * Each row is a standard bloom filter whose bits are stored in an {@link AtomicLongArray} and set
+ * with compare-and-set, so concurrent adds to the same word are not lost. The capacity of a row
+ * (maxNumEntries keys) is handed out to writer stripes (about one per processor, picked by thread
+ * id) in chunks of about maxNumEntries / (64 * stripes) keys. An add takes a slot from the chunk of
+ * its stripe, a counter on a cache line of its own, and only touches the shared counter of the row
+ * when the chunk runs out. Writers therefore neither update nor read each other's counters on
+ * every add. When no capacity is left in the active (last) row, a thread appends a new row by
+ * swapping in a copy of the matrix with compare-and-set. If several threads race to grow the
+ * matrix, only one of them wins and the others add to the row appended by the winner.
+ * <p/>
+ * Readers test against the matrix as of the start of the test, rows appended later are not seen.
+ * A row never records more keys than the threshold. Slots left in the chunks of other stripes
+ * when a row runs out are not used, so a row can record up to a chunk per stripe fewer keys (about
+ * maxNumEntries / 64 in total). With a single writer, rows are filled exactly as in
+ * DynamicBloomFilter.
+ * <p/>
+ * Bit positions are the same as {@link BloomFilter} with {@link RangeReduction#MODULO}, so rows can
+ * be copied into standard bloom filters with {@link #getMatrix()}.
+ */
+public class ConcurrentDynamicBloomFilter {
+  // longs per stripe counter, so that stripes do not share (adjacent) cache lines
+  private static final int STRIPE_PAD = 16;
+  // a row hands out at most this fraction of its capacity to a stripe at a time
+  private static final int CHUNKS_PER_STRIPE = 64;
+  /**
+   * Threshold for the maximum number of key to record in a dynamic Bloom filter row.
+   */
+  private final long nr;
+  private final double fpp;
+  // bits and hash functions of each row
+  private final int m;
+  private final int k;
+  // number of writer stripes (power of two) and the capacity reserved by a stripe at a time
+  private final int numStripes;
+  private final long chunkSize;
+
+  /**
+   * The matrix of Bloom filter. Rows are only appended, by replacing the array.
+   */
+  private final AtomicReference<Row[]> matrix;
+
+  public ConcurrentDynamicBloomFilter(long maxNumEntries) {
+    this(maxNumEntries, BloomFilter.DEFAULT_FPP);
+  }
+
+  public ConcurrentDynamicBloomFilter(long maxNumEntries, double fpp) {
+    assert maxNumEntries > 0 : "maxNumEntries should be > 0";
+    assert fpp > 0.0 && fpp < 1.0 : "False positive percentage should be > 0.0 & < 1.0";
+    this.nr = maxNumEntries;
+    this.fpp = fpp;
+    this.m = BloomFilter.optimalNumOfBits(maxNumEntries, fpp);
+    this.k = BloomFilter.optimalNumOfHashFunctions(maxNumEntries, m);
+    this.numStripes = RangeReduction.nextPowerOfTwo(
+        Math.min(Runtime.getRuntime().availableProcessors(), 1 << 10));
+    this.chunkSize = Math.max(1, maxNumEntries / ((long) numStripes * CHUNKS_PER_STRIPE));
+    this.matrix = new AtomicReference<Row[]>(new Row[]{new Row()});
+  }
+
+  public void addByte(byte val) {
+    addBytes(new byte[]{val});
+  }
+
+  public void addInt(int val) {
+    // puts int in little endian order
+    addBytes(intToByteArrayLE(val));
+  }
+
+  public void addLong(long val) {
+    // same as hashing the long in little endian order
+    addHash(Murmur3.hash64(val));
+  }
+
+  public void addFloat(float val) {
+    addInt(Float.floatToIntBits(val));
+  }
+
+  public void addDouble(double val) {
+    addLong(Double.doubleToLongBits(val));
+  }
+
+  public void addString(String val) {
+    addBytes(val.getBytes());
+  }
+
+  public void addBytes(byte[] val) {
+    addHash(Murmur3.hash64(val));
+  }
+
+  private void addHash(long hash64) {
+    Row row = getActiveRow();
+    int hash1 = (int) hash64;
+    int hash2 = (int) (hash64 >>> 32);
+    for (int i = 1; i <= k; i++) {
+      row.set(position(hash1 + (i * hash2)));
+    }
+  }
+
+  public boolean testByte(byte val) {
+    return testBytes(new byte[]{val});
+  }
+
+  public boolean testInt(int val) {
+    return testBytes(intToByteArrayLE(val));
+  }
+
+  public boolean testLong(long val) {
+    return testHash(Murmur3.hash64(val));
+  }
+
+  public boolean testFloat(float val) {
+    return testInt(Float.floatToIntBits(val));
+  }
+
+  public boolean testDouble(double val) {
+    return testLong(Double.doubleToLongBits(val));
+  }
+
+  public boolean testString(String val) {
+    return testBytes(val.getBytes());
+  }
+
+  public boolean testBytes(byte[] val) {
+    return testHash(Murmur3.hash64(val));
+  }
+
+  private boolean testHash(long hash64) {
+    int hash1 = (int) hash64;
+    int hash2 = (int) (hash64 >>> 32);
+    for (Row row : matrix.get()) {
+      if (row.test(hash1, hash2)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // same as BloomFilter.position() with modulo reduction
+  private int position(int combinedHash) {
+    // hashcode should be positive, flip all the bits if it's negative
+    if (combinedHash < 0) {
+      combinedHash = ~combinedHash;
+    }
+    return combinedHash % m;
+  }
+
+  /**
+   * Returns the active (last) row with a slot taken for the key, appending a new row if it is full.
+   */
+  private Row getActiveRow() {
+    final int stripe = (int) Thread.currentThread().getId() & (numStripes - 1);
+    Row[] rows = matrix.get();
+    Row row = rows[rows.length - 1];
+    while (!row.take(stripe)) {
+      Row[] tmp = Arrays.copyOf(rows, rows.length + 1);
+      tmp[rows.length] = new Row();
+      if (!matrix.compareAndSet(rows, tmp)) {
+        // another thread appended a row, check whether that one has space
+        tmp = matrix.get();
+      }
+      rows = tmp;
+      row = rows[rows.length - 1];
+    }
+    return row;
+  }
+
+  private static byte[] intToByteArrayLE(int val) {
+    return new byte[]{(byte) (val >> 0),
+        (byte) (val >> 8),
+        (byte) (val >> 16),
+        (byte) (val >> 24)};
+  }
+
+  public long getBitsetSize() {
+    return (long) matrix.get().length * m;
+  }
+
+  // this is configured value, not actual value
+  public double getFalsePositivePercent() {
+    return fpp;
+  }
+
+  /**
+   * Number of keys added so far. Adds which are still in progress may or may not be counted, and
+   * the count can be off by a chunk while a writer reserves one.
+   */
+  public long getNumEntries() {
+    long result = 0;
+    for (Row row : matrix.get()) {
+      result += row.count();
+    }
+    return result;
+  }
+
+  /**
+   * Copies the rows into standard bloom filters. The copy has the rows present at the time of the
+   * call, bits set by concurrent adds may or may not be copied.
+   *
+   * @return bloom filter for each row
+   */
+  public BloomFilter[] getMatrix() {
+    Row[] rows = matrix.get();
+    BloomFilter[] result = new BloomFilter[rows.length];
+    for (int r = 0; r < rows.length; r++) {
+      result[r] = new BloomFilter(nr, fpp);
+      long[] data = result[r].getBitSet();
+      for (int i = 0; i < data.length; i++) {
+        data[i] = rows[r].bits.get(i);
+      }
+    }
+    return result;
+  }
+
+  private final class Row {
+    private final AtomicLongArray bits;
+    // capacity not yet reserved by any stripe
+    private final AtomicLong unreserved = new AtomicLong(nr);
+    // per stripe, slots left in its chunk (at stripe * STRIPE_PAD) and capacity reserved so far
+    // (the next long)
+    private final AtomicLongArray stripes = new AtomicLongArray(numStripes * STRIPE_PAD);
+
+    Row() {
+      this.bits = new AtomicLongArray((int) Math.ceil((double) m / (double) Long.SIZE));
+    }
+
+    // takes a slot for a key from the chunk of the stripe, reserving a new chunk when it runs out.
+    // Returns false if the row has no capacity left.
+    boolean take(int stripe) {
+      final int slot = stripe * STRIPE_PAD;
+      while (true) {
+        final long left = stripes.get(slot);
+        if (left > 0) {
+          if (stripes.compareAndSet(slot, left, left - 1)) {
+            return true;
+          }
+          continue;
+        }
+        final long available = unreserved.get();
+        if (available <= 0) {
+          return false;
+        }
+        final long chunk = Math.min(available, chunkSize);
+        if (unreserved.compareAndSet(available, available - chunk)) {
+          stripes.addAndGet(slot + 1, chunk);
+          stripes.addAndGet(slot, chunk);
+        }
+      }
+    }
+
+    long count() {
+      long taken = 0;
+      for (int slot = 0; slot < stripes.length(); slot += STRIPE_PAD) {
+        taken += stripes.get(slot + 1) - stripes.get(slot);
+      }
+      return taken;
+    }
+
+    void set(int index) {
+      final int i = index >>> 6;
+      final long mask = 1L << index;
+      long word = bits.get(i);
+      // skip the CAS when the bit is already set, common once the row fills up
+      while ((word & mask) == 0 && !bits.compareAndSet(i, word, word | mask)) {
+        word = bits.get(i);
+      }
+    }
+
+    boolean test(int hash1, int hash2) {
+      for (int i = 1; i <= k; i++) {
+        final int index = position(hash1 + (i * hash2));
+        if ((bits.get(index >>> 6) & (1L << index)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.Checksum;
+
+/**
+ * Delta checkpoints of a bit set with dirty page tracking, written by writeDelta() and applied by
+ * applyDelta() of the filters.
+ * <p/>
+ * The bit set is divided into pages of {@link BloomKFilter#PAGE_WORDS} words (4KB). Inserts set
+ * the bit of the page they touch in a dirty page bitmap (one bit per page) and a delta carries only
+ * the dirty pages, so the size of a checkpoint depends on the number of pages changed since the
+ * previous one and not on the size of the filter. Pages are copied as is, so deltas restore the
+ * filter exactly (including clear()) when applied in order on top of the full checkpoint
+ * (writeTo()) they follow.
+ * <pre>
+ * offset size
+ *  0     4    magic "BLMD"
+ *  4     1    version (1)
+ *  5     1    checksum (1 - CRC32C, 2 - CRC32), as in {@link FilterContainer}
+ *  6     2    reserved (0)
+ *  8     4    words per page (512)
+ * 12     4    number of hash functions (k)
+ * 16     8    number of words of the bit set
+ * 24     8    number of pages in the delta
+ * 32          pages in increasing page order, each a 4 byte page index followed by the words of
+ *             the page (fewer for the last page of the bit set)
+ * ...    8    checksum of all the preceding bytes
+ * </pre>
+ * All the fields are little endian.
+ */
+class DeltaCheckpoint {
+  static final int MAGIC = 0x444D4C42; // "BLMD" in little endian
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+  // pages written to the channel at a time
+  private static final int PAGES_PER_WRITE = 16;
+  private static final int RECORD_SIZE = 4 + BloomKFilter.PAGE_WORDS * 8;
+
+  private DeltaCheckpoint() {
+  }
+
+  static int numPages(int numWords) {
+    return (numWords + BloomKFilter.PAGE_WORDS - 1) >>> BloomKFilter.PAGE_WORDS_BITS;
+  }
+
+  static int dirtyPageCount(long[] dirtyPages, int numPages) {
+    int count = 0;
+    for (int i = 0; i < dirtyPages.length; i++) {
+      long word = dirtyPages[i];
+      if (i == dirtyPages.length - 1 && (numPages & (Long.SIZE - 1)) != 0) {
+        word &= (1L << numPages) - 1;
+      }
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  /**
+   * Writes the dirty pages of data and clears dirtyPages once all of them are written.
+   *
+   * @return number of bytes written
+   */
+  static long writeDelta(WritableByteChannel channel, long[] data, long[] dirtyPages, int k)
+      throws IOException {
+    int numPages = numPages(data.length);
+    int checksumType = FilterContainer.defaultChecksumType();
+    Checksum checksum = FilterContainer.newChecksum(checksumType);
+    byte[] bytes = new byte[PAGES_PER_WRITE * RECORD_SIZE];
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC)
+        .put((byte) VERSION)
+        .put((byte) checksumType)
+        .putShort((short) 0)
+        .putInt(BloomKFilter.PAGE_WORDS)
+        .putInt(k)
+        .putLong(data.length)
+        .putLong(dirtyPageCount(dirtyPages, numPages));
+    long written = flush(channel, buffer, checksum);
+
+    for (int i = 0; i < dirtyPages.length; i++) {
+      long word = dirtyPages[i];
+      while (word != 0) {
+        int page = (i << 6) + Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+        if (page >= numPages) {
+          break;
+        }
+        int from = page << BloomKFilter.PAGE_WORDS_BITS;
+        int count = Math.min(BloomKFilter.PAGE_WORDS, data.length - from);
+        if (buffer.remaining() < RECORD_SIZE) {
+          written += flush(channel, buffer, checksum);
+        }
+        buffer.putInt(page);
+        LongBuffer words = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        words.put(data, from, count);
+        buffer.position(buffer.position() + count * 8);
+      }
+    }
+    written += flush(channel, buffer, checksum);
+
+    buffer.putLong(checksum.getValue());
+    buffer.flip();
+    written += buffer.remaining();
+    writeFully(channel, buffer);
+    Arrays.fill(dirtyPages, 0);
+    return written;
+  }
+
+  // writes the buffered bytes and adds them to the checksum, buffer is cleared for reuse
+  private static int flush(WritableByteChannel channel, ByteBuffer buffer, Checksum checksum)
+      throws IOException {
+    buffer.flip();
+    int length = buffer.remaining();
+    checksum.update(buffer.array(), 0, length);
+    writeFully(channel, buffer);
+    buffer.clear();
+    return length;
+  }
+
+  private static void writeFully(WritableByteChannel channel, ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Reads a delta written by writeDelta() and copies its pages into data. Pages are copied as they
+   * are read, so if the delta turns out to be truncated or corrupt the bit set is partially
+   * updated and should be restored from the last full checkpoint. Pages copied are marked in
+   * dirtyPages if it is not null.
+   *
+   * @throws IOException if the delta is for a different bit set, corrupt or truncated
+   */
+  static void applyDelta(ReadableByteChannel channel, long[] data, long[] dirtyPages, int k)
+      throws IOException {
+    byte[] bytes = new byte[RECORD_SIZE];
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    readFully(channel, buffer, HEADER_SIZE);
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("Not a bloom filter delta");
+    }
+    int version = buffer.get();
+    if (version != VERSION) {
+      throw new IOException("Unsupported delta version " + version);
+    }
+    Checksum checksum = FilterContainer.newChecksum(buffer.get());
+    buffer.getShort();
+    int pageWords = buffer.getInt();
+    int deltaK = buffer.getInt();
+    long numWords = buffer.getLong();
+    long numDeltaPages = buffer.getLong();
+    if (pageWords != BloomKFilter.PAGE_WORDS || deltaK != k || numWords != data.length) {
+      throw new IOException("Delta (k = " + deltaK + ", words = " + numWords + ", page words = " +
+          pageWords + ") does not match the filter (k = " + k + ", words = " + data.length + ")");
+    }
+    int numPages = numPages(data.length);
+    if (numDeltaPages < 0 || numDeltaPages > numPages) {
+      throw new IOException("Invalid number of pages " + numDeltaPages + " in delta");
+    }
+    checksum.update(bytes, 0, HEADER_SIZE);
+
+    LongBuffer words = ByteBuffer.wrap(bytes, 4, RECORD_SIZE - 4).slice()
+        .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+    int lastPage = -1;
+    for (long p = 0; p < numDeltaPages; p++) {
+      readFully(channel, buffer, 4);
+      int page = buffer.getInt(0);
+      if (page <= lastPage || page >= numPages) {
+        throw new IOException("Invalid page " + page + " in delta, delta is corrupt");
+      }
+      lastPage = page;
+      int from = page << BloomKFilter.PAGE_WORDS_BITS;
+      int count = Math.min(BloomKFilter.PAGE_WORDS, data.length - from);
+      buffer.limit(4 + count * 8);
+      buffer.position(4);
+      readFully(channel, buffer);
+      checksum.update(bytes, 0, 4 + count * 8);
+      words.clear();
+      words.get(data, from, count);
+      if (dirtyPages != null) {
+        dirtyPages[page >>> 6] |= 1L << page;
+      }
+    }
+
+    readFully(channel, buffer, 8);
+    if (buffer.getLong(0) != checksum.getValue()) {
+      throw new IOException("Checksum mismatch, delta is corrupt");
+    }
+  }
+
+  // reads length bytes to the start of the buffer
+  private static void readFully(ReadableByteChannel channel, ByteBuffer buffer, int length)
+      throws IOException {
+    buffer.clear();
+    buffer.limit(length);
+    readFully(channel, buffer);
+    buffer.position(0);
+  }
+
+  // reads until the limit of the buffer
+  private static void readFully(ReadableByteChannel channel, ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException("Bloom filter delta is truncated");
+      }
+    }
+  }
+}
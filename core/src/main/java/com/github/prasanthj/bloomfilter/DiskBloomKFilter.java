@@ -0,0 +1,702 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link BloomKFilter} stored in a file, for filters larger than the memory of the process. Only
+ * a bounded number of pages of the bitset are cached in heap.
+ * <p/>
+ * A Bloom K probe touches a single block (at most 128 bytes) and blocks never span pages, so a
+ * probe or an insert needs exactly one page of the bitset. The file is laid out in 4KB pages, a
+ * header page followed by the pages of the bitset, so that a page of the bitset is a single
+ * aligned read. Pages are cached in a fixed number of frames and evicted with the clock (second
+ * chance) approximation of LRU. Evicted pages that were changed are written back.
+ * <p/>
+ * Batch probes and inserts ({@link #testLongs(long[])}, {@link #addLongs(long[])}) sort the keys
+ * by page and visit every page once per batch, so a batch reads a page at most once however many
+ * of its keys land on it. Hits, misses, evictions and write backs are counted.
+ * <p/>
+ * {@link #testLongsAsync(long[])} probes a batch without blocking the caller on page reads. Pages
+ * that are not cached are read with {@link AsynchronousFileChannel}, runs of adjacent pages as one
+ * read, and the keys of a run are tested as soon as it arrives.
+ * <p/>
+ * Bits are set exactly as in a BloomKFilter with the same options, so
+ * {@link #create(Path, BloomKFilter, int)} can move an in-memory filter to disk.
+ * <pre>
+ * header page (little endian)
+ * offset size
+ *  0     4    magic "BLMP"
+ *  4     1    version (1)
+ *  5     1    hash function (1 - Murmur3 hash64), as in {@link FilterContainer}
+ *  6     2    reserved (0)
+ *  8     4    hash seed
+ * 12     4    number of hash functions (k)
+ * 16     8    number of bits (m)
+ * 24     8    expected entries (n)
+ * 32     8    false positive probability (fpp) as long bits
+ * 40     8    options (block geometry, sizing and range reduction as in serialize())
+ * 48          zero up to 4096
+ * 4096        pages of the bitset words
+ * </pre>
+ * Methods are synchronized, the page cache is shared by all the threads.
+ */
+public class DiskBloomKFilter implements Closeable {
+  public static final int PAGE_SIZE = 4096;
+  static final int MAGIC = 0x504D4C42; // "BLMP" in little endian
+  static final int VERSION = 1;
+  // pages read at most by one asynchronous read (128KB)
+  static final int MAX_READ_PAGES = 32;
+  private final BloomKFilter layout;
+  private final Path file;
+  private final FileChannel channel;
+  // opened by the first asynchronous probe
+  private AsynchronousFileChannel asyncChannel;
+  private final int blockSizeBits;
+  private final int numWords;
+  private final int numPages;
+  private final ByteBuffer pageBuffer;
+  private final LongBuffer pageWords;
+  // page cache, frame -> page and page -> frame (-1 if not cached)
+  private final long[][] frames;
+  private final int[] framePage;
+  private final int[] pageToFrame;
+  private final boolean[] referenced;
+  private final boolean[] dirty;
+  private int hand;
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long pageWrites;
+  private long asyncReads;
+
+  private DiskBloomKFilter(Path file, FileChannel channel, BloomKFilter layout, int cachePages) {
+    assert cachePages > 0 : "cachePages should be > 0";
+    this.file = file;
+    this.channel = channel;
+    this.layout = layout;
+    this.blockSizeBits = Integer.numberOfTrailingZeros(layout.getBlockSize());
+    this.numWords = (int) (layout.getBitSize() / Long.SIZE);
+    this.numPages = (numWords + BloomKFilter.PAGE_WORDS - 1) >>> BloomKFilter.PAGE_WORDS_BITS;
+    this.pageBuffer = ByteBuffer.allocateDirect(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    this.pageWords = pageBuffer.asLongBuffer();
+    int numFrames = Math.min(cachePages, numPages);
+    this.frames = new long[numFrames][BloomKFilter.PAGE_WORDS];
+    this.framePage = new int[numFrames];
+    Arrays.fill(framePage, -1);
+    this.pageToFrame = new int[numPages];
+    Arrays.fill(pageToFrame, -1);
+    this.referenced = new boolean[numFrames];
+    this.dirty = new boolean[numFrames];
+  }
+
+  /**
+   * Creates an empty filter with default block geometry in the file. The file is extended to its
+   * full size without writing the bitset, so on most file systems it is sparse until pages are
+   * written back.
+   *
+   * @param file          - file to create, replaced if it exists
+   * @param maxNumEntries - expected number of entries
+   * @param fpp           - false positive probability
+   * @param cachePages    - number of 4KB pages cached in heap
+   */
+  public static DiskBloomKFilter create(Path file, long maxNumEntries, double fpp,
+      int cachePages) throws IOException {
+    BloomKFilter layout = BloomKFilter.layout(maxNumEntries, fpp, 0);
+    FileChannel channel = createFile(file, layout);
+    long size = PAGE_SIZE + layout.getBitSize() / Byte.SIZE;
+    writeFully(channel, ByteBuffer.allocate(1), size - 1);
+    return new DiskBloomKFilter(file, channel, layout, cachePages);
+  }
+
+  /**
+   * Creates the file with the bitset of the filter. Keys added to the filter test the same in the
+   * returned filter.
+   *
+   * @param file       - file to create, replaced if it exists
+   * @param filter     - filter to copy
+   * @param cachePages - number of 4KB pages cached in heap
+   */
+  public static DiskBloomKFilter create(Path file, BloomKFilter filter, int cachePages)
+      throws IOException {
+    BloomKFilter layout = BloomKFilter.layout(filter.getExpectedNumEntries(),
+        filter.getFalsePositivePercent(), filter.options());
+    FileChannel channel = createFile(file, layout);
+    long[] data = filter.getBitSet();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    LongBuffer words = buffer.asLongBuffer();
+    for (int from = 0; from < data.length; from += BloomKFilter.PAGE_WORDS) {
+      int count = Math.min(BloomKFilter.PAGE_WORDS, data.length - from);
+      words.clear();
+      words.put(data, from, count);
+      buffer.clear();
+      buffer.limit(count * 8);
+      writeFully(channel, buffer, PAGE_SIZE + (long) from * 8);
+    }
+    return new DiskBloomKFilter(file, channel, layout, cachePages);
+  }
+
+  private static FileChannel createFile(Path file, BloomKFilter layout) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC)
+        .put((byte) VERSION)
+        .put((byte) FilterContainer.HASH_MURMUR3)
+        .putShort((short) 0)
+        .putInt(Murmur3.DEFAULT_SEED)
+        .putInt(layout.getNumHashFunctions())
+        .putLong(layout.getBitSize())
+        .putLong(layout.getExpectedNumEntries())
+        .putLong(Double.doubleToLongBits(layout.getFalsePositivePercent()))
+        .putLong(layout.options());
+    header.clear();
+    writeFully(channel, header, 0);
+    return channel;
+  }
+
+  /**
+   * Opens a filter created by create().
+   *
+   * @param file       - file of the filter
+   * @param cachePages - number of 4KB pages cached in heap
+   * @throws IOException if the file is not a disk filter or is truncated
+   */
+  public static DiskBloomKFilter open(Path file, int cachePages) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      ByteBuffer header = ByteBuffer.allocate(48).order(ByteOrder.LITTLE_ENDIAN);
+      readFully(channel, header, 0);
+      header.flip();
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not a disk bloom filter");
+      }
+      int version = header.get();
+      int hash = header.get();
+      header.getShort();
+      int seed = header.getInt();
+      if (version != VERSION || hash != FilterContainer.HASH_MURMUR3 ||
+          seed != Murmur3.DEFAULT_SEED) {
+        throw new IOException("Unsupported disk bloom filter version " + version + ", hash " +
+            hash + " or seed " + seed);
+      }
+      int k = header.getInt();
+      long m = header.getLong();
+      long n = header.getLong();
+      double fpp = Double.longBitsToDouble(header.getLong());
+      long options = header.getLong();
+      if (n <= 0 || !(fpp > 0.0 && fpp < 1.0)) {
+        throw new IOException("Invalid expected entries " + n + " or fpp " + fpp);
+      }
+      BloomKFilter layout = BloomKFilter.layout(n, fpp, options);
+      if (layout.getNumHashFunctions() != k || layout.getBitSize() != m) {
+        throw new IOException("Disk bloom filter header (k = " + k + ", m = " + m +
+            ") does not match its options");
+      }
+      if (channel.size() < PAGE_SIZE + m / Byte.SIZE) {
+        throw new EOFException("Disk bloom filter is truncated");
+      }
+      return new DiskBloomKFilter(file, channel, layout, cachePages);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("Disk bloom filter is truncated");
+      }
+      position += read;
+    }
+  }
+
+  private int wordsInPage(int page) {
+    return Math.min(BloomKFilter.PAGE_WORDS, numWords - (page << BloomKFilter.PAGE_WORDS_BITS));
+  }
+
+  private void readPage(int page, long[] words) throws IOException {
+    int count = wordsInPage(page);
+    pageBuffer.clear();
+    pageBuffer.limit(count * 8);
+    readFully(channel, pageBuffer, PAGE_SIZE + ((long) page << BloomKFilter.PAGE_WORDS_BITS) * 8);
+    pageWords.clear();
+    pageWords.get(words, 0, count);
+  }
+
+  private void writePage(int page, long[] words) throws IOException {
+    int count = wordsInPage(page);
+    pageWords.clear();
+    pageWords.put(words, 0, count);
+    pageBuffer.clear();
+    pageBuffer.limit(count * 8);
+    writeFully(channel, pageBuffer, PAGE_SIZE + ((long) page << BloomKFilter.PAGE_WORDS_BITS) * 8);
+    pageWrites++;
+  }
+
+  // returns the cached words of the page, reading it in place of a page picked by the clock hand
+  // if it is not cached
+  private long[] page(int page, boolean write) throws IOException {
+    int frame = pageToFrame[page];
+    if (frame >= 0) {
+      hits++;
+    } else {
+      misses++;
+      // second chance: skip and clear referenced frames, the first unreferenced frame is evicted
+      while (referenced[hand]) {
+        referenced[hand] = false;
+        hand = hand + 1 == frames.length ? 0 : hand + 1;
+      }
+      frame = hand;
+      hand = hand + 1 == frames.length ? 0 : hand + 1;
+      int victim = framePage[frame];
+      if (victim >= 0) {
+        evictions++;
+        if (dirty[frame]) {
+          writePage(victim, frames[frame]);
+          dirty[frame] = false;
+        }
+        pageToFrame[victim] = -1;
+      }
+      readPage(page, frames[frame]);
+      framePage[frame] = page;
+      pageToFrame[page] = frame;
+    }
+    referenced[frame] = true;
+    if (write) {
+      dirty[frame] = true;
+    }
+    return frames[frame];
+  }
+
+  private int blockBaseOffset(long hash64) {
+    return layout.blockIndex(hash64) << blockSizeBits;
+  }
+
+  synchronized void addHash(long hash64) throws IOException {
+    int blockBaseOffset = blockBaseOffset(hash64);
+    layout.addHash(page(blockBaseOffset >>> BloomKFilter.PAGE_WORDS_BITS, true),
+        blockBaseOffset & (BloomKFilter.PAGE_WORDS - 1), hash64);
+  }
+
+  synchronized boolean testHash(long hash64) throws IOException {
+    int blockBaseOffset = blockBaseOffset(hash64);
+    return layout.testHash(page(blockBaseOffset >>> BloomKFilter.PAGE_WORDS_BITS, false),
+        blockBaseOffset & (BloomKFilter.PAGE_WORDS - 1), hash64);
+  }
+
+  public void addBytes(byte[] val) throws IOException {
+    addHash(Murmur3.hash64(val));
+  }
+
+  public void addString(String val) throws IOException {
+    addBytes(val.getBytes());
+  }
+
+  /**
+   * Adds the key, same as {@link BloomKFilter#addLong(long)}.
+   */
+  public void addLong(long val) throws IOException {
+    addHash(Murmur3.hash64(val));
+  }
+
+  public boolean testBytes(byte[] val) throws IOException {
+    return testHash(Murmur3.hash64(val));
+  }
+
+  public boolean testString(String val) throws IOException {
+    return testBytes(val.getBytes());
+  }
+
+  public boolean testLong(long val) throws IOException {
+    return testHash(Murmur3.hash64(val));
+  }
+
+  // keys sorted by block (and so by page), as blockBaseOffset << 32 | key index
+  private long[] sortByBlock(long[] hashes) {
+    long[] order = new long[hashes.length];
+    for (int i = 0; i < hashes.length; i++) {
+      order[i] = ((long) blockBaseOffset(hashes[i]) << 32) | i;
+    }
+    Arrays.sort(order);
+    return order;
+  }
+
+  /**
+   * Adds all the keys, visiting every page once.
+   *
+   * @param keys - keys to add
+   */
+  public synchronized void addLongs(long[] keys) throws IOException {
+    long[] hashes = new long[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      hashes[i] = Murmur3.hash64(keys[i]);
+    }
+    long[] order = sortByBlock(hashes);
+    int lastPage = -1;
+    long[] words = null;
+    for (long entry : order) {
+      int blockBaseOffset = (int) (entry >>> 32);
+      int page = blockBaseOffset >>> BloomKFilter.PAGE_WORDS_BITS;
+      if (page != lastPage) {
+        words = page(page, true);
+        lastPage = page;
+      }
+      layout.addHash(words, blockBaseOffset & (BloomKFilter.PAGE_WORDS - 1), hashes[(int) entry]);
+    }
+  }
+
+  /**
+   * Tests all the keys, visiting every page once.
+   *
+   * @param keys - keys to test
+   * @return bit i is set if keys[i] may be in the filter
+   */
+  public synchronized BitSet testLongs(long[] keys) throws IOException {
+    long[] hashes = new long[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      hashes[i] = Murmur3.hash64(keys[i]);
+    }
+    BitSet result = new BitSet(keys.length);
+    long[] order = sortByBlock(hashes);
+    int lastPage = -1;
+    long[] words = null;
+    for (long entry : order) {
+      int blockBaseOffset = (int) (entry >>> 32);
+      int page = blockBaseOffset >>> BloomKFilter.PAGE_WORDS_BITS;
+      if (page != lastPage) {
+        words = page(page, false);
+        lastPage = page;
+      }
+      int i = (int) entry;
+      if (layout.testHash(words, blockBaseOffset & (BloomKFilter.PAGE_WORDS - 1), hashes[i])) {
+        result.set(i);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Writes back the changed pages and syncs the file.
+   */
+  public synchronized void flush() throws IOException {
+    for (int frame = 0; frame < frames.length; frame++) {
+      if (dirty[frame]) {
+        writePage(framePage[frame], frames[frame]);
+        dirty[frame] = false;
+      }
+    }
+    channel.force(false);
+  }
+
+  /**
+   * Tests all the keys without waiting for page reads. Keys on cached pages are tested right away.
+   * The other pages are read from the file asynchronously, up to {@link #MAX_READ_PAGES} adjacent
+   * pages in one read, and the keys of a read are tested in the completion handler. Such reads do
+   * not evict cached pages, they are cached only in free frames. Changed pages are written back
+   * before they are evicted and bits are never cleared, so a page that is not cached when the probe
+   * is issued has all of its bits in the file.
+   *
+   * @param keys - keys to test
+   * @return future of the bits set for the keys that may be in the filter (bit i for keys[i]),
+   * completed exceptionally if a read fails
+   */
+  public CompletableFuture<BitSet> testLongsAsync(long[] keys) {
+    long[] hashes = new long[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      hashes[i] = Murmur3.hash64(keys[i]);
+    }
+    long[] order = sortByBlock(hashes);
+    BitSet result = new BitSet(keys.length);
+    CompletableFuture<BitSet> future = new CompletableFuture<BitSet>();
+    List<PageRead> reads = new ArrayList<PageRead>();
+    AsynchronousFileChannel async;
+    synchronized (this) {
+      try {
+        async = asyncChannel();
+      } catch (IOException e) {
+        future.completeExceptionally(e);
+        return future;
+      }
+      PageRead read = null;
+      int from = 0;
+      while (from < order.length) {
+        int page = (int) (order[from] >>> 32) >>> BloomKFilter.PAGE_WORDS_BITS;
+        int to = from + 1;
+        while (to < order.length &&
+            (int) (order[to] >>> 32) >>> BloomKFilter.PAGE_WORDS_BITS == page) {
+          to++;
+        }
+        int frame = pageToFrame[page];
+        if (frame >= 0) {
+          hits++;
+          referenced[frame] = true;
+          test(frames[frame], page << BloomKFilter.PAGE_WORDS_BITS, hashes, order, from, to,
+              result);
+          read = null;
+        } else if (read != null && read.lastPage() + 1 == page &&
+            read.numPages < MAX_READ_PAGES) {
+          read.numPages++;
+          read.to = to;
+        } else {
+          read = new PageRead(async, hashes, order, result, future, page, from, to, pageWrites);
+          reads.add(read);
+        }
+        from = to;
+      }
+      asyncReads += reads.size();
+    }
+    if (reads.isEmpty()) {
+      future.complete(result);
+      return future;
+    }
+    AtomicInteger pending = new AtomicInteger(reads.size());
+    for (PageRead read : reads) {
+      read.start(pending);
+    }
+    return future;
+  }
+
+  private AsynchronousFileChannel asyncChannel() throws IOException {
+    if (asyncChannel == null) {
+      asyncChannel = AsynchronousFileChannel.open(file, StandardOpenOption.READ);
+    }
+    return asyncChannel;
+  }
+
+  /**
+   * Caches the pages read asynchronously while there are free frames. Frames are taken in order
+   * until the clock hand first wraps, so the frame under the hand is free if any is. Nothing is
+   * cached if a page was written back since the read was issued, as the read may predate it.
+   */
+  private synchronized void cachePages(int firstPage, long[] words, long writesAtRead) {
+    if (pageWrites != writesAtRead) {
+      return;
+    }
+    for (int i = 0; i * BloomKFilter.PAGE_WORDS < words.length && framePage[hand] < 0; i++) {
+      int page = firstPage + i;
+      if (pageToFrame[page] >= 0) {
+        continue;
+      }
+      int frame = hand;
+      hand = hand + 1 == frames.length ? 0 : hand + 1;
+      System.arraycopy(words, i * BloomKFilter.PAGE_WORDS, frames[frame], 0,
+          Math.min(BloomKFilter.PAGE_WORDS, words.length - i * BloomKFilter.PAGE_WORDS));
+      framePage[frame] = page;
+      pageToFrame[page] = frame;
+      referenced[frame] = true;
+    }
+  }
+
+  // tests the keys order[from, to) in words, the words of the bitset starting at firstWord
+  private void test(long[] words, int firstWord, long[] hashes, long[] order, int from, int to,
+      BitSet result) {
+    for (int e = from; e < to; e++) {
+      int i = (int) order[e];
+      if (layout.testHash(words, (int) (order[e] >>> 32) - firstWord, hashes[i])) {
+        result.set(i);
+      }
+    }
+  }
+
+  /**
+   * Asynchronous read of adjacent pages, tests the keys on them when the read completes.
+   */
+  private final class PageRead implements CompletionHandler<Integer, Void> {
+    private final AsynchronousFileChannel async;
+    private final long[] hashes;
+    private final long[] order;
+    private final BitSet result;
+    private final CompletableFuture<BitSet> future;
+    private final int firstPage;
+    private int numPages;
+    // page writes when the read was issued
+    private final long writesAtRead;
+    // keys of the pages in order
+    private final int from;
+    private int to;
+    private ByteBuffer buffer;
+    private long position;
+    private AtomicInteger pending;
+
+    PageRead(AsynchronousFileChannel async, long[] hashes, long[] order, BitSet result,
+        CompletableFuture<BitSet> future, int firstPage, int from, int to, long writesAtRead) {
+      this.async = async;
+      this.hashes = hashes;
+      this.order = order;
+      this.result = result;
+      this.future = future;
+      this.firstPage = firstPage;
+      this.numPages = 1;
+      this.from = from;
+      this.to = to;
+      this.writesAtRead = writesAtRead;
+    }
+
+    int lastPage() {
+      return firstPage + numPages - 1;
+    }
+
+    private int firstWord() {
+      return firstPage << BloomKFilter.PAGE_WORDS_BITS;
+    }
+
+    void start(AtomicInteger pending) {
+      this.pending = pending;
+      int numReadWords = Math.min(numPages * BloomKFilter.PAGE_WORDS, numWords - firstWord());
+      buffer = ByteBuffer.allocate(numReadWords * 8).order(ByteOrder.LITTLE_ENDIAN);
+      position = PAGE_SIZE + (long) firstWord() * 8;
+      read();
+    }
+
+    private void read() {
+      try {
+        async.read(buffer, position + buffer.position(), null, this);
+      } catch (RuntimeException e) {
+        failed(e, null);
+      }
+    }
+
+    @Override
+    public void completed(Integer read, Void attachment) {
+      if (read < 0) {
+        failed(new EOFException("Disk bloom filter is truncated"), null);
+        return;
+      }
+      if (buffer.hasRemaining()) {
+        read();
+        return;
+      }
+      buffer.flip();
+      long[] words = new long[buffer.remaining() / 8];
+      buffer.asLongBuffer().get(words);
+      BitSet found = new BitSet();
+      test(words, firstWord(), hashes, order, from, to, found);
+      synchronized (result) {
+        result.or(found);
+      }
+      cachePages(firstPage, words, writesAtRead);
+      if (pending.decrementAndGet() == 0) {
+        future.complete(result);
+      }
+    }
+
+    @Override
+    public void failed(Throwable exc, Void attachment) {
+      future.completeExceptionally(exc);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      try {
+        channel.close();
+      } finally {
+        if (asyncChannel != null) {
+          asyncChannel.close();
+        }
+      }
+    }
+  }
+
+  public long getBitSize() {
+    return layout.getBitSize();
+  }
+
+  public int getNumHashFunctions() {
+    return layout.getNumHashFunctions();
+  }
+
+  public double getFalsePositivePercent() {
+    return layout.getFalsePositivePercent();
+  }
+
+  public long getExpectedNumEntries() {
+    return layout.getExpectedNumEntries();
+  }
+
+  public int getNumPages() {
+    return numPages;
+  }
+
+  public int getCachePages() {
+    return frames.length;
+  }
+
+  /**
+   * Returns the number of page lookups served from the cache.
+   */
+  public synchronized long getCacheHits() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of page lookups that read the page from the file.
+   */
+  public synchronized long getCacheMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Returns the number of changed pages written back to the file, on eviction or flush.
+   */
+  public synchronized long getPageWrites() {
+    return pageWrites;
+  }
+
+  /**
+   * Returns the number of asynchronous reads issued by testLongsAsync(), each of up to
+   * {@link #MAX_READ_PAGES} adjacent pages.
+   */
+  public synchronized long getAsyncReads() {
+    return asyncReads;
+  }
+}
@@ -0,0 +1,207 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+/**
+ * Holder of two {@link BloomKFilter} buffers for periodically rebuilt filters that are probed
+ * concurrently. Readers probe the front buffer while a single writer rebuilds the back buffer,
+ * the rebuilt buffer is published by swapping the buffers. Memory for both buffers is allocated
+ * once and reused by every rebuild.
+ * <p/>
+ * Usage by the writer:
+ * <pre>
+ *   BloomKFilter back = filter.beginRebuild();
+ *   back.addLongs(keys);
+ *   filter.publish();
+ * </pre>
+ * Readers take no lock. Each buffer counts the probes in progress, a probe registers itself and
+ * then checks that the buffer is still the front. beginRebuild() waits until the probes that
+ * started before the last publish() are done, and then clears the back buffer in parallel on the
+ * common fork-join pool, so probes never see a partially cleared or partially built filter.
+ * <p/>
+ * The probes of a buffer are counted in stripes on cache lines of their own (about one per
+ * processor, picked by thread id), so readers on different processors do not contend. A thread
+ * registers and deregisters on the same stripe, so a stripe stays positive while a probe counted
+ * on it is in progress and reading the stripes one by one cannot miss it. A LongAdder does not
+ * give this, its cells can be rehashed between the increment and the decrement of a probe.
+ */
+public class DoubleBufferedBloomKFilter {
+  // words cleared by one task of the parallel clear (1MB)
+  private static final int CLEAR_CHUNK_WORDS = 1 << 17;
+  // longs per reader stripe, so that stripes do not share (adjacent) cache lines
+  private static final int STRIPE_PAD = 16;
+  // number of reader stripes (power of two)
+  private static final int NUM_STRIPES = RangeReduction.nextPowerOfTwo(
+      Math.min(Runtime.getRuntime().availableProcessors(), 1 << 10));
+  private volatile Buffer front;
+  private Buffer back;
+  private boolean rebuilding;
+
+  public DoubleBufferedBloomKFilter(long maxNumEntries) {
+    this(maxNumEntries, BloomFilter.DEFAULT_FPP);
+  }
+
+  public DoubleBufferedBloomKFilter(long maxNumEntries, double fpp) {
+    this(new BloomKFilter(maxNumEntries, fpp), new BloomKFilter(maxNumEntries, fpp));
+  }
+
+  // buffers of the same geometry, front is probed until the first publish()
+  DoubleBufferedBloomKFilter(BloomKFilter front, BloomKFilter back) {
+    this.front = new Buffer(front);
+    this.back = new Buffer(back);
+  }
+
+  /**
+   * Clears the back buffer and returns it for the writer to add keys to. Waits for the probes of
+   * the back buffer started before the last publish() to finish. Only one rebuild can be in
+   * progress at a time and the returned filter should not be used after publish().
+   *
+   * @return empty back buffer
+   */
+  public synchronized BloomKFilter beginRebuild() {
+    assert !rebuilding : "rebuild is already in progress";
+    // probes that saw this buffer as the front before the last swap
+    while (back.hasReaders()) {
+      LockSupport.parkNanos(1000);
+    }
+    parallelClear(back.filter.getBitSet());
+    rebuilding = true;
+    return back.filter;
+  }
+
+  /**
+   * Publishes the rebuilt back buffer, probes started after this call see the rebuilt filter.
+   */
+  public synchronized void publish() {
+    assert rebuilding : "beginRebuild() should be called before publish()";
+    Buffer published = back;
+    back = front;
+    front = published;
+    rebuilding = false;
+  }
+
+  /**
+   * Rebuilds the filter with the specified keys and publishes it.
+   *
+   * @param keys - all the keys of the new filter
+   */
+  public synchronized void rebuild(long[] keys) {
+    beginRebuild().addLongs(keys);
+    publish();
+  }
+
+  private static void parallelClear(final long[] data) {
+    if (data.length <= CLEAR_CHUNK_WORDS) {
+      Arrays.fill(data, 0);
+      return;
+    }
+    IntStream.range(0, (data.length + CLEAR_CHUNK_WORDS - 1) / CLEAR_CHUNK_WORDS).parallel()
+        .forEach(chunk -> Arrays.fill(data, chunk * CLEAR_CHUNK_WORDS,
+            Math.min(data.length, (chunk + 1) * CLEAR_CHUNK_WORDS), 0L));
+  }
+
+  private boolean testHash(long hash64) {
+    final int slot = ((int) Thread.currentThread().getId() & (NUM_STRIPES - 1)) * STRIPE_PAD;
+    while (true) {
+      Buffer buffer = front;
+      buffer.readers.incrementAndGet(slot);
+      try {
+        // recheck after registering, a rebuild may have started to clear this buffer
+        if (buffer == front) {
+          return buffer.filter.testHash(hash64);
+        }
+      } finally {
+        buffer.readers.decrementAndGet(slot);
+      }
+    }
+  }
+
+  public boolean test(byte[] val) {
+    return testBytes(val);
+  }
+
+  public boolean testBytes(byte[] val) {
+    return testHash(Murmur3.hash64(val));
+  }
+
+  public boolean testString(String val) {
+    return testBytes(val.getBytes());
+  }
+
+  public boolean testByte(byte val) {
+    return testBytes(new byte[]{val});
+  }
+
+  public boolean testInt(int val) {
+    // puts int in little endian order
+    return testBytes(new byte[]{(byte) (val >> 0),
+        (byte) (val >> 8),
+        (byte) (val >> 16),
+        (byte) (val >> 24)});
+  }
+
+  public boolean testLong(long val) {
+    // same as hashing the long in little endian order
+    return testHash(Murmur3.hash64(val));
+  }
+
+  public boolean testFloat(float val) {
+    return testInt(Float.floatToIntBits(val));
+  }
+
+  public boolean testDouble(double val) {
+    return testLong(Double.doubleToLongBits(val));
+  }
+
+  /**
+   * Size of one buffer, the holder uses twice as much.
+   */
+  public long sizeInBytes() {
+    return front.filter.sizeInBytes();
+  }
+
+  public double getFalsePositivePercent() {
+    return front.filter.getFalsePositivePercent();
+  }
+
+  public long getExpectedNumEntries() {
+    return front.filter.getExpectedNumEntries();
+  }
+
+  private static final class Buffer {
+    private final BloomKFilter filter;
+    // probes in progress per reader stripe, at stripe * STRIPE_PAD
+    private final AtomicLongArray readers = new AtomicLongArray(NUM_STRIPES * STRIPE_PAD);
+
+    Buffer(BloomKFilter filter) {
+      this.filter = filter;
+    }
+
+    boolean hasReaders() {
+      for (int slot = 0; slot < readers.length(); slot += STRIPE_PAD) {
+        if (readers.get(slot) != 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
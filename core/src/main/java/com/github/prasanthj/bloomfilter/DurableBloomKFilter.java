@@ -0,0 +1,396 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Checksum;
+
+/**
+ * {@link BloomKFilter} with a snapshot file and a write-ahead log of the hashes added since the
+ * snapshot, so that the filter survives a crash of the process.
+ * <p/>
+ * Every add hashes the key once, sets the bits in the in-memory filter and appends the 64-bit
+ * hash (not the key) to an in-memory batch. A full batch is written to the log with a single
+ * write (group commit), optionally followed by fsync. {@link #commit()} writes a partial batch, so
+ * keys are durable after the add that fills their batch or the next commit(). Written batches
+ * survive a crash of the process as they are in the OS page cache, with forceOnCommit they also
+ * survive a crash of the machine.
+ * <p/>
+ * On open, the snapshot is loaded (a new filter is created if there is none) and the logged
+ * hashes are added a batch at a time with {@code BloomKFilter.addHashes}, no key is hashed
+ * again. A batch torn by a crash while it was written fails its checksum and is dropped along
+ * with anything after it. {@link #snapshot()} writes the filter to the snapshot file and
+ * truncates the log. The directory is synced after the snapshot is renamed and before the log is
+ * truncated, so the truncation never survives a crash without the new snapshot. If the process
+ * crashes between the two, the hashes are replayed again on the next open, which sets bits that
+ * are already set.
+ * <p/>
+ * Log layout (little endian):
+ * <pre>
+ * offset size
+ *  0     4    magic "BLMW"
+ *  4     1    version (1)
+ *  5     1    hash function (1 - Murmur3 hash64), as in {@link FilterContainer}
+ *  6     1    checksum (1 - CRC32C, 2 - CRC32), as in {@link FilterContainer}
+ *  7     1    reserved (0)
+ *  8          batches, each a 4 byte hash count, the hashes and 8 byte checksum of count and hashes
+ * </pre>
+ * Like BloomKFilter this class is not thread safe.
+ */
+public class DurableBloomKFilter implements Closeable {
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+  static final int MAGIC = 0x574D4C42; // "BLMW" in little endian
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 8;
+  private final BloomKFilter filter;
+  private final Path snapshotPath;
+  private final FileChannel log;
+  private final boolean forceOnCommit;
+  private final Checksum checksum;
+  // count, hashes and checksum of the batch being filled
+  private final byte[] batch;
+  private final ByteBuffer batchBuffer;
+  private final int batchSize;
+  private int count;
+  private long numReplayed;
+  // a failed batch write could not be removed from the log
+  private boolean failed;
+
+  public DurableBloomKFilter(Path snapshot, Path log, long maxNumEntries) throws IOException {
+    this(snapshot, log, maxNumEntries, BloomFilter.DEFAULT_FPP, DEFAULT_BATCH_SIZE, false);
+  }
+
+  /**
+   * Opens the filter, loading the snapshot and replaying the log if they exist.
+   *
+   * @param snapshot      - snapshot file, written by {@link #snapshot()}
+   * @param log           - write-ahead log file
+   * @param maxNumEntries - expected number of entries if there is no snapshot
+   * @param fpp           - false positive probability if there is no snapshot
+   * @param batchSize     - number of hashes written to the log at a time
+   * @param forceOnCommit - if true, fsync the log after every batch written
+   * @throws IOException if the snapshot or the log cannot be read or the log is not a log of
+   *                     hashes
+   */
+  public DurableBloomKFilter(Path snapshot, Path log, long maxNumEntries, double fpp,
+      int batchSize, boolean forceOnCommit) throws IOException {
+    assert batchSize > 0 : "batchSize should be > 0";
+    this.snapshotPath = snapshot;
+    this.forceOnCommit = forceOnCommit;
+    this.batchSize = batchSize;
+    this.batch = new byte[4 + batchSize * 8 + 8];
+    this.batchBuffer = ByteBuffer.wrap(batch).order(ByteOrder.LITTLE_ENDIAN);
+    if (Files.exists(snapshot)) {
+      try (InputStream in = Files.newInputStream(snapshot)) {
+        this.filter = BloomKFilter.readFrom(in);
+      }
+    } else {
+      this.filter = new BloomKFilter(maxNumEntries, fpp);
+    }
+    this.log = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      int checksumType;
+      // a log shorter than the header has no batches, the header is synced before any batch
+      if (this.log.size() < HEADER_SIZE) {
+        this.log.truncate(0);
+        checksumType = FilterContainer.defaultChecksumType();
+        writeHeader(checksumType);
+      } else {
+        checksumType = replay();
+      }
+      this.checksum = FilterContainer.newChecksum(checksumType);
+    } catch (IOException e) {
+      this.log.close();
+      throw e;
+    }
+  }
+
+  private void writeHeader(int checksumType) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC)
+        .put((byte) VERSION)
+        .put((byte) FilterContainer.HASH_MURMUR3)
+        .put((byte) checksumType)
+        .put((byte) 0);
+    header.flip();
+    log.position(0);
+    writeFully(header);
+    log.force(true);
+  }
+
+  // adds the logged hashes to the filter, truncates a torn last batch and returns the checksum type
+  private int replay() throws IOException {
+    log.position(0);
+    InputStream in = new BufferedInputStream(Channels.newInputStream(log), 1 << 16);
+    byte[] header = new byte[HEADER_SIZE];
+    if (!readFully(in, header, HEADER_SIZE)) {
+      throw new IOException("Write-ahead log is truncated");
+    }
+    ByteBuffer headerBuffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+    if (headerBuffer.getInt() != MAGIC) {
+      throw new IOException("Not a bloom filter write-ahead log");
+    }
+    int version = headerBuffer.get();
+    int hash = headerBuffer.get();
+    if (version != VERSION || hash != FilterContainer.HASH_MURMUR3) {
+      throw new IOException("Unsupported write-ahead log version " + version + " or hash " + hash);
+    }
+    int checksumType = headerBuffer.get();
+    Checksum recordChecksum = FilterContainer.newChecksum(checksumType);
+
+    long validEnd = HEADER_SIZE;
+    long[] hashes = new long[RadixPartitionedInsert.BATCH_SIZE];
+    int numHashes = 0;
+    byte[] record = new byte[4 + DEFAULT_BATCH_SIZE * 8 + 8];
+    while (true) {
+      if (!readFully(in, record, 4)) {
+        break;
+      }
+      int recordCount = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+      long recordSize = 4 + recordCount * 8L + 8;
+      if (recordCount <= 0 || recordSize > Integer.MAX_VALUE ||
+          validEnd + recordSize > log.size()) {
+        break;
+      }
+      if (record.length < recordSize) {
+        byte[] larger = new byte[(int) recordSize];
+        System.arraycopy(record, 0, larger, 0, 4);
+        record = larger;
+      }
+      if (!readFully(in, record, 4, (int) recordSize - 4)) {
+        break;
+      }
+      ByteBuffer recordBuffer = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+      recordChecksum.reset();
+      recordChecksum.update(record, 0, 4 + recordCount * 8);
+      if (recordBuffer.getLong(4 + recordCount * 8) != recordChecksum.getValue()) {
+        break;
+      }
+      for (int i = 0; i < recordCount; i++) {
+        hashes[numHashes++] = recordBuffer.getLong(4 + i * 8);
+        if (numHashes == hashes.length) {
+          filter.addHashes(hashes, numHashes);
+          numHashes = 0;
+        }
+      }
+      numReplayed += recordCount;
+      validEnd += recordSize;
+    }
+    filter.addHashes(hashes, numHashes);
+
+    // drop the torn batch, new batches are appended after the last valid one
+    if (log.size() > validEnd) {
+      log.truncate(validEnd);
+    }
+    log.position(validEnd);
+    return checksumType;
+  }
+
+  private static boolean readFully(InputStream in, byte[] bytes, int length) throws IOException {
+    return readFully(in, bytes, 0, length);
+  }
+
+  // returns false if the stream ends first
+  private static boolean readFully(InputStream in, byte[] bytes, int offset, int length)
+      throws IOException {
+    int read = 0;
+    while (read < length) {
+      int r = in.read(bytes, offset + read, length - read);
+      if (r < 0) {
+        return false;
+      }
+      read += r;
+    }
+    return true;
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      log.write(buffer);
+    }
+  }
+
+  private void append(long hash64) throws IOException {
+    if (count >= batchSize) {
+      // the commit of the full batch failed, retry it before adding to the batch
+      commit();
+    }
+    batchBuffer.putLong(4 + (count << 3), hash64);
+    if (++count >= batchSize) {
+      commit();
+    }
+  }
+
+  public void addBytes(byte[] val) throws IOException {
+    long hash64 = Murmur3.hash64(val);
+    filter.addHash(hash64);
+    append(hash64);
+  }
+
+  public void addString(String val) throws IOException {
+    addBytes(val.getBytes());
+  }
+
+  /**
+   * Adds the key, same as {@link BloomKFilter#addLong(long)}.
+   */
+  public void addLong(long val) throws IOException {
+    long hash64 = Murmur3.hash64(val);
+    filter.addHash(hash64);
+    append(hash64);
+  }
+
+  /**
+   * Adds all the keys a batch at a time with {@code BloomKFilter.addHashes}, the batch insert
+   * path behind {@link BloomKFilter#addLongs(long[])}.
+   */
+  public void addLongs(long[] keys) throws IOException {
+    long[] hashes = new long[Math.min(keys.length, RadixPartitionedInsert.BATCH_SIZE)];
+    for (int start = 0; start < keys.length; start += hashes.length) {
+      final int n = Math.min(hashes.length, keys.length - start);
+      for (int i = 0; i < n; i++) {
+        hashes[i] = Murmur3.hash64(keys[start + i]);
+      }
+      filter.addHashes(hashes, n);
+      for (int i = 0; i < n; i++) {
+        append(hashes[i]);
+      }
+    }
+  }
+
+  public boolean testBytes(byte[] val) {
+    return filter.testHash(Murmur3.hash64(val));
+  }
+
+  public boolean testString(String val) {
+    return testBytes(val.getBytes());
+  }
+
+  public boolean testLong(long val) {
+    return filter.testHash(Murmur3.hash64(val));
+  }
+
+  /**
+   * Writes the hashes added since the last commit to the log (and fsyncs it with forceOnCommit).
+   * If the write fails, the partially written batch is truncated from the log and the hashes are
+   * kept for the next commit.
+   *
+   * @throws IOException if the write fails, or an earlier failed write could not be truncated
+   */
+  public void commit() throws IOException {
+    if (count == 0) {
+      return;
+    }
+    if (failed) {
+      throw new IOException("Write-ahead log has a torn batch from a failed write");
+    }
+    int end = 4 + (count << 3);
+    batchBuffer.putInt(0, count);
+    checksum.reset();
+    checksum.update(batch, 0, end);
+    batchBuffer.putLong(end, checksum.getValue());
+    long start = log.position();
+    try {
+      writeBatch(ByteBuffer.wrap(batch, 0, end + 8));
+      if (forceOnCommit) {
+        log.force(false);
+      }
+    } catch (IOException e) {
+      // replay stops at a torn batch, so it would drop the batches committed after it
+      try {
+        log.truncate(start);
+        log.position(start);
+      } catch (IOException truncateFailure) {
+        failed = true;
+        e.addSuppressed(truncateFailure);
+      }
+      throw e;
+    }
+    count = 0;
+  }
+
+  // writes a batch at the position of the log, overridden by tests to fail writes
+  void writeBatch(ByteBuffer buffer) throws IOException {
+    writeFully(buffer);
+  }
+
+  /**
+   * Writes the filter to the snapshot file and truncates the log. The snapshot is written to a
+   * temporary file that replaces the previous snapshot once it is synced, so there is a complete
+   * snapshot at any point. The rename is made durable by syncing the directory before the log is
+   * truncated.
+   */
+  public void snapshot() throws IOException {
+    commit();
+    Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+    try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      filter.writeTo(Channels.newOutputStream(out));
+      out.force(true);
+    }
+    Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    syncDirectory(snapshotPath.toAbsolutePath().getParent());
+    log.truncate(HEADER_SIZE);
+    log.position(HEADER_SIZE);
+    log.force(true);
+  }
+
+  // fsyncs the directory entries, so that a rename in the directory survives a crash of the machine
+  void syncDirectory(Path dir) throws IOException {
+    try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Commits the hashes added since the last commit and closes the log.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      commit();
+    } finally {
+      log.close();
+    }
+  }
+
+  /**
+   * Returns the number of hashes replayed from the log when the filter was opened.
+   */
+  public long getNumReplayed() {
+    return numReplayed;
+  }
+
+  /**
+   * Returns the in-memory filter. Keys added directly to it are not logged.
+   */
+  public BloomKFilter getFilter() {
+    return filter;
+  }
+}
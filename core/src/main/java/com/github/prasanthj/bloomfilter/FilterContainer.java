@@ -0,0 +1,357 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Versioned and checksummed container format of the filters, written by writeTo() and read by
+ * readFrom() of the filters.
+ * <p/>
+ * Unlike serialize(), the container records what kind of filter it holds and how keys are hashed,
+ * so that a filter cannot be silently loaded as a different variant, and detects corruption.
+ * All the fields are little endian, so on little endian machines reading the bit set is a plain
+ * copy.
+ * <pre>
+ * offset size
+ *  0     4    magic "BLMF"
+ *  4     1    version (1)
+ *  5     1    variant id, see {@link Variant}
+ *  6     1    hash function (1 - Murmur3 hash64, 2 - Murmur3 fmix64 of primitive keys)
+ *  7     1    checksum (1 - CRC32C, 2 - CRC32)
+ *  8     4    hash seed
+ * 12     4    number of hash functions (k)
+ * 16     8    number of bits (m)
+ * 24     8    expected entries (n)
+ * 32     8    false positive probability (fpp) as long bits
+ * 40     8    variant options (block geometry, sizing and range reduction as in serialize(),
+ *             g for Bloom G)
+ * 48     8    number of elements added, -1 if unknown
+ * 56     8    reserved (0)
+ * 64     m/8  bit set words, starts 64 byte aligned
+ * 64+m/8 8    checksum of all the preceding bytes
+ * </pre>
+ * The checksum is CRC32C (hardware accelerated) when the JVM has java.util.zip.CRC32C (Java 9+),
+ * CRC32 otherwise. Both are read on every JVM, CRC32C with a pure Java implementation before
+ * Java 9. Header and words are checksummed in chunks while they are copied, so validation does not
+ * take another pass over the data.
+ */
+class FilterContainer {
+  static final int MAGIC = 0x464D4C42; // "BLMF" in little endian
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  static final int HASH_MURMUR3 = 1;
+  static final int HASH_FMIX64 = 2;
+  static final int CHECKSUM_CRC32C = 1;
+  static final int CHECKSUM_CRC32 = 2;
+  static final long UNKNOWN_COUNT = -1;
+  // words copied and checksummed at a time (16KB)
+  private static final int CHUNK_WORDS = 1 << 11;
+  private static final Constructor<? extends Checksum> CRC32C_CONSTRUCTOR = crc32cConstructor();
+
+  /**
+   * Filter variants. The id is stored in the container, ids of existing variants must not change.
+   */
+  enum Variant {
+    BLOOM(0),
+    BLOOM_1(1),
+    BLOOM_G(2),
+    BLOOM_K(3),
+    PARTITIONED(4),
+    LONG_BLOOM_K(5),
+    INT_BLOOM_K(6);
+
+    final int id;
+
+    Variant(int id) {
+      this.id = id;
+    }
+
+    // null if no variant has the id
+    static Variant of(int id) {
+      for (Variant variant : values()) {
+        if (variant.id == id) {
+          return variant;
+        }
+      }
+      return null;
+    }
+  }
+
+  private FilterContainer() {
+  }
+
+  private static Constructor<? extends Checksum> crc32cConstructor() {
+    try {
+      return Class.forName("java.util.zip.CRC32C").asSubclass(Checksum.class)
+          .getDeclaredConstructor();
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  // CRC32C only when it is hardware accelerated, the pure Java one is slower than CRC32
+  static int defaultChecksumType() {
+    return CRC32C_CONSTRUCTOR != null ? CHECKSUM_CRC32C : CHECKSUM_CRC32;
+  }
+
+  static Checksum newChecksum(int type) throws IOException {
+    if (type == CHECKSUM_CRC32) {
+      return new CRC32();
+    }
+    if (type == CHECKSUM_CRC32C) {
+      if (CRC32C_CONSTRUCTOR == null) {
+        return new PureJavaCrc32C();
+      }
+      try {
+        return CRC32C_CONSTRUCTOR.newInstance();
+      } catch (ReflectiveOperationException e) {
+        throw new IOException("Cannot create CRC32C checksum", e);
+      }
+    }
+    throw new IOException("Unsupported checksum type " + type);
+  }
+
+  /**
+   * Writes the filter in container format.
+   */
+  static void write(OutputStream out, Variant variant, int hash, int seed, int k, long m, long n,
+      double fpp, long options, long count, long[] data) throws IOException {
+    int checksumType = defaultChecksumType();
+    Checksum checksum = newChecksum(checksumType);
+    byte[] bytes = new byte[Math.max(HEADER_SIZE, Math.min(CHUNK_WORDS, data.length) * 8)];
+    ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC)
+        .put((byte) VERSION)
+        .put((byte) variant.id)
+        .put((byte) hash)
+        .put((byte) checksumType)
+        .putInt(seed)
+        .putInt(k)
+        .putLong(m)
+        .putLong(n)
+        .putLong(Double.doubleToLongBits(fpp))
+        .putLong(options)
+        .putLong(count)
+        .putLong(0);
+    checksum.update(bytes, 0, HEADER_SIZE);
+    out.write(bytes, 0, HEADER_SIZE);
+
+    LongBuffer words = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+    for (int from = 0; from < data.length; from += CHUNK_WORDS) {
+      int chunk = Math.min(CHUNK_WORDS, data.length - from);
+      words.clear();
+      words.put(data, from, chunk);
+      checksum.update(bytes, 0, chunk * 8);
+      out.write(bytes, 0, chunk * 8);
+    }
+
+    ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putLong(0, checksum.getValue());
+    out.write(bytes, 0, 8);
+  }
+
+  /**
+   * Reads and validates the header. The filter should then be sized from n, fpp and options
+   * without allocating it, checked with {@link Header#checkLayout(int, long)} and only then
+   * allocated and filled with {@link Header#readData(InputStream, long[])}, so that a corrupt
+   * header fails with an IOException instead of a huge allocation.
+   *
+   * @throws IOException if the stream does not start with a container of the expected variant
+   */
+  static Header readHeader(InputStream in, Variant variant, int hash, int seed)
+      throws IOException {
+    byte[] bytes = new byte[HEADER_SIZE];
+    readFully(in, bytes, HEADER_SIZE);
+    ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    if (header.getInt() != MAGIC) {
+      throw new IOException("Not a bloom filter container");
+    }
+    int version = header.get();
+    if (version != VERSION) {
+      throw new IOException("Unsupported container version " + version);
+    }
+    int variantId = header.get();
+    if (variantId != variant.id) {
+      Variant other = Variant.of(variantId);
+      String actual = other != null ? other.toString() : "unknown variant " + variantId;
+      throw new IOException("Container has " + actual + " filter, expected " + variant);
+    }
+    int hashId = header.get();
+    int checksumType = header.get();
+    int hashSeed = header.getInt();
+    if (hashId != hash || hashSeed != seed) {
+      throw new IOException("Container has hash " + hashId + " with seed " + hashSeed +
+          ", expected hash " + hash + " with seed " + seed);
+    }
+    Checksum checksum = newChecksum(checksumType);
+    checksum.update(bytes, 0, HEADER_SIZE);
+    Header result = new Header(checksum, header.getInt(), header.getLong(), header.getLong(),
+        Double.longBitsToDouble(header.getLong()), header.getLong(), header.getLong());
+    if (result.n <= 0 || !(result.fpp > 0.0 && result.fpp < 1.0)) {
+      throw new IOException("Invalid expected entries " + result.n + " or fpp " + result.fpp);
+    }
+    return result;
+  }
+
+  static final class Header {
+    private final Checksum checksum;
+    final int k;
+    final long m;
+    final long n;
+    final double fpp;
+    final long options;
+    final long count;
+
+    private Header(Checksum checksum, int k, long m, long n, double fpp, long options,
+        long count) {
+      this.checksum = checksum;
+      this.k = k;
+      this.m = m;
+      this.n = n;
+      this.fpp = fpp;
+      this.options = options;
+      this.count = count;
+    }
+
+    /**
+     * Checks the options of the header, valid is whether the variant can decode them.
+     *
+     * @throws IOException if the options are not valid
+     */
+    void checkOptions(boolean valid) throws IOException {
+      if (!valid) {
+        throw new IOException("Invalid options 0x" + Long.toHexString(options) + " in container");
+      }
+    }
+
+    /**
+     * Checks k and m of the filter sized from n, fpp and options of the header (not allocated yet)
+     * against k and m of the header.
+     *
+     * @throws IOException if the filter does not match the header
+     */
+    void checkLayout(int filterK, long filterM) throws IOException {
+      if (k != filterK || m != filterM) {
+        throw new IOException("Container header (k = " + k + ", m = " + m +
+            ") does not match the filter (k = " + filterK + ", m = " + filterM + ")");
+      }
+    }
+
+    /**
+     * Reads the bit set words into data and verifies the checksum.
+     *
+     * @throws IOException if the stream ends early or the checksum does not match
+     */
+    void readData(InputStream in, long[] data) throws IOException {
+      byte[] bytes = new byte[Math.max(8, Math.min(CHUNK_WORDS, data.length) * 8)];
+      LongBuffer words = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+      for (int from = 0; from < data.length; from += CHUNK_WORDS) {
+        int count = Math.min(CHUNK_WORDS, data.length - from);
+        readFully(in, bytes, count * 8);
+        checksum.update(bytes, 0, count * 8);
+        words.clear();
+        words.get(data, from, count);
+      }
+      readFully(in, bytes, 8);
+      long expected = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getLong(0);
+      if (expected != checksum.getValue()) {
+        throw new IOException("Checksum mismatch, container is corrupt");
+      }
+    }
+  }
+
+  /**
+   * CRC32C (Castagnoli) for JVMs without java.util.zip.CRC32C, so that containers written on
+   * Java 9+ can be read on Java 8. Slicing-by-8 over the reflected polynomial 0x82F63B78.
+   */
+  static final class PureJavaCrc32C implements Checksum {
+    private static final int[][] TABLES = tables();
+    private int crc = 0xFFFFFFFF;
+
+    private static int[][] tables() {
+      int[][] tables = new int[8][256];
+      for (int n = 0; n < 256; n++) {
+        int c = n;
+        for (int i = 0; i < 8; i++) {
+          c = (c & 1) != 0 ? (c >>> 1) ^ 0x82F63B78 : c >>> 1;
+        }
+        tables[0][n] = c;
+      }
+      for (int t = 1; t < 8; t++) {
+        for (int n = 0; n < 256; n++) {
+          int c = tables[t - 1][n];
+          tables[t][n] = (c >>> 8) ^ tables[0][c & 0xff];
+        }
+      }
+      return tables;
+    }
+
+    @Override
+    public void update(int b) {
+      crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xff];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+      int[][] t = TABLES;
+      int c = crc;
+      int end = off + len;
+      for (; off + 8 <= end; off += 8) {
+        int lo = c ^ ((b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 |
+            (b[off + 3] & 0xff) << 24);
+        int hi = (b[off + 4] & 0xff) | (b[off + 5] & 0xff) << 8 | (b[off + 6] & 0xff) << 16 |
+            (b[off + 7] & 0xff) << 24;
+        c = t[7][lo & 0xff] ^ t[6][(lo >>> 8) & 0xff] ^ t[5][(lo >>> 16) & 0xff] ^
+            t[4][lo >>> 24] ^ t[3][hi & 0xff] ^ t[2][(hi >>> 8) & 0xff] ^
+            t[1][(hi >>> 16) & 0xff] ^ t[0][hi >>> 24];
+      }
+      for (; off < end; off++) {
+        c = (c >>> 8) ^ t[0][(c ^ b[off]) & 0xff];
+      }
+      crc = c;
+    }
+
+    @Override
+    public long getValue() {
+      return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+      crc = 0xFFFFFFFF;
+    }
+  }
+
+  private static void readFully(InputStream in, byte[] bytes, int length) throws IOException {
+    int read = 0;
+    while (read < length) {
+      int r = in.read(bytes, read, length - read);
+      if (r < 0) {
+        throw new EOFException("Bloom filter container is truncated");
+      }
+      read += r;
+    }
+  }
+}
@@ -0,0 +1,331 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link BloomKFilter} for int keys. Keys are hashed directly with {@link Murmur3#fmix64(long)}
+ * instead of encoding them into a byte array for Murmur3, refer {@link LongBloomKFilter} for
+ * details. An int key hashes the same as the equal long key of LongBloomKFilter.
+ * <p/>
+ * Hashes differ from BloomKFilter, so a key added to this filter cannot be found with
+ * {@link BloomKFilter#testInt(int)} and vice versa. Serialized form is the same as BloomKFilter
+ * and has to be deserialized with {@link #IntBloomKFilter(List)}.
+ */
+public class IntBloomKFilter {
+  private final BloomKFilter filter;
+
+  public IntBloomKFilter(long maxNumEntries) {
+    this(new BloomKFilter(maxNumEntries));
+  }
+
+  public IntBloomKFilter(long maxNumEntries, double fpp) {
+    this(new BloomKFilter(maxNumEntries, fpp));
+  }
+
+  /**
+   * Creates bloom filter with the specified block geometry. Refer
+   * {@link BloomKFilter#BloomKFilter(long, double, int, int, BloomKFilter.BitPlacement, boolean, RangeReduction)}
+   * for the parameters.
+   */
+  public IntBloomKFilter(long maxNumEntries, double fpp, int blockSize, int wordBits,
+      BloomKFilter.BitPlacement bitPlacement, boolean blockedSizing, RangeReduction reduction) {
+    this(new BloomKFilter(maxNumEntries, fpp, blockSize, wordBits, bitPlacement, blockedSizing,
+        reduction));
+  }
+
+  // deserialize bloomfilter. see BloomKFilter.serialize() for the format.
+  public IntBloomKFilter(List<Long> serializedBloom) {
+    this(new BloomKFilter(serializedBloom));
+  }
+
+  private IntBloomKFilter(BloomKFilter filter) {
+    this.filter = filter;
+  }
+
+  public void add(int val) {
+    filter.addHash(LongBloomKFilter.hash(val));
+  }
+
+  public boolean test(int val) {
+    return filter.testHash(LongBloomKFilter.hash(val));
+  }
+
+  public long sizeInBytes() {
+    return filter.sizeInBytes();
+  }
+
+  public long getBitSize() {
+    return filter.getBitSize();
+  }
+
+  public int getNumHashFunctions() {
+    return filter.getNumHashFunctions();
+  }
+
+  public double getFalsePositivePercent() {
+    return filter.getFalsePositivePercent();
+  }
+
+  public long getExpectedNumEntries() {
+    return filter.getExpectedNumEntries();
+  }
+
+  public long[] getBitSet() {
+    return filter.getBitSet();
+  }
+
+  /**
+   * Serializes the filter in {@link BloomKFilter#serialize()} format.
+   *
+   * @return bloom filter as list of long
+   */
+  public List<Long> serialize() {
+    return filter.serialize();
+  }
+
+  /**
+   * Check if the specified bloom filter is compatible with the current bloom filter.
+   *
+   * @param that - bloom filter to check compatibility
+   * @return true if compatible false otherwise
+   */
+  public boolean isCompatible(IntBloomKFilter that) {
+    return this != that && filter.isCompatible(that.filter);
+  }
+
+  /**
+   * Merge the specified bloom filter with current bloom filter.
+   * NOTE: Merge does not check for incompatibility. Use isCompatible() before calling merge().
+   *
+   * @param that - bloom filter to merge
+   */
+  public void merge(IntBloomKFilter that) {
+    filter.merge(that.filter);
+  }
+
+  /**
+   * Merge all the specified bloom filters with current bloom filter, refer
+   * {@link BloomKFilter#mergeAll(Collection)}.
+   *
+   * @param filters - bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Collection<IntBloomKFilter> filters) {
+    List<BloomKFilter> filterList = new ArrayList<BloomKFilter>(filters.size());
+    for (IntBloomKFilter that : filters) {
+      filterList.add(that.filter);
+    }
+    filter.mergeAll(filterList);
+  }
+
+  /**
+   * Merge all the serialized bloom filters with current bloom filter, refer
+   * {@link BloomKFilter#mergeAll(Iterator)}.
+   *
+   * @param serializedFilters - serialized bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Iterator<List<Long>> serializedFilters) {
+    filter.mergeAll(serializedFilters);
+  }
+
+  /**
+   * Merge the serialized bloom filter at the current position of the buffer with current bloom
+   * filter without deserializing it, refer {@link BloomKFilter#mergeFrom(ByteBuffer)}.
+   *
+   * @param buffer - serialized bloom filter to merge
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   *                                  or the buffer is too short
+   */
+  public void mergeFrom(ByteBuffer buffer) {
+    filter.mergeFrom(buffer);
+  }
+
+  /**
+   * Merge the serialized bloom filter read from the stream with current bloom filter without
+   * deserializing it, refer {@link BloomKFilter#mergeFrom(InputStream)}.
+   *
+   * @param in - stream to read the serialized bloom filter from
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   * @throws IOException              if the stream cannot be read or ends early
+   */
+  public void mergeFrom(InputStream in) throws IOException {
+    filter.mergeFrom(in);
+  }
+
+  /**
+   * Writes the filter in the container format of {@link BloomKFilter#writeTo(OutputStream)},
+   * recorded as a IntBloomKFilter so that it cannot be read back as a BloomKFilter.
+   *
+   * @param out - stream to write to
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    filter.writeTo(out, FilterContainer.Variant.INT_BLOOM_K, FilterContainer.HASH_FMIX64);
+  }
+
+  /**
+   * Reads a filter written by writeTo(), refer {@link BloomKFilter#readFrom(InputStream)}.
+   *
+   * @param in - stream to read from
+   * @return bloom filter
+   * @throws IOException if the container is not a IntBloomKFilter, is corrupt or truncated
+   */
+  public static IntBloomKFilter readFrom(InputStream in) throws IOException {
+    return new IntBloomKFilter(BloomKFilter.readFrom(in, FilterContainer.Variant.INT_BLOOM_K,
+        FilterContainer.HASH_FMIX64));
+  }
+
+  /**
+   * Starts tracking the pages changed since the last checkpoint, refer
+   * {@link BloomKFilter#trackDirtyPages()}.
+   */
+  public void trackDirtyPages() {
+    filter.trackDirtyPages();
+  }
+
+  public int getDirtyPageCount() {
+    return filter.getDirtyPageCount();
+  }
+
+  /**
+   * Writes the pages changed since the last checkpoint, refer
+   * {@link BloomKFilter#writeDelta(WritableByteChannel)}.
+   *
+   * @param channel - channel to write to
+   * @return number of bytes written
+   */
+  public long writeDelta(WritableByteChannel channel) throws IOException {
+    return filter.writeDelta(channel);
+  }
+
+  /**
+   * Copies the pages of a delta written by writeDelta() into the bitset, refer
+   * {@link BloomKFilter#applyDelta(ReadableByteChannel)}.
+   *
+   * @param channel - channel to read the delta from
+   * @throws IOException if the delta is for a filter of different size, corrupt or truncated
+   */
+  public void applyDelta(ReadableByteChannel channel) throws IOException {
+    filter.applyDelta(channel);
+  }
+
+  /**
+   * Starts maintaining the number of set bits, refer {@link BloomKFilter#trackSetBits()}.
+   */
+  public void trackSetBits() {
+    filter.trackSetBits();
+  }
+
+  public long getSetBitCount() {
+    return filter.getSetBitCount();
+  }
+
+  public double fillRatio() {
+    return filter.fillRatio();
+  }
+
+  /**
+   * Estimates the number of distinct keys added, refer {@link BloomKFilter#estimatedCount()}.
+   */
+  public long estimatedCount() {
+    return filter.estimatedCount();
+  }
+
+  /**
+   * Estimates the false positive probability, refer {@link BloomKFilter#estimatedFpp()}.
+   */
+  public double estimatedFpp() {
+    return filter.estimatedFpp();
+  }
+
+  public long andBitCount(IntBloomKFilter that) {
+    return filter.andBitCount(that.filter);
+  }
+
+  public long orBitCount(IntBloomKFilter that) {
+    return filter.orBitCount(that.filter);
+  }
+
+  /**
+   * Estimates the number of keys in either filter, refer
+   * {@link BloomKFilter#estimatedUnionCount(BloomKFilter)}.
+   */
+  public long estimatedUnionCount(IntBloomKFilter that) {
+    return filter.estimatedUnionCount(that.filter);
+  }
+
+  /**
+   * Estimates the number of keys in both filters, refer
+   * {@link BloomKFilter#estimatedIntersectionCount(BloomKFilter)}.
+   */
+  public long estimatedIntersectionCount(IntBloomKFilter that) {
+    return filter.estimatedIntersectionCount(that.filter);
+  }
+
+  /**
+   * Estimates the Jaccard similarity of the keys, refer
+   * {@link BloomKFilter#estimatedJaccard(BloomKFilter)}.
+   */
+  public double estimatedJaccard(IntBloomKFilter that) {
+    return filter.estimatedJaccard(that.filter);
+  }
+
+  /**
+   * Estimates the fraction of the keys of this filter in the specified one, refer
+   * {@link BloomKFilter#estimatedContainment(BloomKFilter)}.
+   */
+  public double estimatedContainment(IntBloomKFilter that) {
+    return filter.estimatedContainment(that.filter);
+  }
+
+  /**
+   * Returns a copy folded to 1/factor of its size, refer {@link BloomKFilter#fold(int)}.
+   *
+   * @param factor - power of two, at most the number of blocks
+   * @return folded filter
+   * @throws IllegalArgumentException if the filter does not use POW2 range reduction or cannot be
+   *                                  folded by factor
+   */
+  public IntBloomKFilter fold(int factor) {
+    return new IntBloomKFilter(filter.fold(factor));
+  }
+
+  /**
+   * Returns the largest fold factor that keeps the estimated fpp at most fpp, refer
+   * {@link BloomKFilter#foldFactor(double)}.
+   */
+  public int foldFactor(double fpp) {
+    return filter.foldFactor(fpp);
+  }
+
+  /**
+   * Clears all the bits in the bloom filter. The underlying bitset is reused, no reallocation happens.
+   */
+  public void clear() {
+    filter.clear();
+  }
+}
@@ -0,0 +1,339 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link BloomKFilter} for long keys. {@link BloomKFilter#addLong(long)} encodes the key into a byte
+ * array and runs the full Murmur3 body, tail and finalization over it. A single
+ * {@link Murmur3#fmix64(long)} already spreads every bit of a 64-bit key over the whole hash, so
+ * this filter hashes the key directly with it and skips the byte encoding.
+ * <p/>
+ * Hashes differ from BloomKFilter, so a key added to this filter cannot be found with
+ * {@link BloomKFilter#testLong(long)} and vice versa. Serialized form is the same as BloomKFilter
+ * and has to be deserialized with {@link #LongBloomKFilter(List)}.
+ */
+public class LongBloomKFilter {
+  // fmix64 maps 0 to 0 which would put all k bits of key 0 on the same bit. Offsetting the key
+  // moves that degenerate hash to an unlikely key.
+  static final long KEY_OFFSET = 0x9E3779B97F4A7C15L;
+  private final BloomKFilter filter;
+
+  public LongBloomKFilter(long maxNumEntries) {
+    this(new BloomKFilter(maxNumEntries));
+  }
+
+  public LongBloomKFilter(long maxNumEntries, double fpp) {
+    this(new BloomKFilter(maxNumEntries, fpp));
+  }
+
+  /**
+   * Creates bloom filter with the specified block geometry. Refer
+   * {@link BloomKFilter#BloomKFilter(long, double, int, int, BloomKFilter.BitPlacement, boolean, RangeReduction)}
+   * for the parameters.
+   */
+  public LongBloomKFilter(long maxNumEntries, double fpp, int blockSize, int wordBits,
+      BloomKFilter.BitPlacement bitPlacement, boolean blockedSizing, RangeReduction reduction) {
+    this(new BloomKFilter(maxNumEntries, fpp, blockSize, wordBits, bitPlacement, blockedSizing,
+        reduction));
+  }
+
+  // deserialize bloomfilter. see BloomKFilter.serialize() for the format.
+  public LongBloomKFilter(List<Long> serializedBloom) {
+    this(new BloomKFilter(serializedBloom));
+  }
+
+  private LongBloomKFilter(BloomKFilter filter) {
+    this.filter = filter;
+  }
+
+  static long hash(long val) {
+    return Murmur3.fmix64(val + KEY_OFFSET);
+  }
+
+  public void add(long val) {
+    filter.addHash(hash(val));
+  }
+
+  public boolean test(long val) {
+    return filter.testHash(hash(val));
+  }
+
+  public long sizeInBytes() {
+    return filter.sizeInBytes();
+  }
+
+  public long getBitSize() {
+    return filter.getBitSize();
+  }
+
+  public int getNumHashFunctions() {
+    return filter.getNumHashFunctions();
+  }
+
+  public double getFalsePositivePercent() {
+    return filter.getFalsePositivePercent();
+  }
+
+  public long getExpectedNumEntries() {
+    return filter.getExpectedNumEntries();
+  }
+
+  public long[] getBitSet() {
+    return filter.getBitSet();
+  }
+
+  /**
+   * Serializes the filter in {@link BloomKFilter#serialize()} format.
+   *
+   * @return bloom filter as list of long
+   */
+  public List<Long> serialize() {
+    return filter.serialize();
+  }
+
+  /**
+   * Check if the specified bloom filter is compatible with the current bloom filter.
+   *
+   * @param that - bloom filter to check compatibility
+   * @return true if compatible false otherwise
+   */
+  public boolean isCompatible(LongBloomKFilter that) {
+    return this != that && filter.isCompatible(that.filter);
+  }
+
+  /**
+   * Merge the specified bloom filter with current bloom filter.
+   * NOTE: Merge does not check for incompatibility. Use isCompatible() before calling merge().
+   *
+   * @param that - bloom filter to merge
+   */
+  public void merge(LongBloomKFilter that) {
+    filter.merge(that.filter);
+  }
+
+  /**
+   * Merge all the specified bloom filters with current bloom filter, refer
+   * {@link BloomKFilter#mergeAll(Collection)}.
+   *
+   * @param filters - bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Collection<LongBloomKFilter> filters) {
+    List<BloomKFilter> filterList = new ArrayList<BloomKFilter>(filters.size());
+    for (LongBloomKFilter that : filters) {
+      filterList.add(that.filter);
+    }
+    filter.mergeAll(filterList);
+  }
+
+  /**
+   * Merge all the serialized bloom filters with current bloom filter, refer
+   * {@link BloomKFilter#mergeAll(Iterator)}.
+   *
+   * @param serializedFilters - serialized bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Iterator<List<Long>> serializedFilters) {
+    filter.mergeAll(serializedFilters);
+  }
+
+  /**
+   * Merge the serialized bloom filter at the current position of the buffer with current bloom
+   * filter without deserializing it, refer {@link BloomKFilter#mergeFrom(ByteBuffer)}.
+   *
+   * @param buffer - serialized bloom filter to merge
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   *                                  or the buffer is too short
+   */
+  public void mergeFrom(ByteBuffer buffer) {
+    filter.mergeFrom(buffer);
+  }
+
+  /**
+   * Merge the serialized bloom filter read from the stream with current bloom filter without
+   * deserializing it, refer {@link BloomKFilter#mergeFrom(InputStream)}.
+   *
+   * @param in - stream to read the serialized bloom filter from
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   * @throws IOException              if the stream cannot be read or ends early
+   */
+  public void mergeFrom(InputStream in) throws IOException {
+    filter.mergeFrom(in);
+  }
+
+  /**
+   * Writes the filter in the container format of {@link BloomKFilter#writeTo(OutputStream)},
+   * recorded as a LongBloomKFilter so that it cannot be read back as a BloomKFilter.
+   *
+   * @param out - stream to write to
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    filter.writeTo(out, FilterContainer.Variant.LONG_BLOOM_K, FilterContainer.HASH_FMIX64);
+  }
+
+  /**
+   * Reads a filter written by writeTo(), refer {@link BloomKFilter#readFrom(InputStream)}.
+   *
+   * @param in - stream to read from
+   * @return bloom filter
+   * @throws IOException if the container is not a LongBloomKFilter, is corrupt or truncated
+   */
+  public static LongBloomKFilter readFrom(InputStream in) throws IOException {
+    return new LongBloomKFilter(BloomKFilter.readFrom(in, FilterContainer.Variant.LONG_BLOOM_K,
+        FilterContainer.HASH_FMIX64));
+  }
+
+  /**
+   * Starts tracking the pages changed since the last checkpoint, refer
+   * {@link BloomKFilter#trackDirtyPages()}.
+   */
+  public void trackDirtyPages() {
+    filter.trackDirtyPages();
+  }
+
+  public int getDirtyPageCount() {
+    return filter.getDirtyPageCount();
+  }
+
+  /**
+   * Writes the pages changed since the last checkpoint, refer
+   * {@link BloomKFilter#writeDelta(WritableByteChannel)}.
+   *
+   * @param channel - channel to write to
+   * @return number of bytes written
+   */
+  public long writeDelta(WritableByteChannel channel) throws IOException {
+    return filter.writeDelta(channel);
+  }
+
+  /**
+   * Copies the pages of a delta written by writeDelta() into the bitset, refer
+   * {@link BloomKFilter#applyDelta(ReadableByteChannel)}.
+   *
+   * @param channel - channel to read the delta from
+   * @throws IOException if the delta is for a filter of different size, corrupt or truncated
+   */
+  public void applyDelta(ReadableByteChannel channel) throws IOException {
+    filter.applyDelta(channel);
+  }
+
+  /**
+   * Starts maintaining the number of set bits, refer {@link BloomKFilter#trackSetBits()}.
+   */
+  public void trackSetBits() {
+    filter.trackSetBits();
+  }
+
+  public long getSetBitCount() {
+    return filter.getSetBitCount();
+  }
+
+  public double fillRatio() {
+    return filter.fillRatio();
+  }
+
+  /**
+   * Estimates the number of distinct keys added, refer {@link BloomKFilter#estimatedCount()}.
+   */
+  public long estimatedCount() {
+    return filter.estimatedCount();
+  }
+
+  /**
+   * Estimates the false positive probability, refer {@link BloomKFilter#estimatedFpp()}.
+   */
+  public double estimatedFpp() {
+    return filter.estimatedFpp();
+  }
+
+  public long andBitCount(LongBloomKFilter that) {
+    return filter.andBitCount(that.filter);
+  }
+
+  public long orBitCount(LongBloomKFilter that) {
+    return filter.orBitCount(that.filter);
+  }
+
+  /**
+   * Estimates the number of keys in either filter, refer
+   * {@link BloomKFilter#estimatedUnionCount(BloomKFilter)}.
+   */
+  public long estimatedUnionCount(LongBloomKFilter that) {
+    return filter.estimatedUnionCount(that.filter);
+  }
+
+  /**
+   * Estimates the number of keys in both filters, refer
+   * {@link BloomKFilter#estimatedIntersectionCount(BloomKFilter)}.
+   */
+  public long estimatedIntersectionCount(LongBloomKFilter that) {
+    return filter.estimatedIntersectionCount(that.filter);
+  }
+
+  /**
+   * Estimates the Jaccard similarity of the keys, refer
+   * {@link BloomKFilter#estimatedJaccard(BloomKFilter)}.
+   */
+  public double estimatedJaccard(LongBloomKFilter that) {
+    return filter.estimatedJaccard(that.filter);
+  }
+
+  /**
+   * Estimates the fraction of the keys of this filter in the specified one, refer
+   * {@link BloomKFilter#estimatedContainment(BloomKFilter)}.
+   */
+  public double estimatedContainment(LongBloomKFilter that) {
+    return filter.estimatedContainment(that.filter);
+  }
+
+  /**
+   * Returns a copy folded to 1/factor of its size, refer {@link BloomKFilter#fold(int)}.
+   *
+   * @param factor - power of two, at most the number of blocks
+   * @return folded filter
+   * @throws IllegalArgumentException if the filter does not use POW2 range reduction or cannot be
+   *                                  folded by factor
+   */
+  public LongBloomKFilter fold(int factor) {
+    return new LongBloomKFilter(filter.fold(factor));
+  }
+
+  /**
+   * Returns the largest fold factor that keeps the estimated fpp at most fpp, refer
+   * {@link BloomKFilter#foldFactor(double)}.
+   */
+  public int foldFactor(double fpp) {
+    return filter.foldFactor(fpp);
+  }
+
+  /**
+   * Clears all the bits in the bloom filter. The underlying bitset is reused, no reallocation happens.
+   */
+  public void clear() {
+    filter.clear();
+  }
+}
@@ -39,7 +39,7 @@ public class Murmur3 {
   private static final int N1 = 0x52dce729;
   private static final int N2 = 0x38495ab5;
 
-  private static final int DEFAULT_SEED = 0;
+  static final int DEFAULT_SEED = 0;
 
   /**
    * Murmur3 32-bit variant.
@@ -118,6 +118,30 @@ public class Murmur3 {
     return hash64(data, data.length, DEFAULT_SEED);
   }
 
+  /**
+   * Murmur3 64-bit variant of a long. Same as {@link #hash64(byte[])} of the 8 bytes of the long in
+   * little endian order, without encoding it into a byte array.
+   *
+   * @param data - input long
+   * @return - hashcode
+   */
+  public static long hash64(long data) {
+    long hash = DEFAULT_SEED;
+    long k = data;
+    // mix functions
+    k *= C1;
+    k = Long.rotateLeft(k, R1);
+    k *= C2;
+    hash ^= k;
+    hash = Long.rotateLeft(hash, R2) * M + N1;
+
+    // finalization
+    hash ^= Long.SIZE / Byte.SIZE;
+    hash = fmix64(hash);
+
+    return hash;
+  }
+
   /**
    * Murmur3 64-bit variant. This is essentially MSB 8 bytes of Murmur3 128-bit variant.
    *
@@ -306,7 +330,14 @@ public class Murmur3 {
     return new long[]{h1, h2};
   }
 
-  private static long fmix64(long h) {
+  /**
+   * Murmur3 64-bit finalization mix. Every input bit affects every output bit and the function is
+   * a bijection, so it is a good hash by itself for 64-bit integer keys.
+   *
+   * @param h - input
+   * @return - mixed value
+   */
+  public static long fmix64(long h) {
     h ^= (h >>> 33);
     h *= 0xff51afd7ed558ccdL;
     h ^= (h >>> 33);
@@ -0,0 +1,178 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.util.Arrays;
+
+/**
+ * {@link BloomKFilter} whose bitset is allocated in 4KB pages on first write, for filters sized for
+ * the worst case that usually see far fewer keys. Construction only allocates the page table (8
+ * bytes per 4KB of bitset), instead of allocating and zeroing the whole bitset. Pages are allocated
+ * by the first add that sets a bit in them and a probe of a page that was never written is a miss
+ * without touching memory.
+ * <p/>
+ * Keys are hashed uniformly over the bitset, so a key allocates a new page until most pages are
+ * written. Memory follows the number of keys while it is well below the number of pages (at the
+ * default fpp a 4KB page holds the bits of about 5000 expected entries), and the filter is as
+ * large as a BloomKFilter once the keys are a few times the number of pages.
+ * <p/>
+ * Bits are set exactly as in a BloomKFilter with the same options, {@link #toBloomKFilter()}
+ * copies the filter into one, for example to serialize or merge it. Like BloomKFilter, this class
+ * is not thread safe.
+ */
+public class PagedBloomKFilter {
+  private final BloomKFilter layout;
+  private final int blockSizeBits;
+  private final int numWords;
+  // null for pages that were never written
+  private final long[][] pages;
+  private int allocatedPages;
+
+  public PagedBloomKFilter(long maxNumEntries) {
+    this(maxNumEntries, BloomKFilter.DEFAULT_FPP);
+  }
+
+  /**
+   * Creates an empty filter with default block geometry, same size as
+   * {@link BloomKFilter#BloomKFilter(long, double)}.
+   *
+   * @param maxNumEntries - expected number of entries
+   * @param fpp           - false positive probability
+   */
+  public PagedBloomKFilter(long maxNumEntries, double fpp) {
+    this(maxNumEntries, fpp, 0);
+  }
+
+  // options as in BloomKFilter.options()
+  PagedBloomKFilter(long maxNumEntries, double fpp, long options) {
+    this.layout = BloomKFilter.layout(maxNumEntries, fpp, options);
+    this.blockSizeBits = Integer.numberOfTrailingZeros(layout.getBlockSize());
+    this.numWords = (int) (layout.getBitSize() / Long.SIZE);
+    int numPages = (numWords + BloomKFilter.PAGE_WORDS - 1) >>> BloomKFilter.PAGE_WORDS_BITS;
+    this.pages = new long[numPages][];
+  }
+
+  void addHash(long hash64) {
+    int blockBaseOffset = layout.blockIndex(hash64) << blockSizeBits;
+    int page = blockBaseOffset >>> BloomKFilter.PAGE_WORDS_BITS;
+    long[] words = pages[page];
+    if (words == null) {
+      // blocks never span pages, the last page only holds the remaining words
+      words = new long[Math.min(BloomKFilter.PAGE_WORDS,
+          numWords - (page << BloomKFilter.PAGE_WORDS_BITS))];
+      pages[page] = words;
+      allocatedPages++;
+    }
+    layout.addHash(words, blockBaseOffset & (BloomKFilter.PAGE_WORDS - 1), hash64);
+  }
+
+  boolean testHash(long hash64) {
+    int blockBaseOffset = layout.blockIndex(hash64) << blockSizeBits;
+    long[] words = pages[blockBaseOffset >>> BloomKFilter.PAGE_WORDS_BITS];
+    return words != null &&
+        layout.testHash(words, blockBaseOffset & (BloomKFilter.PAGE_WORDS - 1), hash64);
+  }
+
+  public void addBytes(byte[] val) {
+    addHash(Murmur3.hash64(val));
+  }
+
+  public void addString(String val) {
+    addBytes(val.getBytes());
+  }
+
+  /**
+   * Adds the key, same as {@link BloomKFilter#addLong(long)}.
+   */
+  public void addLong(long val) {
+    addHash(Murmur3.hash64(val));
+  }
+
+  public void addLongs(long[] keys) {
+    for (long key : keys) {
+      addHash(Murmur3.hash64(key));
+    }
+  }
+
+  public boolean testBytes(byte[] val) {
+    return testHash(Murmur3.hash64(val));
+  }
+
+  public boolean testString(String val) {
+    return testBytes(val.getBytes());
+  }
+
+  public boolean testLong(long val) {
+    return testHash(Murmur3.hash64(val));
+  }
+
+  /**
+   * Copies the filter into a BloomKFilter with the same options. Keys added to this filter test
+   * the same in the returned filter.
+   */
+  public BloomKFilter toBloomKFilter() {
+    BloomKFilter bf = new BloomKFilter(layout.getExpectedNumEntries(),
+        layout.getFalsePositivePercent(), layout.getBlockSize(), layout.getWordBits(),
+        layout.getBitPlacement(), layout.isBlockedSizing(), layout.getRangeReduction());
+    long[] data = bf.getBitSet();
+    for (int page = 0; page < pages.length; page++) {
+      if (pages[page] != null) {
+        System.arraycopy(pages[page], 0, data, page << BloomKFilter.PAGE_WORDS_BITS,
+            pages[page].length);
+      }
+    }
+    return bf;
+  }
+
+  /**
+   * Clears the filter and releases all of its pages.
+   */
+  public void clear() {
+    Arrays.fill(pages, null);
+    allocatedPages = 0;
+  }
+
+  public long getBitSize() {
+    return layout.getBitSize();
+  }
+
+  public int getNumHashFunctions() {
+    return layout.getNumHashFunctions();
+  }
+
+  public double getFalsePositivePercent() {
+    return layout.getFalsePositivePercent();
+  }
+
+  public long getExpectedNumEntries() {
+    return layout.getExpectedNumEntries();
+  }
+
+  public int getNumPages() {
+    return pages.length;
+  }
+
+  public int getAllocatedPages() {
+    return allocatedPages;
+  }
+
+  /**
+   * Returns the size of the allocated pages in bytes.
+   */
+  public long sizeInBytes() {
+    return (long) allocatedPages * BloomKFilter.PAGE_WORDS * 8;
+  }
+}
@@ -0,0 +1,137 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongConsumer;
+
+/**
+ * Adds keys to a {@link BloomKFilter} from multiple threads of the common {@link ForkJoinPool}.
+ * <p/>
+ * The bitset is split into contiguous block ranges (partitions), each guarded by its own lock.
+ * Keys are split between the workers with the spliterator. A worker hashes its keys and buffers
+ * the hashes per partition, a full buffer is applied to the filter while holding only the lock of
+ * its partition. Every bit of a key is within its block, so workers applying different partitions
+ * never write the same word and no thread local copy of the bitset is needed. The result is
+ * identical to adding the keys one by one with {@link BloomKFilter#addLong(long)}.
+ */
+class ParallelBloomKFilterBuilder {
+  // hashes buffered per partition before the partition lock is taken
+  static final int BUFFER_SIZE = 256;
+  // partitions per worker, more partitions means less lock contention but more buffer memory. Each
+  // worker buffers up to MAX_PARTITIONS * BUFFER_SIZE hashes (512KB).
+  private static final int PARTITIONS_PER_WORKER = 8;
+  private static final int MAX_PARTITIONS = 256;
+  private final BloomKFilter filter;
+  private final int numPartitions;
+  private final Object[] locks;
+
+  ParallelBloomKFilterBuilder(BloomKFilter filter, int parallelism) {
+    assert parallelism > 0 : "parallelism should be > 0";
+    this.filter = filter;
+    this.numPartitions = Math.min(filter.getTotalBlockCount(),
+        Math.min(MAX_PARTITIONS, parallelism * PARTITIONS_PER_WORKER));
+    this.locks = new Object[numPartitions];
+    for (int i = 0; i < numPartitions; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  /**
+   * Adds all the remaining keys of the spliterator. Keys are split into about parallelism parts
+   * (fewer if the spliterator does not split well), each added by a common pool task.
+   */
+  void addAll(Spliterator.OfLong keys, int parallelism) {
+    if (parallelism == 1) {
+      new Worker().addAll(keys);
+      return;
+    }
+    long estimate = keys.estimateSize();
+    long splitThreshold = estimate == Long.MAX_VALUE ? BUFFER_SIZE :
+        Math.max(BUFFER_SIZE, estimate / parallelism);
+    ForkJoinPool.commonPool().invoke(new AddTask(keys, splitThreshold));
+  }
+
+  private int partitionOf(int blockIdx) {
+    return (int) ((long) blockIdx * numPartitions / filter.getTotalBlockCount());
+  }
+
+  private class AddTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Spliterator.OfLong keys;
+    private final long splitThreshold;
+
+    AddTask(Spliterator.OfLong keys, long splitThreshold) {
+      this.keys = keys;
+      this.splitThreshold = splitThreshold;
+    }
+
+    @Override
+    protected void compute() {
+      // keep splitting off and forking halves, the remaining part is added by this task
+      List<AddTask> forked = new ArrayList<AddTask>();
+      Spliterator.OfLong split;
+      while (keys.estimateSize() > splitThreshold && (split = keys.trySplit()) != null) {
+        AddTask task = new AddTask(split, splitThreshold);
+        task.fork();
+        forked.add(task);
+      }
+      new Worker().addAll(keys);
+      for (AddTask task : forked) {
+        task.join();
+      }
+    }
+  }
+
+  private class Worker implements LongConsumer {
+    private final long[][] buffers = new long[numPartitions][BUFFER_SIZE];
+    private final int[] counts = new int[numPartitions];
+
+    void addAll(Spliterator.OfLong keys) {
+      keys.forEachRemaining(this);
+      for (int i = 0; i < numPartitions; i++) {
+        flush(i);
+      }
+    }
+
+    @Override
+    public void accept(long val) {
+      // same hash as BloomKFilter.addLong()
+      long hash64 = Murmur3.hash64(val);
+      int partition = partitionOf(filter.blockIndex(hash64));
+      buffers[partition][counts[partition]++] = hash64;
+      if (counts[partition] == BUFFER_SIZE) {
+        flush(partition);
+      }
+    }
+
+    private void flush(int partition) {
+      long[] buffer = buffers[partition];
+      int count = counts[partition];
+      synchronized (locks[partition]) {
+        for (int i = 0; i < count; i++) {
+          filter.addHash(buffer[i]);
+        }
+      }
+      counts[partition] = 0;
+    }
+  }
+}
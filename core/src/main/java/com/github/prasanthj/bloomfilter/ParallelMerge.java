@@ -0,0 +1,99 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ORs many bitsets of the same length into a target bitset, used by mergeAll() of the filters.
+ * <p/>
+ * Merging filters pairwise reads and writes the whole target once per input. Instead, the word
+ * range of the target is split across the common {@link ForkJoinPool} workers and each worker ORs
+ * all the inputs into its range. Within a range, the target is processed in L1 sized chunks and
+ * every input is OR'ed into a chunk before moving to the next one, so the target words are written
+ * back to memory only once and the inputs are streamed sequentially.
+ */
+class ParallelMerge {
+  // number of serialized filters deserialized at a time by the streaming mergeAll()
+  static final int GROUP_SIZE = 64;
+  // ranges smaller than this are not split further (256KB of target)
+  private static final int MIN_TASK_WORDS = 1 << 15;
+  // target chunk that stays in L1 while all the inputs are OR'ed into it (16KB)
+  private static final int CHUNK_WORDS = 1 << 11;
+
+  private ParallelMerge() {
+  }
+
+  /**
+   * ORs all the sources into target. Sources should have the same length as the target.
+   */
+  static void orAll(long[] target, List<long[]> sources) {
+    for (long[] source : sources) {
+      if (source.length != target.length) {
+        throw new IllegalArgumentException("BitArrays must be of equal length (" + target.length +
+            " != " + source.length + ")");
+      }
+    }
+    if (sources.isEmpty()) {
+      return;
+    }
+    if (target.length <= MIN_TASK_WORDS) {
+      orRange(target, sources, 0, target.length);
+    } else {
+      ForkJoinPool.commonPool().invoke(new OrTask(target, sources, 0, target.length));
+    }
+  }
+
+  private static void orRange(long[] target, List<long[]> sources, int from, int to) {
+    for (int chunk = from; chunk < to; chunk += CHUNK_WORDS) {
+      final int end = Math.min(to, chunk + CHUNK_WORDS);
+      for (long[] source : sources) {
+        for (int i = chunk; i < end; i++) {
+          target[i] |= source[i];
+        }
+      }
+    }
+  }
+
+  private static class OrTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] target;
+    private final List<long[]> sources;
+    private final int from;
+    private final int to;
+
+    OrTask(long[] target, List<long[]> sources, int from, int to) {
+      this.target = target;
+      this.sources = sources;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= MIN_TASK_WORDS) {
+        orRange(target, sources, from, to);
+        return;
+      }
+      // split at chunk boundary
+      final int mid = from + ((to - from) / 2 / CHUNK_WORDS) * CHUNK_WORDS;
+      invokeAll(new OrTask(target, sources, from, mid), new OrTask(target, sources, mid, to));
+    }
+  }
+}
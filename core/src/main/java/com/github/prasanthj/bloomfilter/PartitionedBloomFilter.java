@@ -0,0 +1,674 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Partitioned bloom filter. The bitset of m bits is split into k disjoint slices of m/k bits each
+ * and i-th hash function only sets/tests bits in the i-th slice. Every inserted element sets
+ * exactly k bits (one per slice), which makes the fill ratio of each slice and hence the false
+ * positive probability easier to reason about than the standard bloom filter where k probes can
+ * collide with each other.
+ * <p/>
+ * Slices are word aligned, so each slice is a contiguous range of longs in the bitset. This allows
+ * slices to be merged independently (see {@link #mergeSlice(PartitionedBloomFilter, int)}) and
+ * separate threads to own separate slices during construction.
+ * <p/>
+ * Internally, this implementation of bloom filter uses Murmur3 fast non-cryptographic hash
+ * algorithm. Refer {@link BloomFilter} for more details.
+ */
+public class PartitionedBloomFilter {
+  private byte[] BYTE_ARRAY_4 = new byte[4];
+  private byte[] BYTE_ARRAY_8 = new byte[8];
+  private BitSet bitSet;
+  private final long m;
+  private final int k;
+  private final double fpp;
+  private final long n;
+  // number of bits in each of the k slices
+  private final long sliceBits;
+
+  public PartitionedBloomFilter(long maxNumEntries) {
+    this(maxNumEntries, BloomFilter.DEFAULT_FPP);
+  }
+
+  public PartitionedBloomFilter(long maxNumEntries, double fpp) {
+    this(maxNumEntries, fpp, true);
+  }
+
+  // sizes the filter, allocating the bitset only if allocate is true
+  private PartitionedBloomFilter(long maxNumEntries, double fpp, boolean allocate) {
+    assert maxNumEntries > 0 : "maxNumEntries should be > 0";
+    assert fpp > 0.0 && fpp < 1.0 : "False positive percentage should be > 0.0 & < 1.0";
+    this.fpp = fpp;
+    this.n = maxNumEntries;
+    long numBits = optimalNumOfBits(maxNumEntries, fpp);
+    this.k = optimalNumOfHashFunctions(maxNumEntries, numBits);
+    // each slice is rounded up to word boundary
+    long sliceLongs = (long) Math.ceil((double) numBits / k / Long.SIZE);
+    this.sliceBits = Math.max(1, sliceLongs) * Long.SIZE;
+    this.m = sliceBits * k;
+    this.bitSet = allocate ? new BitSet(m) : null;
+  }
+
+  // deserialize bloomfilter. see serialize() for the format.
+  public PartitionedBloomFilter(List<Long> serializedBloom) {
+    this(serializedBloom.get(0), Double.longBitsToDouble(serializedBloom.get(1)));
+    List<Long> bitSet = serializedBloom.subList(2, serializedBloom.size());
+    long[] data = new long[bitSet.size()];
+    for (int i = 0; i < bitSet.size(); i++) {
+      data[i] = bitSet.get(i);
+    }
+    this.bitSet = new BitSet(data);
+  }
+
+  static int optimalNumOfHashFunctions(long n, long m) {
+    return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+  }
+
+  static long optimalNumOfBits(long n, double p) {
+    if (p == 0) {
+      p = Double.MIN_VALUE;
+    }
+    return (long) (-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+  }
+
+  public long sizeInBytes() {
+    return bitSet.bitSize() / 8;
+  }
+
+  public void add(byte[] val) {
+    addBytes(val);
+  }
+
+  public void addBytes(byte[] val) {
+    // Kirsch et.al. double hashing, refer BloomFilter.addBytes() for details
+    long hash64 = Murmur3.hash64(val);
+    int hash1 = (int) hash64;
+    int hash2 = (int) (hash64 >>> 32);
+
+    long sliceOffset = 0;
+    for (int i = 1; i <= k; i++) {
+      int combinedHash = hash1 + (i * hash2);
+      // hashcode should be positive, flip all the bits if it's negative
+      if (combinedHash < 0) {
+        combinedHash = ~combinedHash;
+      }
+      // i-th hash only lands in i-th slice
+      long pos = sliceOffset + combinedHash % sliceBits;
+      if (bitSet.setBits >= 0) {
+        bitSet.setAndCount(pos);
+      } else {
+        bitSet.set(pos);
+      }
+      sliceOffset += sliceBits;
+    }
+  }
+
+  public void addString(String val) {
+    addBytes(val.getBytes());
+  }
+
+  public void addByte(byte val) {
+    addBytes(new byte[]{val});
+  }
+
+  public void addInt(int val) {
+    // puts int in little endian order
+    addBytes(intToByteArrayLE(val));
+  }
+
+
+  public void addLong(long val) {
+    // puts long in little endian order
+    addBytes(longToByteArrayLE(val));
+  }
+
+  public void addFloat(float val) {
+    addInt(Float.floatToIntBits(val));
+  }
+
+  public void addDouble(double val) {
+    addLong(Double.doubleToLongBits(val));
+  }
+
+  public boolean test(byte[] val) {
+    return testBytes(val);
+  }
+
+  public boolean testBytes(byte[] val) {
+    long hash64 = Murmur3.hash64(val);
+    int hash1 = (int) hash64;
+    int hash2 = (int) (hash64 >>> 32);
+
+    long sliceOffset = 0;
+    for (int i = 1; i <= k; i++) {
+      int combinedHash = hash1 + (i * hash2);
+      // hashcode should be positive, flip all the bits if it's negative
+      if (combinedHash < 0) {
+        combinedHash = ~combinedHash;
+      }
+      long pos = sliceOffset + combinedHash % sliceBits;
+      if (!bitSet.get(pos)) {
+        return false;
+      }
+      sliceOffset += sliceBits;
+    }
+    return true;
+  }
+
+  public boolean testString(String val) {
+    return testBytes(val.getBytes());
+  }
+
+  public boolean testByte(byte val) {
+    return testBytes(new byte[]{val});
+  }
+
+  public boolean testInt(int val) {
+    return testBytes(intToByteArrayLE(val));
+  }
+
+  public boolean testLong(long val) {
+    return testBytes(longToByteArrayLE(val));
+  }
+
+  public boolean testFloat(float val) {
+    return testInt(Float.floatToIntBits(val));
+  }
+
+  public boolean testDouble(double val) {
+    return testLong(Double.doubleToLongBits(val));
+  }
+
+  private byte[] intToByteArrayLE(int val) {
+    BYTE_ARRAY_4[0] = (byte) (val >> 0);
+    BYTE_ARRAY_4[1] = (byte) (val >> 8);
+    BYTE_ARRAY_4[2] = (byte) (val >> 16);
+    BYTE_ARRAY_4[3] = (byte) (val >> 24);
+    return BYTE_ARRAY_4;
+  }
+
+  private byte[] longToByteArrayLE(long val) {
+    BYTE_ARRAY_8[0] = (byte) (val >> 0);
+    BYTE_ARRAY_8[1] = (byte) (val >> 8);
+    BYTE_ARRAY_8[2] = (byte) (val >> 16);
+    BYTE_ARRAY_8[3] = (byte) (val >> 24);
+    BYTE_ARRAY_8[4] = (byte) (val >> 32);
+    BYTE_ARRAY_8[5] = (byte) (val >> 40);
+    BYTE_ARRAY_8[6] = (byte) (val >> 48);
+    BYTE_ARRAY_8[7] = (byte) (val >> 56);
+    return BYTE_ARRAY_8;
+  }
+
+  public long getBitSize() {
+    return m;
+  }
+
+  public long getSliceBitSize() {
+    return sliceBits;
+  }
+
+  public int getNumHashFunctions() {
+    return k;
+  }
+
+  public double getFalsePositivePercent() {
+    return fpp;
+  }
+
+  public long getExpectedNumEntries() {
+    return n;
+  }
+
+  /**
+   * First 2 entries are expected entries (n) and false positive percentage (fpp). fpp which is a
+   * double is serialized as long. The entries following first 2 entries are the actual bit set.
+   *
+   * @return bloom filter as list of long
+   */
+  public List<Long> serialize() {
+    List<Long> serialized = new ArrayList<Long>();
+    for (long l : header()) {
+      serialized.add(l);
+    }
+    for (long l : bitSet.getData()) {
+      serialized.add(l);
+    }
+    return serialized;
+  }
+
+  // leading entries of serialize() before the bit set
+  private long[] header() {
+    return new long[]{n, Double.doubleToLongBits(fpp)};
+  }
+
+  /**
+   * Check if the specified bloom filter is compatible with the current bloom filter.
+   *
+   * @param that - bloom filter to check compatibility
+   * @return true if compatible false otherwise
+   */
+  public boolean isCompatible(PartitionedBloomFilter that) {
+    return this != that &&
+        this.getBitSize() == that.getBitSize() &&
+        this.getNumHashFunctions() == that.getNumHashFunctions();
+  }
+
+  /**
+   * Returns the number of bits set in both this and the specified filter, without creating the
+   * intersection. Refer {@link BitSetOverlap} for details.
+   *
+   * @param that - compatible bloom filter
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long andBitCount(PartitionedBloomFilter that) {
+    checkComparable(that);
+    return BitSetOverlap.andBitCount(bitSet.data, that.bitSet.data);
+  }
+
+  /**
+   * Returns the number of bits set in this or the specified filter, without merging them.
+   *
+   * @param that - compatible bloom filter
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long orBitCount(PartitionedBloomFilter that) {
+    checkComparable(that);
+    return BitSetOverlap.orBitCount(bitSet.data, that.bitSet.data);
+  }
+
+  /**
+   * Estimates the number of distinct keys added to this or the specified filter, the
+   * {@link #estimatedCount()} of the two filters merged.
+   *
+   * @param that - compatible bloom filter
+   * @return estimated number of keys, Long.MAX_VALUE if the merged filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long estimatedUnionCount(PartitionedBloomFilter that) {
+    return Math.round(BitSetOverlap.unionCount(overlapBitCounts(that), m, k));
+  }
+
+  /**
+   * Estimates the number of distinct keys added to both this and the specified filter, as
+   * estimatedCount() of each minus the estimated union. The bitsets are read once, or only their
+   * AND is counted if both filters track their set bits (see {@link #trackSetBits()}).
+   *
+   * @param that - compatible bloom filter
+   * @return estimated number of keys in both filters, -1 if the merged filter would be full and
+   * the intersection cannot be estimated
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public long estimatedIntersectionCount(PartitionedBloomFilter that) {
+    final double intersection = BitSetOverlap.intersectionCount(overlapBitCounts(that), m, k);
+    return Double.isNaN(intersection) ? -1 : Math.round(intersection);
+  }
+
+  /**
+   * Estimates the Jaccard similarity |A and B| / |A or B| of the keys added to this (A) and the
+   * specified filter (B).
+   *
+   * @param that - compatible bloom filter
+   * @return estimated similarity in [0, 1], 0 if both filters are empty and NaN if the merged
+   * filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public double estimatedJaccard(PartitionedBloomFilter that) {
+    return BitSetOverlap.jaccard(overlapBitCounts(that), m, k);
+  }
+
+  /**
+   * Estimates the fraction |A and B| / |A| of the keys added to this filter (A) that were also
+   * added to the specified filter (B).
+   *
+   * @param that - compatible bloom filter
+   * @return estimated containment in [0, 1], 0 if this filter is empty and NaN if the merged
+   * filter would be full
+   * @throws IllegalArgumentException if the filter is not compatible
+   */
+  public double estimatedContainment(PartitionedBloomFilter that) {
+    return BitSetOverlap.containment(overlapBitCounts(that), m, k);
+  }
+
+  private long[] overlapBitCounts(PartitionedBloomFilter that) {
+    checkComparable(that);
+    if (bitSet.setBits >= 0 && that.bitSet.setBits >= 0) {
+      return BitSetOverlap.bitCounts(bitSet.data, that.bitSet.data, bitSet.setBits,
+          that.bitSet.setBits);
+    }
+    return BitSetOverlap.bitCounts(bitSet.data, that.bitSet.data);
+  }
+
+  // a filter can be compared with itself, unlike merged
+  private void checkComparable(PartitionedBloomFilter that) {
+    if (that != this && !isCompatible(that)) {
+      throw new IllegalArgumentException("Bloom filters are not compatible");
+    }
+  }
+
+  /**
+   * Merge the specified bloom filter with current bloom filter.
+   * NOTE: Merge does not check for incompatibility. Use isCompatible() before calling merge().
+   *
+   * @param that - bloom filter to merge
+   */
+  public void merge(PartitionedBloomFilter that) {
+    this.bitSet.putAll(that.bitSet);
+  }
+
+  /**
+   * Merge all the specified bloom filters with current bloom filter. The bitset is split into word
+   * ranges merged in parallel by the common fork-join pool, all the filters are merged into a
+   * range in one pass. Refer {@link ParallelMerge} for details.
+   *
+   * @param filters - bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Collection<PartitionedBloomFilter> filters) {
+    List<long[]> sources = new ArrayList<long[]>(filters.size());
+    for (PartitionedBloomFilter that : filters) {
+      if (that == this) {
+        continue;
+      }
+      if (!isCompatible(that)) {
+        throw new IllegalArgumentException("Bloom filters are not compatible");
+      }
+      sources.add(that.bitSet.getData());
+    }
+    ParallelMerge.orAll(bitSet.getData(), sources);
+    bitSet.recountSetBits();
+  }
+
+  /**
+   * Merge all the serialized bloom filters (see serialize()) with current bloom filter. Filters are
+   * deserialized and merged in groups, so only a few of them are in memory at a time.
+   *
+   * @param serializedFilters - serialized bloom filters to merge
+   * @throws IllegalArgumentException if any of the filters is not compatible
+   */
+  public void mergeAll(Iterator<List<Long>> serializedFilters) {
+    List<PartitionedBloomFilter> group = new ArrayList<PartitionedBloomFilter>(ParallelMerge.GROUP_SIZE);
+    while (serializedFilters.hasNext()) {
+      group.add(new PartitionedBloomFilter(serializedFilters.next()));
+      if (group.size() == ParallelMerge.GROUP_SIZE || !serializedFilters.hasNext()) {
+        mergeAll(group);
+        group.clear();
+      }
+    }
+  }
+
+  /**
+   * Merge the serialized bloom filter at the current position of the buffer with current bloom
+   * filter, without deserializing it. The buffer should contain the longs of serialize() in big
+   * endian order (as written by DataOutputStream.writeLong()). Position of the buffer is moved past
+   * the serialized bloom filter. Refer {@link SerializedMerge} for details.
+   *
+   * @param buffer - serialized bloom filter to merge
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   *                                  or the buffer is too short
+   */
+  public void mergeFrom(ByteBuffer buffer) {
+    try {
+      SerializedMerge.mergeFrom(header(), bitSet.getData(), buffer);
+    } finally {
+      bitSet.recountSetBits();
+    }
+  }
+
+  /**
+   * Merge the serialized bloom filter read from the stream with current bloom filter, without
+   * deserializing it. See mergeFrom(ByteBuffer) for the format. Exactly the serialized bloom filter
+   * is read from the stream.
+   *
+   * @param in - stream to read the serialized bloom filter from
+   * @throws IllegalArgumentException if the serialized header does not match this filter's header
+   * @throws IOException              if the stream cannot be read or ends early, in which case the
+   *                                  filter may be partially merged
+   */
+  public void mergeFrom(InputStream in) throws IOException {
+    try {
+      SerializedMerge.mergeFrom(header(), bitSet.getData(), in);
+    } finally {
+      bitSet.recountSetBits();
+    }
+  }
+
+  /**
+   * Starts maintaining the number of set bits on add and merge, so that getSetBitCount(),
+   * fillRatio(), estimatedCount() and estimatedFpp() are O(1). Counting costs a check of the old
+   * bit for every bit set. Changes made through the array returned by getBitSet() are not counted.
+   */
+  public void trackSetBits() {
+    bitSet.trackSetBits();
+  }
+
+  /**
+   * Returns the number of set bits, counted over the whole bitset unless set bits are tracked
+   * (see {@link #trackSetBits()}).
+   */
+  public long getSetBitCount() {
+    return bitSet.setBits >= 0 ? bitSet.setBits : bitSet.bitCount();
+  }
+
+  /**
+   * Returns the fraction of the bits that are set.
+   */
+  public double fillRatio() {
+    return (double) getSetBitCount() / m;
+  }
+
+  /**
+   * Estimates the number of distinct keys added from the number of set bits X, with the
+   * Swamidass-Baldi estimator n = -(m / k) ln(1 - X / m). A key sets exactly one bit in each of
+   * the k slices, so unlike {@link BloomFilter#estimatedCount()} k is exact and not an upper bound
+   * on the distinct bits of a key.
+   *
+   * @return estimated number of keys, Long.MAX_VALUE if all the bits are set
+   */
+  public long estimatedCount() {
+    return Math.round(-(double) m / k * Math.log1p(-fillRatio()));
+  }
+
+  /**
+   * Estimates the false positive probability as fillRatio()^k. The actual probability is the
+   * product of the fill ratios of the k slices, which is at most fillRatio()^k and equal to it when
+   * the slices are equally full as they are expected to be.
+   */
+  public double estimatedFpp() {
+    return Math.pow(fillRatio(), k);
+  }
+
+  /**
+   * Writes the filter in the versioned and checksummed container format, refer
+   * {@link FilterContainer} for the layout.
+   *
+   * @param out - stream to write to
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    FilterContainer.write(out, FilterContainer.Variant.PARTITIONED, FilterContainer.HASH_MURMUR3,
+        Murmur3.DEFAULT_SEED, k, m, n, fpp, 0, FilterContainer.UNKNOWN_COUNT,
+        bitSet.getData());
+  }
+
+  /**
+   * Reads a filter written by writeTo(). The header is validated (magic, version, variant, hash
+   * function) and the checksum is verified while the bit set is read.
+   *
+   * @param in - stream to read from
+   * @return bloom filter
+   * @throws IOException if the container is not a partitioned bloom filter, is corrupt or truncated
+   */
+  public static PartitionedBloomFilter readFrom(InputStream in) throws IOException {
+    FilterContainer.Header header = FilterContainer.readHeader(in,
+        FilterContainer.Variant.PARTITIONED, FilterContainer.HASH_MURMUR3, Murmur3.DEFAULT_SEED);
+    header.checkOptions(header.options == 0);
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(header.n, header.fpp, false);
+    header.checkLayout(bf.k, bf.m);
+    bf.bitSet = new BitSet(bf.m);
+    header.readData(in, bf.bitSet.getData());
+    return bf;
+  }
+
+  /**
+   * Merge only the specified slice of the specified bloom filter with current bloom filter. Slices
+   * are disjoint, so different slices can be merged concurrently by different threads.
+   * NOTE: Merge does not check for incompatibility. Use isCompatible() before calling mergeSlice().
+   *
+   * @param that  - bloom filter to merge
+   * @param slice - slice index [0, k)
+   */
+  public void mergeSlice(PartitionedBloomFilter that, int slice) {
+    assert slice >= 0 && slice < k : "slice should be >= 0 & < " + k;
+    int sliceLongs = (int) (sliceBits / Long.SIZE);
+    this.bitSet.putAll(that.bitSet, slice * sliceLongs, sliceLongs);
+  }
+
+  public long getNumBits() {
+    return m;
+  }
+
+  public long[] getBitSet() {
+    return bitSet.getData();
+  }
+
+  /**
+   * Bare metal bitset implementation. For performance reasons, this implementation does not check
+   * for index bounds nor expand the bitset size if the specified index is greater than the size.
+   */
+  public static class BitSet {
+    final long[] data;
+    // number of set bits, -1 if not tracked
+    long setBits = -1;
+
+    public BitSet(long bits) {
+      this(new long[(int) Math.ceil((double) bits / (double) Long.SIZE)]);
+    }
+
+    /**
+     * Deserialize long array as bitset.
+     *
+     * @param data
+     */
+    BitSet(long[] data) {
+      assert data.length > 0 : "data length is zero!";
+      this.data = data;
+    }
+
+    /**
+     * Sets the bit at specified index.
+     *
+     * @param index
+     */
+    public void set(long index) {
+      data[(int) (index >>> 6)] |= (1L << index);
+    }
+
+    // sets the bit and counts it if it was not set, set bits should be tracked
+    void setAndCount(long index) {
+      final int i = (int) (index >>> 6);
+      final long word = data[i];
+      data[i] = word | (1L << index);
+      setBits += ~word >>> index & 1;
+    }
+
+    void trackSetBits() {
+      if (setBits < 0) {
+        setBits = bitCount();
+      }
+    }
+
+    // recounts the set bits after a change to the whole bitset, if they are tracked
+    void recountSetBits() {
+      if (setBits >= 0) {
+        setBits = bitCount();
+      }
+    }
+
+    long bitCount() {
+      long bits = 0;
+      for (long word : data) {
+        bits += Long.bitCount(word);
+      }
+      return bits;
+    }
+
+    /**
+     * Returns true if the bit is set in the specified index.
+     *
+     * @param index
+     * @return
+     */
+    boolean get(long index) {
+      return (data[(int) (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    /**
+     * Number of bits
+     */
+    long bitSize() {
+      return (long) data.length * Long.SIZE;
+    }
+
+    public long[] getData() {
+      return data;
+    }
+
+    /**
+     * Combines the two BitArrays using bitwise OR.
+     */
+    void putAll(BitSet array) {
+      assert data.length == array.data.length :
+          "BitArrays must be of equal length (" + data.length + "!= " + array.data.length + ")";
+      for (int i = 0; i < data.length; i++) {
+        data[i] |= array.data[i];
+      }
+      recountSetBits();
+    }
+
+    /**
+     * Combines the specified range of words of the two BitArrays using bitwise OR.
+     */
+    void putAll(BitSet array, int offset, int length) {
+      assert data.length == array.data.length :
+          "BitArrays must be of equal length (" + data.length + "!= " + array.data.length + ")";
+      if (setBits < 0) {
+        for (int i = offset; i < offset + length; i++) {
+          data[i] |= array.data[i];
+        }
+        return;
+      }
+      // slices are merged concurrently, only the count is shared
+      long added = 0;
+      for (int i = offset; i < offset + length; i++) {
+        final long word = data[i];
+        data[i] = word | array.data[i];
+        added += Long.bitCount(array.data[i] & ~word);
+      }
+      synchronized (this) {
+        setBits += added;
+      }
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.util.Arrays;
+
+/**
+ * Bulk insert of hashes into a {@link BloomKFilter} in address order.
+ * <p/>
+ * When the filter is much larger than the last level cache, adding keys in their (random) order
+ * makes every insert a cache miss and usually a TLB miss too. This class takes a batch of hashes,
+ * radix partitions them by the high bits of their block index (counting sort) and then applies
+ * the updates one bucket after another. Each bucket covers at least a page of the bitset,
+ * so the writes sweep the bitset from start to end once per batch and the hardware prefetcher and
+ * TLB see mostly sequential accesses.
+ * <p/>
+ * Bits set are the same as adding the hashes one by one, only the order of updates differs.
+ */
+class RadixPartitionedInsert {
+  // hashes per batch. hashes, block indexes and their partitioned copies take 24 bytes per hash
+  static final int BATCH_SIZE = 1 << 16;
+  // filters smaller than this (about the size of a last level cache) are updated directly
+  static final long MIN_FILTER_BYTES = 8L << 20;
+  private static final int PAGE_SIZE = 4096;
+  // at most 2^12 buckets, so the histogram fits in L1
+  private static final int MAX_BUCKET_BITS = 12;
+  private final BloomKFilter filter;
+  private final int shift;
+  private final int[] bucketStart;
+  private final int[] blocks;
+  private final long[] sortedHashes;
+  private final int[] sortedBlocks;
+
+  RadixPartitionedInsert(BloomKFilter filter, int batchSize) {
+    this.filter = filter;
+    int totalBlockCount = filter.getTotalBlockCount();
+    int blocksPerPage = Math.max(1, PAGE_SIZE / (filter.getBlockSize() * (Long.SIZE / Byte.SIZE)));
+    int blockBits = Integer.SIZE - Integer.numberOfLeadingZeros(totalBlockCount - 1);
+    this.shift = Math.max(Integer.numberOfTrailingZeros(blocksPerPage),
+        blockBits - MAX_BUCKET_BITS);
+    this.bucketStart = new int[((totalBlockCount - 1) >>> shift) + 2];
+    this.blocks = new int[batchSize];
+    this.sortedHashes = new long[batchSize];
+    this.sortedBlocks = new int[batchSize];
+  }
+
+  static boolean isWorthPartitioning(BloomKFilter filter) {
+    return filter.sizeInBytes() >= MIN_FILTER_BYTES;
+  }
+
+  /**
+   * Adds the first count hashes to the filter. count should be at most the batch size.
+   */
+  void add(long[] hashes, int count) {
+    assert count <= blocks.length : "count should be <= " + blocks.length;
+    // histogram of buckets, shifted by one to turn into bucket start offsets
+    Arrays.fill(bucketStart, 0);
+    for (int i = 0; i < count; i++) {
+      final int blockIdx = filter.blockIndex(hashes[i]);
+      blocks[i] = blockIdx;
+      bucketStart[(blockIdx >>> shift) + 1]++;
+    }
+    for (int i = 1; i < bucketStart.length; i++) {
+      bucketStart[i] += bucketStart[i - 1];
+    }
+    // scatter into bucket order. bucketStart[b] ends up as the start of bucket b + 1.
+    for (int i = 0; i < count; i++) {
+      final int pos = bucketStart[blocks[i] >>> shift]++;
+      sortedHashes[pos] = hashes[i];
+      sortedBlocks[pos] = blocks[i];
+    }
+    for (int i = 0; i < count; i++) {
+      filter.addHash(sortedHashes[i], sortedBlocks[i]);
+    }
+  }
+}
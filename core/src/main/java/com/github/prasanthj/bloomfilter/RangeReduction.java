@@ -0,0 +1,75 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+/**
+ * How a hash value is mapped to a bit (BloomFilter), a block (BloomKFilter) or a word
+ * (Bloom1Filter) index in [0, n). Integer division costs 20-40 cycles which is a big share of a
+ * probe when the bitset is cache resident, the other modes replace it with a multiply or a mask.
+ * <p/>
+ * Filters locate the block/word from the hash bits that are also used for the bit positions. With
+ * MODULO, the index mixes all the bits of the hash. FAST_RANGE and POW2 only use high or low bits,
+ * so blocked filters feed them a remix of the 64-bit hash (see {@link #blockHash(long)}) to keep
+ * the block index independent of the bit positions within the block.
+ */
+public enum RangeReduction {
+  /**
+   * hash % n (default, the only mode of filters serialized before reduction modes existed).
+   */
+  MODULO,
+  /**
+   * Lemire's multiply-shift (hash * n) >>> 32, where hash is treated as a fraction of 2^32.
+   *
+   * @see <a href="https://lemire.me/blog/2016/06/27/a-fast-alternative-to-the-modulo-reduction/">A fast alternative to the modulo reduction</a>
+   */
+  FAST_RANGE,
+  /**
+   * hash & (n - 1). n is rounded up to the next power of two, so the filter uses up to 2x more
+   * memory (with proportionally lower fpp).
+   */
+  POW2;
+
+  // murmur3 fmix64 constant, different from BloomFilterSizing.BIT_HASH_MULTIPLIER so that block
+  // index and remixed bit positions are independent
+  private static final long BLOCK_HASH_MULTIPLIER = 0xC4CEB9FE1A85EC53L;
+
+  /**
+   * Upper 32 bits of remixed 64-bit hash, used as input for block index by FAST_RANGE and POW2.
+   */
+  static int blockHash(long hash64) {
+    return (int) ((hash64 * BLOCK_HASH_MULTIPLIER) >>> 32);
+  }
+
+  /**
+   * Maps the unsigned 32-bit hash to [0, n) with multiply-shift.
+   */
+  static int fastRange(int hash, int n) {
+    return (int) (((hash & 0xffffffffL) * n) >>> 32);
+  }
+
+  /**
+   * Rounds n up to the next power of two.
+   *
+   * @throws IllegalArgumentException if n is larger than 2^30, the largest power of two int
+   */
+  static int nextPowerOfTwo(int n) {
+    assert n > 0 : "n should be > 0";
+    if (n > (1 << 30)) {
+      throw new IllegalArgumentException(n + " cannot be rounded up to a power of two int");
+    }
+    return n == 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+  }
+}
@@ -0,0 +1,181 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+/**
+ * Time windowed bloom filter made of a ring of {@link BloomKFilter} generations. Useful for
+ * "seen in the last N windows" kind of membership checks.
+ * <p/>
+ * Inserts always go to the current generation and probes check all the generations. The key is
+ * hashed only once and the same 64-bit hash is used to probe every generation. Rotation is driven
+ * explicitly by the caller (usually from its own clock) via {@link #advance()}, which moves the
+ * ring to the oldest generation and clears it in place. Expiring a generation is O(words), the
+ * underlying bitsets are allocated once when the filter is created and reused afterwards.
+ * <p/>
+ * Since a probe checks all generations, false positive probability of this filter is roughly
+ * numGenerations * fpp when all generations are full.
+ */
+public class RotatingBloomKFilter {
+  private byte[] BYTE_ARRAY_4 = new byte[4];
+  private byte[] BYTE_ARRAY_8 = new byte[8];
+  private final BloomKFilter[] generations;
+  private int current;
+
+  public RotatingBloomKFilter(long maxNumEntriesPerGeneration, int numGenerations) {
+    this(maxNumEntriesPerGeneration, BloomFilter.DEFAULT_FPP, numGenerations);
+  }
+
+  public RotatingBloomKFilter(long maxNumEntriesPerGeneration, double fpp, int numGenerations) {
+    assert numGenerations > 0 : "numGenerations should be > 0";
+    this.generations = new BloomKFilter[numGenerations];
+    for (int i = 0; i < numGenerations; i++) {
+      generations[i] = new BloomKFilter(maxNumEntriesPerGeneration, fpp);
+    }
+    this.current = 0;
+  }
+
+  /**
+   * Rotates the ring by one generation. The oldest generation is cleared and becomes the current
+   * generation, so all the entries added numGenerations advances ago are expired.
+   */
+  public void advance() {
+    int next = current + 1;
+    if (next == generations.length) {
+      next = 0;
+    }
+    generations[next].clear();
+    current = next;
+  }
+
+  public void add(byte[] val) {
+    addBytes(val);
+  }
+
+  public void addBytes(byte[] val) {
+    generations[current].addHash(Murmur3.hash64(val));
+  }
+
+  public void addString(String val) {
+    addBytes(val.getBytes());
+  }
+
+  public void addByte(byte val) {
+    addBytes(new byte[]{val});
+  }
+
+  public void addInt(int val) {
+    // puts int in little endian order
+    addBytes(intToByteArrayLE(val));
+  }
+
+  public void addLong(long val) {
+    // puts long in little endian order
+    addBytes(longToByteArrayLE(val));
+  }
+
+  public void addFloat(float val) {
+    addInt(Float.floatToIntBits(val));
+  }
+
+  public void addDouble(double val) {
+    addLong(Double.doubleToLongBits(val));
+  }
+
+  public boolean test(byte[] val) {
+    return testBytes(val);
+  }
+
+  public boolean testBytes(byte[] val) {
+    long hash64 = Murmur3.hash64(val);
+    // recent generations are checked first as recently added entries are more likely to be probed
+    int idx = current;
+    for (int i = 0; i < generations.length; i++) {
+      if (generations[idx].testHash(hash64)) {
+        return true;
+      }
+      idx = idx == 0 ? generations.length - 1 : idx - 1;
+    }
+    return false;
+  }
+
+  public boolean testString(String val) {
+    return testBytes(val.getBytes());
+  }
+
+  public boolean testByte(byte val) {
+    return testBytes(new byte[]{val});
+  }
+
+  public boolean testInt(int val) {
+    return testBytes(intToByteArrayLE(val));
+  }
+
+  public boolean testLong(long val) {
+    return testBytes(longToByteArrayLE(val));
+  }
+
+  public boolean testFloat(float val) {
+    return testInt(Float.floatToIntBits(val));
+  }
+
+  public boolean testDouble(double val) {
+    return testLong(Double.doubleToLongBits(val));
+  }
+
+  private byte[] intToByteArrayLE(int val) {
+    BYTE_ARRAY_4[0] = (byte) (val >> 0);
+    BYTE_ARRAY_4[1] = (byte) (val >> 8);
+    BYTE_ARRAY_4[2] = (byte) (val >> 16);
+    BYTE_ARRAY_4[3] = (byte) (val >> 24);
+    return BYTE_ARRAY_4;
+  }
+
+  private byte[] longToByteArrayLE(long val) {
+    BYTE_ARRAY_8[0] = (byte) (val >> 0);
+    BYTE_ARRAY_8[1] = (byte) (val >> 8);
+    BYTE_ARRAY_8[2] = (byte) (val >> 16);
+    BYTE_ARRAY_8[3] = (byte) (val >> 24);
+    BYTE_ARRAY_8[4] = (byte) (val >> 32);
+    BYTE_ARRAY_8[5] = (byte) (val >> 40);
+    BYTE_ARRAY_8[6] = (byte) (val >> 48);
+    BYTE_ARRAY_8[7] = (byte) (val >> 56);
+    return BYTE_ARRAY_8;
+  }
+
+  public int getNumGenerations() {
+    return generations.length;
+  }
+
+  /**
+   * Returns the generation to which new entries are added.
+   */
+  public BloomKFilter getCurrentGeneration() {
+    return generations[current];
+  }
+
+  // this is configured value for each generation, not actual value
+  public double getFalsePositivePercent() {
+    return generations[0].getFalsePositivePercent();
+  }
+
+  public long sizeInBytes() {
+    long result = 0;
+    for (BloomKFilter bf : generations) {
+      result += bf.sizeInBytes();
+    }
+    return result;
+  }
+}
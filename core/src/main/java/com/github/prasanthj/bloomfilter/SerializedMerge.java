@@ -0,0 +1,115 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * ORs a serialized filter into a bitset without deserializing it, used by mergeFrom() of the
+ * filters.
+ * <p/>
+ * The serialized bytes are the longs of serialize() in big endian order, as written by
+ * {@link java.io.DataOutputStream#writeLong(long)}. The header (options, expected entries, fpp
+ * etc.) is compared with the header of the target filter and the bitset words are OR'ed into the
+ * target in chunks, so no filter or list of boxed longs is created.
+ */
+class SerializedMerge {
+  // words read and OR'ed at a time (16KB)
+  private static final int CHUNK_WORDS = 1 << 11;
+
+  private SerializedMerge() {
+  }
+
+  /**
+   * ORs the serialized filter at the current position of the buffer into target. On return, the
+   * position of the buffer is just past the serialized filter.
+   *
+   * @throws IllegalArgumentException if the header is different or the buffer is too short
+   */
+  static void mergeFrom(long[] header, long[] target, ByteBuffer buffer) {
+    long length = (long) (header.length + target.length) * (Long.SIZE / Byte.SIZE);
+    if (buffer.remaining() < length) {
+      throw new IllegalArgumentException("Serialized bloom filter is truncated (" +
+          buffer.remaining() + " < " + length + " bytes)");
+    }
+    LongBuffer longs = buffer.slice().order(ByteOrder.BIG_ENDIAN).asLongBuffer();
+    for (long expected : header) {
+      checkHeader(expected, longs.get());
+    }
+    long[] chunk = new long[Math.min(CHUNK_WORDS, target.length)];
+    for (int from = 0; from < target.length; from += chunk.length) {
+      int count = Math.min(chunk.length, target.length - from);
+      longs.get(chunk, 0, count);
+      or(target, from, chunk, count);
+    }
+    buffer.position(buffer.position() + (int) length);
+  }
+
+  /**
+   * ORs the serialized filter read from the stream into target. Reads exactly the serialized
+   * filter from the stream. If the stream ends within the bitset, the words read so far are
+   * already merged.
+   *
+   * @throws IllegalArgumentException if the header is different
+   * @throws EOFException             if the stream ends before the serialized filter
+   */
+  static void mergeFrom(long[] header, long[] target, InputStream in) throws IOException {
+    byte[] bytes = new byte[Math.max(header.length, Math.min(CHUNK_WORDS, target.length)) *
+        (Long.SIZE / Byte.SIZE)];
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    readFully(in, bytes, header.length * (Long.SIZE / Byte.SIZE));
+    for (int i = 0; i < header.length; i++) {
+      checkHeader(header[i], buffer.getLong(i * (Long.SIZE / Byte.SIZE)));
+    }
+    LongBuffer longs = buffer.asLongBuffer();
+    long[] chunk = new long[Math.min(CHUNK_WORDS, target.length)];
+    for (int from = 0; from < target.length; from += chunk.length) {
+      int count = Math.min(chunk.length, target.length - from);
+      readFully(in, bytes, count * (Long.SIZE / Byte.SIZE));
+      longs.get(chunk, 0, count);
+      longs.rewind();
+      or(target, from, chunk, count);
+    }
+  }
+
+  private static void checkHeader(long expected, long actual) {
+    if (expected != actual) {
+      throw new IllegalArgumentException("Bloom filters are not compatible");
+    }
+  }
+
+  private static void or(long[] target, int from, long[] chunk, int count) {
+    for (int i = 0; i < count; i++) {
+      target[from + i] |= chunk[i];
+    }
+  }
+
+  private static void readFully(InputStream in, byte[] bytes, int length) throws IOException {
+    int read = 0;
+    while (read < length) {
+      int r = in.read(bytes, read, length - read);
+      if (r < 0) {
+        throw new EOFException("Serialized bloom filter is truncated");
+      }
+      read += r;
+    }
+  }
+}
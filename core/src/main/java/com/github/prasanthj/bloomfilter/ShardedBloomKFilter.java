@@ -0,0 +1,223 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Thread safe bloom filter made of independent {@link BloomKFilter} shards, for write heavy
+ * workloads with many concurrent writers.
+ * <p/>
+ * A single filter shared by all writers needs a lock (or atomic updates) on every add, and the
+ * lock and the words it guards bounce between the caches of the writing cores. Here each key is
+ * routed by the upper bits of its Murmur3 hash to one of the shards, sized for its share of the
+ * expected entries. A shard has its own lock and is padded so that locks of different shards do
+ * not share a cache line, so writers only contend when they hit the same shard at the same time.
+ * An add or a test touches only the one shard of the key.
+ * <p/>
+ * Tests take no lock and do not wait for writers or other readers. A BloomKFilter probe writes no
+ * state and bits are only ever set, so reading the words while a writer sets bits cannot miss a
+ * bit that was already set. After every add the writer publishes a version of the shard with a
+ * release store, and a test reads it with a volatile load before it reads the words, so a test
+ * sees every add of the shard that completed before the test started. A test concurrent with
+ * clear() can see the shard partially cleared.
+ * <p/>
+ * Keys are hashed the same way as BloomKFilter, but since each shard is a separate filter the bits
+ * differ from a single BloomKFilter with the same number of entries.
+ */
+public class ShardedBloomKFilter {
+  public static final int DEFAULT_NUM_SHARDS = 64;
+  private final Shard[] shards;
+  private final long n;
+  private final double fpp;
+
+  public ShardedBloomKFilter(long maxNumEntries) {
+    this(maxNumEntries, BloomFilter.DEFAULT_FPP, DEFAULT_NUM_SHARDS);
+  }
+
+  /**
+   * Creates sharded bloom filter.
+   *
+   * @param maxNumEntries - expected number of entries across all the shards
+   * @param fpp           - false positive probability
+   * @param numShards     - number of shards, a few times the number of writer threads keeps the
+   *                      chance of two writers hitting the same shard low
+   */
+  public ShardedBloomKFilter(long maxNumEntries, double fpp, int numShards) {
+    assert maxNumEntries > 0 : "maxNumEntries should be > 0";
+    assert fpp > 0.0 && fpp < 1.0 : "False positive percentage should be > 0.0 & < 1.0";
+    assert numShards > 0 : "numShards should be > 0";
+    this.n = maxNumEntries;
+    this.fpp = fpp;
+    this.shards = new Shard[numShards];
+    long shardEntries = Math.max(1, (maxNumEntries + numShards - 1) / numShards);
+    for (int i = 0; i < numShards; i++) {
+      shards[i] = new Shard(new BloomKFilter(shardEntries, fpp));
+    }
+  }
+
+  // upper 32 bits pick the shard, so the shard is independent of the lower bits that BloomKFilter
+  // mostly uses within the shard
+  private Shard shardOf(long hash64) {
+    return shards[RangeReduction.fastRange((int) (hash64 >>> 32), shards.length)];
+  }
+
+  private void addHash(long hash64) {
+    Shard shard = shardOf(hash64);
+    synchronized (shard) {
+      shard.filter.addHash(hash64);
+      shard.publish();
+    }
+  }
+
+  private boolean testHash(long hash64) {
+    Shard shard = shardOf(hash64);
+    shard.acquire();
+    return shard.filter.testHash(hash64);
+  }
+
+  public void add(byte[] val) {
+    addBytes(val);
+  }
+
+  public void addBytes(byte[] val) {
+    addHash(Murmur3.hash64(val));
+  }
+
+  public void addString(String val) {
+    addBytes(val.getBytes());
+  }
+
+  public void addByte(byte val) {
+    addBytes(new byte[]{val});
+  }
+
+  public void addInt(int val) {
+    // puts int in little endian order
+    addBytes(intToByteArrayLE(val));
+  }
+
+  public void addLong(long val) {
+    // same as hashing the long in little endian order
+    addHash(Murmur3.hash64(val));
+  }
+
+  public void addFloat(float val) {
+    addInt(Float.floatToIntBits(val));
+  }
+
+  public void addDouble(double val) {
+    addLong(Double.doubleToLongBits(val));
+  }
+
+  public boolean test(byte[] val) {
+    return testBytes(val);
+  }
+
+  public boolean testBytes(byte[] val) {
+    return testHash(Murmur3.hash64(val));
+  }
+
+  public boolean testString(String val) {
+    return testBytes(val.getBytes());
+  }
+
+  public boolean testByte(byte val) {
+    return testBytes(new byte[]{val});
+  }
+
+  public boolean testInt(int val) {
+    return testBytes(intToByteArrayLE(val));
+  }
+
+  public boolean testLong(long val) {
+    return testHash(Murmur3.hash64(val));
+  }
+
+  public boolean testFloat(float val) {
+    return testInt(Float.floatToIntBits(val));
+  }
+
+  public boolean testDouble(double val) {
+    return testLong(Double.doubleToLongBits(val));
+  }
+
+  private static byte[] intToByteArrayLE(int val) {
+    return new byte[]{(byte) (val >> 0),
+        (byte) (val >> 8),
+        (byte) (val >> 16),
+        (byte) (val >> 24)};
+  }
+
+  public long sizeInBytes() {
+    long result = 0;
+    for (Shard shard : shards) {
+      result += shard.filter.sizeInBytes();
+    }
+    return result;
+  }
+
+  public int getNumShards() {
+    return shards.length;
+  }
+
+  public double getFalsePositivePercent() {
+    return fpp;
+  }
+
+  public long getExpectedNumEntries() {
+    return n;
+  }
+
+  /**
+   * Clears all the bits in all the shards.
+   */
+  public void clear() {
+    for (Shard shard : shards) {
+      synchronized (shard) {
+        shard.filter.clear();
+        shard.publish();
+      }
+    }
+  }
+
+  private static final class Shard {
+    private static final AtomicLongFieldUpdater<Shard> VERSION =
+        AtomicLongFieldUpdater.newUpdater(Shard.class, "version");
+    private final BloomKFilter filter;
+    // number of changes (adds and clears) of the filter published to tests, written under the lock
+    // of the shard
+    private volatile long version;
+    // the monitor of the shard is in its header, pad the object to a cache line so that shards
+    // allocated next to each other do not share it
+    @SuppressWarnings("unused")
+    private long p1, p2, p3, p4, p5, p6, p7;
+
+    Shard(BloomKFilter filter) {
+      this.filter = filter;
+    }
+
+    // release store, cheaper than a volatile write and enough for tests that acquire() first
+    void publish() {
+      VERSION.lazySet(this, version + 1);
+    }
+
+    // volatile load, the words written before the loaded version was published are visible after
+    long acquire() {
+      return version;
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TestBitSetEncoding {
+  private Random rand = new Random(123);
+
+  private static void assertRoundTrip(long[] words) {
+    for (BitSetEncoding.Encoding encoding : BitSetEncoding.Encoding.values()) {
+      byte[] encoded = BitSetEncoding.encode(words, encoding);
+      assertEquals(BitSetEncoding.encodedSize(words, encoding), encoded.length);
+      ByteBuffer buffer = ByteBuffer.wrap(encoded);
+      assertEquals(encoding, BitSetEncoding.encodingOf(buffer));
+      long[] decoded = new long[words.length];
+      BitSetEncoding.decode(buffer, decoded);
+      assertEquals(0, buffer.remaining());
+      assertArrayEquals(encoding.toString(), words, decoded);
+    }
+  }
+
+  @Test
+  public void testRoundTrip() {
+    // partial last container and partial last sparse bitmap word
+    int numWords = 3 * BitSetEncoding.CONTAINER_WORDS + 77;
+    assertRoundTrip(new long[numWords]);
+    assertRoundTrip(new long[]{-1L});
+    for (int numBits : new int[]{1, 100, 5000, 100_000, 1_000_000}) {
+      long[] words = new long[numWords];
+      for (int i = 0; i < numBits; i++) {
+        int bit = rand.nextInt(numWords * Long.SIZE);
+        words[bit >>> 6] |= 1L << bit;
+      }
+      // dense container (> 4096 bits) next to sparse ones
+      for (int i = 0; i < BitSetEncoding.CONTAINER_WORDS; i++) {
+        words[i] |= rand.nextLong();
+      }
+      assertRoundTrip(words);
+    }
+  }
+
+  @Test
+  public void testChoose() {
+    BloomKFilter empty = new BloomKFilter(1_000_000);
+    assertTrue(BitSetEncoding.choose(empty.getBitSet()) != BitSetEncoding.Encoding.RAW);
+    assertTrue(BitSetEncoding.encode(empty.getBitSet()).length < 100);
+
+    // few keys in a filter sized for many, about one bit per non-zero word so 2 byte positions
+    // are smaller than the words
+    BloomKFilter sparse = new BloomKFilter(1_000_000);
+    for (int i = 0; i < 1000; i++) {
+      sparse.addLong(i);
+    }
+    assertEquals(BitSetEncoding.Encoding.ROARING, BitSetEncoding.choose(sparse.getBitSet()));
+
+    // bits clustered in a few words
+    long[] clustered = new long[100_000];
+    for (int i = 0; i < clustered.length; i += 1000) {
+      clustered[i] = -1L;
+    }
+    assertEquals(BitSetEncoding.Encoding.SPARSE, BitSetEncoding.choose(clustered));
+
+    BloomKFilter full = new BloomKFilter(10_000);
+    for (int i = 0; i < 10_000; i++) {
+      full.addLong(i);
+    }
+    assertEquals(BitSetEncoding.Encoding.RAW, BitSetEncoding.choose(full.getBitSet()));
+  }
+
+  @Test
+  public void testDecodeIntoFilter() {
+    BloomKFilter bf = new BloomKFilter(1_000_000);
+    BloomKFilter other = new BloomKFilter(1_000_000);
+    for (int i = 0; i < 1000; i++) {
+      bf.addLong(i);
+      other.addLong(-i);
+    }
+    BloomKFilter copy = new BloomKFilter(1_000_000);
+    ByteBuffer buffer = ByteBuffer.wrap(BitSetEncoding.encode(bf.getBitSet()));
+    BitSetEncoding.decode(buffer, copy.getBitSet());
+    assertArrayEquals(bf.getBitSet(), copy.getBitSet());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(copy.testLong(i));
+    }
+    // decoding ORs into the bit set
+    BitSetEncoding.decode(ByteBuffer.wrap(BitSetEncoding.encode(other.getBitSet())),
+        copy.getBitSet());
+    bf.merge(other);
+    assertArrayEquals(bf.getBitSet(), copy.getBitSet());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLengthMismatch() {
+    BitSetEncoding.decode(ByteBuffer.wrap(BitSetEncoding.encode(new long[10])), new long[11]);
+  }
+
+  @Test
+  public void testCorrupt() {
+    byte[] unknown = BitSetEncoding.encode(new long[10]);
+    unknown[0] = 7;
+    try {
+      BitSetEncoding.encodingOf(ByteBuffer.wrap(unknown));
+      fail("unknown encoding not detected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertCorrupt(unknown, 10);
+
+    // a set bit in the shorter last container, key at 9, cardinality at 13 and position at 17
+    long[] words = new long[1500];
+    words[1100] = 1;
+    byte[] encoded = BitSetEncoding.encode(words, BitSetEncoding.Encoding.ROARING);
+    ByteBuffer buffer = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(1, buffer.getInt(9));
+    buffer.putInt(9, 2);
+    assertCorrupt(encoded, words.length);
+    buffer.putInt(9, -1);
+    assertCorrupt(encoded, words.length);
+    buffer.putInt(9, 1);
+    buffer.putInt(13, 0);
+    assertCorrupt(encoded, words.length);
+    buffer.putInt(13, 70000);
+    assertCorrupt(encoded, words.length);
+    buffer.putInt(13, 1);
+    buffer.putShort(17, (short) 0xffff);
+    assertCorrupt(encoded, words.length);
+    // truncated array and words containers
+    assertCorrupt(Arrays.copyOf(encoded, encoded.length - 1), words.length);
+    Arrays.fill(words, 0, BitSetEncoding.CONTAINER_WORDS, -1L);
+    byte[] dense = BitSetEncoding.encode(words, BitSetEncoding.Encoding.ROARING);
+    // words of the first container start at 17
+    assertCorrupt(Arrays.copyOf(dense, 17 + BitSetEncoding.CONTAINER_WORDS * 8 - 8), words.length);
+    assertCorrupt(Arrays.copyOf(dense, 15), words.length);
+    assertCorrupt(Arrays.copyOf(dense, 7), words.length);
+    // truncated header and raw words
+    assertCorrupt(Arrays.copyOf(dense, 3), words.length);
+    byte[] raw = BitSetEncoding.encode(words, BitSetEncoding.Encoding.RAW);
+    assertCorrupt(Arrays.copyOf(raw, raw.length - 1), words.length);
+  }
+
+  @Test
+  public void testCorruptSparse() {
+    // 100 words, bitmap of 2 longs at 5 and 13 followed by the non-zero words
+    long[] words = new long[100];
+    words[3] = 1;
+    words[99] = 2;
+    byte[] encoded = BitSetEncoding.encode(words, BitSetEncoding.Encoding.SPARSE);
+    ByteBuffer buffer = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(1L << 35, buffer.getLong(13));
+    // word 100 is past the end of the bit set
+    buffer.putLong(13, 1L << 36);
+    long[] target = new long[words.length];
+    try {
+      BitSetEncoding.decode(ByteBuffer.wrap(encoded), target);
+      fail("out of range word not detected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    // nothing is copied before the bitmap is validated
+    assertArrayEquals(new long[words.length], target);
+    buffer.putLong(13, 1L << 35);
+    // more non-zero words in the bitmap than in the payload
+    buffer.putLong(5, (1L << 3) | (1L << 4));
+    assertCorrupt(encoded, words.length);
+    buffer.putLong(5, 1L << 3);
+    assertCorrupt(Arrays.copyOf(encoded, encoded.length - 1), words.length);
+    assertCorrupt(Arrays.copyOf(encoded, 20), words.length);
+    // still valid after the changes are undone
+    BitSetEncoding.decode(ByteBuffer.wrap(encoded), target);
+    assertArrayEquals(words, target);
+  }
+
+  private static void assertCorrupt(byte[] encoded, int numWords) {
+    try {
+      BitSetEncoding.decode(ByteBuffer.wrap(encoded), new long[numWords]);
+      fail("corrupt encoding not detected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Measured fpp of filters sized with {@link BloomFilterSizing} against the configured fpp.
+ */
+public class TestBloomFilterSizing {
+  private static final int SIZE = 200_000;
+  private static final int PROBES = 2_000_000;
+  // allowed relative error of measured fpp
+  private static final double RELATIVE_ERROR = 0.15;
+
+  @Test
+  public void testNumBits() {
+    BloomFilterSizing sizing = BloomFilterSizing.forBloomK(8, 64, BloomKFilter.BitPlacement.ANY);
+    assertEquals(512, sizing.getBlockBits());
+    long m = sizing.optimalNumOfBits(1_000_000, 0.01);
+    assertEquals(0, m % sizing.getBlockBits());
+    // blocked layout needs more bits than the classic formula
+    assertTrue(m > BloomKFilter.optimalNumOfBits(1_000_000, 0.01));
+    int k = sizing.optimalNumOfHashFunctions(1_000_000, m);
+    assertTrue(sizing.falsePositiveProbability(1_000_000, m, k) <= 0.01);
+    assertTrue(sizing.falsePositiveProbability(1_000_000, m - sizing.getBlockBits(), k) > 0.0099);
+    // smaller blocks fill more unevenly and need more bits
+    assertTrue(BloomFilterSizing.forBloom1().optimalNumOfBits(1_000_000, 0.01) >
+        BloomFilterSizing.forBloomK(2, 64, BloomKFilter.BitPlacement.ANY)
+            .optimalNumOfBits(1_000_000, 0.01));
+    assertTrue(BloomFilterSizing.forBloomK(2, 64, BloomKFilter.BitPlacement.ANY)
+        .optimalNumOfBits(1_000_000, 0.01) > m);
+  }
+
+  @Test
+  public void testFalsePositiveProbability() {
+    BloomFilterSizing sizing = BloomFilterSizing.forBloom1();
+    assertEquals(0.0, sizing.falsePositiveProbability(0, 6400, 4), 0.0);
+    assertEquals(1.0, sizing.falsePositiveProbability(1_000_000, 64, 4), 0.0);
+    // with one bit per key, fpp is probability that the probed bit is set which for Poisson(1)
+    // keys per word is 1 - e^(-1/64)
+    assertEquals(1 - Math.exp(-1.0 / 64), sizing.falsePositiveProbability(1.0, 1), 1e-12);
+  }
+
+  @Test
+  public void testBloomKFpp() {
+    for (double fpp : new double[]{0.05, 0.01}) {
+      assertFpp(fpp, new BloomKFilter(SIZE, fpp, true));
+      assertFpp(fpp, new BloomKFilter(SIZE, fpp, 8, 64, BloomKFilter.BitPlacement.SPLIT, true));
+      assertFpp(fpp, new BloomKFilter(SIZE, fpp, 2, 64, BloomKFilter.BitPlacement.ANY, true));
+      assertFpp(fpp, new BloomKFilter(SIZE, fpp, 4, 32, BloomKFilter.BitPlacement.SPLIT, true));
+    }
+  }
+
+  @Test
+  public void testBloom1Fpp() {
+    for (double fpp : new double[]{0.05, 0.01}) {
+      Bloom1Filter bf = new Bloom1Filter(SIZE, fpp, true);
+      for (int i = 0; i < SIZE; i++) {
+        bf.addLong(i);
+      }
+      int fp = 0;
+      for (long probe = SIZE; probe < SIZE + PROBES; probe++) {
+        fp += bf.testLong(probe) ? 1 : 0;
+      }
+      assertEquals(fpp, (double) fp / PROBES, fpp * RELATIVE_ERROR);
+    }
+  }
+
+  @Test
+  public void testBloomGFpp() {
+    for (int g : new int[]{1, 2, 4, 8}) {
+      BloomGFilter bf = new BloomGFilter(SIZE, 0.01, g);
+      for (int i = 0; i < SIZE; i++) {
+        bf.addLong(i);
+      }
+      int fp = 0;
+      for (long probe = SIZE; probe < SIZE + PROBES; probe++) {
+        fp += bf.testLong(probe) ? 1 : 0;
+      }
+      assertEquals(0.01, (double) fp / PROBES, 0.01 * RELATIVE_ERROR);
+    }
+  }
+
+  // classic sizing of bloom-1 is far off, which is why blocked sizing exists
+  @Test
+  public void testClassicSizing() {
+    Bloom1Filter classic = new Bloom1Filter(SIZE, 0.01);
+    Bloom1Filter blocked = new Bloom1Filter(SIZE, 0.01, true);
+    for (int i = 0; i < SIZE; i++) {
+      classic.addLong(i);
+      blocked.addLong(i);
+    }
+    int fpClassic = 0;
+    int fpBlocked = 0;
+    for (long probe = SIZE; probe < SIZE + PROBES; probe++) {
+      fpClassic += classic.testLong(probe) ? 1 : 0;
+      fpBlocked += blocked.testLong(probe) ? 1 : 0;
+    }
+    assertTrue(fpClassic > 2 * fpBlocked);
+    assertTrue(blocked.getBitSize() > classic.getBitSize());
+  }
+
+  @Test
+  public void testSerialize() {
+    BloomKFilter bf = new BloomKFilter(10000, 0.01, true);
+    Bloom1Filter bf1 = new Bloom1Filter(10000, 0.01, true);
+    for (int i = 0; i < 1000; i++) {
+      bf.addLong(i);
+      bf1.addLong(i);
+    }
+
+    List<Long> serialized = bf.serialize();
+    assertTrue(serialized.get(0) < 0);
+    BloomKFilter bf2 = new BloomKFilter(serialized);
+    assertEquals(true, bf2.isBlockedSizing());
+    assertEquals(bf.getBitSize(), bf2.getBitSize());
+    assertEquals(bf.getNumHashFunctions(), bf2.getNumHashFunctions());
+    assertArrayEquals(bf.getBitSet(), bf2.getBitSet());
+    assertEquals(true, bf.isCompatible(bf2));
+    assertEquals(false, bf.isCompatible(new BloomKFilter(10000, 0.01)));
+
+    serialized = bf1.serialize();
+    assertTrue(serialized.get(0) < 0);
+    Bloom1Filter bf12 = new Bloom1Filter(serialized);
+    assertEquals(true, bf12.isBlockedSizing());
+    assertEquals(bf1.getBitSize(), bf12.getBitSize());
+    assertArrayEquals(bf1.getBitSet(), bf12.getBitSet());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(bf2.testLong(i));
+      assertTrue(bf12.testLong(i));
+    }
+
+    // classic sizing keeps the legacy format
+    assertEquals(10000L, (long) new Bloom1Filter(10000, 0.01).serialize().get(0));
+    assertEquals(10000L, (long) new BloomKFilter(10000, 0.01).serialize().get(0));
+  }
+
+  @Test
+  public void testInvalidFpp() {
+    // checked explicitly, so this does not depend on -ea
+    BloomFilterSizing[] sizings = {
+        BloomFilterSizing.forBloom1(),
+        BloomFilterSizing.forBloomG(2),
+        BloomFilterSizing.forBloomK(8, 64, BloomKFilter.BitPlacement.ANY)};
+    for (BloomFilterSizing sizing : sizings) {
+      for (double p : new double[]{0.0, 1.0, -0.5, Double.NaN}) {
+        try {
+          sizing.optimalNumOfBits(1000, p);
+          fail("fpp " + p + " not rejected");
+        } catch (IllegalArgumentException e) {
+          // expected
+        }
+      }
+    }
+  }
+
+  private void assertFpp(double fpp, BloomKFilter bf) {
+    for (int i = 0; i < SIZE; i++) {
+      bf.addLong(i);
+    }
+    for (int i = 0; i < SIZE; i++) {
+      assertTrue(bf.testLong(i));
+    }
+    int fp = 0;
+    for (long probe = SIZE; probe < SIZE + PROBES; probe++) {
+      fp += bf.testLong(probe) ? 1 : 0;
+    }
+    assertEquals(fpp, (double) fp / PROBES, fpp * RELATIVE_ERROR);
+  }
+}
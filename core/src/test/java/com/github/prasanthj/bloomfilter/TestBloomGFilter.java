@@ -0,0 +1,280 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TestBloomGFilter {
+  private static final int COUNT = 100;
+  Random rand = new Random(123);
+  private final double deltaError = 0.010;
+
+  @Test(expected = AssertionError.class)
+  public void testBloomIllegalArg1() {
+    BloomGFilter bf = new BloomGFilter(0, 0);
+  }
+
+  @Test(expected = AssertionError.class)
+  public void testBloomIllegalArg2() {
+    BloomGFilter bf = new BloomGFilter(1, 1.0);
+  }
+
+  @Test(expected = AssertionError.class)
+  public void testBloomIllegalNumWords() {
+    BloomGFilter bf = new BloomGFilter(1000, 0.05, 3);
+  }
+
+  @Test
+  public void testBloomNumBits() {
+    // size is always a multiple of cache line
+    for (int g : new int[]{1, 2, 4, 8}) {
+      BloomGFilter bf = new BloomGFilter(10000, 0.05, g);
+      assertEquals(0, bf.getBitSize() % 512);
+      assertEquals(bf.getBitSize(), bf.getNumBits());
+      assertEquals(bf.getBitSize() / 8, bf.sizeInBytes());
+    }
+    // more words per key need fewer bits for the same fpp
+    assertTrue(BloomGFilter.optimalNumOfBits(1000000, 0.01, 1) >
+        BloomGFilter.optimalNumOfBits(1000000, 0.01, 2));
+    assertTrue(BloomGFilter.optimalNumOfBits(1000000, 0.01, 2) >
+        BloomGFilter.optimalNumOfBits(1000000, 0.01, 8));
+    // but never fewer than the standard bloom filter
+    assertTrue(BloomGFilter.optimalNumOfBits(1000000, 0.01, 8) >
+        BloomFilter.optimalNumOfBits(1000000, 0.01));
+  }
+
+  @Test
+  public void testFalsePositiveProbability() {
+    long m = BloomGFilter.optimalNumOfBits(100000, 0.05, 2);
+    int k = BloomGFilter.optimalNumOfHashFunctions(100000, m, 2);
+    assertTrue(BloomGFilter.falsePositiveProbability(100000, m, k, 2) <= 0.05);
+    // fpp grows with the number of entries
+    assertTrue(BloomGFilter.falsePositiveProbability(200000, m, k, 2) > 0.05);
+    assertEquals(0.0, BloomGFilter.falsePositiveProbability(0, m, k, 2), 0.0);
+  }
+
+  @Test
+  public void testBloomGFilterBytes() {
+    BloomGFilter bf = new BloomGFilter(10000);
+    byte[] val = new byte[]{1, 2, 3};
+    byte[] val1 = new byte[]{1, 2, 3, 4};
+    byte[] val2 = new byte[]{1, 2, 3, 4, 5};
+    byte[] val3 = new byte[]{1, 2, 3, 4, 5, 6};
+
+    assertEquals(false, bf.test(val));
+    assertEquals(false, bf.test(val1));
+    assertEquals(false, bf.test(val2));
+    assertEquals(false, bf.test(val3));
+    bf.add(val);
+    assertEquals(true, bf.test(val));
+    assertEquals(false, bf.test(val1));
+    assertEquals(false, bf.test(val2));
+    assertEquals(false, bf.test(val3));
+    bf.add(val1);
+    bf.add(val2);
+    bf.add(val3);
+    assertEquals(true, bf.test(val));
+    assertEquals(true, bf.test(val1));
+    assertEquals(true, bf.test(val2));
+    assertEquals(true, bf.test(val3));
+
+    byte[] randVal = new byte[COUNT];
+    for (int i = 0; i < COUNT; i++) {
+      rand.nextBytes(randVal);
+      bf.addBytes(randVal);
+    }
+    // last value should be present
+    assertEquals(true, bf.testBytes(randVal));
+    // most likely this value should not exist
+    randVal[0] = 0;
+    randVal[1] = 0;
+    randVal[2] = 0;
+    randVal[3] = 0;
+    randVal[4] = 0;
+    assertEquals(false, bf.testBytes(randVal));
+  }
+
+  @Test
+  public void testBloomGFilterTypes() {
+    BloomGFilter bf = new BloomGFilter(10000);
+    bf.addByte(Byte.MIN_VALUE);
+    bf.addInt(Integer.MIN_VALUE);
+    bf.addLong(Long.MIN_VALUE);
+    bf.addFloat(Float.NEGATIVE_INFINITY);
+    bf.addDouble(Double.NEGATIVE_INFINITY);
+    bf.addString("bloom filter");
+
+    assertEquals(true, bf.testByte(Byte.MIN_VALUE));
+    assertEquals(true, bf.testInt(Integer.MIN_VALUE));
+    assertEquals(true, bf.testLong(Long.MIN_VALUE));
+    assertEquals(true, bf.testFloat(Float.NEGATIVE_INFINITY));
+    assertEquals(true, bf.testDouble(Double.NEGATIVE_INFINITY));
+    assertEquals(true, bf.testString("bloom filter"));
+    assertEquals(false, bf.testByte(Byte.MAX_VALUE));
+    assertEquals(false, bf.testInt(Integer.MAX_VALUE));
+    assertEquals(false, bf.testLong(Long.MAX_VALUE));
+    assertEquals(false, bf.testFloat(Float.POSITIVE_INFINITY));
+    assertEquals(false, bf.testDouble(Double.POSITIVE_INFINITY));
+    assertEquals(false, bf.testString("cuckoo filter"));
+  }
+
+  @Test
+  public void testWordsWithinCacheLine() {
+    for (int g : new int[]{1, 2, 4, 8}) {
+      BloomGFilter bf = new BloomGFilter(10000, 0.05, g);
+      bf.addString("bloom filter");
+      long[] data = bf.getBitSet();
+      int firstLine = -1;
+      int words = 0;
+      for (int i = 0; i < data.length; i++) {
+        if (data[i] != 0) {
+          if (firstLine == -1) {
+            firstLine = i / 8;
+          }
+          assertEquals(firstLine, i / 8);
+          words++;
+        }
+      }
+      assertTrue(words >= 1 && words <= Math.min(g, bf.getNumHashFunctions()));
+    }
+  }
+
+  @Test
+  public void testSerialize() {
+    BloomGFilter bf = new BloomGFilter(10000, 0.03, 4);
+    for (int i = 0; i < 1000; i++) {
+      bf.addLong(i);
+    }
+    BloomGFilter bf2 = new BloomGFilter(bf.serialize());
+    assertArrayEquals(bf.getBitSet(), bf2.getBitSet());
+    assertEquals(bf.getNumHashFunctions(), bf2.getNumHashFunctions());
+    assertEquals(bf.getNumWords(), bf2.getNumWords());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(bf2.testLong(i));
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    BloomGFilter bf = new BloomGFilter(10000);
+    String val = "bloo";
+    String val1 = "bloom fil";
+    bf.addString(val);
+    bf.addString(val1);
+
+    BloomGFilter bf2 = new BloomGFilter(10000);
+    String v = "2_bloo";
+    String v1 = "2_bloom fil";
+    bf2.addString(v);
+    bf2.addString(v1);
+
+    assertEquals(true, bf.isCompatible(bf2));
+    assertEquals(false, bf.isCompatible(new BloomGFilter(10000, BloomFilter.DEFAULT_FPP, 4)));
+    assertEquals(false, bf.testString(v));
+    assertEquals(false, bf.testString(v1));
+
+    bf.merge(bf2);
+
+    assertEquals(true, bf.testString(val));
+    assertEquals(true, bf.testString(val1));
+    assertEquals(true, bf.testString(v));
+    assertEquals(true, bf.testString(v1));
+  }
+
+  @Test
+  public void testFpp10K() {
+    for (int g : new int[]{1, 2, 4, 8}) {
+      int size = 10_000;
+      BloomGFilter bf = new BloomGFilter(size, BloomFilter.DEFAULT_FPP, g);
+      assertFpp(bf, measureFpp(bf, size));
+    }
+  }
+
+  @Test
+  public void testFpp1M() {
+    for (int g : new int[]{1, 2, 4, 8}) {
+      int size = 1_000_000;
+      BloomGFilter bf = new BloomGFilter(size, 0.01, g);
+      assertFpp(bf, measureFpp(bf, size));
+    }
+  }
+
+  // unlike bloom-1, bloom-g sized from its own model meets the configured fpp
+  @Test
+  public void testFppComparison() {
+    int size = 100_000;
+    int probes = 1_000_000;
+    BloomGFilter bloomG = new BloomGFilter(size);
+    Bloom1Filter bloom1 = new Bloom1Filter(size);
+    for (int i = 0; i < size; i++) {
+      bloomG.addLong(i);
+      bloom1.addLong(i);
+    }
+
+    int fpBloomG = 0;
+    int fpBloom1 = 0;
+    for (long probe = size; probe < size + probes; probe++) {
+      fpBloomG += bloomG.testLong(probe) ? 1 : 0;
+      fpBloom1 += bloom1.testLong(probe) ? 1 : 0;
+    }
+
+    double bloomGFpp = (double) fpBloomG / probes;
+    double bloom1Fpp = (double) fpBloom1 / probes;
+    assertEquals(BloomFilter.DEFAULT_FPP, bloomGFpp, deltaError);
+    assertTrue(bloomGFpp < bloom1Fpp);
+  }
+
+  private double measureFpp(BloomGFilter bf, int size) {
+    for (int i = 0; i < size; i++) {
+      bf.addLong(i);
+    }
+
+    for (int i = 0; i < size; i++) {
+      assertTrue(bf.testLong(i));
+    }
+
+    int fp = 0;
+    Random random = new Random();
+    for (int i = 0; i < size; i++) {
+      int probe = random.nextInt();
+      // out of range probes
+      if ((probe > size) || (probe < 0)) {
+        if (bf.testLong(probe)) {
+          fp++;
+        }
+      }
+    }
+    return (double) fp / (double) size;
+  }
+
+  private void assertFpp(BloomGFilter bf, double actualFpp) {
+    double expectedFpp = bf.getFalsePositivePercent();
+    if (actualFpp < expectedFpp) {
+      assertTrue(actualFpp != 0.0);
+    } else {
+      assertEquals(expectedFpp, actualFpp, deltaError);
+    }
+  }
+}
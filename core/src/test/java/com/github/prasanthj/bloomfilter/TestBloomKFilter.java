@@ -15,9 +15,11 @@
  */
 package com.github.prasanthj.bloomfilter;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
 import java.util.Random;
 
 import org.junit.Test;
@@ -467,6 +469,98 @@ public class TestBloomKFilter {
     assertEquals(true, bf.testString(v3));
   }
 
+  @Test(expected = AssertionError.class)
+  public void testBloomIllegalBlockSize() {
+    BloomKFilter bf = new BloomKFilter(100, 0.05, 3, 64, BloomKFilter.BitPlacement.ANY);
+  }
+
+  @Test(expected = AssertionError.class)
+  public void testBloomIllegalWordBits() {
+    BloomKFilter bf = new BloomKFilter(100, 0.05, 8, 16, BloomKFilter.BitPlacement.ANY);
+  }
+
+  @Test
+  public void testBlockGeometry() {
+    int size = 10_000;
+    for (int blockSize : new int[]{2, 4, 8, 16}) {
+      for (int wordBits : new int[]{32, 64}) {
+        for (BloomKFilter.BitPlacement placement : BloomKFilter.BitPlacement.values()) {
+          BloomKFilter bf = new BloomKFilter(size, 0.05, blockSize, wordBits, placement);
+          assertEquals(0, bf.getBitSet().length % blockSize);
+          for (int i = 0; i < size; i++) {
+            bf.addLong(i);
+          }
+          for (int i = 0; i < size; i++) {
+            assertTrue(bf.testLong(i));
+          }
+
+          int fp = 0;
+          for (int i = size; i < 2 * size; i++) {
+            if (bf.testLong(i)) {
+              fp++;
+            }
+          }
+          // smaller blocks have higher fpp than configured
+          double actualFpp = (double) fp / (double) size;
+          assertEquals(bf.getFalsePositivePercent(), actualFpp, 0.03);
+
+          List<Long> serialized = bf.serialize();
+          BloomKFilter bf2 = new BloomKFilter(serialized);
+          assertEquals(blockSize, bf2.getBlockSize());
+          assertEquals(wordBits, bf2.getWordBits());
+          assertEquals(placement, bf2.getBitPlacement());
+          assertArrayEquals(bf.getBitSet(), bf2.getBitSet());
+          assertTrue(bf.isCompatible(bf2));
+          for (int i = 0; i < size; i++) {
+            assertTrue(bf2.testLong(i));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSplitBlockOneBitPerWord() {
+    // 256-bit blocks made of 8 32-bit words
+    BloomKFilter bf = new BloomKFilter(10000, 0.05, 4, 32, BloomKFilter.BitPlacement.SPLIT);
+    assertTrue(bf.getNumHashFunctions() <= 8);
+    bf.addString("bloom filter");
+    long[] data = bf.getBitSet();
+    int nonEmptyBlocks = 0;
+    for (int block = 0; block < data.length / 4; block++) {
+      int words = 0;
+      int bits = 0;
+      for (int i = block * 4; i < block * 4 + 4; i++) {
+        int lo = (int) data[i];
+        int hi = (int) (data[i] >>> 32);
+        assertTrue(Integer.bitCount(lo) <= 1);
+        assertTrue(Integer.bitCount(hi) <= 1);
+        words += (lo != 0 ? 1 : 0) + (hi != 0 ? 1 : 0);
+        bits += Long.bitCount(data[i]);
+      }
+      if (bits > 0) {
+        nonEmptyBlocks++;
+        assertEquals(bf.getNumHashFunctions(), words);
+      }
+    }
+    assertEquals(1, nonEmptyBlocks);
+  }
+
+  @Test
+  public void testDefaultGeometrySerialization() {
+    BloomKFilter bf = new BloomKFilter(10000);
+    bf.addLong(1);
+    // default geometry keeps the legacy format (n, fpp, bitset)
+    List<Long> serialized = bf.serialize();
+    assertEquals(bf.getBitSet().length + 2, serialized.size());
+    assertEquals(10000, (long) serialized.get(0));
+
+    BloomKFilter bf2 = new BloomKFilter(10000, 0.05, 4, 64, BloomKFilter.BitPlacement.SPLIT);
+    assertEquals(false, bf.isCompatible(bf2));
+    assertEquals(bf2.getBitSet().length + 3, bf2.serialize().size());
+    assertTrue(bf2.serialize().get(0) < 0);
+  }
+
   @Test
   public void testFpp1K() {
     int size = 1000;
@@ -0,0 +1,132 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unrolled kernels should set and check the same bits as the generic BloomKFilter loops.
+ */
+public class TestBloomKKernel {
+  private static final int BLOCK_SIZE = 8;
+  private Random rand = new Random(123);
+
+  @Test
+  public void testForGeometry() {
+    for (int k = BloomKKernel.MIN_K; k <= BloomKKernel.MAX_K; k++) {
+      BloomKKernel kernel = BloomKKernel.forGeometry(k, BLOCK_SIZE, Long.SIZE,
+          BloomKFilter.BitPlacement.ANY, false);
+      assertEquals(k, kernel.getNumHashFunctions());
+    }
+    assertNull(BloomKKernel.forGeometry(2, BLOCK_SIZE, Long.SIZE, BloomKFilter.BitPlacement.ANY,
+        false));
+    assertNull(BloomKKernel.forGeometry(11, BLOCK_SIZE, Long.SIZE, BloomKFilter.BitPlacement.ANY,
+        false));
+    assertNull(BloomKKernel.forGeometry(4, 4, Long.SIZE, BloomKFilter.BitPlacement.ANY, false));
+    assertNull(BloomKKernel.forGeometry(4, BLOCK_SIZE, Integer.SIZE,
+        BloomKFilter.BitPlacement.ANY, false));
+    assertNull(BloomKKernel.forGeometry(4, BLOCK_SIZE, Long.SIZE,
+        BloomKFilter.BitPlacement.SPLIT, false));
+    assertNull(BloomKKernel.forGeometry(4, BLOCK_SIZE, Long.SIZE, BloomKFilter.BitPlacement.ANY,
+        true));
+  }
+
+  @Test
+  public void testAdd() {
+    for (int k = BloomKKernel.MIN_K; k <= BloomKKernel.MAX_K; k++) {
+      BloomKKernel kernel = BloomKKernel.forGeometry(k, BLOCK_SIZE, Long.SIZE,
+          BloomKFilter.BitPlacement.ANY, false);
+      for (int i = 0; i < 1000; i++) {
+        int hash1 = rand.nextInt();
+        int hash2 = rand.nextInt();
+        long[] actual = new long[2 * BLOCK_SIZE];
+        long[] expected = new long[2 * BLOCK_SIZE];
+        kernel.add(actual, BLOCK_SIZE, hash1, hash2);
+        add(expected, BLOCK_SIZE, hash1, hash2, k);
+        assertArrayEquals(expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void testTest() {
+    for (int k = BloomKKernel.MIN_K; k <= BloomKKernel.MAX_K; k++) {
+      BloomKKernel kernel = BloomKKernel.forGeometry(k, BLOCK_SIZE, Long.SIZE,
+          BloomKFilter.BitPlacement.ANY, false);
+      int hits = 0;
+      for (int i = 0; i < 1000; i++) {
+        int hash1 = rand.nextInt();
+        int hash2 = rand.nextInt();
+        // dense random block so that both outcomes are common
+        long[] data = new long[BLOCK_SIZE];
+        for (int j = 0; j < BLOCK_SIZE; j++) {
+          data[j] = rand.nextLong() | rand.nextLong();
+        }
+        boolean expected = test(data, 0, hash1, hash2, k);
+        assertEquals(expected, kernel.test(data, 0, hash1, hash2));
+        hits += expected ? 1 : 0;
+        kernel.add(data, 0, hash1, hash2);
+        assertTrue(kernel.test(data, 0, hash1, hash2));
+      }
+      assertTrue(hits > 0 && hits < 1000);
+    }
+  }
+
+  @Test
+  public void testFilter() {
+    // fpp of 1/2^k gives k hash functions with the classic formulas
+    for (int k = 2; k <= BloomKKernel.MAX_K + 1; k++) {
+      BloomKFilter bf = new BloomKFilter(10000, 1.0 / (1 << k));
+      assertEquals(k, bf.getNumHashFunctions());
+      for (int i = 0; i < 10000; i++) {
+        bf.addLong(i);
+      }
+      for (int i = 0; i < 10000; i++) {
+        assertTrue(bf.testLong(i));
+      }
+    }
+  }
+
+  // reference: generic BloomKFilter loop for the default geometry
+  private static void add(long[] data, int blockBaseOffset, int hash1, int hash2, int k) {
+    for (int i = 1; i <= k; i++) {
+      int combinedHash = hash1 + ((i + 1) * hash2);
+      if (combinedHash < 0) {
+        combinedHash = ~combinedHash;
+      }
+      data[blockBaseOffset + (combinedHash & (BLOCK_SIZE - 1))] |=
+          1L << ((combinedHash >>> 3) & (Long.SIZE - 1));
+    }
+  }
+
+  private static boolean test(long[] data, int blockBaseOffset, int hash1, int hash2, int k) {
+    long[] masks = new long[BLOCK_SIZE];
+    add(masks, 0, hash1, hash2, k);
+    for (int i = 0; i < BLOCK_SIZE; i++) {
+      if ((data[blockBaseOffset + i] & masks[i]) != masks[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2014 Prasanth Jayachandran
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TestConcurrentDynamicBloomFilter {
+
+  @Test
+  public void testSameAsDynamicBloomFilter() {
+    int size = 1000;
+    DynamicBloomFilter expected = new DynamicBloomFilter(size);
+    ConcurrentDynamicBloomFilter bf = new ConcurrentDynamicBloomFilter(size);
+    for (int i = 0; i < size * 3.5; i++) {
+      expected.addLong(i);
+      bf.addLong(i);
+      bf.addString("s" + i);
+      expected.addString("s" + i);
+    }
+    BloomFilter[] expectedRows = expected.getMatrix();
+    BloomFilter[] rows = bf.getMatrix();
+    assertEquals(expectedRows.length, rows.length);
+    assertEquals(expected.getBitsetSize(), bf.getBitsetSize());
+    for (int r = 0; r < rows.length; r++) {
+      assertArrayEquals(expectedRows[r].serialize().toArray(), rows[r].serialize().toArray());
+    }
+    assertEquals(size * 7, bf.getNumEntries());
+    for (int i = 0; i < size * 3.5; i++) {
+      assertTrue(bf.testLong(i));
+      assertTrue(bf.testString("s" + i));
+    }
+  }
+
+  @Test
+  public void testConcurrentAdd() throws InterruptedException {
+    final int size = 1000;
+    final int numThreads = 8;
+    final int perThread = 10_000;
+    final ConcurrentDynamicBloomFilter bf = new ConcurrentDynamicBloomFilter(size);
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int base = t * perThread;
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = base; i < base + perThread; i++) {
+            bf.addLong(i);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // no lost adds or bits
+    assertEquals(numThreads * perThread, bf.getNumEntries());
+    for (int i = 0; i < numThreads * perThread; i++) {
+      assertTrue(bf.testLong(i));
+    }
+    // rows are never over full, every row but the last one is short of full by at most a chunk
+    // per stripe (at most 2 stripes per processor)
+    int numRows = bf.getMatrix().length;
+    int maxStripes = 2 * Runtime.getRuntime().availableProcessors();
+    assertTrue(numRows >= numThreads * perThread / size);
+    assertTrue(numRows <= numThreads * perThread / (size - Math.max(maxStripes, size / 64)) + 1);
+  }
+}
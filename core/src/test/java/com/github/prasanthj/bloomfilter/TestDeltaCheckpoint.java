@@ -0,0 +1,167 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TestDeltaCheckpoint {
+  private Random rand = new Random(123);
+
+  private static byte[] delta(BloomKFilter bf) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    long written = bf.writeDelta(Channels.newChannel(out));
+    assertEquals(written, out.size());
+    return out.toByteArray();
+  }
+
+  private static void apply(BloomKFilter bf, byte[] delta) throws IOException {
+    bf.applyDelta(Channels.newChannel(new ByteArrayInputStream(delta)));
+  }
+
+  @Test
+  public void testDeltas() throws IOException {
+    // about 2.3MB, several pages per write
+    BloomKFilter bf = new BloomKFilter(1_000_000, 0.01);
+    bf.trackDirtyPages();
+    for (int i = 0; i < 100_000; i++) {
+      bf.addLong(rand.nextLong());
+    }
+    ByteArrayOutputStream base = new ByteArrayOutputStream();
+    bf.writeTo(base);
+    // full checkpoint resets the dirty pages
+    assertEquals(0, bf.getDirtyPageCount());
+    BloomKFilter replica = BloomKFilter.readFrom(new ByteArrayInputStream(base.toByteArray()));
+
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 10; i++) {
+        bf.addLong(rand.nextLong());
+      }
+      // at most one page per key
+      int dirty = bf.getDirtyPageCount();
+      assertTrue(dirty > 0 && dirty <= 10);
+      byte[] delta = delta(bf);
+      assertEquals(DeltaCheckpoint.HEADER_SIZE + dirty * (4 + BloomKFilter.PAGE_WORDS * 8) + 8,
+          delta.length);
+      assertEquals(0, bf.getDirtyPageCount());
+      apply(replica, delta);
+      assertArrayEquals(bf.getBitSet(), replica.getBitSet());
+    }
+
+    // empty delta
+    apply(replica, delta(bf));
+    assertArrayEquals(bf.getBitSet(), replica.getBitSet());
+
+    // merge and addLongs
+    BloomKFilter other = new BloomKFilter(1_000_000, 0.01);
+    other.addLong(-1);
+    bf.merge(other);
+    bf.addLongs(new long[]{1, 2, 3});
+    apply(replica, delta(bf));
+    assertArrayEquals(bf.getBitSet(), replica.getBitSet());
+
+    // clear is a full delta that restores the zeros
+    bf.clear();
+    assertEquals(DeltaCheckpoint.numPages(bf.getBitSet().length), bf.getDirtyPageCount());
+    apply(replica, delta(bf));
+    assertArrayEquals(bf.getBitSet(), replica.getBitSet());
+  }
+
+  @Test
+  public void testPartialLastPage() throws IOException {
+    BloomKFilter bf = new BloomKFilter(10000);
+    assertTrue(bf.getBitSet().length % BloomKFilter.PAGE_WORDS != 0);
+    bf.trackDirtyPages();
+    for (int i = 0; i < 10000; i++) {
+      bf.addLong(i);
+    }
+    assertEquals(DeltaCheckpoint.numPages(bf.getBitSet().length), bf.getDirtyPageCount());
+    BloomKFilter replica = new BloomKFilter(10000);
+    replica.trackDirtyPages();
+    apply(replica, delta(bf));
+    assertArrayEquals(bf.getBitSet(), replica.getBitSet());
+    assertEquals(0, bf.getDirtyPageCount());
+    // applied pages are dirty in a tracked replica
+    assertEquals(DeltaCheckpoint.numPages(bf.getBitSet().length), replica.getDirtyPageCount());
+
+    LongBloomKFilter lbf = new LongBloomKFilter(10000);
+    lbf.trackDirtyPages();
+    lbf.add(42);
+    LongBloomKFilter lbfReplica = new LongBloomKFilter(10000);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    lbf.writeDelta(Channels.newChannel(out));
+    lbfReplica.applyDelta(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+    assertTrue(lbfReplica.test(42));
+  }
+
+  @Test
+  public void testUntracked() throws IOException {
+    BloomKFilter bf = new BloomKFilter(100_000);
+    bf.addLong(1);
+    try {
+      delta(bf);
+      fail("delta written without tracking dirty pages");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("trackDirtyPages()"));
+    }
+  }
+
+  @Test
+  public void testMismatchAndCorrupt() throws IOException {
+    BloomKFilter bf = new BloomKFilter(100_000);
+    bf.trackDirtyPages();
+    bf.addLong(1);
+    bf.addLong(2);
+    byte[] delta = delta(bf);
+    try {
+      apply(new BloomKFilter(200_000), delta);
+      fail("delta applied to a filter of different size");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("does not match"));
+    }
+    for (int pos : new int[]{DeltaCheckpoint.HEADER_SIZE + 100, delta.length - 1}) {
+      byte[] corrupt = delta.clone();
+      corrupt[pos] ^= 1;
+      try {
+        apply(new BloomKFilter(100_000), corrupt);
+        fail("corrupt byte at " + pos + " not detected");
+      } catch (IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("Checksum"));
+      }
+    }
+    try {
+      apply(new BloomKFilter(100_000), Arrays.copyOf(delta, delta.length - 4));
+      fail("truncated delta not detected");
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TestDiskBloomKFilter {
+  private Random rand = new Random(123);
+  private Path file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = Files.createTempFile("bloom", ".disk");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void testSameAsInMemory() throws IOException {
+    // about 20 pages, cached in 4 frames
+    DiskBloomKFilter disk = DiskBloomKFilter.create(file, 100_000, 0.05, 4);
+    BloomKFilter memory = new BloomKFilter(100_000, 0.05);
+    assertEquals(memory.getBitSize(), disk.getBitSize());
+    assertEquals(memory.getNumHashFunctions(), disk.getNumHashFunctions());
+    for (int i = 0; i < 50_000; i++) {
+      disk.addLong(i);
+      memory.addLong(i);
+    }
+    long[] keys = new long[20_000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i * 7L;
+    }
+    disk.addLongs(keys);
+    memory.addLongs(keys);
+    disk.addString("bloo");
+    memory.addString("bloo");
+    assertTrue(disk.getEvictions() > 0);
+    assertTrue(disk.getPageWrites() > 0);
+    disk.close();
+
+    disk = DiskBloomKFilter.open(file, 4);
+    for (int i = 0; i < 50_000; i++) {
+      assertTrue(disk.testLong(i));
+    }
+    assertTrue(disk.testString("bloo"));
+    long[] probes = new long[10_000];
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = rand.nextLong();
+    }
+    BitSet found = disk.testLongs(probes);
+    for (int i = 0; i < probes.length; i++) {
+      assertEquals(memory.testLong(probes[i]), disk.testLong(probes[i]));
+      assertEquals(memory.testLong(probes[i]), found.get(i));
+    }
+    disk.close();
+  }
+
+  @Test
+  public void testFromFilter() throws IOException {
+    BloomKFilter memory = new BloomKFilter(100_000, 0.01, 16, 32, BloomKFilter.BitPlacement.SPLIT,
+        true, RangeReduction.FAST_RANGE);
+    for (int i = 0; i < 100_000; i++) {
+      memory.addLong(i);
+    }
+    DiskBloomKFilter.create(file, memory, 8).close();
+    DiskBloomKFilter disk = DiskBloomKFilter.open(file, 8);
+    for (int i = 0; i < 100_000; i++) {
+      assertTrue(disk.testLong(i));
+    }
+    for (int i = 0; i < 10_000; i++) {
+      long probe = rand.nextLong();
+      assertEquals(memory.testLong(probe), disk.testLong(probe));
+    }
+    disk.close();
+  }
+
+  @Test
+  public void testBatchReadsPageOnce() throws IOException {
+    DiskBloomKFilter disk = DiskBloomKFilter.create(file, 100_000, 0.05, 1);
+    assertEquals(1, disk.getCachePages());
+    long[] keys = new long[10_000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = rand.nextLong();
+    }
+    // one page at a time, random keys mostly miss
+    for (long key : keys) {
+      disk.testLong(key);
+    }
+    assertTrue(disk.getCacheMisses() > keys.length / 2);
+
+    long misses = disk.getCacheMisses();
+    disk.testLongs(keys);
+    assertTrue(disk.getCacheMisses() - misses <= disk.getNumPages());
+    disk.close();
+  }
+
+  @Test
+  public void testAsync() throws IOException, InterruptedException, ExecutionException {
+    BloomKFilter memory = new BloomKFilter(100_000, 0.05);
+    for (int i = 0; i < 50_000; i++) {
+      memory.addLong(i);
+    }
+    DiskBloomKFilter.create(file, memory, 2).close();
+    DiskBloomKFilter disk = DiskBloomKFilter.open(file, 2);
+    // only on the cached, not yet written page
+    disk.addLong(-42);
+    memory.addLong(-42);
+    long[] probes = new long[10_000];
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = i % 2 == 0 ? i : rand.nextLong();
+    }
+    probes[0] = -42;
+    BitSet found = disk.testLongsAsync(probes).get();
+    for (int i = 0; i < probes.length; i++) {
+      assertEquals(memory.testLong(probes[i]), found.get(i));
+    }
+    // adjacent pages are coalesced into one read
+    assertTrue(disk.getAsyncReads() > 0);
+    assertTrue(disk.getAsyncReads() < disk.getNumPages());
+    assertEquals(0, disk.testLongsAsync(new long[0]).get().cardinality());
+    disk.close();
+
+    // read pages fill the free frames, the second probe is served from the cache
+    int numPages = disk.getNumPages();
+    disk = DiskBloomKFilter.open(file, numPages);
+    assertEquals(found, disk.testLongsAsync(probes).get());
+    long reads = disk.getAsyncReads();
+    assertEquals(found, disk.testLongsAsync(probes).get());
+    assertEquals(reads, disk.getAsyncReads());
+    assertEquals(0, disk.getCacheMisses());
+    disk.close();
+  }
+
+  @Test
+  public void testNotADiskFilter() throws IOException {
+    Files.write(file, new byte[DiskBloomKFilter.PAGE_SIZE]);
+    try {
+      DiskBloomKFilter.open(file, 4);
+      fail("opened a file of zeros");
+    } catch (IOException e) {
+      assertEquals("Not a disk bloom filter", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TestDoubleBufferedBloomKFilter {
+
+  @Test
+  public void testRebuildAndPublish() {
+    DoubleBufferedBloomKFilter bf = new DoubleBufferedBloomKFilter(10000, 0.01);
+    assertFalse(bf.testLong(1));
+    BloomKFilter back = bf.beginRebuild();
+    back.addLong(1);
+    back.addString("bloo");
+    // not visible until published
+    assertFalse(bf.testLong(1));
+    bf.publish();
+    assertTrue(bf.testLong(1));
+    assertTrue(bf.testString("bloo"));
+
+    // the buffer of the first generation is reused and cleared
+    bf.rebuild(new long[]{2, 3});
+    assertTrue(bf.testLong(2));
+    assertTrue(bf.testLong(3));
+    assertFalse(bf.testLong(1));
+    assertFalse(bf.testString("bloo"));
+    BloomKFilter next = bf.beginRebuild();
+    assertTrue(next == back);
+    for (long word : next.getBitSet()) {
+      assertEquals(0, word);
+    }
+    bf.publish();
+  }
+
+  @Test
+  public void testParallelClear() {
+    // large enough to be cleared by several tasks
+    DoubleBufferedBloomKFilter bf = new DoubleBufferedBloomKFilter(2_000_000, 0.01);
+    assertTrue(bf.sizeInBytes() > 2 << 20);
+    long[] keys = new long[2_000_000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    }
+    bf.rebuild(keys);
+    bf.rebuild(new long[0]);
+    for (long word : bf.beginRebuild().getBitSet()) {
+      assertEquals(0, word);
+    }
+  }
+
+  @Test
+  public void testConcurrentReaders() throws InterruptedException {
+    final DoubleBufferedBloomKFilter bf = new DoubleBufferedBloomKFilter(100_000, 0.01);
+    // keys in every generation
+    final long[] keys = new long[1000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    }
+    bf.rebuild(keys);
+    final AtomicBoolean done = new AtomicBoolean();
+    final AtomicInteger misses = new AtomicInteger();
+    Thread[] readers = new Thread[4];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          while (!done.get()) {
+            for (long key : keys) {
+              if (!bf.testLong(key)) {
+                misses.incrementAndGet();
+              }
+            }
+          }
+        }
+      });
+      readers[t].start();
+    }
+    for (int generation = 0; generation < 200; generation++) {
+      BloomKFilter back = bf.beginRebuild();
+      back.addLongs(keys);
+      for (int i = 0; i < 1000; i++) {
+        back.addLong(generation * 1000L + i + keys.length);
+      }
+      bf.publish();
+    }
+    done.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertEquals(0, misses.get());
+  }
+
+  // probes the bits of a key twice with a pause in between, a probe that overlaps a clear of the
+  // filter misses. Counts the probes in progress.
+  private static class SlowBloomKFilter extends BloomKFilter {
+    final AtomicInteger probes = new AtomicInteger();
+
+    SlowBloomKFilter(long maxNumEntries, double fpp) {
+      super(maxNumEntries, fpp);
+    }
+
+    @Override
+    boolean testHash(long hash64) {
+      probes.incrementAndGet();
+      try {
+        boolean found = super.testHash(hash64);
+        Thread.yield();
+        return found && super.testHash(hash64);
+      } finally {
+        probes.decrementAndGet();
+      }
+    }
+  }
+
+  @Test
+  public void testReadersDuringRebuild() throws InterruptedException {
+    final SlowBloomKFilter first = new SlowBloomKFilter(100_000, 0.01);
+    final SlowBloomKFilter second = new SlowBloomKFilter(100_000, 0.01);
+    final DoubleBufferedBloomKFilter bf = new DoubleBufferedBloomKFilter(first, second);
+    final long[] keys = new long[1000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    }
+    bf.rebuild(keys);
+    final AtomicBoolean done = new AtomicBoolean();
+    final AtomicInteger misses = new AtomicInteger();
+    Thread[] readers = new Thread[4];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          while (!done.get()) {
+            for (long key : keys) {
+              if (!bf.testLong(key)) {
+                misses.incrementAndGet();
+              }
+            }
+          }
+        }
+      });
+      readers[t].start();
+    }
+    int busyRebuilds = 0;
+    for (int generation = 0; generation < 2000; generation++) {
+      BloomKFilter back = bf.beginRebuild();
+      SlowBloomKFilter front = back == first ? second : first;
+      // no probe of the back buffer is left, while readers still probe the front
+      assertEquals(0, ((SlowBloomKFilter) back).probes.get());
+      if (front.probes.get() > 0) {
+        busyRebuilds++;
+      }
+      back.addLongs(keys);
+      bf.publish();
+    }
+    done.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertEquals(0, misses.get());
+    assertTrue(busyRebuilds > 0);
+  }
+}
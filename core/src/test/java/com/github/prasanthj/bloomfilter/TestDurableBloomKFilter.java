@@ -0,0 +1,224 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TestDurableBloomKFilter {
+  private Path dir;
+  private Path snapshot;
+  private Path log;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("bloom-wal");
+    snapshot = dir.resolve("filter.snapshot");
+    log = dir.resolve("filter.wal");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(snapshot);
+    Files.deleteIfExists(log);
+    Files.deleteIfExists(dir);
+  }
+
+  @Test
+  public void testReplay() throws IOException {
+    DurableBloomKFilter bf = new DurableBloomKFilter(snapshot, log, 10000);
+    for (int i = 0; i < 5000; i++) {
+      bf.addLong(i);
+    }
+    bf.addString("bloo");
+    bf.commit();
+    // full batch written
+    for (int i = 5000; i < 5000 + DurableBloomKFilter.DEFAULT_BATCH_SIZE; i++) {
+      bf.addLong(i);
+    }
+    // lost in the crash
+    bf.addString("filter");
+
+    // crash, the log is opened again without closing bf
+    DurableBloomKFilter recovered = new DurableBloomKFilter(snapshot, log, 10000);
+    assertEquals(5001 + DurableBloomKFilter.DEFAULT_BATCH_SIZE, recovered.getNumReplayed());
+    for (int i = 0; i < 5000 + DurableBloomKFilter.DEFAULT_BATCH_SIZE; i++) {
+      assertTrue(recovered.testLong(i));
+    }
+    assertTrue(recovered.testString("bloo"));
+    // same bits as adding the keys directly
+    BloomKFilter expected = new BloomKFilter(10000);
+    for (int i = 0; i < 5000 + DurableBloomKFilter.DEFAULT_BATCH_SIZE; i++) {
+      expected.addLong(i);
+    }
+    expected.addString("bloo");
+    assertArrayEquals(expected.getBitSet(), recovered.getFilter().getBitSet());
+    recovered.close();
+    bf.close();
+  }
+
+  @Test
+  public void testSnapshot() throws IOException {
+    DurableBloomKFilter bf = new DurableBloomKFilter(snapshot, log, 10000);
+    for (int i = 0; i < 3000; i++) {
+      bf.addLong(i);
+    }
+    bf.snapshot();
+    assertEquals(DurableBloomKFilter.HEADER_SIZE, Files.size(log));
+    for (int i = 3000; i < 3500; i++) {
+      bf.addLong(i);
+    }
+    bf.close();
+
+    DurableBloomKFilter reopened = new DurableBloomKFilter(snapshot, log, 10000);
+    assertEquals(500, reopened.getNumReplayed());
+    assertArrayEquals(bf.getFilter().getBitSet(), reopened.getFilter().getBitSet());
+    reopened.close();
+  }
+
+  @Test
+  public void testSnapshotSyncsDirectoryBeforeTruncate() throws IOException {
+    final List<String> events = new ArrayList<String>();
+    DurableBloomKFilter bf = new DurableBloomKFilter(snapshot, log, 10000) {
+      @Override
+      void syncDirectory(Path syncDir) throws IOException {
+        assertEquals(dir.toAbsolutePath(), syncDir);
+        // renamed, the log still has the batches
+        assertTrue(Files.exists(snapshot));
+        assertTrue(Files.size(log) > DurableBloomKFilter.HEADER_SIZE);
+        events.add("sync");
+        super.syncDirectory(syncDir);
+      }
+    };
+    for (int i = 0; i < 3000; i++) {
+      bf.addLong(i);
+    }
+    bf.snapshot();
+    assertEquals(Arrays.asList("sync"), events);
+    assertEquals(DurableBloomKFilter.HEADER_SIZE, Files.size(log));
+    bf.close();
+  }
+
+  @Test
+  public void testFailedCommit() throws IOException {
+    final AtomicBoolean failNext = new AtomicBoolean();
+    DurableBloomKFilter bf = new DurableBloomKFilter(snapshot, log, 10000,
+        BloomFilter.DEFAULT_FPP, 100, false) {
+      @Override
+      void writeBatch(ByteBuffer buffer) throws IOException {
+        if (failNext.getAndSet(false)) {
+          // half of the batch reaches the log
+          buffer.limit(buffer.position() + buffer.remaining() / 2);
+          super.writeBatch(buffer);
+          throw new IOException("No space left on device");
+        }
+        super.writeBatch(buffer);
+      }
+    };
+    long batchBytes = 4 + 100 * 8 + 8;
+    for (int i = 0; i < 150; i++) {
+      bf.addLong(i);
+    }
+    failNext.set(true);
+    int failures = 0;
+    for (int i = 150; i < 250; i++) {
+      try {
+        bf.addLong(i);
+      } catch (IOException e) {
+        failures++;
+        // torn batch truncated
+        assertEquals(DurableBloomKFilter.HEADER_SIZE + batchBytes, Files.size(log));
+      }
+    }
+    assertEquals(1, failures);
+    bf.close();
+    assertEquals(DurableBloomKFilter.HEADER_SIZE + 2 * batchBytes + 4 + 50 * 8 + 8,
+        Files.size(log));
+
+    DurableBloomKFilter reopened = new DurableBloomKFilter(snapshot, log, 10000);
+    assertEquals(250, reopened.getNumReplayed());
+    for (int i = 0; i < 250; i++) {
+      assertTrue(reopened.testLong(i));
+    }
+    reopened.close();
+  }
+
+  @Test
+  public void testTornBatch() throws IOException {
+    DurableBloomKFilter bf = new DurableBloomKFilter(snapshot, log, 10000);
+    for (int i = 0; i < 3 * DurableBloomKFilter.DEFAULT_BATCH_SIZE; i++) {
+      bf.addLong(i);
+    }
+    bf.close();
+    long size = Files.size(log);
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+      channel.truncate(size - 100);
+    }
+
+    bf = new DurableBloomKFilter(snapshot, log, 10000);
+    assertEquals(2 * DurableBloomKFilter.DEFAULT_BATCH_SIZE, bf.getNumReplayed());
+    long batchBytes = 4 + DurableBloomKFilter.DEFAULT_BATCH_SIZE * 8 + 8;
+    assertEquals(DurableBloomKFilter.HEADER_SIZE + 2 * batchBytes, Files.size(log));
+    // appended after the last valid batch
+    bf.addLong(-1);
+    bf.close();
+    bf = new DurableBloomKFilter(snapshot, log, 10000);
+    assertEquals(2 * DurableBloomKFilter.DEFAULT_BATCH_SIZE + 1, bf.getNumReplayed());
+    assertTrue(bf.testLong(-1));
+    bf.close();
+  }
+
+  @Test
+  public void testBatchReplay() throws IOException {
+    // large enough for the radix partitioned insert
+    DurableBloomKFilter bf = new DurableBloomKFilter(snapshot, log, 20_000_000, 0.01, 4096, true);
+    assertTrue(RadixPartitionedInsert.isWorthPartitioning(bf.getFilter()));
+    long[] keys = new long[100_000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i * 31L;
+    }
+    bf.addLongs(keys);
+    bf.close();
+    BloomKFilter expected = new BloomKFilter(20_000_000, 0.01);
+    expected.addLongs(keys);
+    assertArrayEquals(expected.getBitSet(), bf.getFilter().getBitSet());
+
+    DurableBloomKFilter reopened = new DurableBloomKFilter(snapshot, log, 20_000_000, 0.01, 4096,
+        true);
+    assertEquals(keys.length, reopened.getNumReplayed());
+    assertArrayEquals(expected.getBitSet(), reopened.getFilter().getBitSet());
+    reopened.close();
+  }
+}
@@ -0,0 +1,352 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Fill ratio, estimated number of keys and estimated fpp from the set bits.
+ */
+public class TestEstimatedCount {
+  private static final int SIZE = 100_000;
+  private static final int KEYS = 50_000;
+  private static final int PROBES = 1_000_000;
+  // allowed relative error of the estimated number of keys
+  private static final double COUNT_ERROR = 0.03;
+  private Random rand = new Random(123);
+
+  private static long bitCount(long[] data) {
+    long bits = 0;
+    for (long word : data) {
+      bits += Long.bitCount(word);
+    }
+    return bits;
+  }
+
+  private double measuredFpp(BloomKFilter bf) {
+    int fp = 0;
+    for (int i = 0; i < PROBES; i++) {
+      // keys are below KEYS
+      if (bf.testLong(KEYS + rand.nextInt(Integer.MAX_VALUE - KEYS))) {
+        fp++;
+      }
+    }
+    return (double) fp / PROBES;
+  }
+
+  @Test
+  public void testBloomKFilter() {
+    BloomKFilter[] filters = {
+        new BloomKFilter(SIZE, 0.01),
+        new BloomKFilter(SIZE, 0.01, 16, 32, BloomKFilter.BitPlacement.SPLIT, true,
+            RangeReduction.FAST_RANGE),
+        new BloomKFilter(SIZE, 0.001, 4, 64, BloomKFilter.BitPlacement.SPLIT, false,
+            RangeReduction.MODULO),
+        new BloomKFilter(SIZE, 0.05, 8, 64, BloomKFilter.BitPlacement.ANY, true,
+            RangeReduction.MODULO)};
+    for (BloomKFilter bf : filters) {
+      assertEquals(0, bf.estimatedCount());
+      assertEquals(0.0, bf.estimatedFpp(), 0.0);
+      for (int i = 0; i < KEYS; i++) {
+        bf.addLong(i);
+        // duplicates are not counted
+        bf.addLong(i);
+      }
+      long bits = bitCount(bf.getBitSet());
+      assertEquals(bits, bf.getSetBitCount());
+      assertEquals((double) bits / bf.getBitSize(), bf.fillRatio(), 0.0);
+      assertEquals(KEYS, bf.estimatedCount(), KEYS * COUNT_ERROR);
+      // same model as averaging the fpp of the actual blocks
+      double blockFpp = bf.blockFpp(bf.getBitSet());
+      assertEquals(blockFpp, bf.estimatedFpp(), blockFpp * 0.2);
+    }
+    // independent bit positions (blocked sizing) anywhere in the block match the model
+    BloomKFilter bf = filters[3];
+    double measured = measuredFpp(bf);
+    assertEquals(measured, bf.estimatedFpp(), measured * 0.1);
+  }
+
+  @Test
+  public void testTrackedSetBits() throws IOException {
+    BloomKFilter bf = new BloomKFilter(SIZE, 0.01);
+    for (int i = 0; i < 1000; i++) {
+      bf.addLong(i);
+    }
+    bf.trackSetBits();
+    bf.trackDirtyPages();
+    assertEquals(bitCount(bf.getBitSet()), bf.getSetBitCount());
+    for (int i = 1000; i < KEYS; i++) {
+      bf.addLong(i);
+    }
+    assertEquals(bitCount(bf.getBitSet()), bf.getSetBitCount());
+    long[] keys = new long[10_000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = rand.nextLong();
+    }
+    bf.addLongs(keys);
+    assertEquals(bitCount(bf.getBitSet()), bf.getSetBitCount());
+
+    BloomKFilter other = new BloomKFilter(SIZE, 0.01);
+    other.addLong(-1);
+    other.addLong(-2);
+    bf.merge(other);
+    assertEquals(bitCount(bf.getBitSet()), bf.getSetBitCount());
+    other.addLong(-3);
+    bf.mergeAll(Arrays.asList(other));
+    assertEquals(bitCount(bf.getBitSet()), bf.getSetBitCount());
+    other.addLong(-4);
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(serialized);
+    for (long l : other.serialize()) {
+      out.writeLong(l);
+    }
+    bf.mergeFrom(new ByteArrayInputStream(serialized.toByteArray()));
+    assertEquals(bitCount(bf.getBitSet()), bf.getSetBitCount());
+
+    // delta onto a tracked replica
+    BloomKFilter replica = new BloomKFilter(SIZE, 0.01);
+    replica.trackSetBits();
+    ByteArrayOutputStream delta = new ByteArrayOutputStream();
+    bf.writeDelta(Channels.newChannel(delta));
+    replica.applyDelta(Channels.newChannel(new ByteArrayInputStream(delta.toByteArray())));
+    assertEquals(bf.getSetBitCount(), replica.getSetBitCount());
+
+    bf.clear();
+    assertEquals(0, bf.getSetBitCount());
+    bf.addLong(1);
+    assertEquals(bitCount(bf.getBitSet()), bf.getSetBitCount());
+
+    LongBloomKFilter lbf = new LongBloomKFilter(SIZE, 0.01);
+    lbf.trackSetBits();
+    for (int i = 0; i < KEYS; i++) {
+      lbf.add(i);
+    }
+    assertEquals(bitCount(lbf.getBitSet()), lbf.getSetBitCount());
+    assertEquals(KEYS, lbf.estimatedCount(), KEYS * COUNT_ERROR);
+  }
+
+  @Test
+  public void testSaturated() {
+    BloomKFilter bf = new BloomKFilter(100);
+    Arrays.fill(bf.getBitSet(), -1L);
+    assertEquals(1.0, bf.fillRatio(), 0.0);
+    assertEquals(Long.MAX_VALUE, bf.estimatedCount());
+    assertEquals(1.0, bf.estimatedFpp(), 0.0);
+  }
+
+  @Test
+  public void testBloomFilter() throws IOException {
+    BloomFilter bf = new BloomFilter(SIZE, 0.01);
+    BloomFilter tracked = new BloomFilter(SIZE, 0.01, RangeReduction.POW2);
+    tracked.trackSetBits();
+    for (int i = 0; i < KEYS; i++) {
+      bf.addLong(i);
+      tracked.addLong(i);
+      tracked.addLong(i);
+    }
+    assertEquals(bitCount(bf.getBitSet()), bf.getSetBitCount());
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+    assertEquals(KEYS, bf.estimatedCount(), KEYS * COUNT_ERROR);
+    assertEquals(KEYS, tracked.estimatedCount(), KEYS * COUNT_ERROR);
+    int fp = 0;
+    for (int i = 0; i < PROBES; i++) {
+      if (bf.testLong(KEYS + rand.nextInt(Integer.MAX_VALUE - KEYS))) {
+        fp++;
+      }
+    }
+    double measured = (double) fp / PROBES;
+    assertEquals(measured, bf.estimatedFpp(), measured * 0.2);
+
+    BloomFilter other = new BloomFilter(SIZE, 0.01, RangeReduction.POW2);
+    other.addLong(-1);
+    tracked.merge(other);
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+    other.addLong(-2);
+    tracked.mergeAll(Arrays.asList(other));
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+  }
+
+  @Test
+  public void testPartitionedBloomFilter() throws IOException {
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(SIZE, 0.01);
+    PartitionedBloomFilter tracked = new PartitionedBloomFilter(SIZE, 0.01);
+    tracked.trackSetBits();
+    assertEquals(0, tracked.estimatedCount());
+    for (int i = 0; i < KEYS; i++) {
+      bf.addLong(i);
+      tracked.addLong(i);
+      tracked.addLong(i);
+    }
+    long bits = bitCount(bf.getBitSet());
+    assertEquals(bits, bf.getSetBitCount());
+    assertEquals(bits, tracked.getSetBitCount());
+    assertEquals((double) bits / bf.getBitSize(), bf.fillRatio(), 0.0);
+    assertEquals(KEYS, bf.estimatedCount(), KEYS * COUNT_ERROR);
+    assertEquals(KEYS, tracked.estimatedCount(), KEYS * COUNT_ERROR);
+    int fp = 0;
+    for (int i = 0; i < PROBES; i++) {
+      if (bf.testLong(KEYS + rand.nextInt(Integer.MAX_VALUE - KEYS))) {
+        fp++;
+      }
+    }
+    double measured = (double) fp / PROBES;
+    assertEquals(measured, bf.estimatedFpp(), measured * 0.2);
+
+    PartitionedBloomFilter other = new PartitionedBloomFilter(SIZE, 0.01);
+    other.addLong(-1);
+    tracked.merge(other);
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+    other.addLong(-2);
+    tracked.mergeAll(Arrays.asList(other));
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+    other.addLong(-3);
+    for (int slice = 0; slice < tracked.getNumHashFunctions(); slice++) {
+      tracked.mergeSlice(other, slice);
+    }
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+    other.addLong(-4);
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(serialized);
+    for (long l : other.serialize()) {
+      out.writeLong(l);
+    }
+    tracked.mergeFrom(new ByteArrayInputStream(serialized.toByteArray()));
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+  }
+
+  @Test
+  public void testBloom1Filter() throws IOException {
+    Bloom1Filter[] filters = {
+        new Bloom1Filter(SIZE, 0.05),
+        new Bloom1Filter(SIZE, 0.05, true),
+        new Bloom1Filter(SIZE, 0.01, RangeReduction.POW2)};
+    for (Bloom1Filter bf : filters) {
+      Bloom1Filter tracked = new Bloom1Filter(bf.serialize());
+      tracked.trackSetBits();
+      assertEquals(0, bf.estimatedCount());
+      assertEquals(0.0, bf.estimatedFpp(), 0.0);
+      for (int i = 0; i < KEYS; i++) {
+        bf.addLong(i);
+        tracked.addLong(i);
+        tracked.addLong(i);
+      }
+      long bits = bitCount(bf.getBitSet());
+      assertEquals(bits, bf.getSetBitCount());
+      assertEquals(bits, tracked.getSetBitCount());
+      assertEquals((double) bits / (bf.getBitSet().length * Long.SIZE), bf.fillRatio(), 0.0);
+      assertEquals(KEYS, bf.estimatedCount(), KEYS * COUNT_ERROR);
+      assertEquals(bf.estimatedCount(), tracked.estimatedCount());
+    }
+    // independent bit positions (blocked sizing) match the model
+    Bloom1Filter bf = filters[1];
+    int fp = 0;
+    for (int i = 0; i < PROBES; i++) {
+      if (bf.testLong(KEYS + rand.nextInt(Integer.MAX_VALUE - KEYS))) {
+        fp++;
+      }
+    }
+    double measured = (double) fp / PROBES;
+    assertEquals(measured, bf.estimatedFpp(), measured * 0.1);
+
+    // k = 1, only the MSB of a word is set
+    Bloom1Filter msb = new Bloom1Filter(SIZE, 0.5);
+    msb.trackSetBits();
+    assertEquals(1, msb.getNumHashFunctions());
+    for (int i = 0; i < 1000; i++) {
+      msb.addLong(i);
+    }
+    assertEquals(1000, msb.estimatedCount(), 1000 * COUNT_ERROR);
+
+    Bloom1Filter tracked = new Bloom1Filter(SIZE, 0.05);
+    tracked.trackSetBits();
+    Bloom1Filter other = new Bloom1Filter(SIZE, 0.05);
+    other.addLong(-1);
+    tracked.merge(other);
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+    other.addLong(-2);
+    tracked.mergeAll(Arrays.asList(other));
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+    other.addLong(-3);
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(serialized);
+    for (long l : other.serialize()) {
+      out.writeLong(l);
+    }
+    tracked.mergeFrom(new ByteArrayInputStream(serialized.toByteArray()));
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+    assertEquals(3, tracked.estimatedCount());
+  }
+
+  @Test
+  public void testBloomGFilter() throws IOException {
+    for (int g : new int[]{1, 2, 4, 8}) {
+      BloomGFilter bf = new BloomGFilter(SIZE, 0.01, g);
+      BloomGFilter tracked = new BloomGFilter(SIZE, 0.01, g);
+      tracked.trackSetBits();
+      assertEquals(0, bf.estimatedCount());
+      assertEquals(0.0, bf.estimatedFpp(), 0.0);
+      for (int i = 0; i < KEYS; i++) {
+        bf.addLong(i);
+        tracked.addLong(i);
+        tracked.addLong(i);
+      }
+      long bits = bitCount(bf.getBitSet());
+      assertEquals(bits, bf.getSetBitCount());
+      assertEquals(bits, tracked.getSetBitCount());
+      assertEquals((double) bits / bf.getBitSize(), bf.fillRatio(), 0.0);
+      assertEquals(KEYS, bf.estimatedCount(), KEYS * COUNT_ERROR);
+      assertEquals(bf.estimatedCount(), tracked.estimatedCount());
+      // bit positions are independent, the sizing model is within 20% of the actual fpp
+      int fp = 0;
+      for (int i = 0; i < PROBES; i++) {
+        if (bf.testLong(KEYS + rand.nextInt(Integer.MAX_VALUE - KEYS))) {
+          fp++;
+        }
+      }
+      double measured = (double) fp / PROBES;
+      assertEquals(measured, bf.estimatedFpp(), measured * 0.25);
+    }
+
+    BloomGFilter tracked = new BloomGFilter(SIZE, 0.01);
+    tracked.trackSetBits();
+    BloomGFilter other = new BloomGFilter(SIZE, 0.01);
+    other.addLong(-1);
+    tracked.merge(other);
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+    other.addLong(-2);
+    tracked.mergeAll(Arrays.asList(other));
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+    other.addLong(-3);
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(serialized);
+    for (long l : other.serialize()) {
+      out.writeLong(l);
+    }
+    tracked.mergeFrom(new ByteArrayInputStream(serialized.toByteArray()));
+    assertEquals(bitCount(tracked.getBitSet()), tracked.getSetBitCount());
+  }
+}
@@ -0,0 +1,296 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TestFilterContainer {
+
+  private static ByteArrayInputStream in(ByteArrayOutputStream out) {
+    return new ByteArrayInputStream(out.toByteArray());
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    BloomFilter bf = new BloomFilter(10000, 0.01, RangeReduction.FAST_RANGE);
+    Bloom1Filter bf1 = new Bloom1Filter(10000, 0.01, true, RangeReduction.MODULO);
+    BloomGFilter bfg = new BloomGFilter(10000, 0.01, 4);
+    // several chunks of words
+    BloomKFilter bfk = new BloomKFilter(1_000_000, 0.01, 4, 32, BloomKFilter.BitPlacement.SPLIT,
+        false, RangeReduction.POW2);
+    PartitionedBloomFilter pbf = new PartitionedBloomFilter(10000);
+    LongBloomKFilter lbf = new LongBloomKFilter(10000);
+    IntBloomKFilter ibf = new IntBloomKFilter(10000);
+    for (int i = 0; i < 10000; i++) {
+      bf.addLong(i);
+      bf1.addLong(i);
+      bfg.addLong(i);
+      bfk.addLong(i);
+      pbf.addLong(i);
+      lbf.add(i);
+      ibf.add(i);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    bf.writeTo(out);
+    BloomFilter bfRead = BloomFilter.readFrom(in(out));
+    assertArrayEquals(bf.getBitSet(), bfRead.getBitSet());
+    assertEquals(RangeReduction.FAST_RANGE, bfRead.getRangeReduction());
+
+    out.reset();
+    bf1.writeTo(out);
+    Bloom1Filter bf1Read = Bloom1Filter.readFrom(in(out));
+    assertArrayEquals(bf1.getBitSet(), bf1Read.getBitSet());
+    assertTrue(bf1Read.isBlockedSizing());
+
+    out.reset();
+    bfg.writeTo(out);
+    BloomGFilter bfgRead = BloomGFilter.readFrom(in(out));
+    assertArrayEquals(bfg.getBitSet(), bfgRead.getBitSet());
+    assertEquals(4, bfgRead.getNumWords());
+
+    out.reset();
+    bfk.writeTo(out);
+    // header, 64 byte aligned words and checksum
+    assertEquals(FilterContainer.HEADER_SIZE + bfk.getBitSet().length * 8 + 8, out.size());
+    BloomKFilter bfkRead = BloomKFilter.readFrom(in(out));
+    assertArrayEquals(bfk.getBitSet(), bfkRead.getBitSet());
+    assertTrue(bfk.isCompatible(bfkRead));
+
+    out.reset();
+    pbf.writeTo(out);
+    assertArrayEquals(pbf.getBitSet(), PartitionedBloomFilter.readFrom(in(out)).getBitSet());
+
+    out.reset();
+    lbf.writeTo(out);
+    LongBloomKFilter lbfRead = LongBloomKFilter.readFrom(in(out));
+    out.reset();
+    ibf.writeTo(out);
+    IntBloomKFilter ibfRead = IntBloomKFilter.readFrom(in(out));
+    for (int i = 0; i < 10000; i++) {
+      assertTrue(bfRead.testLong(i));
+      assertTrue(bf1Read.testLong(i));
+      assertTrue(bfgRead.testLong(i));
+      assertTrue(bfkRead.testLong(i));
+      assertTrue(lbfRead.test(i));
+      assertTrue(ibfRead.test(i));
+    }
+  }
+
+  @Test
+  public void testWrongVariant() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new BloomKFilter(10000).writeTo(out);
+    try {
+      BloomFilter.readFrom(in(out));
+      fail("BloomKFilter read as BloomFilter");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("BLOOM_K"));
+    }
+    try {
+      LongBloomKFilter.readFrom(in(out));
+      fail("BloomKFilter read as LongBloomKFilter");
+    } catch (IOException e) {
+      // expected
+    }
+    out.reset();
+    new LongBloomKFilter(10000).writeTo(out);
+    try {
+      BloomKFilter.readFrom(in(out));
+      fail("LongBloomKFilter read as BloomKFilter");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testNotAContainer() throws IOException {
+    // serialize() format
+    ByteBuffer buffer = ByteBuffer.allocate(80);
+    for (long l : new BloomFilter(1).serialize()) {
+      if (buffer.remaining() >= 8) {
+        buffer.putLong(l);
+      }
+    }
+    try {
+      BloomFilter.readFrom(new ByteArrayInputStream(buffer.array()));
+      fail("read serialize() output as container");
+    } catch (IOException e) {
+      assertEquals("Not a bloom filter container", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testCorrupt() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BloomKFilter bf = new BloomKFilter(10000);
+    bf.addLong(1);
+    bf.writeTo(out);
+    byte[] bytes = out.toByteArray();
+    for (int pos : new int[]{FilterContainer.HEADER_SIZE + 100, 50, bytes.length - 1}) {
+      byte[] corrupt = bytes.clone();
+      corrupt[pos] ^= 1;
+      try {
+        BloomKFilter.readFrom(new ByteArrayInputStream(corrupt));
+        fail("corrupt byte at " + pos + " not detected");
+      } catch (IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("Checksum"));
+      }
+    }
+    try {
+      BloomKFilter.readFrom(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 4)));
+      fail("truncated container not detected");
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCorruptHeaderIsNotAllocated() throws IOException {
+    ByteArrayOutputStream[] outs = new ByteArrayOutputStream[5];
+    for (int i = 0; i < outs.length; i++) {
+      outs[i] = new ByteArrayOutputStream();
+    }
+    new BloomFilter(10000).writeTo(outs[0]);
+    new Bloom1Filter(10000).writeTo(outs[1]);
+    new BloomGFilter(10000).writeTo(outs[2]);
+    new BloomKFilter(10000).writeTo(outs[3]);
+    new PartitionedBloomFilter(10000).writeTo(outs[4]);
+    // m of a 2^50 bit filter, or n of a 2^40 entry filter, before the checksum is verified
+    for (int offset : new int[]{16, 24}) {
+      for (int i = 0; i < outs.length; i++) {
+        byte[] bytes = outs[i].toByteArray();
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+            .putLong(offset, offset == 16 ? 1L << 50 : 1L << 40);
+        try {
+          readFrom(i, bytes);
+          fail("corrupt header of variant " + i + " at " + offset + " not detected");
+        } catch (IOException e) {
+          assertTrue(e.getMessage(), e.getMessage().contains("does not match the filter"));
+        }
+      }
+    }
+    // options the filter cannot decode
+    for (int i : new int[]{0, 1, 2, 3, 4}) {
+      byte[] bytes = outs[i].toByteArray();
+      ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putLong(40, (1L << 63) | 0x7f7f7f7fL);
+      try {
+        readFrom(i, bytes);
+        fail("invalid options of variant " + i + " not detected");
+      } catch (IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid options"));
+      }
+    }
+  }
+
+  private static void readFrom(int variant, byte[] bytes) throws IOException {
+    ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+    switch (variant) {
+      case 0:
+        BloomFilter.readFrom(in);
+        break;
+      case 1:
+        Bloom1Filter.readFrom(in);
+        break;
+      case 2:
+        BloomGFilter.readFrom(in);
+        break;
+      case 3:
+        BloomKFilter.readFrom(in);
+        break;
+      default:
+        PartitionedBloomFilter.readFrom(in);
+    }
+  }
+
+  @Test
+  public void testVariantIds() throws IOException {
+    // stored in the containers, must not change
+    int[] ids = {0, 1, 2, 3, 4, 5, 6};
+    FilterContainer.Variant[] variants = {FilterContainer.Variant.BLOOM,
+        FilterContainer.Variant.BLOOM_1, FilterContainer.Variant.BLOOM_G,
+        FilterContainer.Variant.BLOOM_K, FilterContainer.Variant.PARTITIONED,
+        FilterContainer.Variant.LONG_BLOOM_K, FilterContainer.Variant.INT_BLOOM_K};
+    for (int i = 0; i < ids.length; i++) {
+      assertEquals(ids[i], variants[i].id);
+      assertEquals(variants[i], FilterContainer.Variant.of(ids[i]));
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new LongBloomKFilter(100).writeTo(out);
+    assertEquals(5, out.toByteArray()[5]);
+  }
+
+  @Test
+  public void testPureJavaCrc32C() throws IOException {
+    Checksum crc = new FilterContainer.PureJavaCrc32C();
+    byte[] check = "123456789".getBytes("US-ASCII");
+    crc.update(check, 0, check.length);
+    assertEquals(0xE3069283L, crc.getValue());
+    crc.reset();
+    for (byte b : check) {
+      crc.update(b);
+    }
+    assertEquals(0xE3069283L, crc.getValue());
+
+    // same as java.util.zip.CRC32C, at offsets and lengths that are not multiples of 8
+    Checksum jdk = FilterContainer.newChecksum(FilterContainer.CHECKSUM_CRC32C);
+    byte[] bytes = new byte[1000];
+    new Random(123).nextBytes(bytes);
+    for (int off = 0; off < 10; off++) {
+      for (int len : new int[]{0, 1, 7, 8, 9, 100, 990}) {
+        crc.reset();
+        jdk.reset();
+        crc.update(bytes, off, len);
+        jdk.update(bytes, off, len);
+        assertEquals(jdk.getValue(), crc.getValue());
+      }
+    }
+  }
+
+  @Test
+  public void testCrc32Checksum() throws IOException {
+    // container written by a JVM without CRC32C
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BloomKFilter bf = new BloomKFilter(10000);
+    bf.addLong(1);
+    bf.writeTo(out);
+    byte[] bytes = out.toByteArray();
+    bytes[7] = FilterContainer.CHECKSUM_CRC32;
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length - 8);
+    ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putLong(bytes.length - 8, crc.getValue());
+    BloomKFilter read = BloomKFilter.readFrom(new ByteArrayInputStream(bytes));
+    assertArrayEquals(bf.getBitSet(), read.getBitSet());
+  }
+}
@@ -0,0 +1,331 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * AND/OR popcounts and the union, intersection, Jaccard and containment estimates between filters.
+ */
+public class TestFilterSimilarity {
+  private static final int SIZE = 100_000;
+  // A is [0, 60000), B is [30000, 90000)
+  private static final int KEYS_A = 60_000;
+  private static final int FIRST_B = 30_000;
+  private static final int KEYS_B = 60_000;
+  private static final int UNION = FIRST_B + KEYS_B;
+  private static final int INTERSECTION = KEYS_A - FIRST_B;
+  // allowed error relative to the union
+  private static final double ERROR = 0.03;
+  private Random rand = new Random(123);
+
+  private static long andBitCount(long[] a, long[] b) {
+    long bits = 0;
+    for (int i = 0; i < a.length; i++) {
+      bits += Long.bitCount(a[i] & b[i]);
+    }
+    return bits;
+  }
+
+  private static long orBitCount(long[] a, long[] b) {
+    long bits = 0;
+    for (int i = 0; i < a.length; i++) {
+      bits += Long.bitCount(a[i] | b[i]);
+    }
+    return bits;
+  }
+
+  @Test
+  public void testBitCounts() {
+    // lengths that are not a multiple of the unrolling
+    for (int length = 0; length < 12; length++) {
+      long[] a = new long[length];
+      long[] b = new long[length];
+      for (int i = 0; i < length; i++) {
+        a[i] = rand.nextLong();
+        b[i] = rand.nextLong();
+      }
+      assertEquals(andBitCount(a, b), BitSetOverlap.andBitCount(a, b));
+      assertEquals(orBitCount(a, b), BitSetOverlap.orBitCount(a, b));
+      long[] counts = BitSetOverlap.bitCounts(a, b);
+      assertEquals(orBitCount(a, a), counts[BitSetOverlap.BITS_A]);
+      assertEquals(orBitCount(b, b), counts[BitSetOverlap.BITS_B]);
+      assertEquals(andBitCount(a, b), counts[BitSetOverlap.BITS_AND]);
+    }
+  }
+
+  @Test
+  public void testBloomKFilter() {
+    BloomKFilter[][] pairs = {
+        {new BloomKFilter(SIZE, 0.01), new BloomKFilter(SIZE, 0.01)},
+        {new BloomKFilter(SIZE, 0.01, 16, 32, BloomKFilter.BitPlacement.SPLIT, true,
+            RangeReduction.FAST_RANGE),
+            new BloomKFilter(SIZE, 0.01, 16, 32, BloomKFilter.BitPlacement.SPLIT, true,
+                RangeReduction.FAST_RANGE)},
+        {new BloomKFilter(SIZE, 0.05, 8, 64, BloomKFilter.BitPlacement.ANY, true,
+            RangeReduction.MODULO),
+            new BloomKFilter(SIZE, 0.05, 8, 64, BloomKFilter.BitPlacement.ANY, true,
+                RangeReduction.MODULO)}};
+    for (BloomKFilter[] pair : pairs) {
+      BloomKFilter a = pair[0];
+      BloomKFilter b = pair[1];
+      assertEquals(0, a.estimatedUnionCount(b));
+      assertEquals(0.0, a.estimatedJaccard(b), 0.0);
+      assertEquals(0.0, a.estimatedContainment(b), 0.0);
+      for (int i = 0; i < KEYS_A; i++) {
+        a.addLong(i);
+      }
+      for (int i = FIRST_B; i < FIRST_B + KEYS_B; i++) {
+        b.addLong(i);
+      }
+      assertEquals(andBitCount(a.getBitSet(), b.getBitSet()), a.andBitCount(b));
+      assertEquals(orBitCount(a.getBitSet(), b.getBitSet()), a.orBitCount(b));
+      assertEquals(UNION, a.estimatedUnionCount(b), UNION * ERROR);
+      assertEquals(INTERSECTION, a.estimatedIntersectionCount(b), UNION * ERROR);
+      assertEquals((double) INTERSECTION / UNION, a.estimatedJaccard(b), 0.03);
+      assertEquals((double) INTERSECTION / KEYS_A, a.estimatedContainment(b), 0.05);
+      assertEquals(a.estimatedJaccard(b), b.estimatedJaccard(a), 1e-9);
+
+      // same as merging the filters
+      BloomKFilter union = new BloomKFilter(a.serialize());
+      union.merge(b);
+      assertEquals(union.estimatedCount(), a.estimatedUnionCount(b));
+      // tracked set bits only count the AND
+      long intersection = a.estimatedIntersectionCount(b);
+      a.trackSetBits();
+      b.trackSetBits();
+      assertEquals(intersection, a.estimatedIntersectionCount(b));
+
+      assertEquals(1.0, a.estimatedJaccard(a), 1e-9);
+      assertEquals(1.0, a.estimatedContainment(a), 1e-9);
+    }
+  }
+
+  @Test
+  public void testDisjoint() {
+    BloomKFilter a = new BloomKFilter(SIZE, 0.01);
+    BloomKFilter b = new BloomKFilter(SIZE, 0.01);
+    for (int i = 0; i < 40_000; i++) {
+      a.addLong(i);
+      b.addLong(-1 - i);
+    }
+    // bits shared by different keys are not counted as common keys
+    assertTrue(a.andBitCount(b) > 0);
+    assertEquals(0, a.estimatedIntersectionCount(b), 80_000 * ERROR);
+    assertEquals(0.0, a.estimatedJaccard(b), 0.03);
+  }
+
+  @Test
+  public void testSaturated() {
+    BloomKFilter a = new BloomKFilter(100);
+    BloomKFilter b = new BloomKFilter(100);
+    Arrays.fill(a.getBitSet(), -1L);
+    assertEquals(Long.MAX_VALUE, a.estimatedUnionCount(b));
+    assertTrue(Double.isNaN(a.estimatedJaccard(b)));
+  }
+
+  @Test
+  public void testSaturatedUnion() {
+    // neither filter is full, their OR is
+    BloomKFilter a = new BloomKFilter(SIZE, 0.01);
+    BloomKFilter b = new BloomKFilter(SIZE, 0.01);
+    long[] bitsA = a.getBitSet();
+    long[] bitsB = b.getBitSet();
+    for (int i = 0; i < bitsA.length; i++) {
+      bitsA[i] = 0x5555555555555555L;
+      bitsB[i] = 0xAAAAAAAAAAAAAAAAL;
+    }
+    assertTrue(a.estimatedCount() < Long.MAX_VALUE);
+    assertEquals(Long.MAX_VALUE, a.estimatedUnionCount(b));
+    assertEquals(-1, a.estimatedIntersectionCount(b));
+    assertTrue(Double.isNaN(a.estimatedJaccard(b)));
+    assertTrue(Double.isNaN(a.estimatedContainment(b)));
+
+    // POW2 so that the words hold exactly m bits
+    BloomFilter c = new BloomFilter(SIZE, 0.01, RangeReduction.POW2);
+    BloomFilter d = new BloomFilter(SIZE, 0.01, RangeReduction.POW2);
+    long[] bitsC = c.getBitSet();
+    long[] bitsD = d.getBitSet();
+    for (int i = 0; i < bitsC.length; i++) {
+      bitsC[i] = 0x5555555555555555L;
+      bitsD[i] = 0xAAAAAAAAAAAAAAAAL;
+    }
+    assertTrue(c.estimatedCount() < Long.MAX_VALUE);
+    assertEquals(-1, c.estimatedIntersectionCount(d));
+    assertTrue(Double.isNaN(c.estimatedJaccard(d)));
+    assertTrue(Double.isNaN(c.estimatedContainment(d)));
+  }
+
+  @Test
+  public void testIncompatible() {
+    BloomKFilter a = new BloomKFilter(SIZE, 0.01);
+    try {
+      a.estimatedJaccard(new BloomKFilter(SIZE, 0.05));
+      fail("compared filters of different sizes");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Bloom filters are not compatible", e.getMessage());
+    }
+    try {
+      new BloomFilter(SIZE, 0.01).andBitCount(new BloomFilter(SIZE, 0.01, RangeReduction.POW2));
+      fail("compared filters with different range reductions");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Bloom filters are not compatible", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testBloomFilter() {
+    BloomFilter a = new BloomFilter(SIZE, 0.01);
+    BloomFilter b = new BloomFilter(SIZE, 0.01);
+    b.trackSetBits();
+    for (int i = 0; i < KEYS_A; i++) {
+      a.addLong(i);
+    }
+    for (int i = FIRST_B; i < FIRST_B + KEYS_B; i++) {
+      b.addLong(i);
+    }
+    assertEquals(andBitCount(a.getBitSet(), b.getBitSet()), a.andBitCount(b));
+    assertEquals(orBitCount(a.getBitSet(), b.getBitSet()), a.orBitCount(b));
+    assertEquals(UNION, a.estimatedUnionCount(b), UNION * ERROR);
+    assertEquals(INTERSECTION, a.estimatedIntersectionCount(b), UNION * ERROR);
+    assertEquals((double) INTERSECTION / UNION, a.estimatedJaccard(b), 0.03);
+    assertEquals((double) INTERSECTION / KEYS_A, a.estimatedContainment(b), 0.05);
+    a.trackSetBits();
+    assertEquals((double) INTERSECTION / KEYS_B, b.estimatedContainment(a), 0.05);
+  }
+
+  @Test
+  public void testPartitionedBloomFilter() {
+    PartitionedBloomFilter a = new PartitionedBloomFilter(SIZE, 0.01);
+    PartitionedBloomFilter b = new PartitionedBloomFilter(SIZE, 0.01);
+    assertEquals(0, a.estimatedUnionCount(b));
+    assertEquals(0.0, a.estimatedJaccard(b), 0.0);
+    for (int i = 0; i < KEYS_A; i++) {
+      a.addLong(i);
+    }
+    for (int i = FIRST_B; i < FIRST_B + KEYS_B; i++) {
+      b.addLong(i);
+    }
+    assertEquals(andBitCount(a.getBitSet(), b.getBitSet()), a.andBitCount(b));
+    assertEquals(orBitCount(a.getBitSet(), b.getBitSet()), a.orBitCount(b));
+    assertEquals(UNION, a.estimatedUnionCount(b), UNION * ERROR);
+    assertEquals(INTERSECTION, a.estimatedIntersectionCount(b), UNION * ERROR);
+    assertEquals((double) INTERSECTION / UNION, a.estimatedJaccard(b), 0.03);
+    assertEquals((double) INTERSECTION / KEYS_A, a.estimatedContainment(b), 0.05);
+    assertEquals(1.0, a.estimatedJaccard(a), 1e-9);
+    long intersection = a.estimatedIntersectionCount(b);
+    a.trackSetBits();
+    b.trackSetBits();
+    assertEquals(intersection, a.estimatedIntersectionCount(b));
+    try {
+      a.estimatedJaccard(new PartitionedBloomFilter(SIZE, 0.05));
+      fail("compared filters of different sizes");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Bloom filters are not compatible", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testBloom1Filter() {
+    Bloom1Filter[] filters = {
+        new Bloom1Filter(SIZE, 0.05),
+        new Bloom1Filter(SIZE, 0.05, true)};
+    for (Bloom1Filter a : filters) {
+      Bloom1Filter b = new Bloom1Filter(a.serialize());
+      b.trackSetBits();
+      assertEquals(0, a.estimatedUnionCount(b));
+      assertEquals(0.0, a.estimatedJaccard(b), 0.0);
+      for (int i = 0; i < KEYS_A; i++) {
+        a.addLong(i);
+      }
+      for (int i = FIRST_B; i < FIRST_B + KEYS_B; i++) {
+        b.addLong(i);
+      }
+      assertEquals(andBitCount(a.getBitSet(), b.getBitSet()), a.andBitCount(b));
+      assertEquals(orBitCount(a.getBitSet(), b.getBitSet()), a.orBitCount(b));
+      assertEquals(UNION, a.estimatedUnionCount(b), UNION * ERROR);
+      assertEquals(INTERSECTION, a.estimatedIntersectionCount(b), UNION * ERROR);
+      assertEquals((double) INTERSECTION / UNION, a.estimatedJaccard(b), 0.03);
+      assertEquals((double) INTERSECTION / KEYS_A, a.estimatedContainment(b), 0.05);
+      // tracked counts give the same estimates as counting the bitsets
+      long intersection = a.estimatedIntersectionCount(b);
+      a.trackSetBits();
+      assertEquals(intersection, a.estimatedIntersectionCount(b));
+      assertEquals((double) INTERSECTION / KEYS_B, b.estimatedContainment(a), 0.05);
+      assertEquals(1.0, a.estimatedJaccard(a), 1e-9);
+    }
+    try {
+      filters[0].estimatedJaccard(filters[1]);
+      fail("compared filters with different sizing");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Bloom filters are not compatible", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testBloomGFilter() {
+    for (int g : new int[]{1, 2, 4, 8}) {
+      BloomGFilter a = new BloomGFilter(SIZE, 0.01, g);
+      BloomGFilter b = new BloomGFilter(SIZE, 0.01, g);
+      b.trackSetBits();
+      assertEquals(0, a.estimatedUnionCount(b));
+      assertEquals(0.0, a.estimatedJaccard(b), 0.0);
+      for (int i = 0; i < KEYS_A; i++) {
+        a.addLong(i);
+      }
+      for (int i = FIRST_B; i < FIRST_B + KEYS_B; i++) {
+        b.addLong(i);
+      }
+      assertEquals(andBitCount(a.getBitSet(), b.getBitSet()), a.andBitCount(b));
+      assertEquals(orBitCount(a.getBitSet(), b.getBitSet()), a.orBitCount(b));
+      assertEquals(UNION, a.estimatedUnionCount(b), UNION * ERROR);
+      assertEquals(INTERSECTION, a.estimatedIntersectionCount(b), UNION * ERROR);
+      assertEquals((double) INTERSECTION / UNION, a.estimatedJaccard(b), 0.03);
+      assertEquals((double) INTERSECTION / KEYS_A, a.estimatedContainment(b), 0.05);
+      a.trackSetBits();
+      assertEquals((double) INTERSECTION / KEYS_B, b.estimatedContainment(a), 0.05);
+      assertEquals(1.0, a.estimatedJaccard(a), 1e-9);
+    }
+    try {
+      new BloomGFilter(SIZE, 0.01, 2).estimatedJaccard(new BloomGFilter(SIZE, 0.01, 4));
+      fail("compared filters with different number of words");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Bloom filters are not compatible", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testLongBloomKFilter() {
+    LongBloomKFilter a = new LongBloomKFilter(SIZE, 0.01);
+    LongBloomKFilter b = new LongBloomKFilter(SIZE, 0.01);
+    for (int i = 0; i < KEYS_A; i++) {
+      a.add(i);
+    }
+    for (int i = FIRST_B; i < FIRST_B + KEYS_B; i++) {
+      b.add(i);
+    }
+    assertEquals(UNION, a.estimatedUnionCount(b), UNION * ERROR);
+    assertEquals(INTERSECTION, a.estimatedIntersectionCount(b), UNION * ERROR);
+    assertEquals((double) INTERSECTION / UNION, a.estimatedJaccard(b), 0.03);
+  }
+}
@@ -0,0 +1,169 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Folding of oversized filters with POW2 range reduction.
+ */
+public class TestFold {
+  private static final int SIZE = 1_000_000;
+  private static final int KEYS = 50_000;
+  private static final int PROBES = 100_000;
+  private Random rand = new Random(123);
+
+  @Test
+  public void testBloomKFilter() throws IOException {
+    BloomKFilter bf = new BloomKFilter(SIZE, 0.01, RangeReduction.POW2);
+    for (int i = 0; i < KEYS; i++) {
+      bf.addLong(i);
+    }
+    // 20x oversized
+    int factor = bf.foldFactor(0.01);
+    assertTrue("factor " + factor, factor >= 8);
+    BloomKFilter folded = bf.fold(factor);
+    assertEquals(bf.getBitSize() / factor, folded.getBitSize());
+    assertEquals(bf.getNumHashFunctions(), folded.getNumHashFunctions());
+    assertEquals(bf.getFalsePositivePercent(), folded.getFalsePositivePercent(), 0.0);
+    for (int i = 0; i < KEYS; i++) {
+      assertTrue(folded.testLong(i));
+    }
+    int fp = 0;
+    for (int i = 0; i < PROBES; i++) {
+      if (folded.testLong(KEYS + rand.nextInt(Integer.MAX_VALUE - KEYS))) {
+        fp++;
+      }
+    }
+    assertTrue("fpp " + (double) fp / PROBES, (double) fp / PROBES < 0.015);
+    // one more fold goes over the target
+    BloomKFilter over = bf.fold(factor * 2);
+    assertTrue(over.blockFpp(over.getBitSet()) > 0.01);
+
+    // folding twice by 2 is folding by 4
+    assertArrayEquals(bf.fold(4).getBitSet(), bf.fold(2).fold(2).getBitSet());
+
+    // serialized forms are sized for the folded filter
+    assertArrayEquals(folded.getBitSet(), new BloomKFilter(folded.serialize()).getBitSet());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    folded.writeTo(out);
+    BloomKFilter read = BloomKFilter.readFrom(new ByteArrayInputStream(out.toByteArray()));
+    assertArrayEquals(folded.getBitSet(), read.getBitSet());
+  }
+
+  @Test
+  public void testBloomKFilterGeometries() {
+    BloomKFilter[] filters = {
+        new BloomKFilter(SIZE, 0.05, 16, 32, BloomKFilter.BitPlacement.SPLIT, true,
+            RangeReduction.POW2),
+        new BloomKFilter(SIZE, 0.01, 4, 64, BloomKFilter.BitPlacement.SPLIT, false,
+            RangeReduction.POW2),
+        new BloomKFilter(SIZE, 0.01, 8, 64, BloomKFilter.BitPlacement.ANY, true,
+            RangeReduction.POW2)};
+    for (BloomKFilter bf : filters) {
+      for (int i = 0; i < KEYS; i++) {
+        bf.addLong(i);
+      }
+      BloomKFilter folded = bf.fold(4);
+      for (int i = 0; i < KEYS; i++) {
+        assertTrue(folded.testLong(i));
+      }
+      assertFalse(bf.isCompatible(folded));
+      assertTrue(folded.isCompatible(new BloomKFilter(folded.serialize())));
+    }
+  }
+
+  @Test
+  public void testLongBloomKFilter() {
+    LongBloomKFilter bf = new LongBloomKFilter(SIZE, 0.01, 8, 64, BloomKFilter.BitPlacement.ANY,
+        false, RangeReduction.POW2);
+    for (int i = 0; i < KEYS; i++) {
+      bf.add(i);
+    }
+    LongBloomKFilter folded = bf.fold(bf.foldFactor(0.01));
+    assertTrue(folded.getBitSize() < bf.getBitSize());
+    for (int i = 0; i < KEYS; i++) {
+      assertTrue(folded.test(i));
+    }
+  }
+
+  @Test
+  public void testBloomFilter() throws IOException {
+    BloomFilter bf = new BloomFilter(SIZE, 0.01, RangeReduction.POW2);
+    for (int i = 0; i < KEYS; i++) {
+      bf.addLong(i);
+    }
+    int factor = bf.foldFactor(0.01);
+    assertTrue("factor " + factor, factor >= 8);
+    BloomFilter folded = bf.fold(factor);
+    assertEquals(bf.getBitSize() / factor, folded.getBitSize());
+    assertEquals(bf.getNumHashFunctions(), folded.getNumHashFunctions());
+    for (int i = 0; i < KEYS; i++) {
+      assertTrue(folded.testLong(i));
+    }
+    int fp = 0;
+    for (int i = 0; i < PROBES; i++) {
+      if (folded.testLong(KEYS + rand.nextInt(Integer.MAX_VALUE - KEYS))) {
+        fp++;
+      }
+    }
+    assertTrue("fpp " + (double) fp / PROBES, (double) fp / PROBES < 0.015);
+    assertArrayEquals(bf.fold(4).getBitSet(), bf.fold(2).fold(2).getBitSet());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    folded.writeTo(out);
+    BloomFilter read = BloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()));
+    assertArrayEquals(folded.getBitSet(), read.getBitSet());
+  }
+
+  @Test
+  public void testNotFoldable() {
+    BloomKFilter modulo = new BloomKFilter(SIZE, 0.01);
+    try {
+      modulo.fold(2);
+      fail("folded a filter with modulo reduction");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("POW2"));
+    }
+    try {
+      new BloomFilter(SIZE, 0.01, RangeReduction.FAST_RANGE).foldFactor(0.01);
+      fail("folded a filter with fast range reduction");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("POW2"));
+    }
+    BloomKFilter pow2 = new BloomKFilter(SIZE, 0.01, RangeReduction.POW2);
+    for (int factor : new int[]{0, 3, 2 * pow2.getBitSet().length / pow2.getBlockSize()}) {
+      try {
+        pow2.fold(factor);
+        fail("folded by " + factor);
+      } catch (IllegalArgumentException e) {
+        assertTrue(e.getMessage(), e.getMessage().startsWith("Fold factor " + factor));
+      }
+    }
+    // empty filter folds down to a single block
+    assertEquals(pow2.getBitSet().length / pow2.getBlockSize(), pow2.foldFactor(0.01));
+  }
+}
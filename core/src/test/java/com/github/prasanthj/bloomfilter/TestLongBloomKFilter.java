@@ -0,0 +1,150 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LongBloomKFilter} and {@link IntBloomKFilter}.
+ */
+public class TestLongBloomKFilter {
+  private static final int PROBES = 1_000_000;
+  private double deltaError = 0.005;
+
+  @Test(expected = AssertionError.class)
+  public void testBloomIllegalArg() {
+    LongBloomKFilter bf = new LongBloomKFilter(0, 0);
+  }
+
+  @Test
+  public void testLongBloomKFilter() {
+    LongBloomKFilter bf = new LongBloomKFilter(10000);
+    long[] vals = {0, 1, -1, Long.MIN_VALUE, Long.MAX_VALUE, 123456789012345L};
+    for (long val : vals) {
+      assertEquals(false, bf.test(val));
+    }
+    for (long val : vals) {
+      bf.add(val);
+      assertEquals(true, bf.test(val));
+    }
+    assertEquals(new BloomKFilter(10000).getBitSize(), bf.getBitSize());
+    assertEquals(new BloomKFilter(10000).getNumHashFunctions(), bf.getNumHashFunctions());
+  }
+
+  @Test
+  public void testIntBloomKFilter() {
+    IntBloomKFilter bf = new IntBloomKFilter(10000);
+    LongBloomKFilter lbf = new LongBloomKFilter(10000);
+    int[] vals = {0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 123456789};
+    for (int val : vals) {
+      assertEquals(false, bf.test(val));
+    }
+    for (int val : vals) {
+      bf.add(val);
+      lbf.add(val);
+      assertEquals(true, bf.test(val));
+    }
+    // int keys hash the same as the equal long keys
+    assertArrayEquals(lbf.getBitSet(), bf.getBitSet());
+  }
+
+  @Test
+  public void testHash() {
+    // key 0 should not get the degenerate fmix64 hash of 0
+    assertTrue(LongBloomKFilter.hash(0) != 0);
+    assertEquals(0, LongBloomKFilter.hash(-LongBloomKFilter.KEY_OFFSET));
+  }
+
+  @Test
+  public void testFpp() {
+    for (int size : new int[]{10_000, 1_000_000}) {
+      for (double fpp : new double[]{0.05, 0.01}) {
+        LongBloomKFilter bf = new LongBloomKFilter(size, fpp);
+        BloomKFilter reference = new BloomKFilter(size, fpp);
+        for (int i = 0; i < size; i++) {
+          bf.add(i);
+          reference.addLong(i);
+        }
+        for (int i = 0; i < size; i++) {
+          assertTrue(bf.test(i));
+        }
+        int fp = 0;
+        int fpReference = 0;
+        Random random = new Random(123);
+        for (int i = 0; i < PROBES; i++) {
+          long probe = random.nextLong();
+          fp += bf.test(probe) ? 1 : 0;
+          fpReference += reference.testLong(probe) ? 1 : 0;
+        }
+        // fmix64 should be as good a hash as Murmur3 for long keys
+        assertEquals((double) fpReference / PROBES, (double) fp / PROBES, deltaError);
+      }
+    }
+  }
+
+  @Test
+  public void testSequentialKeysFpp() {
+    // sequential keys and probes, the weakest case for a cheap mixer
+    int size = 100_000;
+    IntBloomKFilter bf = new IntBloomKFilter(size, 0.01);
+    for (int i = 0; i < size; i++) {
+      bf.add(i);
+    }
+    int fp = 0;
+    for (int probe = size; probe < size + PROBES; probe++) {
+      fp += bf.test(probe) ? 1 : 0;
+    }
+    // classic sizing under estimates the bits of blocked filters, allow the same slack as BloomKFilter
+    assertTrue((double) fp / PROBES < 0.02);
+  }
+
+  @Test
+  public void testSerialize() {
+    LongBloomKFilter bf = new LongBloomKFilter(10000, 0.01, 4, 32, BloomKFilter.BitPlacement.SPLIT,
+        true, RangeReduction.FAST_RANGE);
+    for (int i = 0; i < 1000; i++) {
+      bf.add(i * 31L);
+    }
+    LongBloomKFilter bf2 = new LongBloomKFilter(bf.serialize());
+    assertArrayEquals(bf.getBitSet(), bf2.getBitSet());
+    assertEquals(true, bf.isCompatible(bf2));
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(bf2.test(i * 31L));
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    LongBloomKFilter bf = new LongBloomKFilter(10000);
+    LongBloomKFilter bf2 = new LongBloomKFilter(10000);
+    bf.add(1);
+    bf2.add(2);
+    assertEquals(true, bf.isCompatible(bf2));
+    assertEquals(false, bf.isCompatible(new LongBloomKFilter(20000)));
+    assertEquals(false, bf.test(2));
+    bf.merge(bf2);
+    assertEquals(true, bf.test(1));
+    assertEquals(true, bf.test(2));
+    bf.clear();
+    assertEquals(false, bf.test(1));
+  }
+}
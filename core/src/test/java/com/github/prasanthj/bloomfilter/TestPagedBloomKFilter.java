@@ -0,0 +1,87 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TestPagedBloomKFilter {
+  private Random rand = new Random(123);
+
+  @Test
+  public void testSparse() {
+    // about 1900 pages
+    PagedBloomKFilter paged = new PagedBloomKFilter(10_000_000);
+    BloomKFilter memory = new BloomKFilter(10_000_000);
+    assertEquals(memory.getBitSize(), paged.getBitSize());
+    assertEquals(memory.getNumHashFunctions(), paged.getNumHashFunctions());
+    assertEquals(0, paged.getAllocatedPages());
+    assertFalse(paged.testLong(1));
+
+    for (int i = 0; i < 100; i++) {
+      paged.addLong(i);
+      memory.addLong(i);
+    }
+    paged.addString("bloo");
+    memory.addString("bloo");
+    assertTrue(paged.getAllocatedPages() <= 101);
+    assertEquals(paged.getAllocatedPages() * 4096L, paged.sizeInBytes());
+    for (int i = 0; i < 100; i++) {
+      assertTrue(paged.testLong(i));
+    }
+    assertTrue(paged.testString("bloo"));
+    for (int i = 0; i < 10_000; i++) {
+      long probe = rand.nextLong();
+      assertEquals(memory.testLong(probe), paged.testLong(probe));
+    }
+    assertArrayEquals(memory.getBitSet(), paged.toBloomKFilter().getBitSet());
+
+    paged.clear();
+    assertEquals(0, paged.getAllocatedPages());
+    assertFalse(paged.testLong(1));
+  }
+
+  @Test
+  public void testDense() {
+    BloomKFilter memory = new BloomKFilter(100_000, 0.01, 16, 32, BloomKFilter.BitPlacement.SPLIT,
+        true, RangeReduction.FAST_RANGE);
+    // partial last page
+    assertTrue(memory.getBitSet().length % BloomKFilter.PAGE_WORDS != 0);
+    PagedBloomKFilter paged = new PagedBloomKFilter(100_000, 0.01, memory.options());
+    long[] keys = new long[100_000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = rand.nextLong();
+    }
+    paged.addLongs(keys);
+    memory.addLongs(keys);
+    assertEquals(paged.getNumPages(), paged.getAllocatedPages());
+    for (long key : keys) {
+      assertTrue(paged.testLong(key));
+    }
+    BloomKFilter copy = paged.toBloomKFilter();
+    assertTrue(memory.isCompatible(copy));
+    assertArrayEquals(memory.getBitSet(), copy.getBitSet());
+  }
+}
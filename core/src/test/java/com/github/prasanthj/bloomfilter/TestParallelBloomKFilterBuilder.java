@@ -0,0 +1,101 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+
+/**
+ * Parallel build should produce the same filter as adding the keys one by one.
+ */
+public class TestParallelBloomKFilterBuilder {
+  private static final int SIZE = 200_000;
+
+  @Test
+  public void testBuild() {
+    long[] keys = randomKeys(SIZE);
+    BloomKFilter expected = sequential(keys, BloomFilter.DEFAULT_FPP);
+    for (int parallelism : new int[]{1, 2, 3, 4, 8, 64}) {
+      BloomKFilter bf = BloomKFilter.build(keys, parallelism);
+      assertEquals(expected.getBitSize(), bf.getBitSize());
+      assertEquals(expected.getNumHashFunctions(), bf.getNumHashFunctions());
+      assertArrayEquals(expected.getBitSet(), bf.getBitSet());
+    }
+  }
+
+  @Test
+  public void testBuildFpp() {
+    long[] keys = randomKeys(SIZE);
+    BloomKFilter bf = BloomKFilter.build(keys, 0.01, 4);
+    assertArrayEquals(sequential(keys, 0.01).getBitSet(), bf.getBitSet());
+    for (long key : keys) {
+      assertTrue(bf.testLong(key));
+    }
+  }
+
+  @Test
+  public void testFewBlocks() {
+    // fewer blocks than partitions
+    long[] keys = randomKeys(10);
+    BloomKFilter bf = BloomKFilter.build(keys, 16);
+    assertArrayEquals(sequential(keys, BloomFilter.DEFAULT_FPP).getBitSet(), bf.getBitSet());
+  }
+
+  @Test
+  public void testUnsizedSpliterator() {
+    long[] keys = randomKeys(SIZE);
+    // iterator backed spliterator splits into growing batches and has no size estimate
+    Spliterator.OfLong spliterator = Spliterators.spliteratorUnknownSize(
+        LongStream.of(keys).iterator(), Spliterator.ORDERED);
+    BloomKFilter bf = BloomKFilter.build(spliterator, SIZE, BloomFilter.DEFAULT_FPP, 4);
+    assertArrayEquals(sequential(keys, BloomFilter.DEFAULT_FPP).getBitSet(), bf.getBitSet());
+  }
+
+  @Test
+  public void testRangeSpliterator() {
+    BloomKFilter bf = BloomKFilter.build(LongStream.range(0, SIZE).spliterator(), SIZE, 0.01, 4);
+    BloomKFilter expected = new BloomKFilter(SIZE, 0.01);
+    for (long i = 0; i < SIZE; i++) {
+      expected.addLong(i);
+    }
+    assertArrayEquals(expected.getBitSet(), bf.getBitSet());
+  }
+
+  private static long[] randomKeys(int size) {
+    Random random = new Random(123);
+    long[] keys = new long[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = random.nextLong();
+    }
+    return keys;
+  }
+
+  private static BloomKFilter sequential(long[] keys, double fpp) {
+    BloomKFilter bf = new BloomKFilter(keys.length, fpp);
+    for (long key : keys) {
+      bf.addLong(key);
+    }
+    return bf;
+  }
+}
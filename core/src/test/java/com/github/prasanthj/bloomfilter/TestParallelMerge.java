@@ -0,0 +1,151 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * mergeAll() should produce the same bitset as merging the filters one by one.
+ */
+public class TestParallelMerge {
+  private static final int NUM_FILTERS = 100;
+  private Random rand = new Random(123);
+
+  @Test
+  public void testOrAll() {
+    // large enough to be split across fork-join tasks, with a partial last chunk
+    int length = (1 << 18) + 123;
+    long[] expected = new long[length];
+    long[] target = new long[length];
+    List<long[]> sources = new ArrayList<long[]>();
+    for (int s = 0; s < 10; s++) {
+      long[] source = new long[length];
+      for (int i = 0; i < length; i++) {
+        // sparse so that the OR is not all ones
+        source[i] = rand.nextLong() & rand.nextLong() & rand.nextLong();
+        expected[i] |= source[i];
+      }
+      sources.add(source);
+    }
+    ParallelMerge.orAll(target, sources);
+    assertArrayEquals(expected, target);
+    ParallelMerge.orAll(target, Collections.<long[]>emptyList());
+    assertArrayEquals(expected, target);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOrAllLengthMismatch() {
+    ParallelMerge.orAll(new long[10], Arrays.asList(new long[10], new long[11]));
+  }
+
+  @Test
+  public void testBloomKFilterMergeAll() {
+    List<BloomKFilter> filters = new ArrayList<BloomKFilter>();
+    BloomKFilter expected = new BloomKFilter(1_000_000);
+    for (int f = 0; f < NUM_FILTERS; f++) {
+      BloomKFilter bf = new BloomKFilter(1_000_000);
+      for (int i = 0; i < 1000; i++) {
+        bf.addLong(rand.nextLong());
+      }
+      expected.merge(bf);
+      filters.add(bf);
+    }
+    BloomKFilter merged = new BloomKFilter(1_000_000);
+    merged.mergeAll(filters);
+    assertArrayEquals(expected.getBitSet(), merged.getBitSet());
+
+    // streaming, more filters than a group
+    List<List<Long>> serialized = new ArrayList<List<Long>>();
+    for (BloomKFilter bf : filters) {
+      serialized.add(bf.serialize());
+    }
+    BloomKFilter streamed = new BloomKFilter(1_000_000);
+    streamed.mergeAll(serialized.iterator());
+    assertArrayEquals(expected.getBitSet(), streamed.getBitSet());
+    assertTrue(NUM_FILTERS > ParallelMerge.GROUP_SIZE);
+
+    // merging itself is a no-op
+    merged.mergeAll(Collections.singletonList(merged));
+    assertArrayEquals(expected.getBitSet(), merged.getBitSet());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBloomKFilterIncompatible() {
+    BloomKFilter bf = new BloomKFilter(10000);
+    bf.mergeAll(Arrays.asList(new BloomKFilter(10000), new BloomKFilter(20000)));
+  }
+
+  @Test
+  public void testAllVariants() {
+    BloomFilter bf = new BloomFilter(10000);
+    Bloom1Filter bf1 = new Bloom1Filter(10000);
+    BloomGFilter bfg = new BloomGFilter(10000, 0.01, 2);
+    PartitionedBloomFilter pbf = new PartitionedBloomFilter(10000);
+    LongBloomKFilter lbf = new LongBloomKFilter(10000);
+    IntBloomKFilter ibf = new IntBloomKFilter(10000);
+    List<BloomFilter> bfs = new ArrayList<BloomFilter>();
+    List<List<Long>> bf1s = new ArrayList<List<Long>>();
+    List<BloomGFilter> bfgs = new ArrayList<BloomGFilter>();
+    List<List<Long>> pbfs = new ArrayList<List<Long>>();
+    List<LongBloomKFilter> lbfs = new ArrayList<LongBloomKFilter>();
+    List<List<Long>> ibfs = new ArrayList<List<Long>>();
+    for (int f = 0; f < 10; f++) {
+      BloomFilter b = new BloomFilter(10000);
+      Bloom1Filter b1 = new Bloom1Filter(10000);
+      BloomGFilter bg = new BloomGFilter(10000, 0.01, 2);
+      PartitionedBloomFilter pb = new PartitionedBloomFilter(10000);
+      LongBloomKFilter lb = new LongBloomKFilter(10000);
+      IntBloomKFilter ib = new IntBloomKFilter(10000);
+      for (int i = f * 100; i < (f + 1) * 100; i++) {
+        b.addLong(i);
+        b1.addLong(i);
+        bg.addLong(i);
+        pb.addLong(i);
+        lb.add(i);
+        ib.add(i);
+      }
+      bfs.add(b);
+      bf1s.add(b1.serialize());
+      bfgs.add(bg);
+      pbfs.add(pb.serialize());
+      lbfs.add(lb);
+      ibfs.add(ib.serialize());
+    }
+    bf.mergeAll(bfs);
+    bf1.mergeAll(bf1s.iterator());
+    bfg.mergeAll(bfgs);
+    pbf.mergeAll(pbfs.iterator());
+    lbf.mergeAll(lbfs);
+    ibf.mergeAll(ibfs.iterator());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(bf.testLong(i));
+      assertTrue(bf1.testLong(i));
+      assertTrue(bfg.testLong(i));
+      assertTrue(pbf.testLong(i));
+      assertTrue(lbf.test(i));
+      assertTrue(ibf.test(i));
+    }
+  }
+}
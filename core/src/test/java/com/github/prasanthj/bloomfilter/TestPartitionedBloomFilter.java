@@ -0,0 +1,272 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TestPartitionedBloomFilter {
+  private static final int COUNT = 100;
+  Random rand = new Random(123);
+  private double deltaError = 0.010;
+
+  @Test(expected = AssertionError.class)
+  public void testBloomIllegalArg1() {
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(0, 0);
+  }
+
+  @Test(expected = AssertionError.class)
+  public void testBloomIllegalArg2() {
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(1, 1.0);
+  }
+
+  @Test
+  public void testBloomNumBits() {
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(10000);
+    assertEquals(4, bf.getNumHashFunctions());
+    assertEquals(0, bf.getSliceBitSize() % Long.SIZE);
+    assertEquals(bf.getNumHashFunctions() * bf.getSliceBitSize(), bf.getBitSize());
+    assertEquals(bf.getBitSize(), bf.getNumBits());
+    assertEquals(7808, bf.sizeInBytes());
+  }
+
+  @Test
+  public void testPartitionedBloomFilterBytes() {
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(10000);
+    byte[] val = new byte[]{1, 2, 3};
+    byte[] val1 = new byte[]{1, 2, 3, 4};
+    byte[] val2 = new byte[]{1, 2, 3, 4, 5};
+    byte[] val3 = new byte[]{1, 2, 3, 4, 5, 6};
+
+    assertEquals(false, bf.test(val));
+    assertEquals(false, bf.test(val1));
+    assertEquals(false, bf.test(val2));
+    assertEquals(false, bf.test(val3));
+    bf.add(val);
+    assertEquals(true, bf.test(val));
+    assertEquals(false, bf.test(val1));
+    assertEquals(false, bf.test(val2));
+    assertEquals(false, bf.test(val3));
+    bf.add(val1);
+    bf.add(val2);
+    bf.add(val3);
+    assertEquals(true, bf.test(val));
+    assertEquals(true, bf.test(val1));
+    assertEquals(true, bf.test(val2));
+    assertEquals(true, bf.test(val3));
+
+    byte[] randVal = new byte[COUNT];
+    for (int i = 0; i < COUNT; i++) {
+      rand.nextBytes(randVal);
+      bf.addBytes(randVal);
+    }
+    // last value should be present
+    assertEquals(true, bf.testBytes(randVal));
+    // most likely this value should not exist
+    randVal[0] = 0;
+    randVal[1] = 0;
+    randVal[2] = 0;
+    randVal[3] = 0;
+    randVal[4] = 0;
+    assertEquals(false, bf.testBytes(randVal));
+  }
+
+  @Test
+  public void testPartitionedBloomFilterTypes() {
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(10000);
+    bf.addByte(Byte.MIN_VALUE);
+    bf.addInt(Integer.MIN_VALUE);
+    bf.addLong(Long.MIN_VALUE);
+    bf.addFloat(Float.NEGATIVE_INFINITY);
+    bf.addDouble(Double.NEGATIVE_INFINITY);
+    bf.addString("bloom filter");
+
+    assertEquals(true, bf.testByte(Byte.MIN_VALUE));
+    assertEquals(true, bf.testInt(Integer.MIN_VALUE));
+    assertEquals(true, bf.testLong(Long.MIN_VALUE));
+    assertEquals(true, bf.testFloat(Float.NEGATIVE_INFINITY));
+    assertEquals(true, bf.testDouble(Double.NEGATIVE_INFINITY));
+    assertEquals(true, bf.testString("bloom filter"));
+    assertEquals(false, bf.testByte(Byte.MAX_VALUE));
+    assertEquals(false, bf.testInt(Integer.MAX_VALUE));
+    assertEquals(false, bf.testLong(Long.MAX_VALUE));
+    assertEquals(false, bf.testFloat(Float.POSITIVE_INFINITY));
+    assertEquals(false, bf.testDouble(Double.POSITIVE_INFINITY));
+    assertEquals(false, bf.testString("cuckoo filter"));
+  }
+
+  @Test
+  public void testOneBitPerSlice() {
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(10000);
+    bf.addString("bloom filter");
+    int sliceLongs = (int) (bf.getSliceBitSize() / Long.SIZE);
+    long[] data = bf.getBitSet();
+    for (int slice = 0; slice < bf.getNumHashFunctions(); slice++) {
+      int bits = 0;
+      for (int i = slice * sliceLongs; i < (slice + 1) * sliceLongs; i++) {
+        bits += Long.bitCount(data[i]);
+      }
+      assertEquals(1, bits);
+    }
+  }
+
+  @Test
+  public void testSerialize() {
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(10000);
+    for (int i = 0; i < 1000; i++) {
+      bf.addLong(i);
+    }
+    PartitionedBloomFilter bf2 = new PartitionedBloomFilter(bf.serialize());
+    assertArrayEquals(bf.getBitSet(), bf2.getBitSet());
+    assertEquals(bf.getNumHashFunctions(), bf2.getNumHashFunctions());
+    assertEquals(bf.getSliceBitSize(), bf2.getSliceBitSize());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(bf2.testLong(i));
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(10000);
+    String val = "bloo";
+    String val1 = "bloom fil";
+    bf.addString(val);
+    bf.addString(val1);
+
+    PartitionedBloomFilter bf2 = new PartitionedBloomFilter(10000);
+    String v = "2_bloo";
+    String v1 = "2_bloom fil";
+    bf2.addString(v);
+    bf2.addString(v1);
+
+    assertEquals(true, bf.isCompatible(bf2));
+    assertEquals(false, bf.testString(v));
+    assertEquals(false, bf.testString(v1));
+
+    bf.merge(bf2);
+
+    assertEquals(true, bf.testString(val));
+    assertEquals(true, bf.testString(val1));
+    assertEquals(true, bf.testString(v));
+    assertEquals(true, bf.testString(v1));
+  }
+
+  @Test
+  public void testMergeSlice() {
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(10000);
+    PartitionedBloomFilter bf2 = new PartitionedBloomFilter(10000);
+    bf2.addString("2_bloo");
+
+    for (int slice = 0; slice < bf.getNumHashFunctions(); slice++) {
+      assertEquals(false, bf.testString("2_bloo"));
+      bf.mergeSlice(bf2, slice);
+    }
+    assertEquals(true, bf.testString("2_bloo"));
+    assertArrayEquals(bf2.getBitSet(), bf.getBitSet());
+  }
+
+  @Test
+  public void testFpp10K() {
+    int size = 10_000;
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(size);
+    assertFpp(bf, measureFpp(bf, size));
+  }
+
+  @Test
+  public void testFpp1M() {
+    int size = 1_000_000;
+    PartitionedBloomFilter bf = new PartitionedBloomFilter(size);
+    assertFpp(bf, measureFpp(bf, size));
+  }
+
+  // empirical fpp comparison against the other variants with same n and fpp. partitioned filter
+  // should be as good as the standard bloom filter and better than the blocked variants.
+  @Test
+  public void testFppComparison() {
+    int size = 100_000;
+    int probes = 1_000_000;
+    PartitionedBloomFilter partitioned = new PartitionedBloomFilter(size);
+    BloomFilter standard = new BloomFilter(size);
+    BloomKFilter bloomK = new BloomKFilter(size);
+    Bloom1Filter bloom1 = new Bloom1Filter(size);
+    for (int i = 0; i < size; i++) {
+      partitioned.addLong(i);
+      standard.addLong(i);
+      bloomK.addLong(i);
+      bloom1.addLong(i);
+    }
+
+    int fpPartitioned = 0;
+    int fpStandard = 0;
+    int fpBloomK = 0;
+    int fpBloom1 = 0;
+    for (long probe = size; probe < size + probes; probe++) {
+      fpPartitioned += partitioned.testLong(probe) ? 1 : 0;
+      fpStandard += standard.testLong(probe) ? 1 : 0;
+      fpBloomK += bloomK.testLong(probe) ? 1 : 0;
+      fpBloom1 += bloom1.testLong(probe) ? 1 : 0;
+    }
+
+    double partitionedFpp = (double) fpPartitioned / probes;
+    double standardFpp = (double) fpStandard / probes;
+    double bloomKFpp = (double) fpBloomK / probes;
+    double bloom1Fpp = (double) fpBloom1 / probes;
+    assertEquals(BloomFilter.DEFAULT_FPP, partitionedFpp, deltaError);
+    assertEquals(standardFpp, partitionedFpp, deltaError);
+    assertTrue(partitionedFpp <= bloomKFpp + deltaError);
+    assertTrue(partitionedFpp < bloom1Fpp);
+  }
+
+  private double measureFpp(PartitionedBloomFilter bf, int size) {
+    for (int i = 0; i < size; i++) {
+      bf.addLong(i);
+    }
+
+    for (int i = 0; i < size; i++) {
+      assertTrue(bf.testLong(i));
+    }
+
+    int fp = 0;
+    Random random = new Random();
+    for (int i = 0; i < size; i++) {
+      int probe = random.nextInt();
+      // out of range probes
+      if ((probe > size) || (probe < 0)) {
+        if (bf.testLong(probe)) {
+          fp++;
+        }
+      }
+    }
+    return (double) fp / (double) size;
+  }
+
+  private void assertFpp(PartitionedBloomFilter bf, double actualFpp) {
+    double expectedFpp = bf.getFalsePositivePercent();
+    if (actualFpp < expectedFpp) {
+      assertTrue(actualFpp != 0.0);
+    } else {
+      assertEquals(expectedFpp, actualFpp, deltaError);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Bulk insert should set the same bits as adding the keys one by one.
+ */
+public class TestRadixPartitionedInsert {
+  private Random rand = new Random(123);
+
+  @Test
+  public void testHash64Long() {
+    byte[] bytes = new byte[8];
+    for (int i = 0; i < 1000; i++) {
+      long val = i < 10 ? i - 5 : rand.nextLong();
+      for (int j = 0; j < 8; j++) {
+        bytes[j] = (byte) (val >> (8 * j));
+      }
+      assertEquals(Murmur3.hash64(bytes), Murmur3.hash64(val));
+    }
+  }
+
+  @Test
+  public void testPartitionedInsert() {
+    for (BloomKFilter.BitPlacement placement : BloomKFilter.BitPlacement.values()) {
+      BloomKFilter expected = new BloomKFilter(100_000, 0.01, 4, 32, placement);
+      BloomKFilter bf = new BloomKFilter(100_000, 0.01, 4, 32, placement);
+      RadixPartitionedInsert insert = new RadixPartitionedInsert(bf, 1000);
+      long[] hashes = new long[1000];
+      for (int batch = 0; batch < 100; batch++) {
+        // last batch is partial
+        int count = batch == 99 ? 123 : hashes.length;
+        for (int i = 0; i < count; i++) {
+          hashes[i] = rand.nextLong();
+          expected.addHash(hashes[i]);
+        }
+        insert.add(hashes, count);
+      }
+      assertArrayEquals(expected.getBitSet(), bf.getBitSet());
+    }
+  }
+
+  @Test
+  public void testSmallFilter() {
+    // fewer blocks than a page
+    BloomKFilter expected = new BloomKFilter(10);
+    BloomKFilter bf = new BloomKFilter(10);
+    RadixPartitionedInsert insert = new RadixPartitionedInsert(bf, 10);
+    long[] hashes = new long[10];
+    for (int i = 0; i < hashes.length; i++) {
+      hashes[i] = rand.nextLong();
+      expected.addHash(hashes[i]);
+    }
+    insert.add(hashes, hashes.length);
+    assertArrayEquals(expected.getBitSet(), bf.getBitSet());
+  }
+
+  @Test
+  public void testAddLongs() {
+    // one filter below and one above the partitioning threshold
+    for (int size : new int[]{10_000, 5_000_000}) {
+      BloomKFilter expected = new BloomKFilter(size, 0.001);
+      BloomKFilter bf = new BloomKFilter(size, 0.001);
+      assertEquals(size > 10_000, RadixPartitionedInsert.isWorthPartitioning(bf));
+      long[] keys = new long[size / 5];
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = rand.nextLong();
+        expected.addLong(keys[i]);
+      }
+      // skip first and last keys to check the range
+      bf.addLong(keys[0]);
+      bf.addLongs(keys, 1, keys.length - 2);
+      bf.addLong(keys[keys.length - 1]);
+      assertArrayEquals(expected.getBitSet(), bf.getBitSet());
+      for (long key : keys) {
+        assertTrue(bf.testLong(key));
+      }
+    }
+  }
+
+  @Test
+  public void testLargeFilterBitSize() {
+    // more than 2^31 bits, the layout has the geometry of the default filter without allocating
+    // its bitset (about 312MB)
+    final long n = 400_000_000L;
+    BloomKFilter bf = BloomKFilter.layout(n, 0.05, 0);
+    assertTrue(bf.getBitSize() > Integer.MAX_VALUE);
+    long numLongs = (BloomKFilter.optimalNumOfBits(n, 0.05) + Long.SIZE - 1) / Long.SIZE;
+    long padLongs = bf.getBlockSize() - numLongs % bf.getBlockSize();
+    assertEquals((numLongs + padLongs) * Long.SIZE, bf.getBitSize());
+  }
+}
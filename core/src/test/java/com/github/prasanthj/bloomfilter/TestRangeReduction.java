@@ -0,0 +1,217 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Filters with {@link RangeReduction} modes other than modulo.
+ */
+public class TestRangeReduction {
+  private static final int SIZE = 100_000;
+  private static final int PROBES = 1_000_000;
+  // allowed relative error of measured fpp against modulo reduction with the same size
+  private static final double RELATIVE_ERROR = 0.15;
+
+  @Test
+  public void testFastRange() {
+    assertEquals(0, RangeReduction.fastRange(0, 1000));
+    assertEquals(999, RangeReduction.fastRange(-1, 1000));
+    assertEquals(500, RangeReduction.fastRange(Integer.MIN_VALUE, 1000));
+    assertEquals(0, RangeReduction.fastRange(Integer.MAX_VALUE, 1));
+  }
+
+  @Test
+  public void testNextPowerOfTwo() {
+    assertEquals(1, RangeReduction.nextPowerOfTwo(1));
+    assertEquals(2, RangeReduction.nextPowerOfTwo(2));
+    assertEquals(4, RangeReduction.nextPowerOfTwo(3));
+    assertEquals(1024, RangeReduction.nextPowerOfTwo(1000));
+    assertEquals(1 << 30, RangeReduction.nextPowerOfTwo((1 << 29) + 1));
+  }
+
+  @Test
+  public void testPow2TooLarge() {
+    try {
+      RangeReduction.nextPowerOfTwo((1 << 30) + 1);
+      fail("rounded up past 2^30");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    // about 1.9 billion bits, rounded up this would overflow int
+    try {
+      new BloomFilter(300_000_000L, 0.05, RangeReduction.POW2);
+      fail("POW2 filter with more than 2^30 bits");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("2^30"));
+    }
+  }
+
+  @Test
+  public void testPow2Sizes() {
+    BloomFilter bf = new BloomFilter(SIZE, 0.01, RangeReduction.POW2);
+    assertEquals(1, Long.bitCount(bf.getBitSize()));
+    assertTrue(bf.getBitSize() >= new BloomFilter(SIZE, 0.01).getBitSize());
+
+    BloomKFilter bfk = new BloomKFilter(SIZE, 0.01, RangeReduction.POW2);
+    assertEquals(1, Integer.bitCount(bfk.getBitSet().length / bfk.getBlockSize()));
+    assertTrue(bfk.getBitSize() >= new BloomKFilter(SIZE, 0.01).getBitSize() / 2);
+    bfk = new BloomKFilter(SIZE, 0.01, 4, 32, BloomKFilter.BitPlacement.SPLIT, true,
+        RangeReduction.POW2);
+    assertEquals(1, Integer.bitCount(bfk.getBitSet().length / bfk.getBlockSize()));
+
+    Bloom1Filter bf1 = new Bloom1Filter(SIZE, 0.01, RangeReduction.POW2);
+    assertEquals(1, Integer.bitCount(bf1.getBitSet().length));
+    assertTrue(bf1.getBitSize() >= new Bloom1Filter(SIZE, 0.01).getBitSize());
+  }
+
+  @Test
+  public void testBloomFilterFpp() {
+    BloomFilter modulo = new BloomFilter(SIZE, 0.01);
+    BloomFilter fastRange = new BloomFilter(SIZE, 0.01, RangeReduction.FAST_RANGE);
+    BloomFilter pow2 = new BloomFilter(SIZE, 0.01, RangeReduction.POW2);
+    for (int i = 0; i < SIZE; i++) {
+      modulo.addLong(i);
+      fastRange.addLong(i);
+      pow2.addLong(i);
+    }
+    int fpModulo = 0;
+    int fpFastRange = 0;
+    int fpPow2 = 0;
+    for (long probe = SIZE; probe < SIZE + PROBES; probe++) {
+      fpModulo += modulo.testLong(probe) ? 1 : 0;
+      fpFastRange += fastRange.testLong(probe) ? 1 : 0;
+      fpPow2 += pow2.testLong(probe) ? 1 : 0;
+    }
+    for (int i = 0; i < SIZE; i++) {
+      assertTrue(fastRange.testLong(i));
+      assertTrue(pow2.testLong(i));
+    }
+    assertEquals(fpModulo, fpFastRange, fpModulo * RELATIVE_ERROR);
+    // more bits, fewer false positives
+    assertTrue(fpPow2 <= fpModulo * (1 + RELATIVE_ERROR));
+  }
+
+  @Test
+  public void testBloomKFilterFpp() {
+    for (BloomKFilter.BitPlacement placement : BloomKFilter.BitPlacement.values()) {
+      for (boolean blockedSizing : new boolean[]{false, true}) {
+        BloomKFilter modulo = new BloomKFilter(SIZE, 0.01, 8, 64, placement, blockedSizing);
+        BloomKFilter fastRange = new BloomKFilter(SIZE, 0.01, 8, 64, placement, blockedSizing,
+            RangeReduction.FAST_RANGE);
+        BloomKFilter pow2 = new BloomKFilter(SIZE, 0.01, 8, 64, placement, blockedSizing,
+            RangeReduction.POW2);
+        for (int i = 0; i < SIZE; i++) {
+          modulo.addLong(i);
+          fastRange.addLong(i);
+          pow2.addLong(i);
+        }
+        int fpModulo = 0;
+        int fpFastRange = 0;
+        int fpPow2 = 0;
+        for (long probe = SIZE; probe < SIZE + PROBES; probe++) {
+          fpModulo += modulo.testLong(probe) ? 1 : 0;
+          fpFastRange += fastRange.testLong(probe) ? 1 : 0;
+          fpPow2 += pow2.testLong(probe) ? 1 : 0;
+        }
+        for (int i = 0; i < SIZE; i++) {
+          assertTrue(fastRange.testLong(i));
+          assertTrue(pow2.testLong(i));
+        }
+        assertTrue(fpFastRange <= fpModulo * (1 + RELATIVE_ERROR));
+        assertTrue(fpPow2 <= fpModulo * (1 + RELATIVE_ERROR));
+      }
+    }
+  }
+
+  @Test
+  public void testBloom1FilterFpp() {
+    Bloom1Filter modulo = new Bloom1Filter(SIZE, 0.01, true);
+    Bloom1Filter fastRange = new Bloom1Filter(SIZE, 0.01, true, RangeReduction.FAST_RANGE);
+    Bloom1Filter pow2 = new Bloom1Filter(SIZE, 0.01, true, RangeReduction.POW2);
+    for (int i = 0; i < SIZE; i++) {
+      modulo.addLong(i);
+      fastRange.addLong(i);
+      pow2.addLong(i);
+    }
+    int fpModulo = 0;
+    int fpFastRange = 0;
+    int fpPow2 = 0;
+    for (long probe = SIZE; probe < SIZE + PROBES; probe++) {
+      fpModulo += modulo.testLong(probe) ? 1 : 0;
+      fpFastRange += fastRange.testLong(probe) ? 1 : 0;
+      fpPow2 += pow2.testLong(probe) ? 1 : 0;
+    }
+    for (int i = 0; i < SIZE; i++) {
+      assertTrue(fastRange.testLong(i));
+      assertTrue(pow2.testLong(i));
+    }
+    assertEquals(fpModulo, fpFastRange, fpModulo * RELATIVE_ERROR);
+    assertTrue(fpPow2 <= fpModulo * (1 + RELATIVE_ERROR));
+  }
+
+  @Test
+  public void testSerialize() {
+    for (RangeReduction reduction : RangeReduction.values()) {
+      BloomFilter bf = new BloomFilter(10000, 0.01, reduction);
+      BloomKFilter bfk = new BloomKFilter(10000, 0.01, reduction);
+      Bloom1Filter bf1 = new Bloom1Filter(10000, 0.01, reduction);
+      for (int i = 0; i < 1000; i++) {
+        bf.addLong(i);
+        bfk.addLong(i);
+        bf1.addLong(i);
+      }
+
+      List<Long> serialized = bf.serialize();
+      // modulo keeps the legacy format (n, fpp, bitset)
+      assertEquals(reduction == RangeReduction.MODULO, serialized.get(0) == 10000L);
+      BloomFilter bf2 = new BloomFilter(serialized);
+      assertEquals(reduction, bf2.getRangeReduction());
+      assertEquals(bf.getBitSize(), bf2.getBitSize());
+      assertEquals(true, bf.isCompatible(bf2));
+
+      serialized = bfk.serialize();
+      assertEquals(reduction == RangeReduction.MODULO, serialized.get(0) == 10000L);
+      BloomKFilter bfk2 = new BloomKFilter(serialized);
+      assertEquals(reduction, bfk2.getRangeReduction());
+      assertEquals(bfk.getNumHashFunctions(), bfk2.getNumHashFunctions());
+      assertArrayEquals(bfk.getBitSet(), bfk2.getBitSet());
+      assertEquals(true, bfk.isCompatible(bfk2));
+
+      serialized = bf1.serialize();
+      assertEquals(reduction == RangeReduction.MODULO, serialized.get(0) == 10000L);
+      Bloom1Filter bf12 = new Bloom1Filter(serialized);
+      assertEquals(reduction, bf12.getRangeReduction());
+      assertArrayEquals(bf1.getBitSet(), bf12.getBitSet());
+      assertEquals(true, bf1.isCompatible(bf12));
+
+      for (int i = 0; i < 1000; i++) {
+        assertTrue(bf2.testLong(i));
+        assertTrue(bfk2.testLong(i));
+        assertTrue(bf12.testLong(i));
+      }
+    }
+    assertEquals(false, new BloomKFilter(10000, 0.01).isCompatible(
+        new BloomKFilter(10000, 0.01, RangeReduction.FAST_RANGE)));
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TestRotatingBloomKFilter {
+  private double deltaError = 0.010;
+
+  @Test(expected = AssertionError.class)
+  public void testBloomIllegalArg1() {
+    RotatingBloomKFilter bf = new RotatingBloomKFilter(100, 0);
+  }
+
+  @Test
+  public void testRotation() {
+    RotatingBloomKFilter bf = new RotatingBloomKFilter(10000, 3);
+    assertEquals(3, bf.getNumGenerations());
+    bf.addString("gen0");
+    assertEquals(true, bf.testString("gen0"));
+    assertEquals(false, bf.testString("gen1"));
+
+    bf.advance();
+    bf.addString("gen1");
+    assertEquals(true, bf.testString("gen0"));
+    assertEquals(true, bf.testString("gen1"));
+
+    bf.advance();
+    bf.addString("gen2");
+    assertEquals(true, bf.testString("gen0"));
+    assertEquals(true, bf.testString("gen1"));
+    assertEquals(true, bf.testString("gen2"));
+
+    // gen0 falls out of the window
+    bf.advance();
+    assertEquals(false, bf.testString("gen0"));
+    assertEquals(true, bf.testString("gen1"));
+    assertEquals(true, bf.testString("gen2"));
+
+    bf.advance();
+    assertEquals(false, bf.testString("gen1"));
+    assertEquals(true, bf.testString("gen2"));
+
+    bf.advance();
+    assertEquals(false, bf.testString("gen2"));
+  }
+
+  @Test
+  public void testAdvanceReusesGenerations() {
+    RotatingBloomKFilter bf = new RotatingBloomKFilter(1000, 2);
+    BloomKFilter first = bf.getCurrentGeneration();
+    long[] bits = first.getBitSet();
+    for (int i = 0; i < 1000; i++) {
+      bf.addLong(i);
+    }
+    bf.advance();
+    bf.advance();
+    assertSame(first, bf.getCurrentGeneration());
+    assertSame(bits, bf.getCurrentGeneration().getBitSet());
+    for (long l : bits) {
+      assertEquals(0, l);
+    }
+    assertEquals(2 * first.sizeInBytes(), bf.sizeInBytes());
+  }
+
+  @Test
+  public void testTypes() {
+    RotatingBloomKFilter bf = new RotatingBloomKFilter(10000, 2);
+    bf.addByte((byte) 1);
+    bf.addInt(2);
+    bf.addLong(3L);
+    bf.addFloat(4.0f);
+    bf.addDouble(5.0);
+    bf.addBytes(new byte[]{6, 7});
+
+    // generations hash the same way as a plain BloomKFilter
+    BloomKFilter plain = new BloomKFilter(10000);
+    plain.addByte((byte) 1);
+    plain.addInt(2);
+    plain.addLong(3L);
+    plain.addFloat(4.0f);
+    plain.addDouble(5.0);
+    plain.addBytes(new byte[]{6, 7});
+    assertArrayEquals(plain.getBitSet(), bf.getCurrentGeneration().getBitSet());
+
+    bf.advance();
+    assertEquals(true, bf.testByte((byte) 1));
+    assertEquals(true, bf.testInt(2));
+    assertEquals(true, bf.testLong(3L));
+    assertEquals(true, bf.testFloat(4.0f));
+    assertEquals(true, bf.testDouble(5.0));
+    assertEquals(true, bf.testBytes(new byte[]{6, 7}));
+    assertEquals(false, bf.testInt(3));
+  }
+
+  @Test
+  public void testFpp10K() {
+    int size = 10_000;
+    int numGenerations = 4;
+    RotatingBloomKFilter bf = new RotatingBloomKFilter(size, numGenerations);
+    for (int g = 0; g < numGenerations; g++) {
+      if (g > 0) {
+        bf.advance();
+      }
+      for (int i = 0; i < size; i++) {
+        bf.addLong(g * size + i);
+      }
+    }
+
+    for (int i = 0; i < size * numGenerations; i++) {
+      assertTrue(bf.testLong(i));
+    }
+
+    int fp = 0;
+    Random random = new Random();
+    for (int i = 0; i < size; i++) {
+      int probe = random.nextInt();
+      // out of range probes
+      if ((probe > size * numGenerations) || (probe < 0)) {
+        if (bf.testLong(probe)) {
+          fp++;
+        }
+      }
+    }
+
+    // every generation contributes to false positives
+    double actualFpp = (double) fp / (double) size;
+    double expectedFpp = 1 - Math.pow(1 - bf.getFalsePositivePercent(), numGenerations);
+    if (actualFpp < expectedFpp) {
+      assertTrue(actualFpp != 0.0);
+    } else {
+      assertEquals(expectedFpp, actualFpp, deltaError * numGenerations);
+    }
+  }
+}
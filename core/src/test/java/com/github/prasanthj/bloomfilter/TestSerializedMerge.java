@@ -0,0 +1,174 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * mergeFrom() of serialized bytes should set the same bits as deserializing and merging.
+ */
+public class TestSerializedMerge {
+  private Random rand = new Random(123);
+
+  @SafeVarargs
+  private static byte[] toBytes(List<Long>... serialized) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (List<Long> longs : serialized) {
+      for (long l : longs) {
+        out.writeLong(l);
+      }
+    }
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void testBloomKFilter() throws IOException {
+    // large enough to need several chunks, default and non-default headers
+    BloomKFilter[] targets = {new BloomKFilter(1_000_000),
+        new BloomKFilter(1_000_000, 0.01, 4, 32, BloomKFilter.BitPlacement.SPLIT, true,
+            RangeReduction.FAST_RANGE)};
+    BloomKFilter[] sources = {new BloomKFilter(1_000_000),
+        new BloomKFilter(1_000_000, 0.01, 4, 32, BloomKFilter.BitPlacement.SPLIT, true,
+            RangeReduction.FAST_RANGE)};
+    for (int f = 0; f < targets.length; f++) {
+      for (int i = 0; i < 10000; i++) {
+        targets[f].addLong(rand.nextLong());
+        sources[f].addLong(rand.nextLong());
+      }
+      BloomKFilter expected = new BloomKFilter(targets[f].serialize());
+      BloomKFilter streamed = new BloomKFilter(targets[f].serialize());
+      expected.merge(sources[f]);
+      byte[] bytes = toBytes(sources[f].serialize());
+      targets[f].mergeFrom(ByteBuffer.wrap(bytes));
+      streamed.mergeFrom(new ByteArrayInputStream(bytes));
+      assertArrayEquals(expected.getBitSet(), targets[f].getBitSet());
+      assertArrayEquals(expected.getBitSet(), streamed.getBitSet());
+    }
+  }
+
+  @Test
+  public void testConsecutiveFilters() throws IOException {
+    BloomKFilter expected = new BloomKFilter(10000);
+    BloomKFilter fromBuffer = new BloomKFilter(10000);
+    BloomKFilter fromStream = new BloomKFilter(10000);
+    BloomKFilter[] sources = new BloomKFilter[3];
+    for (int f = 0; f < sources.length; f++) {
+      sources[f] = new BloomKFilter(10000);
+      for (int i = 0; i < 1000; i++) {
+        sources[f].addLong(rand.nextLong());
+      }
+      expected.merge(sources[f]);
+    }
+    byte[] bytes = toBytes(sources[0].serialize(), sources[1].serialize(),
+        sources[2].serialize());
+    // byte order of the buffer is ignored, serialized form is always big endian
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    InputStream in = new ByteArrayInputStream(bytes);
+    for (int f = 0; f < sources.length; f++) {
+      fromBuffer.mergeFrom(buffer);
+      fromStream.mergeFrom(in);
+    }
+    assertEquals(0, buffer.remaining());
+    assertEquals(-1, in.read());
+    assertArrayEquals(expected.getBitSet(), fromBuffer.getBitSet());
+    assertArrayEquals(expected.getBitSet(), fromStream.getBitSet());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIncompatible() throws IOException {
+    new BloomKFilter(10000).mergeFrom(ByteBuffer.wrap(toBytes(new BloomKFilter(20000).serialize())));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIncompatibleOptions() throws IOException {
+    BloomKFilter bf = new BloomKFilter(10000, 0.05, 8, 64, BloomKFilter.BitPlacement.ANY, false,
+        RangeReduction.FAST_RANGE);
+    bf.mergeFrom(new ByteArrayInputStream(toBytes(new BloomKFilter(10000).serialize())));
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    byte[] bytes = toBytes(new BloomKFilter(10000).serialize());
+    byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+    BloomKFilter bf = new BloomKFilter(10000);
+    try {
+      bf.mergeFrom(ByteBuffer.wrap(truncated));
+      assertTrue("expected IllegalArgumentException", false);
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      bf.mergeFrom(new ByteArrayInputStream(truncated));
+      assertTrue("expected EOFException", false);
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testAllVariants() throws IOException {
+    BloomFilter bf = new BloomFilter(10000);
+    Bloom1Filter bf1 = new Bloom1Filter(10000, 0.05, true, RangeReduction.POW2);
+    BloomGFilter bfg = new BloomGFilter(10000, 0.01, 2);
+    PartitionedBloomFilter pbf = new PartitionedBloomFilter(10000);
+    LongBloomKFilter lbf = new LongBloomKFilter(10000);
+    IntBloomKFilter ibf = new IntBloomKFilter(10000);
+    BloomFilter b = new BloomFilter(10000);
+    Bloom1Filter b1 = new Bloom1Filter(10000, 0.05, true, RangeReduction.POW2);
+    BloomGFilter bg = new BloomGFilter(10000, 0.01, 2);
+    PartitionedBloomFilter pb = new PartitionedBloomFilter(10000);
+    LongBloomKFilter lb = new LongBloomKFilter(10000);
+    IntBloomKFilter ib = new IntBloomKFilter(10000);
+    for (int i = 0; i < 1000; i++) {
+      b.addLong(i);
+      b1.addLong(i);
+      bg.addLong(i);
+      pb.addLong(i);
+      lb.add(i);
+      ib.add(i);
+    }
+    bf.mergeFrom(ByteBuffer.wrap(toBytes(b.serialize())));
+    bf1.mergeFrom(new ByteArrayInputStream(toBytes(b1.serialize())));
+    bfg.mergeFrom(ByteBuffer.wrap(toBytes(bg.serialize())));
+    pbf.mergeFrom(new ByteArrayInputStream(toBytes(pb.serialize())));
+    lbf.mergeFrom(ByteBuffer.wrap(toBytes(lb.serialize())));
+    ibf.mergeFrom(new ByteArrayInputStream(toBytes(ib.serialize())));
+    assertArrayEquals(b.getBitSet(), bf.getBitSet());
+    assertArrayEquals(b1.getBitSet(), bf1.getBitSet());
+    assertArrayEquals(bg.getBitSet(), bfg.getBitSet());
+    assertArrayEquals(pb.getBitSet(), pbf.getBitSet());
+    assertArrayEquals(lb.getBitSet(), lbf.getBitSet());
+    assertArrayEquals(ib.getBitSet(), ibf.getBitSet());
+  }
+}
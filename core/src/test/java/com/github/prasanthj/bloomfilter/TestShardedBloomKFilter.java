@@ -0,0 +1,164 @@
+/**
+ *   Copyright 2014 Prasanth Jayachandran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.prasanthj.bloomfilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TestShardedBloomKFilter {
+  private final double deltaError = BloomFilter.DEFAULT_FPP / 2;
+
+  @Test
+  public void testAddTest() {
+    ShardedBloomKFilter bf = new ShardedBloomKFilter(10000);
+    bf.addLong(-1);
+    bf.addInt(12);
+    bf.addString("bloo");
+    bf.addBytes(new byte[]{1, 2, 3});
+    bf.addDouble(1.5);
+    assertTrue(bf.testLong(-1));
+    assertTrue(bf.testInt(12));
+    assertTrue(bf.testString("bloo"));
+    assertTrue(bf.testBytes(new byte[]{1, 2, 3}));
+    assertTrue(bf.testDouble(1.5));
+    assertFalse(bf.testString("blah"));
+    bf.clear();
+    assertFalse(bf.testLong(-1));
+  }
+
+  @Test
+  public void testSingleShard() {
+    ShardedBloomKFilter bf = new ShardedBloomKFilter(1000, 0.01, 1);
+    for (int i = 0; i < 1000; i++) {
+      bf.addLong(i);
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(bf.testLong(i));
+    }
+  }
+
+  @Test
+  public void testFpp10K() {
+    int size = 10_000;
+    ShardedBloomKFilter bf = new ShardedBloomKFilter(size);
+    for (int i = 0; i < size; i++) {
+      bf.addLong(i);
+    }
+    Random random = new Random(123);
+    int fp = 0;
+    int probes = 0;
+    for (int i = 0; i < size * 10; i++) {
+      long probe = random.nextLong();
+      if (probe >= size || probe < 0) {
+        probes++;
+        if (bf.testLong(probe)) {
+          fp++;
+        }
+      }
+    }
+    // small shards are padded to whole blocks, so fpp can be lower than configured
+    double actualFpp = (double) fp / (double) probes;
+    double expectedFpp = bf.getFalsePositivePercent();
+    if (actualFpp < expectedFpp) {
+      assertTrue(actualFpp != 0.0);
+    } else {
+      assertEquals(expectedFpp, actualFpp, deltaError);
+    }
+  }
+
+  @Test
+  public void testConcurrentAdd() throws InterruptedException {
+    final int numThreads = 8;
+    final int perThread = 20_000;
+    final ShardedBloomKFilter bf = new ShardedBloomKFilter(numThreads * perThread, 0.01, 16);
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicInteger misses = new AtomicInteger();
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int base = t * perThread;
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = base; i < base + perThread; i++) {
+            bf.addLong(i);
+            // probes run concurrently with adds to the same shards
+            if (!bf.testLong(i)) {
+              misses.incrementAndGet();
+            }
+          }
+        }
+      });
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, misses.get());
+    for (int i = 0; i < numThreads * perThread; i++) {
+      assertTrue(bf.testLong(i));
+    }
+  }
+
+  @Test
+  public void testConcurrentReaders() throws InterruptedException {
+    final int numKeys = 200_000;
+    // few shards, so readers and the writer hit the same shards all the time
+    final ShardedBloomKFilter bf = new ShardedBloomKFilter(numKeys, 0.01, 4);
+    // keys below are added, written by the writer after each add
+    final AtomicInteger added = new AtomicInteger();
+    final AtomicInteger misses = new AtomicInteger();
+    Thread[] readers = new Thread[4];
+    for (int t = 0; t < readers.length; t++) {
+      final Random rand = new Random(t);
+      readers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          int limit;
+          while ((limit = added.get()) < numKeys) {
+            if (limit > 0 && !bf.testLong(rand.nextInt(limit))) {
+              misses.incrementAndGet();
+            }
+          }
+        }
+      });
+      readers[t].start();
+    }
+    for (int i = 0; i < numKeys; i++) {
+      bf.addLong(i);
+      added.set(i + 1);
+    }
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertEquals(0, misses.get());
+  }
+}